@@ -37,6 +37,10 @@ import absimpa.lexer.SimpleLexer;
  * Add rules with {@link #rule rule()} and finally compile your start symbol
  * with {@link #compile compile()}.
  * </p>
+ * <p>
+ * A {@code BNF} object must not be used by several threads at the same
+ * time, but the parsers it compiles may.
+ * </p>
  * 
  * @param <N> type of node
  * @param <C> type of tokencode
@@ -48,13 +52,9 @@ public class BNF<N, C extends Enum<C>> {
   // For grammar names not yet entered with rule()
   private final Map<String,Recurse<N,C>> placeHolders = new HashMap<>();
 
-  // our lexer and parser
-  private final SimpleLexer<Node,TokenCode> lex;
+  // our parser, each call of rule() creates its own lexer
   private final Parser<Node,TokenCode> parser;
   
-  // only used during parsing to allow MyLeafs to fetch the next node factory
-  private List<NodeFactory<N>> nfmarkStack = null;
-  
   /*+******************************************************************/
   private static enum TokenCode  {
     EOF(""), 
@@ -97,13 +97,19 @@ public class BNF<N, C extends Enum<C>> {
     Grammar<Node,TokenCode> expr = getGrammar();
 
     parser = expr.compile();
-
-    lex = new SimpleLexer<>(TokenCode.EOF, new MyLeafs());
+  }
+  /*+******************************************************************/
+  private SimpleLexer<Node,TokenCode>
+  createLexer(List<NodeFactory<N>> nodeFactories)
+  {
+    SimpleLexer<Node,TokenCode> lex =
+        new SimpleLexer<>(TokenCode.EOF, new MyLeafs(nodeFactories));
     for(TokenCode c : TokenCode.values()) {
       if (c==TokenCode.EOF) continue;
       lex.addToken(c, c.getRegex());
     }
     lex.setSkipRe("[\\s]+");
+    return lex;
   }
   /*+******************************************************************/
   private Grammar<Node,TokenCode> getGrammar() {
@@ -372,8 +378,7 @@ public class BNF<N, C extends Enum<C>> {
     if( syntaxMap.containsKey(name) ) {
       throw new IllegalArgumentException(name+" already defined.");
     }
-    nfmarkStack = nodeFactories;
-    
+    SimpleLexer<Node,TokenCode> lex = createLexer(nodeFactories);
     lex.initAnalysis(expansion);
     Node node = parser.parse(lex);
 
@@ -405,6 +410,16 @@ public class BNF<N, C extends Enum<C>> {
    *         exceptions.
    */
   public Parser<N,C> compile(String ruleNname) {
+    return completeGrammar(ruleNname).compile();
+  }
+  /*+******************************************************************/
+  /**
+   * returns the grammar for the given rule, making sure all rules are
+   * defined.
+   * 
+   * @see #compile(String)
+   */
+  final Grammar<N,C> completeGrammar(String ruleNname) {
     Grammar<N,C> g = syntaxMap.get(ruleNname);
     if( placeHolders.size()>0 ) {
       StringBuilder sb = new StringBuilder();
@@ -414,10 +429,16 @@ public class BNF<N, C extends Enum<C>> {
       }
       throw new IllegalStateException(sb.toString());
     }
-    return  g.compile();
+    return g;
   }
   /*+******************************************************************/
   private class MyLeafs implements LeafFactory<Node,TokenCode> {
+    // the node factories to insert for the percent signs, in order
+    private final List<NodeFactory<N>> nodeFactories;
+    private int nextFactory = 0;
+    MyLeafs(List<NodeFactory<N>> nodeFactories) {
+      this.nodeFactories = nodeFactories;
+    }
     @Override
     public Node create(SimpleLexer<Node,TokenCode> alex) throws ParseException {
       TokenCode current = alex.current();
@@ -447,12 +468,12 @@ public class BNF<N, C extends Enum<C>> {
           throw ex;
         }
       case PERCENT:
-        if( nfmarkStack.size()<1 ) {
+        if( nextFactory>=nodeFactories.size() ) {
           ParseException e = alex.parseException(Collections.<TokenCode>emptySet());
           e.setMoreInfo("not enough node factories");
           throw e;
         }
-        return new Node(nfmarkStack.remove(0));
+        return new Node(nodeFactories.get(nextFactory++));
       default:
         return null;
       }
@@ -4,12 +4,20 @@ import java.util.*;
 import absimpa.parserimpl.AbstractParser;
 import absimpa.parserimpl.ChoiceParser;
 
-
+/**
+ * <p>
+ * is a grammar that recognizes one of its sub grammars, chosen by the
+ * current token. If several sub grammars may start with the token, the
+ * one added first is taken, unless the choice may look further ahead, see
+ * {@link #setLookahead}.
+ * </p>
+ */
 public class Choice<N,C extends Enum<C>>
     extends Grammar<N,C>
 {
   private final List<Grammar<N,C>> children;
   // private final Grammar<N,C> firstOptional;
+  private int lookahead = 1;
 
   public Choice(Grammar<N,C> g) {
     children = new ArrayList<>();
@@ -21,6 +29,29 @@ public class Choice<N,C extends Enum<C>>
     return this;
   }
   /* +***************************************************************** */
+  /**
+   * <p>
+   * lets the choice look at up to {@code k} tokens to pick the sub grammar
+   * to parse, where several of them may start with the current token. The
+   * further tokens are only looked at for these conflicting tokens, and
+   * only if the lexer is a {@link PeekableLexer}. If the tokens still do
+   * not decide, or a sub grammar may end within them, the sub grammar
+   * added first is taken, so that input parsed by the choice looking at
+   * one token is parsed the same way. The default is 1.
+   * </p>
+   */
+  public Choice<N,C> setLookahead(int k) {
+    if( k<1 ) {
+      throw new IllegalArgumentException("lookahead must be positive, but is "
+          +k);
+    }
+    this.lookahead = k;
+    return this;
+  }
+  final int getLookahead() {
+    return lookahead;
+  }
+  /* +***************************************************************** */
   protected Iterable<Grammar<N,C>> children() {
     return Collections.unmodifiableList(children);
   }
@@ -33,13 +64,126 @@ public class Choice<N,C extends Enum<C>>
   buildParser(Map<Grammar<N,C>,First<N,C>> firstOf)
   {
     List<AbstractParser<N,C>> childParsers = new ArrayList<>(children.size());
+    List<Grammar<N,C>> alternatives = new ArrayList<>(children.size());
 
-    for(Grammar<N,C> g : children) {
-      childParsers.add(g.build(firstOf));
-    }
+    addParsers(childParsers, alternatives, firstOf);
     First<N,C> myFirst = first(firstOf);
-    return new ChoiceParser<>(childParsers, myFirst.firstSet(),
+    ChoiceParser<N,C> p = new ChoiceParser<>(childParsers, myFirst.lookahead(),
         myFirst.epsilon);
+    if( lookahead==1 ) return p;
+
+    for(C code : myFirst.lookahead()) {
+      List<Integer> candidates = new ArrayList<>(2);
+      for(int i=0; i<alternatives.size(); i++) {
+        if( alternatives.get(i).first(firstOf).lookahead().contains(code) ) {
+          candidates.add(i);
+        }
+      }
+      if( candidates.size()<2 ) continue;
+      List<C> prefix = new ArrayList<>(lookahead);
+      prefix.add(code);
+      decide(p, prefix, candidates, alternatives, childParsers, firstOf);
+    }
+    return p;
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * makes {@code p} pick among the {@code candidates} by the tokens
+   * following {@code prefix}. The candidates are indexes into the
+   * {@code alternatives} in the order added. Where the tokens do not
+   * decide, the first candidate that may end within them is taken, and if
+   * there is none, the first candidate.
+   * </p>
+   */
+  private void decide(ChoiceParser<N,C> p, List<C> prefix,
+                      List<Integer> candidates,
+                      List<Grammar<N,C>> alternatives,
+                      List<AbstractParser<N,C>> parsers,
+                      Map<Grammar<N,C>,First<N,C>> firstOf)
+  {
+    if( prefix.size()==lookahead || candidates.size()==1 ) {
+      p.decide(prefix, parsers.get(candidates.get(0)));
+      return;
+    }
+
+    List<EnumSet<C>> nexts = new ArrayList<>(candidates.size());
+    BitSet open = new BitSet();
+    EnumSet<C> union = first(firstOf).firstSet();
+    union.clear();
+    for(int i=0; i<candidates.size(); i++) {
+      EnumSet<C> next = union.clone();
+      BitSet ends = new BitSet();
+      alternatives.get(candidates.get(i))
+          .nextTokens(prefix, 0, firstOf, next, ends);
+      // an alternative that may end within the prefix may be followed by
+      // anything
+      if( !ends.isEmpty() ) open.set(i);
+      nexts.add(next);
+      union.addAll(next);
+    }
+    int firstOpen = open.nextSetBit(0);
+    int fallback = candidates.get(Math.max(0, firstOpen));
+    if( prefix.size()>1 || fallback!=candidates.get(0) ) {
+      p.decide(prefix, parsers.get(fallback));
+    }
+    // then it is taken no matter what follows
+    if( firstOpen==0 ) return;
+
+    for(C code : union) {
+      List<Integer> chosen = new ArrayList<>(candidates.size());
+      for(int i=0; i<candidates.size(); i++) {
+        if( open.get(i) || nexts.get(i).contains(code) ) {
+          chosen.add(candidates.get(i));
+        }
+      }
+      if( chosen.size()==1 && chosen.get(0)==fallback ) continue;
+      prefix.add(code);
+      decide(p, prefix, chosen, alternatives, parsers, firstOf);
+      prefix.remove(prefix.size()-1);
+    }
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * adds the parsers of the children, splicing in the children of nested
+   * choices without a name or {@code NodeFactory}. As the first child
+   * matching the lookahead wins, the order of the children is kept.
+   * </p>
+   */
+  private void addParsers(List<AbstractParser<N,C>> parsers,
+                          List<Grammar<N,C>> alternatives,
+                          Map<Grammar<N,C>,First<N,C>> firstOf)
+  {
+    for(Grammar<N,C> g : children) {
+      if( g instanceof Choice && g.isPlain()
+          && ((Choice<N,C>)g).lookahead<=lookahead ) {
+        ((Choice<N,C>)g).addParsers(parsers, alternatives, firstOf);
+      } else {
+        parsers.add(g.build(firstOf));
+        alternatives.add(g);
+      }
+    }
+  }
+  /* +***************************************************************** */
+  @Override
+  Grammar<N,C> passThrough() {
+    return isPlain() && children.size()==1 ? children.get(0) : null;
+  }
+  /* +***************************************************************** */
+  @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return i<children.size() ? children.get(i) : null;
+  }
+  /* +***************************************************************** */
+  @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    for(Grammar<N,C> child : children) {
+      child.nextTokens(prefix, from, firstOf, next, ends);
+    }
   }
   /* +***************************************************************** */
   protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf) {
@@ -51,7 +195,7 @@ public class Choice<N,C extends Enum<C>>
     for(int i=1; i<children.size(); i++) {
       childGrammar = children.get(i);
       childFirst = childGrammar.first(firstOf);
-      firstSet.addAll(childFirst.firstSet());
+      firstSet.addAll(childFirst.lookahead());
       optional |= childFirst.epsilon;
     }
     return new First<> (firstSet, optional);
@@ -0,0 +1,360 @@
+package absimpa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * assembles a class file from the few instructions needed by the
+ * {@link ParserGenerator}. The class file has version 49, so that no
+ * stack map frames are needed, and every Java runtime from 1.5 on still
+ * verifies it by type inference.
+ * </p>
+ */
+final class ClassFileWriter {
+  static final int ACC_PUBLIC = 0x0001;
+  static final int ACC_PRIVATE = 0x0002;
+  static final int ACC_PROTECTED = 0x0004;
+  static final int ACC_FINAL = 0x0010;
+  static final int ACC_SUPER = 0x0020;
+
+  static final int ICONST_0 = 0x03;
+  static final int BIPUSH = 0x10;
+  static final int SIPUSH = 0x11;
+  static final int LDC = 0x12;
+  static final int LDC_W = 0x13;
+  static final int ILOAD = 0x15;
+  static final int ALOAD = 0x19;
+  static final int ISTORE = 0x36;
+  static final int IASTORE = 0x4f;
+  static final int POP = 0x57;
+  static final int DUP = 0x59;
+  static final int IINC = 0x84;
+  static final int IF_ICMPEQ = 0x9f;
+  static final int IF_ICMPNE = 0xa0;
+  static final int IF_ICMPGE = 0xa2;
+  static final int GOTO = 0xa7;
+  static final int LOOKUPSWITCH = 0xab;
+  static final int IRETURN = 0xac;
+  static final int RETURN = 0xb1;
+  static final int INVOKEVIRTUAL = 0xb6;
+  static final int INVOKESPECIAL = 0xb7;
+  static final int INVOKESTATIC = 0xb8;
+  static final int INVOKEINTERFACE = 0xb9;
+  static final int NEWARRAY = 0xbc;
+  static final int ATHROW = 0xbf;
+
+  private static final int T_INT = 10;
+
+  private final String className;
+  private final String superName;
+  private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(poolBytes);
+  private final Map<String,Integer> poolIndex = new HashMap<>();
+  private int poolCount = 1;
+  private final List<byte[]> methods = new ArrayList<>();
+  /*+******************************************************************/
+  /**
+   * @param className is the internal name of the class, with slashes
+   * @param superName is the internal name of its superclass
+   */
+  ClassFileWriter(String className, String superName) {
+    this.className = className;
+    this.superName = superName;
+  }
+  /*+******************************************************************/
+  String getClassName() {
+    return className;
+  }
+  /*+******************************************************************/
+  private int entry(String key, int tag, int a, int b) {
+    Integer i = poolIndex.get(key);
+    if( i!=null ) return i;
+    try {
+      pool.writeByte(tag);
+      if( tag==3 ) {
+        pool.writeInt(a);
+      } else {
+        pool.writeShort(a);
+        if( b>=0 ) pool.writeShort(b);
+      }
+    } catch( IOException e ) {
+      throw new IllegalStateException("cannot happen in memory", e);
+    }
+    poolIndex.put(key, poolCount);
+    return poolCount++;
+  }
+  private int utf8(String s) {
+    String key = "U"+s;
+    Integer i = poolIndex.get(key);
+    if( i!=null ) return i;
+    try {
+      pool.writeByte(1);
+      pool.writeUTF(s);
+    } catch( IOException e ) {
+      throw new IllegalStateException("cannot happen in memory", e);
+    }
+    poolIndex.put(key, poolCount);
+    return poolCount++;
+  }
+  private int classRef(String name) {
+    return entry("C"+name, 7, utf8(name), -1);
+  }
+  private int integer(int value) {
+    return entry("I"+value, 3, value, -1);
+  }
+  /*+******************************************************************/
+  /**
+   * returns the constant pool index of a method of class {@code owner}.
+   */
+  int methodRef(String owner, String name, String descriptor) {
+    int nat = entry("N"+name+" "+descriptor, 12, utf8(name),
+                    utf8(descriptor));
+    return entry("M"+owner+"."+name+descriptor, 10, classRef(owner), nat);
+  }
+  /*+******************************************************************/
+  /**
+   * returns the constant pool index of a method of interface
+   * {@code owner}.
+   */
+  int interfaceMethodRef(String owner, String name, String descriptor) {
+    int nat = entry("N"+name+" "+descriptor, 12, utf8(name),
+                    utf8(descriptor));
+    return entry("J"+owner+"."+name+descriptor, 11, classRef(owner), nat);
+  }
+  /*+******************************************************************/
+  // the number of local variable slots taken by the arguments, which
+  // must not be long or double
+  private static int argumentSlots(String descriptor) {
+    int count = 0;
+    for(int i=1; descriptor.charAt(i)!=')'; i++) {
+      char ch = descriptor.charAt(i);
+      while( ch=='[' ) ch = descriptor.charAt(++i);
+      if( ch=='L' ) i = descriptor.indexOf(';', i);
+      count += 1;
+    }
+    return count;
+  }
+  /*+******************************************************************/
+  /**
+   * starts a new method, which is added to the class by
+   * {@link Code#end}.
+   */
+  Code method(int access, String name, String descriptor, int maxLocals) {
+    return new Code(access, name, descriptor, maxLocals);
+  }
+  /*+******************************************************************/
+  byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try(DataOutputStream out = new DataOutputStream(bytes)) {
+      int thisIndex = classRef(className);
+      int superIndex = classRef(superName);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(49);
+      out.writeShort(poolCount);
+      poolBytes.writeTo(out);
+      out.writeShort(ACC_PUBLIC|ACC_FINAL|ACC_SUPER);
+      out.writeShort(thisIndex);
+      out.writeShort(superIndex);
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(methods.size());
+      for(byte[] m : methods) out.write(m);
+      out.writeShort(0);
+    } catch( IOException e ) {
+      throw new IllegalStateException("cannot happen in memory", e);
+    }
+    return bytes.toByteArray();
+  }
+  /*+******************************************************************/
+  /**
+   * a position in the code of a method, jumped to before or after it is
+   * placed
+   */
+  static final class Label {
+    private int pos = -1;
+  }
+  /*+******************************************************************/
+  /**
+   * collects the instructions of a method
+   */
+  final class Code {
+    private final int access;
+    private final String name;
+    private final String descriptor;
+    private final int maxLocals;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    // each jump as the position of its instruction, the position of the
+    // offset, its width and the label jumped to
+    private final List<int[]> jumps = new ArrayList<>();
+    private final List<Label> targets = new ArrayList<>();
+
+    private Code(int access, String name, String descriptor, int maxLocals) {
+      this.access = access;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.maxLocals = maxLocals;
+    }
+    /*+****************************************************************/
+    Code op(int opcode) {
+      code.write(opcode);
+      return this;
+    }
+    private void u2(int value) {
+      code.write(value>>8);
+      code.write(value);
+    }
+    private void u4(int value) {
+      u2(value>>>16);
+      u2(value&0xffff);
+    }
+    /*+****************************************************************/
+    Code var(int opcode, int index) {
+      code.write(opcode);
+      code.write(index);
+      return this;
+    }
+    /*+****************************************************************/
+    Code iinc(int index, int delta) {
+      code.write(IINC);
+      code.write(index);
+      code.write(delta);
+      return this;
+    }
+    /*+****************************************************************/
+    Code iconst(int value) {
+      if( value>=-1 && value<=5 ) {
+        code.write(ICONST_0+value);
+      } else if( value>=Byte.MIN_VALUE && value<=Byte.MAX_VALUE ) {
+        code.write(BIPUSH);
+        code.write(value);
+      } else if( value>=Short.MIN_VALUE && value<=Short.MAX_VALUE ) {
+        code.write(SIPUSH);
+        u2(value);
+      } else {
+        int i = integer(value);
+        if( i<256 ) {
+          code.write(LDC);
+          code.write(i);
+        } else {
+          code.write(LDC_W);
+          u2(i);
+        }
+      }
+      return this;
+    }
+    /*+****************************************************************/
+    /**
+     * pushes a new {@code int[]} with the given values.
+     */
+    Code intArray(int[] values) {
+      iconst(values.length);
+      code.write(NEWARRAY);
+      code.write(T_INT);
+      for(int i=0; i<values.length; i++) {
+        op(DUP).iconst(i).iconst(values[i]).op(IASTORE);
+      }
+      return this;
+    }
+    /*+****************************************************************/
+    Code invoke(int opcode, String owner, String name, String descriptor) {
+      code.write(opcode);
+      if( opcode==INVOKEINTERFACE ) {
+        u2(interfaceMethodRef(owner, name, descriptor));
+        code.write(1+argumentSlots(descriptor));
+        code.write(0);
+      } else {
+        u2(methodRef(owner, name, descriptor));
+      }
+      return this;
+    }
+    /*+****************************************************************/
+    Code jump(int opcode, Label target) {
+      int pos = code.size();
+      code.write(opcode);
+      jumps.add(new int[] {pos, code.size(), 2, targets.size()});
+      targets.add(target);
+      u2(0);
+      return this;
+    }
+    /*+****************************************************************/
+    /**
+     * jumps to {@code labels[i]} if the int on the stack is
+     * {@code keys[i]}, otherwise to {@code dflt}.
+     *
+     * @param keys must be sorted ascending
+     */
+    Code lookupSwitch(int[] keys, Label[] labels, Label dflt) {
+      int pos = code.size();
+      code.write(LOOKUPSWITCH);
+      while( code.size()%4!=0 ) code.write(0);
+      jumps.add(new int[] {pos, code.size(), 4, targets.size()});
+      targets.add(dflt);
+      u4(0);
+      u4(keys.length);
+      for(int i=0; i<keys.length; i++) {
+        u4(keys[i]);
+        jumps.add(new int[] {pos, code.size(), 4, targets.size()});
+        targets.add(labels[i]);
+        u4(0);
+      }
+      return this;
+    }
+    /*+****************************************************************/
+    Code place(Label label) {
+      label.pos = code.size();
+      return this;
+    }
+    /*+****************************************************************/
+    /**
+     * adds the method to the class.
+     */
+    void end() {
+      byte[] b = code.toByteArray();
+      for(int[] j : jumps) {
+        Label target = targets.get(j[3]);
+        if( target.pos<0 ) {
+          throw new IllegalStateException("label not placed in "+name);
+        }
+        int offset = target.pos-j[0];
+        if( j[2]==2 ) {
+          if( offset<Short.MIN_VALUE || offset>Short.MAX_VALUE ) {
+            throw new IllegalStateException("method "+name+" too large");
+          }
+          b[j[1]] = (byte)(offset>>8);
+          b[j[1]+1] = (byte)offset;
+        } else {
+          for(int k=0; k<4; k++) b[j[1]+k] = (byte)(offset>>(24-8*k));
+        }
+      }
+      if( b.length>65535 ) {
+        throw new IllegalStateException("method "+name+" too large");
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try(DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeShort(access);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(12+b.length);
+        // enough for the deepest expression the generator emits
+        out.writeShort(8);
+        out.writeShort(maxLocals);
+        out.writeInt(b.length);
+        out.write(b);
+        out.writeShort(0);
+        out.writeShort(0);
+      } catch( IOException e ) {
+        throw new IllegalStateException("cannot happen in memory", e);
+      }
+      methods.add(bytes.toByteArray());
+    }
+  }
+}
@@ -26,8 +26,17 @@ class First<N,C extends Enum<C>> {
     this.first = first;
     this.epsilon = epsilon;
   }
+  /**
+   * returns a copy of the first set to be modified by the caller
+   */
   public EnumSet<C> firstSet() {
-    return EnumSet.copyOf(first);
+    return first.clone();
+  }
+  /**
+   * returns the first set itself, which must not be modified
+   */
+  public EnumSet<C> lookahead() {
+    return first;
   }
   public void setParser(AbstractParser<N,C> p) {
     this.parser = p;
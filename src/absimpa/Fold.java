@@ -0,0 +1,96 @@
+package absimpa;
+
+
+import java.util.*;
+import java.util.stream.Collector;
+
+import absimpa.parserimpl.AbstractParser;
+import absimpa.parserimpl.FoldParser;
+
+
+/**
+ * <p>
+ * is like a {@link Repeat}, except that the nodes of the sub grammar are
+ * not collected in a list for a {@link NodeFactory}. Instead, every node is
+ * folded into an accumulation container by the {@link Collector} as soon
+ * as it is recognized, and dropped. The result of the collector's
+ * finisher is the node produced. Aggregating many repetitions, like
+ * counting or summing them up or writing them out, therefore needs only
+ * as much memory as the container.
+ * </p>
+ * <p>
+ * As for a {@code Repeat}, no node is produced if the sub grammar is not
+ * found at all. If a {@code NodeFactory} is set, it receives the node of
+ * the collector.
+ * </p>
+ */
+public class Fold<N, C extends Enum<C>, A> extends Grammar<N,C> {
+  private final int min;
+  private final int max;
+  private final Grammar<N,C> child;
+  private final Collector<? super N,A,? extends N> collector;
+
+  public Fold(Collector<? super N,A,? extends N> collector,
+              int min, int max, Grammar<N,C> arg)
+  {
+    if( min<0||max<min||max==0 ) {
+      String msg =
+          String.format("must have 0<=min<=max and max>0, but have "
+              +" min=%d, max=%d", min, max);
+      throw new IllegalArgumentException(msg);
+    }
+    this.collector = collector;
+    this.min = min;
+    this.max = max;
+    this.child = arg;
+  }
+  /* +***************************************************************** */
+  @Override
+  protected Iterable<Grammar<N,C>> children() {
+    return Collections.singletonList(child);
+   }
+  /*+******************************************************************/
+  @Override
+  protected AbstractParser<N,C> buildParser(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    First<N,C> f = child.first(firstOf);
+    AbstractParser<N,C> childParser = child.build(firstOf);
+    return new FoldParser<>(f.lookahead(), childParser,
+                            min==0 || f.epsilon, min, max, collector);
+  }
+  /*+******************************************************************/
+  @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return i==0 ? child : null;
+  }
+  /*+******************************************************************/
+  @Override
+  protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    // never share the First of the child, as it also records the parser
+    First<N,C> f = child.first(firstOf);
+    return new First<>(f.lookahead(), min==0 || f.epsilon);
+  }
+  /*+******************************************************************/
+  @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    Repeat.matchRepeated(child, min, max, prefix, from, firstOf, next, ends);
+  }
+  /*+******************************************************************/
+  protected String getDetail() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(min).append(',');
+    if( max==Integer.MAX_VALUE ) {
+      sb.append("*");
+    } else {
+      sb.append(max);
+    }
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  @Override
+  public String _ruleString() {
+    return child.toString()+"{"+getDetail()+"}>>";
+  }
+}
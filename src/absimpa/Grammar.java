@@ -2,8 +2,10 @@ package absimpa;
 
 
 import java.util.*;
+import java.util.stream.Collector;
 
 import absimpa.parserimpl.AbstractParser;
+import absimpa.parserimpl.NonRecursiveParser;
 
 /**
  * <p>
@@ -26,7 +28,10 @@ public abstract class Grammar<N, C extends Enum<C>> {
   private NodeFactory<N> nodeFactory = null;
   /* +***************************************************************** */
   /**
-   * compiles the grammar into a parser to recognize the grammar.
+   * compiles the grammar into a parser to recognize the grammar. The
+   * parser does not change after it is returned, in particular not when
+   * the grammar is changed later, and can be used by many threads at the
+   * same time.
    * 
    * @throws LeftRecursiveException if the grammar is <a
    *         href="http://en.wikipedia.org/wiki/Left_recursion">left
@@ -39,10 +44,63 @@ public abstract class Grammar<N, C extends Enum<C>> {
     Map<Grammar<N,C>,First<N,C>> firstOf = new HashMap<>();
 
     Parser<N,C> result = build(firstOf);
-    fillRecursives(firstOf, new HashSet<Grammar<N,C>>());
+    fillRecursives(firstOf);
+    List<AbstractParser<N,C>> parsers = new ArrayList<>();
+    for(First<N,C> f : firstOf.values()) {
+      if( f.getParser()!=null ) parsers.add(f.getParser());
+    }
+    AbstractParser.freezeAll(parsers);
     return result;
   }
   /*+******************************************************************/
+  /**
+   * <p>
+   * compiles the grammar like {@link #compile()}, but the resulting parser
+   * does not recurse on the Java call stack. Instead it keeps the nesting
+   * of its input on the heap, allowing at most {@code maxDepth} active
+   * parsers at any time, each level of nesting in the input typically
+   * needing a few of them. Use this for input too deeply nested for the
+   * thread's stack.
+   * </p>
+   * <p>
+   * The limit counts parser frames, it is not a budget of memory. Input
+   * nested deeper fails with a {@link ParseException} that is not caught
+   * by an {@link OrderedChoice} to try its next alternative.
+   * </p>
+   * 
+   * @see NonRecursiveParser
+   */
+  public final Parser<N,C> compileNonRecursive(int maxDepth) {
+    return new NonRecursiveParser<>(compile(), maxDepth);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * compiles the grammar into a class of its own, generated and loaded at
+   * run time. Each grammar element becomes a method, a {@link Choice} a
+   * {@code switch} on the token code's ordinal and a token is matched
+   * inline. The class file is created directly and defined with
+   * {@link ClassLoader#defineClass}, so neither a Java compiler nor a
+   * class path is needed at run time.
+   * </p>
+   * <p>
+   * The parser calls the same {@link NodeFactory} objects with the same
+   * nodes and throws the same exceptions as the one returned by
+   * {@link #compile()}. It supports a {@link ParseContext}, and parsing
+   * with a {@link ParseListener} is done by the parser returned by
+   * {@code compile()}.
+   * </p>
+   *
+   * @throws IllegalArgumentException if the grammar contains elements not
+   *         supported by the {@link ParserGenerator}, like an
+   *         {@link OrderedChoice}, a {@link Fold} or a {@link Choice}
+   *         looking ahead more than one token
+   * @see ParserGenerator#load
+   */
+  public final Parser<N,C> compileToBytecode() {
+    return new ParserGenerator<>(this).load();
+  }
+  /*+******************************************************************/
   /**
    * <p>wraps {@code this} into a {@link Repeat}.</p>
    */
@@ -98,17 +156,37 @@ public abstract class Grammar<N, C extends Enum<C>> {
     return opt(null);
   }
   /*+******************************************************************/
+  /**
+   * <p>wraps {@code this} into a {@link Fold}.</p>
+   */
+  public <A> Grammar<N,C> fold(Collector<? super N,A,? extends N> collector,
+                               int min, int max) {
+    return new Fold<>(collector, min, max, this);
+  }
+  /*+******************************************************************/
   public Grammar<N,C> setNodeFactory(NodeFactory<N> nf) {
     this.nodeFactory = nf;
     return this;
   }
   /*+******************************************************************/
+  final NodeFactory<N> getNodeFactory() {
+    return nodeFactory;
+  }
+  /*+******************************************************************/
   final AbstractParser<N,C> build(Map<Grammar<N,C>,First<N,C>> firstOf) {
     First<N,C> f = first(firstOf);
     if( f.getParser()!=null ) {
       return f.getParser();
     }
     
+    Grammar<N,C> child = passThrough();
+    if( child!=null ) {
+      // a parser for this grammar would do nothing but call the child's
+      AbstractParser<N,C> p = child.build(firstOf);
+      f.setParser(p);
+      return p;
+    }
+
     AbstractParser<N,C> p = buildParser(firstOf);
     f.setParser(p);
     p.setName(name);
@@ -116,13 +194,42 @@ public abstract class Grammar<N, C extends Enum<C>> {
     return p;
   }
   /*+******************************************************************/
-  private final void fillRecursives(Map<Grammar<N,C>,First<N,C>> firstOf,
-                                    Set<Grammar<N,C>> done) {
-    for(Grammar<N,C> g : children()) {
+  /**
+   * <p>
+   * tells whether the parser for this grammar just leaves the nodes of its
+   * children on the stack, because there is neither a name nor a
+   * {@link NodeFactory} for it. Such a parser may then be replaced by the
+   * parsers of its children without changing the result.
+   * </p>
+   */
+  final boolean isPlain() {
+    return name==null && nodeFactory==null;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * returns the child whose parser can stand in for the parser of this
+   * grammar, if there is one, otherwise {@code null}.
+   * </p>
+   */
+  Grammar<N,C> passThrough() {
+    return null;
+  }
+  /*+******************************************************************/
+  // Recurse grammars build the parsers of their children only here, so
+  // that building does not follow the references between rules on the Java
+  // call stack.
+  private void fillRecursives(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    Set<Grammar<N,C>> done = new HashSet<>();
+    Deque<Grammar<N,C>> todo = new ArrayDeque<>();
+    done.add(this);
+    todo.add(this);
+    while( !todo.isEmpty() ) {
+      Grammar<N,C> g = todo.poll();
       g.setRecurse(firstOf);
-      if( done.contains(g) ) continue;
-      done.add(g);
-      g.fillRecursives(firstOf, done);
+      for(Grammar<N,C> child : g.children()) {
+        if( done.add(child) ) todo.add(child);
+      }
     }
   }
   /* +***************************************************************** */
@@ -130,17 +237,102 @@ public abstract class Grammar<N, C extends Enum<C>> {
     if( firstOf.containsKey(this) ) {
       First<N,C> myFirst = firstOf.get(this);
       if( myFirst!=null ) return myFirst;
-      // FIXME: message with loop elements would be nice.
-      String msg = 
-        String.format("grammar %s starts a left recursive loop",
-                      this);
-      throw new LeftRecursiveException(msg);
+      throw leftRecursive(this);
     }
 
+    // Compute the first sets this one depends on in post order with an
+    // explicit stack, deepest first, to not overflow the Java call stack
+    // for long chains of rules. Without left recursion the dependencies
+    // form no loop, so each first set is computed once.
+    List<Grammar<N,C>> pending = new ArrayList<>();
+    int[] next = new int[16];
     firstOf.put(this, null);
-    First<N,C> f = computeFirst(firstOf);
-    firstOf.put(this, f);
-    return f;
+    pending.add(this);
+    while( !pending.isEmpty() ) {
+      int top = pending.size()-1;
+      Grammar<N,C> g = pending.get(top);
+      Grammar<N,C> dep = g.firstDependency(next[top], firstOf);
+      if( dep==null ) {
+        pending.remove(top);
+        firstOf.put(g, g.computeFirst(firstOf));
+        continue;
+      }
+      next[top] += 1;
+      if( firstOf.containsKey(dep) ) {
+        if( firstOf.get(dep)==null ) throw leftRecursive(dep);
+        continue;
+      }
+      firstOf.put(dep, null);
+      pending.add(dep);
+      if( pending.size()>next.length ) {
+        next = Arrays.copyOf(next, 2*next.length);
+      }
+      next[top+1] = 0;
+    }
+    return firstOf.get(this);
+  }
+  private static LeftRecursiveException leftRecursive(Grammar<?,?> g) {
+    // FIXME: message with loop elements would be nice.
+    String msg = 
+      String.format("grammar %s starts a left recursive loop", g);
+    return new LeftRecursiveException(msg);
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * returns the {@code i}th child whose first set is needed by
+   * {@link #computeFirst}, or {@code null} if there is none. The children
+   * returned for smaller {@code i} have their first set in {@code firstOf}
+   * already.
+   * </p>
+   * <p>
+   * A grammar not telling its children here still works, but computes
+   * their first sets recursively.
+   * </p>
+   */
+  @SuppressWarnings("unused")
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return null;
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * finds out how this grammar can match the tokens of {@code prefix}
+   * from index {@code from} on. For every way to match all of them and go
+   * on, the token that may come next is added to {@code next}. For every
+   * way to end before the token at index {@code j}, having matched those
+   * before, bit {@code j} is set in {@code ends}. This is used by a
+   * {@link Choice} to look further ahead where its alternatives conflict.
+   * </p>
+   */
+  final void nextTokens(List<C> prefix, int from,
+                        Map<Grammar<N,C>,First<N,C>> firstOf,
+                        EnumSet<C> next, BitSet ends)
+  {
+    First<N,C> f = first(firstOf);
+    if( f.epsilon ) ends.set(from);
+    if( from==prefix.size() ) {
+      next.addAll(f.lookahead());
+    } else if( f.lookahead().contains(prefix.get(from)) ) {
+      matchPrefix(prefix, from, firstOf, next, ends);
+    }
+  }
+  /**
+   * <p>
+   * implements {@link #nextTokens} for a {@code from} before the end of
+   * the {@code prefix} and the token there in the first set. The result
+   * may contain more than possible but never less. The default assumes
+   * that anything may happen.
+   * </p>
+   */
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    EnumSet<C> lookahead = first(firstOf).lookahead();
+    next.addAll(EnumSet.complementOf(lookahead));
+    next.addAll(lookahead);
+    ends.set(from, prefix.size()+1);
   }
   /* +***************************************************************** */
   @SuppressWarnings("unused")
@@ -189,17 +381,17 @@ public abstract class Grammar<N, C extends Enum<C>> {
   public final String toBNF() {
     
     Set<Grammar<?,?>> known = new HashSet<>();
-    List<Grammar<?,?>> grammars = new ArrayList<>();
+    Deque<Grammar<?,?>> grammars = new ArrayDeque<>();
+    known.add(this);
     grammars.add(this);
     StringBuilder sb = new StringBuilder();
-    while( grammars.size()>0 ) {
-      Grammar<?,?> g = grammars.remove(0);
-      known.add(g);
+    while( !grammars.isEmpty() ) {
+      Grammar<?,?> g = grammars.poll();
       if( g.getName()!=null ) {
         sb.append(g).append(" --> ").append(g.ruleString()).append('\n');
       }
       for(Grammar<?,?> child : g.children() ) {
-        if( !known.contains(child) ) grammars.add(child);
+        if( known.add(child) ) grammars.add(child);
       }
     }
     return sb.toString();
@@ -1,5 +1,7 @@
 package absimpa;
 
+import java.util.stream.Collector;
+
 /**
  * <p>
  * helps to build a {@link Grammar} for a language made from objects of type
@@ -235,6 +237,34 @@ public class GrammarBuilder<N,C extends Enum<C>> {
     return repeat(nf, grammar, 0, 1);
   }
   /* +***************************************************************** */
+  /**
+   * <p>
+   * creates a grammar like {@link #repeat(NodeFactory,Grammar,int,int)},
+   * but instead of collecting the nodes of all repetitions for a
+   * {@link NodeFactory}, each is folded into the result by the
+   * {@code collector} as soon as it is recognized.
+   * </p>
+   */
+  public <A> Fold<N,C,A> fold(Collector<? super N,A,? extends N> collector,
+                              Grammar<N,C> g,
+                              int min, int max) {
+    return new Fold<>(collector, min, max, g);
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * creates a grammar to recognize expressions made of the given
+   * {@code operand} and operators. To add the operators, call
+   * {@link OperatorGrammar#prefix}, {@link OperatorGrammar#infixLeft},
+   * {@link OperatorGrammar#infixRight} and {@link OperatorGrammar#postfix}.
+   * The operator's {@link NodeFactory} is passed to each of these, so the
+   * default {@code NodeFactory} is not used.
+   * </p>
+   */
+  public OperatorGrammar<N,C> operators(Grammar<N,C> operand) {
+    return new OperatorGrammar<>(operand);
+  }
+  /* +***************************************************************** */
   /**
    * creates a grammar to recognize any one of a number of sub grammars, one
    * of which is the given {@code g}. To add more sub grammars to the choice,
@@ -267,4 +297,31 @@ public class GrammarBuilder<N,C extends Enum<C>> {
     return c;    
   }
   /* +***************************************************************** */
+  /**
+   * creates a grammar that tries the given sub grammars in order and takes
+   * the first one that recognizes the input. To add more sub grammars,
+   * call {@link OrderedChoice#or}. In contrast to {@link #choice choice()},
+   * the sub grammars may start with the same tokens, at the cost of
+   * backtracking. Like the {@code Choice}, it needs no {@link NodeFactory}.
+   */
+  public OrderedChoice<N,C> orderedChoice(Grammar<N,C> g) {
+    return new OrderedChoice<>(g);
+  }
+  public OrderedChoice<N,C> orderedChoice(Grammar<N,C> g1, Grammar<N,C> g2) {
+    return orderedChoice(g1).or(g2);
+  }
+  public OrderedChoice<N,C> orderedChoice(Grammar<N,C> g1, Grammar<N,C> g2,
+                                          Grammar<N,C> g3) {
+    return orderedChoice(g1).or(g2).or(g3);
+  }
+  @SafeVarargs
+  public final OrderedChoice<N,C> orderedChoice(Grammar<N,C> g1,
+                                                Grammar<N,C> g2,
+                                                Grammar<N,C> g3,
+                                                Grammar<N,C> ... more) {
+    OrderedChoice<N,C> c = orderedChoice(g1).or(g2).or(g3);
+    for(Grammar<N,C> g : more) c.or(g);
+    return c;
+  }
+  /* +***************************************************************** */
 }
@@ -0,0 +1,44 @@
+package absimpa;
+
+/**
+ * <p>
+ * is a {@link Lexer} that can return to tokens already delivered. This is
+ * needed by parsers that backtrack, namely those compiled from an
+ * {@link OrderedChoice}.
+ * </p>
+ * <p>
+ * Positions count the tokens from the start of input. The lexer keeps the
+ * tokens from the oldest position marked with {@link #mark} and not yet
+ * {@link #release released} onwards, so that it can {@link #reset} to any
+ * of them. Marks are released in the reverse order they were set.
+ * </p>
+ */
+public interface MarkableLexer<N,C extends Enum<C>> extends Lexer<N,C> {
+  /**
+   * returns the position of the current token.
+   */
+  int position();
+  /**
+   * <p>
+   * returns the position of the current token and makes sure that the
+   * lexer can {@link #reset} to it until it is {@link #release released}.
+   * </p>
+   */
+  int mark();
+  /**
+   * <p>
+   * makes the token at the given position the current one. The position
+   * must be between the oldest mark still set and the position of the
+   * furthest token lexed so far. {@link Lexer#next} then delivers the same
+   * leaf objects as before.
+   * </p>
+   *
+   * @throws IllegalArgumentException if the lexer cannot return to the
+   *         position
+   */
+  void reset(int position);
+  /**
+   * releases a mark obtained from {@link #mark}.
+   */
+  void release(int mark);
+}
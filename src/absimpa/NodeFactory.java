@@ -19,6 +19,11 @@ public interface NodeFactory<N> {
    * creates a new {@code N} from the child objects. This list of children
    * may be empty, but it will not contain {@code null} elements.
    * </p>
+   * <p>
+   * The list is a read only view into the parser's internal value stack
+   * and is only valid during this call. Copy it, if the elements are
+   * needed later.
+   * </p>
    * 
    * @return an {@code N} or {@code null}. A return value of {@code null}
    *         will not be put into a list of nodes on the level above, but
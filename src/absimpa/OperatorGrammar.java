@@ -0,0 +1,214 @@
+package absimpa;
+
+
+import java.util.*;
+
+import absimpa.parserimpl.AbstractParser;
+import absimpa.parserimpl.OperatorParser;
+
+
+/**
+ * <p>
+ * recognizes operands joined by prefix, infix and postfix operators, each
+ * operator being a token code with a binding power. Operators with a
+ * higher power bind more tightly. Of operators with the same power, those
+ * further left are applied first, except for infix operators added with
+ * {@link #infixRight}. Where a chain of rules like
+ * </p>
+ * <pre>
+ * sum --> product ((PLUS|MINUS) product)*
+ * product --> operand ((TIMES|DIVIDE) operand)*
+ * </pre>
+ * <p>
+ * needs a rule and a {@link NodeFactory} for each level of precedence,
+ * the parser of an {@code OperatorGrammar} climbs through all levels in
+ * one loop, calling nothing but the parser of the operand. Each operator
+ * has its own {@code NodeFactory}, which receives the operator's token
+ * together with the nodes of its operands in input order. Parentheses are
+ * just another kind of operand, referring back to the
+ * {@code OperatorGrammar} through a {@link Recurse}.
+ * </p>
+ * <p>
+ * The operand must not match empty input and must not start with a prefix
+ * operator. A token code may be both a prefix and an infix operator, like
+ * a minus sign, but not both an infix and a postfix operator. After an
+ * operand, an infix or postfix operator is always taken to belong to the
+ * {@code OperatorGrammar}, so the grammar following it should not start
+ * with one of them.
+ * </p>
+ */
+public class OperatorGrammar<N, C extends Enum<C>> extends Grammar<N,C> {
+  // binding powers are doubled internally to make room for associativity
+  private static final int MAXPOWER = Integer.MAX_VALUE/2-1;
+
+  private final Grammar<N,C> operand;
+  private final Map<C,Operator<N>> prefix = new LinkedHashMap<>();
+  private final Map<C,Operator<N>> after = new LinkedHashMap<>();
+
+  public OperatorGrammar(Grammar<N,C> operand) {
+    this.operand = operand;
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * adds the prefix operator {@code code}, for which the {@code nf}
+   * receives the operator's token followed by the node of the operand.
+   * </p>
+   */
+  public OperatorGrammar<N,C> prefix(C code, int power, NodeFactory<N> nf) {
+    return add(prefix, code, new Operator<>(-1, 2*check(power)+1, nf));
+  }
+  /**
+   * <p>
+   * adds the left associative infix operator {@code code}, for which the
+   * {@code nf} receives the left operand, the operator's token and the
+   * right operand.
+   * </p>
+   */
+  public OperatorGrammar<N,C> infixLeft(C code, int power,
+                                        NodeFactory<N> nf) {
+    check(power);
+    return add(after, code, new Operator<>(2*power, 2*power+1, nf));
+  }
+  /**
+   * <p>
+   * adds a right associative infix operator like
+   * {@link #infixLeft infixLeft()}. Of a row of them with the same power,
+   * the rightmost is applied first.
+   * </p>
+   */
+  public OperatorGrammar<N,C> infixRight(C code, int power,
+                                         NodeFactory<N> nf) {
+    check(power);
+    return add(after, code, new Operator<>(2*power, 2*power, nf));
+  }
+  /**
+   * <p>
+   * adds the postfix operator {@code code}, for which the {@code nf}
+   * receives the node of the operand followed by the operator's token.
+   * </p>
+   */
+  public OperatorGrammar<N,C> postfix(C code, int power, NodeFactory<N> nf) {
+    return add(after, code, new Operator<>(2*check(power), -1, nf));
+  }
+  /*+******************************************************************/
+  private static int check(int power) {
+    if( power<0||power>MAXPOWER ) {
+      String msg =
+          String.format("must have 0<=power<=%d, but have power=%d",
+                        MAXPOWER, power);
+      throw new IllegalArgumentException(msg);
+    }
+    return power;
+  }
+  private OperatorGrammar<N,C> add(Map<C,Operator<N>> table, C code,
+                                   Operator<N> op)
+  {
+    if( table.containsKey(code) ) {
+      throw new IllegalArgumentException("operator "+code
+          +" is defined already");
+    }
+    table.put(code, op);
+    return this;
+  }
+  /* +***************************************************************** */
+  @Override
+  protected Iterable<Grammar<N,C>> children() {
+    return Collections.singletonList(operand);
+  }
+  /*+******************************************************************/
+  @Override
+  protected AbstractParser<N,C> buildParser(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    First<N,C> f = first(firstOf);
+    OperatorParser<N,C> p =
+        new OperatorParser<>(f.lookahead(), operand.build(firstOf));
+    for(Map.Entry<C,Operator<N>> e : prefix.entrySet()) {
+      p.addPrefix(e.getKey(), e.getValue().right, e.getValue().nf);
+    }
+    for(Map.Entry<C,Operator<N>> e : after.entrySet()) {
+      Operator<N> op = e.getValue();
+      if( op.right<0 ) {
+        p.addPostfix(e.getKey(), op.left, op.nf);
+      } else {
+        p.addInfix(e.getKey(), op.left, op.right, op.nf);
+      }
+    }
+    return p;
+  }
+  /*+******************************************************************/
+  @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return i==0 ? operand : null;
+  }
+  /*+******************************************************************/
+  @Override
+  protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    First<N,C> f = operand.first(firstOf);
+    if( f.epsilon ) {
+      String msg = String.format("operand %s of %s may be empty", operand,
+                                 this);
+      throw new IllegalArgumentException(msg);
+    }
+    EnumSet<C> firstSet = f.firstSet();
+    for(C code : prefix.keySet()) {
+      if( firstSet.contains(code) ) {
+        throw new LookaheadConflictException(EnumSet.of(code), this, operand);
+      }
+      firstSet.add(code);
+    }
+    return new First<>(firstSet, false);
+  }
+  /*+******************************************************************/
+  @Override
+  void matchPrefix(List<C> tokens, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    // where an operand, maybe after prefix operators, and where an
+    // operator following an operand may start
+    BitSet operands = new BitSet();
+    BitSet operators = new BitSet();
+    operands.set(from);
+    int l = tokens.size();
+    for(int j=from; j<=l; j++) {
+      if( operands.get(j) ) {
+        if( j==l ) {
+          next.addAll(prefix.keySet());
+        } else if( prefix.containsKey(tokens.get(j)) ) {
+          operands.set(j+1);
+        }
+        operand.nextTokens(tokens, j, firstOf, next, operators);
+      }
+      if( operators.get(j) ) {
+        ends.set(j);
+        if( j==l ) {
+          next.addAll(after.keySet());
+        } else if( after.containsKey(tokens.get(j)) ) {
+          (after.get(tokens.get(j)).right<0 ? operators : operands).set(j+1);
+        }
+      }
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  public String _ruleString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("ops(").append(operand);
+    for(C code : prefix.keySet()) sb.append(' ').append(code).append('_');
+    for(Map.Entry<C,Operator<N>> e : after.entrySet()) {
+      sb.append(" _").append(e.getKey());
+      if( e.getValue().right>=0 ) sb.append('_');
+    }
+    return sb.append(')').toString();
+  }
+  /*+******************************************************************/
+  private static final class Operator<N> {
+    final int left, right;
+    final NodeFactory<N> nf;
+    Operator(int left, int right, NodeFactory<N> nf) {
+      this.left = left;
+      this.right = right;
+      this.nf = nf;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package absimpa;
+import java.util.*;
+
+import absimpa.parserimpl.AbstractParser;
+import absimpa.parserimpl.OrderedChoiceParser;
+
+/**
+ * <p>
+ * is a choice that tries its sub grammars in the order they were added
+ * and takes the first one that recognizes the input. In contrast to a
+ * {@link Choice}, the sub grammars may start with the same tokens. If one
+ * of them fails, the parser returns to where the choice started and tries
+ * the next one.
+ * </p>
+ * <p>
+ * To keep the time needed linear in the length of the input, results are
+ * remembered while backtracking. The number of results remembered can be
+ * limited with {@link ParseContext#setMemoLimit}. The
+ * lexer used with the parser must be a {@link MarkableLexer}, and the
+ * parser cannot report to a {@link ParseListener}.
+ * </p>
+ */
+public class OrderedChoice<N,C extends Enum<C>>
+    extends Grammar<N,C>
+{
+  private final List<Grammar<N,C>> children;
+
+  public OrderedChoice(Grammar<N,C> g) {
+    children = new ArrayList<>();
+    children.add(g);
+  }
+  /* +***************************************************************** */
+  public OrderedChoice<N,C> or(Grammar<N,C> g) {
+    children.add(g);
+    return this;
+  }
+  /* +***************************************************************** */
+  protected Iterable<Grammar<N,C>> children() {
+    return Collections.unmodifiableList(children);
+  }
+  /* +***************************************************************** */
+  protected String getDetail() {
+    return "";
+  }
+  /* +***************************************************************** */
+  protected AbstractParser<N,C>
+  buildParser(Map<Grammar<N,C>,First<N,C>> firstOf)
+  {
+    List<AbstractParser<N,C>> childParsers = new ArrayList<>(children.size());
+
+    for(Grammar<N,C> g : children) {
+      childParsers.add(g.build(firstOf));
+    }
+    First<N,C> myFirst = first(firstOf);
+    return new OrderedChoiceParser<>(childParsers, myFirst.lookahead(),
+        myFirst.epsilon);
+  }
+  /* +***************************************************************** */
+  @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return i<children.size() ? children.get(i) : null;
+  }
+  /* +***************************************************************** */
+  @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    for(Grammar<N,C> child : children) {
+      child.nextTokens(prefix, from, firstOf, next, ends);
+    }
+  }
+  /* +***************************************************************** */
+  protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    Grammar<N,C> childGrammar = children.get(0);
+    First<N,C> childFirst = childGrammar.first(firstOf);
+
+    boolean optional = childFirst.epsilon;
+    EnumSet<C> firstSet = childFirst.firstSet();
+    for(int i=1; i<children.size(); i++) {
+      childGrammar = children.get(i);
+      childFirst = childGrammar.first(firstOf);
+      firstSet.addAll(childFirst.lookahead());
+      optional |= childFirst.epsilon;
+    }
+    return new First<> (firstSet, optional);
+  }
+  /* +***************************************************************** */
+  @Override
+  public String _ruleString() {
+    if( children.size()>1 ) {
+      return Util.join(children, "(", " / ", ")");
+    } else {
+      return children.get(0).toString();
+    }
+  }
+}
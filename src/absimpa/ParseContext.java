@@ -0,0 +1,38 @@
+package absimpa;
+
+import absimpa.parserimpl.StackContext;
+
+/**
+ * <p>
+ * holds the scratch state of a parse. Parsers obtained from
+ * {@link Grammar#compile} keep no state of their own while parsing, so one
+ * parser may be used by any number of threads at the same time, as long as
+ * every thread passes its own {@code ParseContext} to
+ * {@link Parser#parse(Lexer, ParseContext)}.
+ * </p>
+ * <p>
+ * A context is not thread safe. It can be reused for one parse after the
+ * other to avoid allocating the stacks anew, but must not be used by two
+ * parses at the same time, not even by a nested parse started from a
+ * {@code NodeFactory}.
+ * </p>
+ */
+public interface ParseContext<N,C extends Enum<C>> {
+  /**
+   * <p>
+   * limits the number of results remembered while parsers compiled from an
+   * {@link OrderedChoice} backtrack. When the limit is reached, the result
+   * used least recently is forgotten. The default is 65536.
+   * </p>
+   *
+   * @throws IllegalArgumentException if {@code limit} is negative
+   */
+  ParseContext<N,C> setMemoLimit(int limit);
+
+  /**
+   * creates a new context for the parsers obtained from a {@link Grammar}.
+   */
+  static <N,C extends Enum<C>> ParseContext<N,C> create() {
+    return new StackContext<>();
+  }
+}
@@ -0,0 +1,36 @@
+package absimpa;
+
+/**
+ * <p>
+ * receives the events of a parse with
+ * {@link Parser#parse(Lexer, ParseListener)}, which builds no result but
+ * reports the input in document order. Because no nodes are collected,
+ * the memory needed does not grow with the length of the input, only with
+ * its nesting.
+ * </p>
+ * <p>
+ * Only parsers with a name, as set with {@link Grammar#setName} or given
+ * to a rule of {@link BNF}, report {@link #enterRule} and
+ * {@link #exitRule}. A rule that matches empty input is not reported at
+ * all. The methods do nothing by default, so only those needed must be
+ * implemented.
+ * </p>
+ *
+ * @param <N> is the type of the leaf nodes created by the lexer
+ * @param <C> is the type of token codes provided by the lexer
+ */
+public interface ParseListener<N,C extends Enum<C>> {
+  /**
+   * is called when the parser for the named rule starts.
+   */
+  default void enterRule(String name) {}
+  /**
+   * is called when the parser for the named rule has recognized its input.
+   */
+  default void exitRule(String name) {}
+  /**
+   * is called for every token consumed, with the leaf the lexer created
+   * for it by {@link Lexer#next}.
+   */
+  default void token(C code, N leaf) {}
+}
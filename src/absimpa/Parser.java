@@ -6,6 +6,10 @@ package absimpa;
  * and constructs result objects. To obtain a parser, use the
  * {@link GrammarBuilder} and {@link Grammar#compile compile} the resulting {@link Grammar}.
  * </p>
+ * <p>
+ * A compiled parser is immutable and can be shared between threads, each
+ * of them parsing with its own {@link Lexer}.
+ * </p>
  * 
  * @param <N> is the type of the objects created by the parser
  * @param <C> is the type of token codes provided by the lexer
@@ -26,4 +30,50 @@ public interface Parser<N,C extends Enum<C>> {
    */
   N parse(Lexer<N,C> lex) throws ParseException;
 
+  /**
+   * <p>
+   * parses like {@link #parse(Lexer)}, but keeps all scratch state of the
+   * parse in the given {@code context}. Parsers obtained from
+   * {@link Grammar#compile} do not change while parsing, so threads sharing
+   * a parser only need a {@code ParseContext} each. Reusing it for the
+   * next parse in the same thread saves some allocation.
+   * </p>
+   * <p>
+   * The default implementation ignores the {@code context}.
+   * </p>
+   *
+   * @throws IllegalStateException if the {@code context} is used by
+   *         another parse at the same time
+   * @throws IllegalArgumentException if the parser was obtained from
+   *         {@link Grammar#compile} and the {@code context} was not
+   *         created by {@link ParseContext#create}
+   */
+  default N parse(Lexer<N,C> lex, ParseContext<N,C> context)
+    throws ParseException
+  {
+    return parse(lex);
+  }
+
+  /**
+   * <p>
+   * parses the input without creating a result. Instead, tokens and named
+   * rules are reported to the {@code listener} as they are recognized. No
+   * {@link NodeFactory} is called.
+   * </p>
+   *
+   * @throws UnsupportedOperationException by the default implementation.
+   *         Parsers obtained from {@link Grammar#compile} implement this
+   *         method.
+   * @throws IllegalArgumentException if the grammar contains an
+   *         {@link OrderedChoice}, before any event is reported
+   * @throws ParseException if the input does not match the grammar. The
+   *         events reported so far describe the input up to this point.
+   */
+  default void parse(Lexer<N,C> lex, ParseListener<N,C> listener)
+    throws ParseException
+  {
+    throw new UnsupportedOperationException("no listener support in "
+        +getClass().getName());
+  }
+
 }
@@ -0,0 +1,807 @@
+package absimpa;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+
+import absimpa.ClassFileWriter.Code;
+import absimpa.ClassFileWriter.Label;
+import absimpa.parserimpl.AbstractParser;
+import absimpa.parserimpl.BytecodeParser;
+
+/**
+ * <p>
+ * writes the Java source of a standalone recursive descent parser for a
+ * {@link Grammar}. This is meant to be run at build time. The generated
+ * class implements {@link Parser} and behaves exactly like the parser
+ * returned by {@link Grammar#compile()}, calling the same
+ * {@link NodeFactory} objects with the same lists of nodes, but it needs
+ * neither the grammar objects nor the lookahead computation at run time.
+ * Every grammar element becomes a method, a {@link Recurse} becomes a
+ * plain method call, a {@link Repeat} a loop and a {@link Choice} a
+ * {@code switch} on the token code's ordinal.
+ * </p>
+ *
+ * <p>
+ * The generated class keeps all scratch state of a parse local to it, so
+ * it accepts any {@link ParseContext} without using it. Since the
+ * grammar is not available to it, it refuses to report to a
+ * {@link ParseListener} with an {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * <p>
+ * The generated class has the type parameters {@code <N,C>} and refers to
+ * token codes only by their ordinal, so it does not depend on the
+ * accessibility of the enumeration. It must be regenerated whenever the
+ * grammar or the order of the token code constants changes.
+ * </p>
+ *
+ * <p>
+ * The node factories cannot be written into source code. The generated
+ * constructor therefore takes the list of factories in the order given by
+ * {@link #getNodeFactories()}. The generated class lists their
+ * {@code toString()} values in its javadoc and in a constant {@code
+ * NODE_FACTORIES} for reference.
+ * </p>
+ *
+ * <p>
+ * Instead of writing the source, {@link #load} creates the class file of
+ * the same parser at run time and returns an instance of it, see
+ * {@link Grammar#compileToBytecode}.
+ * </p>
+ *
+ * @param <N> is the type of the objects created by the generated parser
+ * @param <C> is the type of token codes provided by the lexer
+ */
+public class ParserGenerator<N,C extends Enum<C>> {
+  private static final String BASE = "absimpa/parserimpl/BytecodeParser";
+  private static final String LEXER = "absimpa/Lexer";
+  private static final String LIST = "java/util/List";
+  // the descriptor of the method for a grammar element
+  private static final String METHOD = "(L"+LEXER+";L"+LIST+";)I";
+  // the local variables of such a method
+  private static final int LEX = 1;
+  private static final int STACK = 2;
+  private static final int MARK = 3;
+  private static final int COUNT = 4;
+  private static final int RESULT = 5;
+  // the status values returned by such a method
+  private static final int DONE = 0;
+  private static final int EPSILON = 1;
+  private static final int NOTAPPLICABLE = 2;
+
+  private final Grammar<N,C> start;
+  private final Map<Grammar<N,C>,First<N,C>> firstOf = new HashMap<>();
+
+  // all grammars that need a method, in the order of discovery
+  private final List<Grammar<N,C>> grammars = new ArrayList<>();
+  private final Map<Grammar<N,C>,String> methodNames = new HashMap<>();
+  private final List<NodeFactory<N>> factories = new ArrayList<>();
+  /*+******************************************************************/
+  /**
+   * <p>
+   * prepares source generation for the parser recognizing {@code start}.
+   * </p>
+   *
+   * @throws LeftRecursiveException if the grammar is left recursive
+   * @throws IllegalArgumentException if the grammar contains elements
+   *         other than those provided by this package
+   */
+  public ParserGenerator(Grammar<N,C> start) {
+    this.start = start;
+    collect(start, new HashSet<Grammar<N,C>>());
+    Set<String> used = new HashSet<>();
+    for(Grammar<N,C> g : grammars) {
+      methodNames.put(g, uniqueName(g, used));
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * prepares source generation for the given rule of a {@link BNF}.
+   * </p>
+   *
+   * @throws IllegalStateException if the {@code BNF} has rules without an
+   *         expansion
+   */
+  public ParserGenerator(BNF<N,C> bnf, String rule) {
+    this(bnf.completeGrammar(rule));
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * returns the node factories of the grammar in the order in which the
+   * generated constructor expects them.
+   * </p>
+   */
+  public List<NodeFactory<N>> getNodeFactories() {
+    return Collections.unmodifiableList(factories);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * creates the class file of the parser directly, without going through
+   * Java source, defines it in a class loader of its own and returns an
+   * instance with the node factories of the grammar. The class has the
+   * same methods as the one written by {@link #write}, but extends
+   * {@link BytecodeParser}, which provides the overloads of
+   * {@code parse} taking a {@link ParseContext} or a
+   * {@link ParseListener}.
+   * </p>
+   */
+  public Parser<N,C> load() {
+    AbstractParser<N,C> interpreted = (AbstractParser<N,C>)start.compile();
+    ClassFileWriter cw = new ClassFileWriter("GeneratedParser", BASE);
+    emitConstructor(cw);
+    cw.method(ClassFileWriter.ACC_PROTECTED, "parseRoot", METHOD, 3)
+        .var(ClassFileWriter.ALOAD, 0)
+        .var(ClassFileWriter.ALOAD, 1)
+        .var(ClassFileWriter.ALOAD, 2)
+        .invoke(ClassFileWriter.INVOKESPECIAL, cw.getClassName(),
+                methodOf(start), METHOD)
+        .op(ClassFileWriter.IRETURN)
+        .end();
+    for(Grammar<N,C> g : grammars) {
+      emitMethod(cw, g);
+    }
+    final byte[] bytes = cw.toBytes();
+
+    ClassLoader loader = new ClassLoader(BytecodeParser.class.getClassLoader())
+    {
+      @Override
+      protected Class<?> findClass(String name)
+        throws ClassNotFoundException
+      {
+        if( !name.equals("GeneratedParser") ) {
+          throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+      }
+    };
+    try {
+      @SuppressWarnings("unchecked")
+      Parser<N,C> p = (Parser<N,C>)loader.loadClass("GeneratedParser")
+          .getConstructor(AbstractParser.class, List.class)
+          .newInstance(interpreted, factories);
+      return p;
+    } catch( ClassNotFoundException | NoSuchMethodException
+             | InstantiationException | IllegalAccessException
+             | InvocationTargetException e ) {
+      throw new IllegalStateException("cannot instantiate generated "
+          +"parser", e);
+    }
+  }
+  /*+******************************************************************/
+  private void collect(Grammar<N,C> g, Set<Grammar<N,C>> done) {
+    if( !done.add(g) ) return;
+    if( !(g instanceof TokenGrammar || g instanceof Sequence
+        || g instanceof Choice || g instanceof Repeat
+        || g instanceof Recurse) ) {
+      String msg = String.format("cannot generate source for grammar %s "
+          +"of class %s", g, g.getClass().getName());
+      throw new IllegalArgumentException(msg);
+    }
+    if( g instanceof Choice && ((Choice<N,C>)g).getLookahead()>1 ) {
+      String msg = String.format("cannot generate source for grammar %s "
+          +"looking ahead more than one token", g);
+      throw new IllegalArgumentException(msg);
+    }
+    g.first(firstOf);
+    NodeFactory<N> nf = g.getNodeFactory();
+    if( nf!=null && !factories.contains(nf) ) factories.add(nf);
+    if( needsMethod(g) ) grammars.add(g);
+    for(Grammar<N,C> child : g.children()) {
+      collect(child, done);
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * a {@code Recurse} without a node factory is just an alias for its
+   * child, the rest gets its own method
+   */
+  private boolean needsMethod(Grammar<N,C> g) {
+    return !(g instanceof Recurse) || g.getNodeFactory()!=null;
+  }
+  /*+******************************************************************/
+  private String uniqueName(Grammar<N,C> g, Set<String> used) {
+    String base;
+    if( g.getName()==null ) {
+      base = "parse"+grammars.indexOf(g);
+    } else {
+      StringBuilder sb = new StringBuilder("parse_");
+      for(char ch : g.getName().toCharArray()) {
+        sb.append(Character.isJavaIdentifierPart(ch) ? ch : '_');
+      }
+      base = sb.toString();
+    }
+    String name = base;
+    for(int i=2; !used.add(name); i++) {
+      name = base+"_"+i;
+    }
+    return name;
+  }
+  /*+******************************************************************/
+  private String methodOf(Grammar<N,C> g) {
+    while( !needsMethod(g) ) {
+      g = g.children().iterator().next();
+    }
+    return methodNames.get(g);
+  }
+  /*+******************************************************************/
+  private First<N,C> first(Grammar<N,C> g) {
+    return g.first(firstOf);
+  }
+  /*+******************************************************************/
+  private String factoryField(NodeFactory<N> nf) {
+    return "nf"+factories.indexOf(nf);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * writes the source of the parser class to {@code out}.
+   * </p>
+   *
+   * @param packageName is the package of the generated class, may be
+   *        {@code null} for the default package
+   * @param className is the simple name of the generated class
+   */
+  public void write(String packageName, String className, Appendable out)
+    throws IOException
+  {
+    Src src = new Src(out);
+    src.line("// Generated by %s, do not edit.", getClass().getName());
+    if( packageName!=null ) {
+      src.line("package %s;", packageName);
+    }
+    src.line("");
+    src.line("import java.util.ArrayList;");
+    src.line("import java.util.Arrays;");
+    src.line("import java.util.Collections;");
+    src.line("import java.util.EnumSet;");
+    src.line("import java.util.List;");
+    src.line("");
+    src.line("import absimpa.Lexer;");
+    src.line("import absimpa.NodeFactory;");
+    src.line("import absimpa.ParseContext;");
+    src.line("import absimpa.ParseException;");
+    src.line("import absimpa.ParseListener;");
+    src.line("import absimpa.Parser;");
+    src.line("");
+    src.line("/**");
+    src.line(" * <p>parser for the grammar</p>");
+    src.line(" * <pre>");
+    for(String rule : start.toBNF().split("\n")) {
+      src.line(" * %s", javadocText(rule));
+    }
+    src.line(" * </pre>");
+    src.line(" * <p>The constructor expects the node factories in this order:</p>");
+    src.line(" * <ol start=\"0\">");
+    for(NodeFactory<N> nf : factories) {
+      src.line(" * <li>%s</li>", javadocText(String.valueOf(nf)));
+    }
+    src.line(" * </ol>");
+    src.line(" */");
+    src.line("public final class %s<N,C extends Enum<C>> implements Parser<N,C> {",
+             className);
+    src.indent();
+    src.line("private static final int DONE = 0;");
+    src.line("private static final int EPSILON = 1;");
+    src.line("private static final int NOTAPPLICABLE = 2;");
+    src.line("");
+    src.line("public static final List<String> NODE_FACTORIES =");
+    src.line("    Collections.unmodifiableList(Arrays.asList(%s));",
+             factoryNameList());
+    src.line("");
+    for(NodeFactory<N> nf : factories) {
+      src.line("private final NodeFactory<N> %s;", factoryField(nf));
+    }
+    writeConstructor(src, className);
+    writeParse(src);
+    for(Grammar<N,C> g : grammars) {
+      writeMethod(src, g);
+    }
+    writeHelpers(src);
+    src.outdent();
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private String factoryNameList() {
+    StringBuilder sb = new StringBuilder();
+    String sep = "";
+    for(NodeFactory<N> nf : factories) {
+      sb.append(sep).append(stringLiteral(String.valueOf(nf)));
+      sep = ", ";
+    }
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  private void writeConstructor(Src src, String className)
+    throws IOException
+  {
+    src.line("/*+******************************************************************/");
+    src.line("public %s(List<? extends NodeFactory<N>> factories) {",
+             className);
+    src.indent();
+    src.line("if( factories.size()!=%d ) {", factories.size());
+    src.line("  throw new IllegalArgumentException(\"need %d node factories, but got \"+factories.size());",
+             factories.size());
+    src.line("}");
+    for(int i=0; i<factories.size(); i++) {
+      src.line("this.nf%d = factories.get(%d);", i, i);
+    }
+    src.outdent();
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private void writeParse(Src src) throws IOException {
+    String root = methodOf(start);
+    src.line("/*+******************************************************************/");
+    src.line("@Override");
+    src.line("public N parse(Lexer<N,C> lex) throws ParseException {");
+    src.indent();
+    src.line("List<N> stack = new ArrayList<>();");
+    src.line("int status = %s(lex, stack);", root);
+    src.line("if( status==EPSILON ) return null;");
+    src.line("if( status==NOTAPPLICABLE ) {");
+    src.line("  throw expected(lex, %s);", ordinals(first(start).firstSet()));
+    src.line("}");
+    src.line("if( stack.size()>1 ) {");
+    src.line("  throw new IllegalStateException(\"parse result has more than one node, \"");
+    src.line("                                  +\"likely a forgotten NodeFactory\");");
+    src.line("}");
+    src.line("return stack.isEmpty() ? null : stack.get(0);");
+    src.outdent();
+    src.line("}");
+    src.line("/*+******************************************************************/");
+    src.line("// all scratch state of a parse is local to it, the context is not needed");
+    src.line("@Override");
+    src.line("public N parse(Lexer<N,C> lex, ParseContext<N,C> context) throws ParseException {");
+    src.line("  return parse(lex);");
+    src.line("}");
+    src.line("/*+******************************************************************/");
+    src.line("@Override");
+    src.line("public void parse(Lexer<N,C> lex, ParseListener<N,C> listener) {");
+    src.line("  throw new UnsupportedOperationException(\"a generated parser cannot \"");
+    src.line("      +\"report to a ParseListener, use the one from Grammar.compile()\");");
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private void writeMethod(Src src, Grammar<N,C> g) throws IOException {
+    First<N,C> f = first(g);
+    String notMatching = f.epsilon ? "EPSILON" : "NOTAPPLICABLE";
+    NodeFactory<N> nf = g.getNodeFactory();
+
+    src.line("/*+******************************************************************/");
+    src.line("// %s", commentText(g.getName()==null ? g.ruleString()
+        : g.getName()+" --> "+g.ruleString()));
+    src.line("private int %s(Lexer<N,C> lex, List<N> stack) throws ParseException {",
+             methodNames.get(g));
+    src.indent();
+    if( g instanceof Choice ) {
+      // the dispatch switch doubles as the lookahead check
+      if( nf!=null ) src.line("int mark = stack.size();");
+      writeChoice(src, g, notMatching);
+    } else {
+      writeLookaheadCheck(src, f.firstSet(), notMatching);
+      if( nf!=null ) src.line("int mark = stack.size();");
+      if( g instanceof TokenGrammar ) {
+        src.line("push(stack, lex.next());");
+      } else if( g instanceof Sequence ) {
+        writeSequence(src, g);
+      } else if( g instanceof Repeat ) {
+        writeRepeat(src, (Repeat<N,C>)g);
+      } else {
+        // a Recurse with a node factory
+        src.line("%s(lex, stack);", methodOf(g.children().iterator().next()));
+      }
+    }
+    if( nf!=null ) src.line("reduce(stack, mark, %s);", factoryField(nf));
+    src.line("return DONE;");
+    src.outdent();
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private void writeLookaheadCheck(Src src, EnumSet<C> lookahead,
+                                   String notMatching)
+    throws IOException
+  {
+    if( lookahead.size()==1 ) {
+      C code = lookahead.iterator().next();
+      src.line("if( lex.current().ordinal()!=%d ) return %s; // %s",
+               code.ordinal(), notMatching, code);
+      return;
+    }
+    src.line("switch( lex.current().ordinal() ) {");
+    for(C code : lookahead) {
+      src.line("case %d: // %s", code.ordinal(), code);
+    }
+    src.line("  break;");
+    src.line("default:");
+    src.line("  return %s;", notMatching);
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private void writeChoice(Src src, Grammar<N,C> g, String notMatching)
+    throws IOException
+  {
+    // first child with matching lookahead wins, as in the ChoiceParser
+    Map<Grammar<N,C>,List<C>> casesOf = new LinkedHashMap<>();
+    Set<C> taken = new HashSet<>();
+    for(Grammar<N,C> child : g.children()) {
+      List<C> cases = new ArrayList<>();
+      for(C code : first(child).firstSet()) {
+        if( taken.add(code) ) cases.add(code);
+      }
+      if( !cases.isEmpty() ) casesOf.put(child, cases);
+    }
+
+    src.line("switch( lex.current().ordinal() ) {");
+    for(Map.Entry<Grammar<N,C>,List<C>> e : casesOf.entrySet()) {
+      for(C code : e.getValue()) {
+        src.line("case %d: // %s", code.ordinal(), code);
+      }
+      src.indent();
+      writeChildCall(src, e.getKey());
+      src.line("break;");
+      src.outdent();
+    }
+    src.line("default:");
+    src.line("  return %s;", notMatching);
+    src.line("}");
+  }
+  /*+******************************************************************/
+  /**
+   * writes the call of a child whose lookahead is known to match
+   */
+  private void writeChildCall(Src src, Grammar<N,C> child)
+    throws IOException
+  {
+    if( isPlainToken(child) ) {
+      src.line("push(stack, lex.next());");
+    } else {
+      src.line("%s(lex, stack);", methodOf(child));
+    }
+  }
+  /*+******************************************************************/
+  private void writeSequence(Src src, Grammar<N,C> g) throws IOException {
+    for(Grammar<N,C> child : g.children()) {
+      String expected = ordinals(first(child).firstSet());
+      if( isPlainToken(child) ) {
+        C code = ((TokenGrammar<N,C>)child).getCode();
+        src.line("if( lex.current().ordinal()!=%d ) throw expected(lex, %s); // %s",
+                 code.ordinal(), expected, code);
+        src.line("push(stack, lex.next());");
+      } else {
+        src.line("if( %s(lex, stack)==NOTAPPLICABLE ) throw expected(lex, %s);",
+                 methodOf(child), expected);
+      }
+    }
+  }
+  /*+******************************************************************/
+  private void writeRepeat(Src src, Repeat<N,C> g) throws IOException {
+    Grammar<N,C> child = g.children().iterator().next();
+    int min = g.getMin();
+    String max = g.getMax()==Integer.MAX_VALUE
+        ? "Integer.MAX_VALUE" : Integer.toString(g.getMax());
+    String expected = ordinals(first(child).firstSet());
+
+    src.line("for(int count=0; count<%s; count++) {", max);
+    src.indent();
+    if( isPlainToken(child) ) {
+      C code = ((TokenGrammar<N,C>)child).getCode();
+      src.line("if( lex.current().ordinal()!=%d ) { // %s", code.ordinal(), code);
+      if( min>0 ) src.line("  if( count<%d ) throw expected(lex, %s);", min, expected);
+      src.line("  break;");
+      src.line("}");
+      src.line("push(stack, lex.next());");
+    } else {
+      src.line("int r = %s(lex, stack);", methodOf(child));
+      src.line("if( r==EPSILON ) break;");
+      src.line("if( r==NOTAPPLICABLE ) {");
+      if( min>0 ) src.line("  if( count<%d ) throw expected(lex, %s);", min, expected);
+      src.line("  break;");
+      src.line("}");
+    }
+    src.outdent();
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private void writeHelpers(Src src) throws IOException {
+    src.line("/*+******************************************************************/");
+    src.line("private static <N> void push(List<N> stack, N node) {");
+    src.line("  if( node!=null ) stack.add(node);");
+    src.line("}");
+    src.line("/*+******************************************************************/");
+    src.line("private static <N> void reduce(List<N> stack, int mark, NodeFactory<N> nf) {");
+    src.line("  List<N> children = stack.subList(mark, stack.size());");
+    src.line("  N node = nf.create(Collections.unmodifiableList(children));");
+    src.line("  children.clear();");
+    src.line("  push(stack, node);");
+    src.line("}");
+    src.line("/*+******************************************************************/");
+    src.line("private ParseException expected(Lexer<N,C> lex, int... ordinals) {");
+    src.line("  Class<C> codeClass = lex.current().getDeclaringClass();");
+    src.line("  C[] codes = codeClass.getEnumConstants();");
+    src.line("  EnumSet<C> expected = EnumSet.noneOf(codeClass);");
+    src.line("  for(int i : ordinals) expected.add(codes[i]);");
+    src.line("  return lex.parseException(expected);");
+    src.line("}");
+  }
+  /*+******************************************************************/
+  private void emitConstructor(ClassFileWriter cw) {
+    String descriptor = "(Labsimpa/parserimpl/AbstractParser;L"+LIST+";)V";
+    cw.method(ClassFileWriter.ACC_PUBLIC, "<init>", descriptor, 3)
+        .var(ClassFileWriter.ALOAD, 0)
+        .var(ClassFileWriter.ALOAD, 1)
+        .var(ClassFileWriter.ALOAD, 2)
+        .invoke(ClassFileWriter.INVOKESPECIAL, BASE, "<init>", descriptor)
+        .op(ClassFileWriter.RETURN)
+        .end();
+  }
+  /*+******************************************************************/
+  /**
+   * emits the same code as {@link #writeMethod} writes as source
+   */
+  private void emitMethod(ClassFileWriter cw, Grammar<N,C> g) {
+    First<N,C> f = first(g);
+    int notMatching = f.epsilon ? EPSILON : NOTAPPLICABLE;
+    NodeFactory<N> nf = g.getNodeFactory();
+    Code code = cw.method(ClassFileWriter.ACC_PRIVATE, methodNames.get(g),
+                          METHOD, 6);
+    if( g instanceof Choice ) {
+      if( nf!=null ) emitMark(code);
+      emitChoice(cw, code, g, notMatching);
+    } else {
+      emitLookaheadCheck(code, f.firstSet(), notMatching);
+      if( nf!=null ) emitMark(code);
+      if( g instanceof TokenGrammar ) {
+        emitShift(code);
+      } else if( g instanceof Sequence ) {
+        emitSequence(cw, code, g);
+      } else if( g instanceof Repeat ) {
+        emitRepeat(cw, code, (Repeat<N,C>)g);
+      } else {
+        // a Recurse with a node factory
+        emitCall(cw, code, g.children().iterator().next());
+        code.op(ClassFileWriter.POP);
+      }
+    }
+    if( nf!=null ) {
+      code.var(ClassFileWriter.ALOAD, 0)
+          .var(ClassFileWriter.ALOAD, STACK)
+          .var(ClassFileWriter.ILOAD, MARK)
+          .iconst(factories.indexOf(nf))
+          .invoke(ClassFileWriter.INVOKEVIRTUAL, BASE, "reduce",
+                  "(L"+LIST+";II)V");
+    }
+    code.iconst(DONE).op(ClassFileWriter.IRETURN).end();
+  }
+  /*+******************************************************************/
+  private void emitMark(Code code) {
+    code.var(ClassFileWriter.ALOAD, STACK)
+        .invoke(ClassFileWriter.INVOKEINTERFACE, LIST, "size", "()I")
+        .var(ClassFileWriter.ISTORE, MARK);
+  }
+  /*+******************************************************************/
+  private void emitLookaheadCheck(Code code, EnumSet<C> lookahead,
+                                  int notMatching)
+  {
+    Label ok = new Label();
+    Label fail = new Label();
+    emitCode(code);
+    if( lookahead.size()==1 ) {
+      code.iconst(lookahead.iterator().next().ordinal())
+          .jump(ClassFileWriter.IF_ICMPEQ, ok);
+    } else {
+      int[] keys = ordinalArray(lookahead);
+      Label[] labels = new Label[keys.length];
+      Arrays.fill(labels, ok);
+      code.lookupSwitch(keys, labels, fail);
+    }
+    code.place(fail).iconst(notMatching).op(ClassFileWriter.IRETURN);
+    code.place(ok);
+  }
+  /*+******************************************************************/
+  private void emitChoice(ClassFileWriter cw, Code code, Grammar<N,C> g,
+                          int notMatching)
+  {
+    // first child with matching lookahead wins, as in the ChoiceParser
+    Map<Integer,Grammar<N,C>> childOf = new TreeMap<>();
+    for(Grammar<N,C> child : g.children()) {
+      for(C c : first(child).firstSet()) {
+        if( !childOf.containsKey(c.ordinal()) ) childOf.put(c.ordinal(), child);
+      }
+    }
+    Map<Grammar<N,C>,Label> labelOf = new LinkedHashMap<>();
+    int[] keys = new int[childOf.size()];
+    Label[] labels = new Label[keys.length];
+    int i = 0;
+    for(Map.Entry<Integer,Grammar<N,C>> e : childOf.entrySet()) {
+      keys[i] = e.getKey();
+      labels[i] = labelOf.computeIfAbsent(e.getValue(), c -> new Label());
+      i += 1;
+    }
+    Label dflt = new Label();
+    Label end = new Label();
+    emitCode(code);
+    code.lookupSwitch(keys, labels, dflt);
+    for(Map.Entry<Grammar<N,C>,Label> e : labelOf.entrySet()) {
+      code.place(e.getValue());
+      emitChildCall(cw, code, e.getKey());
+      code.jump(ClassFileWriter.GOTO, end);
+    }
+    code.place(dflt).iconst(notMatching).op(ClassFileWriter.IRETURN);
+    code.place(end);
+  }
+  /*+******************************************************************/
+  private void emitChildCall(ClassFileWriter cw, Code code,
+                             Grammar<N,C> child)
+  {
+    if( isPlainToken(child) ) {
+      emitShift(code);
+    } else {
+      emitCall(cw, code, child);
+      code.op(ClassFileWriter.POP);
+    }
+  }
+  /*+******************************************************************/
+  private void emitSequence(ClassFileWriter cw, Code code, Grammar<N,C> g) {
+    for(Grammar<N,C> child : g.children()) {
+      Label ok = new Label();
+      if( isPlainToken(child) ) {
+        C c = ((TokenGrammar<N,C>)child).getCode();
+        emitCode(code);
+        code.iconst(c.ordinal()).jump(ClassFileWriter.IF_ICMPEQ, ok);
+        emitThrowExpected(code, child);
+        code.place(ok);
+        emitShift(code);
+      } else {
+        emitCall(cw, code, child);
+        code.iconst(NOTAPPLICABLE).jump(ClassFileWriter.IF_ICMPNE, ok);
+        emitThrowExpected(code, child);
+        code.place(ok);
+      }
+    }
+  }
+  /*+******************************************************************/
+  private void emitRepeat(ClassFileWriter cw, Code code, Repeat<N,C> g) {
+    Grammar<N,C> child = g.children().iterator().next();
+    Label top = new Label();
+    Label next = new Label();
+    Label notMatching = new Label();
+    Label end = new Label();
+    code.iconst(0).var(ClassFileWriter.ISTORE, COUNT);
+    code.place(top)
+        .var(ClassFileWriter.ILOAD, COUNT)
+        .iconst(g.getMax())
+        .jump(ClassFileWriter.IF_ICMPGE, end);
+    if( isPlainToken(child) ) {
+      C c = ((TokenGrammar<N,C>)child).getCode();
+      Label match = new Label();
+      emitCode(code);
+      code.iconst(c.ordinal()).jump(ClassFileWriter.IF_ICMPEQ, match);
+      code.jump(ClassFileWriter.GOTO, notMatching);
+      code.place(match);
+      emitShift(code);
+    } else {
+      emitCall(cw, code, child);
+      code.var(ClassFileWriter.ISTORE, RESULT)
+          .var(ClassFileWriter.ILOAD, RESULT)
+          .iconst(EPSILON)
+          .jump(ClassFileWriter.IF_ICMPEQ, end)
+          .var(ClassFileWriter.ILOAD, RESULT)
+          .iconst(NOTAPPLICABLE)
+          .jump(ClassFileWriter.IF_ICMPEQ, notMatching);
+    }
+    code.place(next)
+        .iinc(COUNT, 1)
+        .jump(ClassFileWriter.GOTO, top);
+    code.place(notMatching);
+    if( g.getMin()>0 ) {
+      code.var(ClassFileWriter.ILOAD, COUNT)
+          .iconst(g.getMin())
+          .jump(ClassFileWriter.IF_ICMPGE, end);
+      emitThrowExpected(code, child);
+    }
+    code.place(end);
+  }
+  /*+******************************************************************/
+  private void emitCode(Code code) {
+    code.var(ClassFileWriter.ALOAD, LEX)
+        .invoke(ClassFileWriter.INVOKESTATIC, BASE, "code",
+                "(L"+LEXER+";)I");
+  }
+  /*+******************************************************************/
+  private void emitShift(Code code) {
+    code.var(ClassFileWriter.ALOAD, LEX)
+        .var(ClassFileWriter.ALOAD, STACK)
+        .invoke(ClassFileWriter.INVOKESTATIC, BASE, "shift",
+                "(L"+LEXER+";L"+LIST+";)V");
+  }
+  /*+******************************************************************/
+  private void emitCall(ClassFileWriter cw, Code code, Grammar<N,C> g) {
+    code.var(ClassFileWriter.ALOAD, 0)
+        .var(ClassFileWriter.ALOAD, LEX)
+        .var(ClassFileWriter.ALOAD, STACK)
+        .invoke(ClassFileWriter.INVOKESPECIAL, cw.getClassName(),
+                methodOf(g), METHOD);
+  }
+  /*+******************************************************************/
+  private void emitThrowExpected(Code code, Grammar<N,C> g) {
+    code.var(ClassFileWriter.ALOAD, LEX)
+        .intArray(ordinalArray(first(g).firstSet()))
+        .invoke(ClassFileWriter.INVOKESTATIC, BASE, "expected",
+                "(L"+LEXER+";[I)Labsimpa/ParseException;")
+        .op(ClassFileWriter.ATHROW);
+  }
+  /*+******************************************************************/
+  private static <C extends Enum<C>> int[] ordinalArray(EnumSet<C> codes) {
+    int[] result = new int[codes.size()];
+    int i = 0;
+    for(C code : codes) result[i++] = code.ordinal();
+    return result;
+  }
+  /*+******************************************************************/
+  private boolean isPlainToken(Grammar<N,C> g) {
+    return g instanceof TokenGrammar && g.getNodeFactory()==null;
+  }
+  /*+******************************************************************/
+  private static <C extends Enum<C>> String ordinals(EnumSet<C> codes) {
+    StringBuilder sb = new StringBuilder();
+    String sep = "";
+    for(C code : codes) {
+      sb.append(sep).append(code.ordinal());
+      sep = ", ";
+    }
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  private static String javadocText(String s) {
+    return commentText(s.replace("&", "&amp;").replace("<", "&lt;")
+        .replace(">", "&gt;").replace("*/", "*&#47;").replace("@", "&#64;"));
+  }
+  /*+******************************************************************/
+  /**
+   * prevents the compiler from seeing unicode escapes in comments
+   */
+  private static String commentText(String s) {
+    return s.replace("\\u", "\\\\u");
+  }
+  /*+******************************************************************/
+  private static String stringLiteral(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for(char ch : s.toCharArray()) {
+      switch( ch ) {
+      case '"': sb.append("\\\""); break;
+      case '\\': sb.append("\\\\"); break;
+      case '\n': sb.append("\\n"); break;
+      default:
+        if( ch<' ' ) sb.append(String.format("\\u%04x", (int)ch));
+        else sb.append(ch);
+      }
+    }
+    return sb.append('"').toString();
+  }
+  /*+******************************************************************/
+  /**
+   * appends indented lines of source
+   */
+  private static final class Src {
+    private final Appendable out;
+    private String indent = "";
+    Src(Appendable out) {
+      this.out = out;
+    }
+    void indent() {
+      indent += "  ";
+    }
+    void outdent() {
+      indent = indent.substring(2);
+    }
+    void line(String format, Object... args) throws IOException {
+      String text = args.length==0 ? format : String.format(format, args);
+      if( text.length()>0 ) out.append(indent).append(text);
+      out.append('\n');
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package absimpa;
+
+/**
+ * <p>
+ * is a {@link Lexer} that can show the token codes following the current
+ * one without moving on. A {@link Choice} whose alternatives start with
+ * the same token uses this to look further ahead, but only for the tokens
+ * where the alternatives conflict. With a lexer that is not a
+ * {@code PeekableLexer}, the first of the conflicting alternatives is
+ * taken, as described for {@link Choice}.
+ * </p>
+ */
+public interface PeekableLexer<N,C extends Enum<C>> extends Lexer<N,C> {
+  /**
+   * <p>
+   * returns the code of the token {@code k} tokens after the current one,
+   * {@code peek(0)} being the same as {@link Lexer#current}. At the end of
+   * input, the end of input code is returned for any larger {@code k}.
+   * </p>
+   *
+   * @throws ParseException if the input up to the token cannot be split
+   *         into tokens
+   */
+  C peek(int k) throws ParseException;
+}
@@ -23,30 +23,41 @@ public class Recurse<N,C extends Enum<C>>
     return "";
   }
   /* +***************************************************************** */
+  /**
+   * <p>
+   * creates the parser without its child, which is only built and filled
+   * in by {@link #setRecurse}. Otherwise building a long chain of rules
+   * would recurse through all of them on the Java call stack.
+   * </p>
+   */
   @Override
   protected AbstractParser<N,C> 
   buildParser(Map<Grammar<N,C>,First<N,C>> firstOf)
   {
-    // FIXME: this is very nasty, because I take advantage of the knowledge
-    // about how Grammar orchestrates the tree walking. Need to find a
-    // cleaner solution.
-    First<N,C> f = firstOf.get(this);
-    RecurseParser<N,C> myParser =
-      new RecurseParser<N,C>(f.firstSet(), f.epsilon);
-    f.setParser(myParser);
-    myParser.setChild(child.build(firstOf));
-    return myParser;
+    First<N,C> f = first(firstOf);
+    return new RecurseParser<N,C>(f.lookahead(), f.epsilon);
+  }
+  @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return i==0 ? child : null;
   }
   @Override
   protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf)
   {
-    return child.computeFirst(firstOf);
+    // never share the First of the child, as it also records the parser
+    First<N,C> f = child.first(firstOf);
+    return new First<>(f.lookahead(), f.epsilon);
+  }
+  @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    child.nextTokens(prefix, from, firstOf, next, ends);
   }
   protected void setRecurse(Map<Grammar<N,C>,First<N,C>> firstOf) {
-    AbstractParser<N,C> p = firstOf.get(this).getParser();
-    RecurseParser<N,C> myParser = (RecurseParser<N,C>)p;
-    p = firstOf.get(child).getParser();
-    myParser.setChild(p);
+    RecurseParser<N,C> myParser = (RecurseParser<N,C>)build(firstOf);
+    myParser.setChild(child.build(firstOf));
   }
   /*+******************************************************************/
   public String _ruleString() {
@@ -25,6 +25,13 @@ public class Repeat<N, C extends Enum<C>> extends Grammar<N,C> {
     this.child = arg;
   }
   /* +***************************************************************** */
+  final int getMin() {
+    return min;
+  }
+  final int getMax() {
+    return max;
+  }
+  /* +***************************************************************** */
   @Override
   protected Iterable<Grammar<N,C>> children() {
     return Collections.singletonList(child);
@@ -33,20 +40,61 @@ public class Repeat<N, C extends Enum<C>> extends Grammar<N,C> {
   @Override
   protected AbstractParser<N,C> buildParser(Map<Grammar<N,C>,First<N,C>> firstOf) {
     First<N,C> f = child.first(firstOf);
-    EnumSet<C> childLookahead = f.firstSet();
+    EnumSet<C> childLookahead = f.lookahead();
     AbstractParser<N,C> childParser = child.build(firstOf);
     return new RepeatParser<>(childLookahead,
                               childParser, min==0 || f.epsilon, min, max);
   }
   /*+******************************************************************/
   @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return i==0 ? child : null;
+  }
+  /*+******************************************************************/
+  @Override
   protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    // never share the First of the child, as it also records the parser
     First<N,C> f = child.first(firstOf);
-    boolean mayBeEpsilon = min==0 || f.epsilon;
-    if( mayBeEpsilon != f.epsilon ) {
-      return new First<>(f.firstSet(), mayBeEpsilon);
+    return new First<>(f.lookahead(), min==0 || f.epsilon);
+  }
+  /*+******************************************************************/
+  @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    matchRepeated(child, min, max, prefix, from, firstOf, next, ends);
+  }
+  /**
+   * implements {@link #matchPrefix} for {@code child} repeated
+   * {@code min} to {@code max} times.
+   */
+  static <N,C extends Enum<C>> void
+  matchRepeated(Grammar<N,C> child, int min, int max,
+                List<C> prefix, int from,
+                Map<Grammar<N,C>,First<N,C>> firstOf,
+                EnumSet<C> next, BitSet ends)
+  {
+    // if the child may be empty, it can fill up any missing repetitions
+    int need = child.first(firstOf).epsilon ? 0 : min;
+    if( need==0 ) ends.set(from);
+    BitSet at = new BitSet();
+    at.set(from);
+    BitSet done = new BitSet();
+    for(int count=1; count<=max && !at.isEmpty(); count++) {
+      BitSet reached = new BitSet();
+      for(int j=at.nextSetBit(0); j>=0; j=at.nextSetBit(j+1)) {
+        child.nextTokens(prefix, j, firstOf, next, reached);
+      }
+      if( count>=need ) {
+        // going on from where a count of at least need was seen before
+        // adds nothing new
+        reached.andNot(done);
+        done.or(reached);
+        ends.or(reached);
+      }
+      at = reached;
     }
-    return f;
   }
   /*+******************************************************************/
   public String getDetail() {
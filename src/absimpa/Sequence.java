@@ -47,14 +47,54 @@ public class Sequence<N,C extends Enum<C>>
     List<AbstractParser<N,C>> childParsers =
         new ArrayList<AbstractParser<N,C>>(children.size());
 
-    for(Grammar<N,C> g : children) {
-      childParsers.add(g.build(firstOf));
-    }
+    addParsers(childParsers, firstOf);
     First<N,C> myFirst = first(firstOf);
-    return new SeqParser<N,C>(childParsers, myFirst.firstSet(),
+    return new SeqParser<N,C>(childParsers, myFirst.lookahead(),
         myFirst.epsilon);
   }
   /*+******************************************************************/
+  /**
+   * <p>
+   * adds the parsers of the children, splicing in the children of nested
+   * sequences that can be flattened.
+   * </p>
+   */
+  private void addParsers(List<AbstractParser<N,C>> parsers,
+                          Map<Grammar<N,C>,First<N,C>> firstOf)
+  {
+    for(Grammar<N,C> g : children) {
+      if( g instanceof Sequence && ((Sequence<N,C>)g).flattens(firstOf) ) {
+        ((Sequence<N,C>)g).addParsers(parsers, firstOf);
+      } else {
+        parsers.add(g.build(firstOf));
+      }
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * tells whether the children of this sequence can become part of an
+   * enclosing sequence. This requires that the first child cannot be
+   * empty, as otherwise the missing input would be reported with a
+   * different set of expected tokens.
+   * </p>
+   */
+  private boolean flattens(Map<Grammar<N,C>,First<N,C>> firstOf) {
+    return isPlain() && !children.get(0).first(firstOf).epsilon;
+  }
+  /*+******************************************************************/
+  @Override
+  Grammar<N,C> passThrough() {
+    return isPlain() && children.size()==1 ? children.get(0) : null;
+  }
+  /*+******************************************************************/
+  @Override
+  Grammar<N,C> firstDependency(int i, Map<Grammar<N,C>,First<N,C>> firstOf) {
+    if( i==children.size() ) return null;
+    if( i>0 && !firstOf.get(children.get(i-1)).epsilon ) return null;
+    return children.get(i);
+  }
+  /*+******************************************************************/
   @Override
   protected First<N,C> computeFirst(Map<Grammar<N,C>,First<N,C>> firstOf)
   {
@@ -67,14 +107,31 @@ public class Sequence<N,C extends Enum<C>>
     for(int i=1; i<children.size() && optional; i++) {
       child = children.get(i);
       childFirst = child.first(firstOf);
-      EnumSet<C> otherFirstSet = childFirst.firstSet();
-      firstSet.addAll(otherFirstSet);
+      firstSet.addAll(childFirst.lookahead());
       optional &= childFirst.epsilon;
     }
     return new First<N,C>(firstSet, optional);
   }
   /*+******************************************************************/
   @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    BitSet at = new BitSet();
+    at.set(from);
+    for(Grammar<N,C> child : children) {
+      BitSet reached = new BitSet();
+      for(int j=at.nextSetBit(0); j>=0; j=at.nextSetBit(j+1)) {
+        child.nextTokens(prefix, j, firstOf, next, reached);
+      }
+      at = reached;
+      if( at.isEmpty() ) return;
+    }
+    ends.or(at);
+  }
+  /*+******************************************************************/
+  @Override
   public String _ruleString() {
     if( children.size()>1 ) {
       return Util.join(children, "(", " ", ")");
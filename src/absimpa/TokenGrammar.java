@@ -1,7 +1,9 @@
 package absimpa;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 
 import absimpa.parserimpl.AbstractParser;
@@ -20,6 +22,9 @@ public class TokenGrammar<N,C extends Enum<C>>
   public TokenGrammar(C code) {
     this.code = code;
   }
+  final C getCode() {
+    return code;
+  }
   @Override
   protected Iterable<Grammar<N,C>> children()
   {
@@ -34,6 +39,14 @@ public class TokenGrammar<N,C extends Enum<C>>
     EnumSet<C> firstSet = EnumSet.of(code);
     return new First<>(firstSet, false);
   }
+  @Override
+  void matchPrefix(List<C> prefix, int from,
+                   Map<Grammar<N,C>,First<N,C>> firstOf,
+                   EnumSet<C> next, BitSet ends)
+  {
+    // nextTokens() only calls with prefix.get(from)==code
+    ends.set(from+1);
+  }
   public String getDetail() {
     return code.toString();
   }
@@ -0,0 +1,260 @@
+package absimpa.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * is a {@link SimpleLexer} for input that arrives in chunks, for example
+ * from a non-blocking network connection. Instead of waiting for the
+ * parser to ask for tokens, it hands every token to a {@link TokenSink} as
+ * soon as it is complete. A token is complete if no more input can change
+ * it, meaning that none of the regular expressions tried hit the end of
+ * the input received so far. Tokens may therefore span chunks.
+ * </p>
+ * <p>
+ * The sink reports back pressure by returning {@code false}. The lexer
+ * then keeps the rest of the input until {@link #resume} is called, and
+ * {@link #feed} returns {@code false} to tell the caller that no more
+ * input is wanted for the time being.
+ * </p>
+ * <p>
+ * A {@code ChunkLexer} is typically fed from a callback of the input
+ * source, calling {@link #feed} for every chunk and {@link #close} at the
+ * end of input. After a {@link ParseException}, the lexer must be
+ * started again. The tokens can be passed on to a
+ * {@link absimpa.parserimpl.PushParser}.
+ * </p>
+ * <p>
+ * Chunks of bytes passed to {@link #feed(ByteBuffer)} are decoded with the
+ * charset set by {@link #setCharset}, UTF-8 by default. A character split
+ * between two chunks is kept back until the next chunk completes it.
+ * </p>
+ */
+public class ChunkLexer<N,C extends Enum<C>> extends SimpleLexer<N,C> {
+  private TokenSink<N,C> sink = null;
+  private boolean demand = false;
+  private boolean done = true;
+
+  private Charset charset = StandardCharsets.UTF_8;
+  private CharsetDecoder decoder = null;
+  private final CharBuffer chars = CharBuffer.allocate(4096);
+  // the bytes of a character not yet complete, in write mode
+  private ByteBuffer partial = ByteBuffer.allocate(16);
+  /*+******************************************************************/
+  /**
+   * receives the tokens of a {@link ChunkLexer}.
+   */
+  public interface TokenSink<N,C extends Enum<C>> {
+    /**
+     * <p>
+     * receives the next token. The last token has the end of input code
+     * passed to the constructor of the lexer.
+     * </p>
+     *
+     * @return {@code false} if no more tokens should be delivered until
+     *         {@link ChunkLexer#resume} is called
+     */
+    boolean token(C code, N leaf) throws ParseException;
+  }
+  /*+******************************************************************/
+  public ChunkLexer(C eofCode, LeafFactory<N,C> leafFactory) {
+    super(eofCode, leafFactory);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * sets the charset to decode the chunks passed to
+   * {@link #feed(ByteBuffer)}, which takes effect with the next call to
+   * {@link #start}.
+   * </p>
+   */
+  public ChunkLexer<N,C> setCharset(Charset charset) {
+    this.charset = charset;
+    return this;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * starts to analyze new input, which is then passed to {@link #feed}.
+   * The tokens are handed to the {@code sink}.
+   * </p>
+   */
+  public void start(TokenSink<N,C> sink) throws ParseException {
+    this.sink = sink;
+    this.demand = true;
+    this.done = false;
+    if( decoder==null || !decoder.charset().equals(charset) ) {
+      decoder = charset.newDecoder();
+    } else {
+      decoder.reset();
+    }
+    partial.clear();
+    initChunks();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * appends a chunk of input and hands all tokens now complete to the
+   * sink, unless it asked to wait.
+   * </p>
+   *
+   * @return {@code true} if the sink wants more tokens
+   * @throws ParseException if the input cannot be split into tokens or
+   *         the sink throws it
+   * @throws IllegalStateException if the lexer was not started or the end
+   *         of input was already delivered, or if the last chunk of bytes
+   *         ended within a character
+   */
+  public boolean feed(CharSequence chunk) throws ParseException {
+    checkStarted();
+    if( partial.position()>0 ) {
+      throw new IllegalStateException("previous chunk of bytes ended within "
+          +"a character");
+    }
+    try {
+      append(chunk);
+    } catch( ParseException e ) {
+      done = true;
+      throw e;
+    }
+    return deliver();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * decodes a chunk of bytes and appends it like {@link #feed(CharSequence)}.
+   * If the chunk ends within a character, its first bytes are kept until
+   * the next chunk. The chunk is consumed completely.
+   * </p>
+   *
+   * @return {@code true} if the sink wants more tokens
+   * @throws ParseException if the input cannot be decoded or split into
+   *         tokens, or the sink throws it
+   * @throws IllegalStateException if the lexer was not started or the end
+   *         of input was already delivered
+   */
+  public boolean feed(ByteBuffer chunk) throws ParseException {
+    checkStarted();
+    try {
+      // complete the character left from the previous chunk byte by byte
+      while( partial.position()>0 && chunk.hasRemaining() ) {
+        partial.put(chunk.get());
+        partial.flip();
+        decode(partial, false);
+        partial.compact();
+      }
+      if( partial.position()==0 ) decode(chunk, false);
+      if( chunk.remaining()>partial.remaining() ) {
+        ByteBuffer b = ByteBuffer.allocate(partial.position()
+            +chunk.remaining());
+        partial.flip();
+        partial = b.put(partial);
+      }
+      partial.put(chunk);
+    } catch( ParseException e ) {
+      done = true;
+      throw e;
+    }
+    return deliver();
+  }
+  /*+******************************************************************/
+  private void decode(ByteBuffer bytes, boolean last) throws ParseException {
+    CoderResult r;
+    do {
+      chars.clear();
+      r = decoder.decode(bytes, chars, last);
+      if( r.isError() ) {
+        ParseException e = parseException(Collections.<C>emptySet());
+        e.setMoreInfo("input not valid for charset "+decoder.charset());
+        throw e;
+      }
+      appendChars();
+    } while( r.isOverflow() );
+    if( !last ) return;
+    do {
+      chars.clear();
+      r = decoder.flush(chars);
+      appendChars();
+    } while( r.isOverflow() );
+  }
+  /*+******************************************************************/
+  private void appendChars() throws ParseException {
+    chars.flip();
+    if( chars.hasRemaining() ) append(chars);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * tells the lexer that the input is complete and hands the remaining
+   * tokens, including the end of input, to the sink, unless it asked to
+   * wait.
+   * </p>
+   *
+   * @return {@code true} if the sink wants more tokens
+   * @throws ParseException if the input ends within a character or cannot
+   *         be split into tokens, or the sink throws it
+   */
+  public boolean close() throws ParseException {
+    checkStarted();
+    try {
+      partial.flip();
+      decode(partial, true);
+      partial.clear();
+      closeInput();
+    } catch( ParseException e ) {
+      done = true;
+      throw e;
+    }
+    return deliver();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * hands the complete tokens held back to the sink after it returned
+   * {@code false}.
+   * </p>
+   *
+   * @return {@code true} if the sink wants more tokens
+   */
+  public boolean resume() throws ParseException {
+    if( done ) return demand;
+    demand = true;
+    return deliver();
+  }
+  /*+******************************************************************/
+  /**
+   * tells whether the end of input was handed to the sink.
+   */
+  public boolean isDone() {
+    return done;
+  }
+  /*+******************************************************************/
+  private void checkStarted() {
+    if( done ) {
+      throw new IllegalStateException("lexer not started or input already "
+          +"complete");
+    }
+  }
+  /*+******************************************************************/
+  private boolean deliver() throws ParseException {
+    try {
+      while( demand && !done && !pending() ) {
+        done = atEnd();
+        C code = current();
+        demand = sink.token(code, next());
+      }
+    } catch( ParseException e ) {
+      done = true;
+      throw e;
+    }
+    return demand;
+  }
+}
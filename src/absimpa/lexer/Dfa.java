@@ -0,0 +1,608 @@
+package absimpa.lexer;
+
+import java.util.*;
+
+/**
+ * <p>
+ * is a deterministic finite automaton recognizing the tokens of a
+ * {@link DfaLexer} all at once. It is built from the regular expressions
+ * of the tokens by way of a nondeterministic automaton and the subset
+ * construction. Characters that no regular expression tells apart are
+ * mapped to the same class first, so the transition table has a column
+ * per class of characters instead of one per character.
+ * </p>
+ * <p>
+ * Only the part of the {@link java.util.regex.Pattern} syntax describing
+ * regular languages is understood: characters, escapes, character classes
+ * without nesting or intersection, the predefined classes {@code .},
+ * {@code \d}, {@code \s}, {@code \w} and their complements, groups,
+ * alternatives and the greedy quantifiers. Anchors, back references,
+ * lookaround, flags and lazy or possessive quantifiers are rejected with
+ * an {@code IllegalArgumentException}. Characters are UTF-16 code units.
+ * </p>
+ */
+final class Dfa {
+  /**
+   * the state reached after a character no token may continue with
+   */
+  static final int DEAD = -1;
+
+  private static final int MAXNFA = 100000;
+  private static final int MAXSTATES = 65536;
+  private static final int MAXCHAR = 0xFFFF;
+
+  // the first character of each class of characters, ascending, and the
+  // class of each character below 256 for fast lookup
+  private final int[] bounds;
+  private final int[] latin = new int[256];
+  private final int classes;
+
+  // the transitions, classes entries per state, and for every state the
+  // smallest token index accepted or -1, all tokens accepted and whether
+  // it has a transition at all
+  private int[] table;
+  private int[] accepting;
+  private final List<BitSet> accepts = new ArrayList<>();
+  private boolean[] live;
+  /*+******************************************************************/
+  /**
+   * <p>
+   * builds the automaton for the given regular expressions, as returned
+   * by {@link #parse}, the index of a token being its index in the list.
+   * </p>
+   */
+  Dfa(List<Node> tokens) {
+    List<NState> nfa = new ArrayList<>();
+    NState start = newState(nfa);
+    for(int i=0; i<tokens.size(); i++) {
+      NState[] f = fragment(tokens.get(i), nfa);
+      start.eps.add(f[0]);
+      f[1].accept = i;
+    }
+
+    this.bounds = partition(nfa);
+    this.classes = bounds.length;
+    for(int c=0; c<latin.length; c++) latin[c] = classOf(c);
+    int[][] covered = new int[nfa.size()][];
+    for(NState s : nfa) {
+      if( s.set!=null ) covered[s.id] = cover(s.set);
+    }
+    build(nfa, start, covered);
+  }
+  /*+******************************************************************/
+  int start() {
+    return 0;
+  }
+  /**
+   * returns the state reached from {@code state} with {@code c}, which may
+   * be {@link #DEAD}.
+   */
+  int next(int state, char c) {
+    int cls = c<256 ? latin[c] : classOf(c);
+    return table[state*classes+cls];
+  }
+  /**
+   * returns the smallest index of a token ending in {@code state} or -1
+   */
+  int accepting(int state) {
+    return accepting[state];
+  }
+  /**
+   * tells whether the given token ends in {@code state}
+   */
+  boolean accepts(int state, int token) {
+    return accepts.get(state).get(token);
+  }
+  /**
+   * tells whether any character leads on from {@code state}
+   */
+  boolean live(int state) {
+    return live[state];
+  }
+  /*+******************************************************************/
+  private int classOf(int c) {
+    int i = Arrays.binarySearch(bounds, c);
+    return i>=0 ? i : -i-2;
+  }
+  /*+******************************************************************/
+  // the first characters of the classes, which are those where any set of
+  // characters starts or ends
+  private static int[] partition(List<NState> nfa) {
+    TreeSet<Integer> starts = new TreeSet<>();
+    starts.add(0);
+    for(NState s : nfa) {
+      if( s.set==null ) continue;
+      for(int i=0; i<s.set.length; i+=2) {
+        starts.add(s.set[i]);
+        if( s.set[i+1]<MAXCHAR ) starts.add(s.set[i+1]+1);
+      }
+    }
+    int[] result = new int[starts.size()];
+    int i = 0;
+    for(int c : starts) result[i++] = c;
+    return result;
+  }
+  private int[] cover(int[] set) {
+    int count = 0;
+    for(int i=0; i<set.length; i+=2) {
+      count += classOf(set[i+1])-classOf(set[i])+1;
+    }
+    int[] result = new int[count];
+    int k = 0;
+    for(int i=0; i<set.length; i+=2) {
+      for(int c=classOf(set[i]); c<=classOf(set[i+1]); c++) result[k++] = c;
+    }
+    return result;
+  }
+  /*+******************************************************************/
+  // the subset construction
+  private void build(List<NState> nfa, NState start, int[][] covered) {
+    Map<BitSet,Integer> ids = new HashMap<>();
+    List<BitSet> dstates = new ArrayList<>();
+    BitSet first = new BitSet();
+    first.set(start.id);
+    closure(first, nfa);
+    ids.put(first, 0);
+    dstates.add(first);
+    table = new int[16*classes];
+    BitSet[] moves = new BitSet[classes];
+
+    for(int d=0; d<dstates.size(); d++) {
+      BitSet set = dstates.get(d);
+      Arrays.fill(moves, null);
+      for(int i=set.nextSetBit(0); i>=0; i=set.nextSetBit(i+1)) {
+        NState s = nfa.get(i);
+        if( s.set==null ) continue;
+        for(int c : covered[i]) {
+          if( moves[c]==null ) moves[c] = new BitSet();
+          moves[c].set(s.out.id);
+        }
+      }
+      if( table.length<(d+1)*classes ) {
+        table = Arrays.copyOf(table, 2*table.length);
+      }
+      for(int c=0; c<classes; c++) {
+        int target = DEAD;
+        if( moves[c]!=null ) {
+          closure(moves[c], nfa);
+          Integer id = ids.get(moves[c]);
+          if( id==null ) {
+            if( dstates.size()==MAXSTATES ) {
+              throw new IllegalArgumentException("the regular expressions "
+                  +"need more than "+MAXSTATES+" states");
+            }
+            id = dstates.size();
+            ids.put(moves[c], id);
+            dstates.add(moves[c]);
+          }
+          target = id;
+        }
+        table[d*classes+c] = target;
+      }
+    }
+
+    int count = dstates.size();
+    table = Arrays.copyOf(table, count*classes);
+    accepting = new int[count];
+    live = new boolean[count];
+    for(int d=0; d<count; d++) {
+      BitSet tokens = new BitSet();
+      BitSet set = dstates.get(d);
+      for(int i=set.nextSetBit(0); i>=0; i=set.nextSetBit(i+1)) {
+        int accept = nfa.get(i).accept;
+        if( accept>=0 ) tokens.set(accept);
+      }
+      accepts.add(tokens);
+      accepting[d] = tokens.nextSetBit(0);
+      for(int c=0; c<classes && !live[d]; c++) {
+        live[d] = table[d*classes+c]!=DEAD;
+      }
+    }
+  }
+  /*+******************************************************************/
+  private static void closure(BitSet set, List<NState> nfa) {
+    Deque<NState> todo = new ArrayDeque<>();
+    for(int i=set.nextSetBit(0); i>=0; i=set.nextSetBit(i+1)) {
+      todo.push(nfa.get(i));
+    }
+    while( !todo.isEmpty() ) {
+      for(NState t : todo.pop().eps) {
+        if( set.get(t.id) ) continue;
+        set.set(t.id);
+        todo.push(t);
+      }
+    }
+  }
+  /*+******************************************************************/
+  private static NState newState(List<NState> nfa) {
+    if( nfa.size()==MAXNFA ) {
+      throw new IllegalArgumentException("the regular expressions need "
+          +"more than "+MAXNFA+" states, maybe because of large counted "
+          +"repetitions");
+    }
+    NState s = new NState(nfa.size());
+    nfa.add(s);
+    return s;
+  }
+  /*+******************************************************************/
+  // the start and end state of a piece of automaton for n, the end having
+  // no transitions yet
+  private static NState[] fragment(Node n, List<NState> nfa) {
+    NState start = newState(nfa);
+    NState end = start;
+    switch( n.kind ) {
+    case Node.SET:
+      end = newState(nfa);
+      start.set = n.set;
+      start.out = end;
+      break;
+    case Node.CAT:
+      for(Node kid : n.kids) {
+        NState[] f = fragment(kid, nfa);
+        end.eps.add(f[0]);
+        end = f[1];
+      }
+      break;
+    case Node.ALT:
+      end = newState(nfa);
+      for(Node kid : n.kids) {
+        NState[] f = fragment(kid, nfa);
+        start.eps.add(f[0]);
+        f[1].eps.add(end);
+      }
+      break;
+    default:
+      Node kid = n.kids[0];
+      for(int i=0; i<n.min; i++) {
+        NState[] f = fragment(kid, nfa);
+        end.eps.add(f[0]);
+        end = f[1];
+      }
+      if( n.max<0 ) {
+        NState loop = newState(nfa);
+        NState[] f = fragment(kid, nfa);
+        end.eps.add(loop);
+        loop.eps.add(f[0]);
+        f[1].eps.add(loop);
+        end = loop;
+        break;
+      }
+      NState last = newState(nfa);
+      for(int i=n.min; i<n.max; i++) {
+        NState[] f = fragment(kid, nfa);
+        end.eps.add(last);
+        end.eps.add(f[0]);
+        end = f[1];
+      }
+      end.eps.add(last);
+      end = last;
+    }
+    return new NState[] {start, end};
+  }
+  /*+******************************************************************/
+  private static final class NState {
+    final int id;
+    final List<NState> eps = new ArrayList<>(2);
+    // the characters leading to out, if any
+    int[] set = null;
+    NState out = null;
+    int accept = -1;
+    NState(int id) {
+      this.id = id;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * parses a regular expression into a tree for the constructor.
+   * </p>
+   *
+   * @throws IllegalArgumentException if the regular expression uses
+   *         constructs not supported
+   */
+  static Node parse(String regex) {
+    RegexReader r = new RegexReader(regex);
+    Node n = r.alternation();
+    if( r.more() ) throw r.error("unmatched `)'");
+    return n;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * is a node of a parsed regular expression: a set of characters given
+   * as ascending pairs of first and last character, a concatenation, an
+   * alternative or a repetition with a {@code max} of -1 for no limit.
+   * </p>
+   */
+  static final class Node {
+    static final int SET = 0;
+    static final int CAT = 1;
+    static final int ALT = 2;
+    static final int REP = 3;
+
+    final int kind;
+    final int[] set;
+    final Node[] kids;
+    final int min, max;
+    Node(int[] set) {
+      this(SET, set, null, 0, 0);
+    }
+    Node(int kind, List<Node> kids) {
+      this(kind, null, kids.toArray(new Node[kids.size()]), 0, 0);
+    }
+    Node(Node kid, int min, int max) {
+      this(REP, null, new Node[] {kid}, min, max);
+    }
+    private Node(int kind, int[] set, Node[] kids, int min, int max) {
+      this.kind = kind;
+      this.set = set;
+      this.kids = kids;
+      this.min = min;
+      this.max = max;
+    }
+  }
+  /*+******************************************************************/
+  private static final class RegexReader {
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_',
+                                       'a', 'z'};
+    private static final int[] DOT = complement(new int[] {
+        '\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029});
+
+    private final String text;
+    private int pos = 0;
+    RegexReader(String text) {
+      this.text = text;
+    }
+    /*+****************************************************************/
+    boolean more() {
+      return pos<text.length();
+    }
+    private char peek() {
+      return text.charAt(pos);
+    }
+    IllegalArgumentException error(String what) {
+      return new IllegalArgumentException(what+" at index "+pos
+          +" of regular expression `"+text+"'");
+    }
+    private IllegalArgumentException unsupported(String what) {
+      return error(what+" not supported");
+    }
+    /*+****************************************************************/
+    Node alternation() {
+      List<Node> alternatives = new ArrayList<>();
+      alternatives.add(concatenation());
+      while( more() && peek()=='|' ) {
+        pos += 1;
+        alternatives.add(concatenation());
+      }
+      if( alternatives.size()==1 ) return alternatives.get(0);
+      return new Node(Node.ALT, alternatives);
+    }
+    private Node concatenation() {
+      List<Node> parts = new ArrayList<>();
+      while( more() && peek()!='|' && peek()!=')' ) parts.add(repetition());
+      if( parts.size()==1 ) return parts.get(0);
+      return new Node(Node.CAT, parts);
+    }
+    private Node repetition() {
+      Node n = atom();
+      while( more() ) {
+        int min, max;
+        char c = peek();
+        if( c=='*' ) {
+          min = 0;
+          max = -1;
+        } else if( c=='+' ) {
+          min = 1;
+          max = -1;
+        } else if( c=='?' ) {
+          min = 0;
+          max = 1;
+        } else if( c=='{' ) {
+          pos += 1;
+          min = number();
+          max = min;
+          if( peek()==',' ) {
+            pos += 1;
+            max = peek()=='}' ? -1 : number();
+          }
+          if( peek()!='}' ) throw error("expected `}'");
+        } else {
+          break;
+        }
+        pos += 1;
+        if( more() && (peek()=='?' || peek()=='+') ) {
+          throw unsupported("lazy or possessive quantifier");
+        }
+        n = new Node(n, min, max);
+      }
+      return n;
+    }
+    private int number() {
+      int start = pos;
+      while( more() && Character.isDigit(peek()) ) pos += 1;
+      if( start==pos ) throw error("expected a number");
+      return Integer.parseInt(text.substring(start, pos));
+    }
+    /*+****************************************************************/
+    private Node atom() {
+      char c = text.charAt(pos++);
+      switch( c ) {
+      case '(':
+        if( text.startsWith("?:", pos) ) {
+          pos += 2;
+        } else if( text.startsWith("?<", pos)
+            && !text.startsWith("?<=", pos) && !text.startsWith("?<!", pos) ) {
+          pos = text.indexOf('>', pos)+1;
+        } else if( more() && peek()=='?' ) {
+          throw unsupported("special group");
+        }
+        Node n = alternation();
+        if( !more() ) throw error("expected `)'");
+        pos += 1;
+        return n;
+      case '[':
+        return new Node(charClass());
+      case '.':
+        return new Node(DOT);
+      case '^':
+      case '$':
+        pos -= 1;
+        throw unsupported("anchor");
+      case '\\':
+        if( more() && peek()=='Q' ) return quoted();
+        return new Node(escape());
+      default:
+        return new Node(new int[] {c, c});
+      }
+    }
+    private Node quoted() {
+      pos += 1;
+      int end = text.indexOf("\\E", pos);
+      if( end<0 ) end = text.length();
+      List<Node> chars = new ArrayList<>();
+      for(; pos<end; pos++) {
+        chars.add(new Node(new int[] {peek(), peek()}));
+      }
+      pos = Math.min(text.length(), end+2);
+      return new Node(Node.CAT, chars);
+    }
+    /*+****************************************************************/
+    private int[] charClass() {
+      boolean negate = more() && peek()=='^';
+      if( negate ) pos += 1;
+      int[] set = {};
+      boolean first = true;
+      while( true ) {
+        if( !more() ) throw error("expected `]'");
+        char c = text.charAt(pos++);
+        if( c==']' && !first ) break;
+        first = false;
+        if( c=='[' ) throw unsupported("nested character class");
+        if( c=='&' && more() && peek()=='&' ) {
+          throw unsupported("character class intersection");
+        }
+        int[] item = c=='\\' ? escape() : new int[] {c, c};
+        boolean single = item.length==2 && item[0]==item[1];
+        if( single && pos+1<text.length() && peek()=='-'
+            && text.charAt(pos+1)!=']' ) {
+          pos += 1;
+          char d = text.charAt(pos++);
+          int[] to = d=='\\' ? escape() : new int[] {d, d};
+          if( to.length!=2 || to[0]!=to[1] || to[0]<item[0] ) {
+            throw error("illegal character range");
+          }
+          item = new int[] {item[0], to[0]};
+        } else if( !single && more() && peek()=='-' ) {
+          // like java.util.regex, no range starts at a class like \d
+          pos += 1;
+          item = union(item, new int[] {'-', '-'});
+        }
+        set = union(set, item);
+      }
+      return negate ? complement(set) : set;
+    }
+    /*+****************************************************************/
+    // the characters described by the escape following a backslash
+    private int[] escape() {
+      if( !more() ) throw error("trailing backslash");
+      char c = text.charAt(pos++);
+      switch( c ) {
+      case 'd': return DIGIT;
+      case 'D': return complement(DIGIT);
+      case 's': return SPACE;
+      case 'S': return complement(SPACE);
+      case 'w': return WORD;
+      case 'W': return complement(WORD);
+      case 't': return single('\t');
+      case 'n': return single('\n');
+      case 'r': return single('\r');
+      case 'f': return single('\f');
+      case 'a': return single('\u0007');
+      case 'e': return single('\u001B');
+      case 'c':
+        if( !more() ) throw error("expected control character");
+        return single(text.charAt(pos++)^64);
+      case '0':
+        int octal = 0;
+        for(int i=0; i<3 && more() && peek()>='0' && peek()<='7'
+            && octal*8+peek()-'0'<=0377; i++) {
+          octal = octal*8+text.charAt(pos++)-'0';
+        }
+        return single(octal);
+      case 'x':
+        if( more() && peek()=='{' ) {
+          int end = text.indexOf('}', pos);
+          int code = hex(pos+1, end);
+          pos = end+1;
+          return single(code);
+        }
+        pos += 2;
+        return single(hex(pos-2, pos));
+      case 'u':
+        pos += 4;
+        return single(hex(pos-4, pos));
+      default:
+        if( Character.isLetterOrDigit(c) ) {
+          pos -= 1;
+          throw unsupported("escape \\"+c);
+        }
+        return single(c);
+      }
+    }
+    private int[] single(int c) {
+      if( c>MAXCHAR ) {
+        throw unsupported("character beyond \\uFFFF");
+      }
+      return new int[] {c, c};
+    }
+    private int hex(int from, int to) {
+      try {
+        return Integer.parseInt(text.substring(from, to), 16);
+      } catch( RuntimeException e ) {
+        throw error("bad hexadecimal number");
+      }
+    }
+  }
+  /*+******************************************************************/
+  // sets of characters as ascending pairs of first and last character
+  static int[] union(int[] a, int[] b) {
+    int[] all = Arrays.copyOf(a, a.length+b.length);
+    System.arraycopy(b, 0, all, a.length, b.length);
+    Integer[] order = new Integer[all.length/2];
+    for(int i=0; i<order.length; i++) order[i] = i;
+    Arrays.sort(order, (x, y) -> Integer.compare(all[2*x], all[2*y]));
+    int[] result = new int[all.length];
+    int n = 0;
+    for(int i : order) {
+      int lo = all[2*i];
+      int hi = all[2*i+1];
+      if( n>0 && lo<=result[n-1]+1 ) {
+        result[n-1] = Math.max(result[n-1], hi);
+      } else {
+        result[n++] = lo;
+        result[n++] = hi;
+      }
+    }
+    return Arrays.copyOf(result, n);
+  }
+  static int[] complement(int[] set) {
+    int[] result = new int[set.length+2];
+    int n = 0;
+    int next = 0;
+    for(int i=0; i<set.length; i+=2) {
+      if( set[i]>next ) {
+        result[n++] = next;
+        result[n++] = set[i]-1;
+      }
+      next = set[i+1]+1;
+    }
+    if( next<=MAXCHAR ) {
+      result[n++] = next;
+      result[n++] = MAXCHAR;
+    }
+    return Arrays.copyOf(result, n);
+  }
+}
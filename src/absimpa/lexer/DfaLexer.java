@@ -0,0 +1,106 @@
+package absimpa.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * is a {@link SimpleLexer} that does not try the regular expressions of
+ * the tokens one after another. Instead, they are all compiled into one
+ * deterministic automaton, which finds the token in a single pass over
+ * its characters, no matter how many tokens there are. The automaton is
+ * built when the first token is needed after {@link #addToken} was
+ * called.
+ * </p>
+ * <p>
+ * By default the token found is the same as for the {@code SimpleLexer}:
+ * of the regular expressions matching at the start of the input, the one
+ * added first wins. With {@link #setMaximalMunch}, the longest match wins
+ * instead, and only among those of the same length the one added first.
+ * Then a keyword like <code>if</code> may be added before a general
+ * identifier like <code>[a-z]+</code>, which still recognizes
+ * <code>iffy</code> as an identifier.
+ * </p>
+ * <p>
+ * Other than with {@code java.util.regex}, a regular expression always
+ * takes the longest match possible. This only makes a difference for
+ * alternatives like <code>a|ab</code> where an earlier one matches a
+ * prefix of a later one. The regular expressions must be confined to
+ * what an automaton can do, as described for {@link #addToken}. The
+ * regular expression to skip, if any, is still matched with
+ * {@code java.util.regex}.
+ * </p>
+ */
+public class DfaLexer<N,C extends Enum<C>> extends SimpleLexer<N,C> {
+  private final List<Dfa.Node> regexes = new ArrayList<>();
+  private final List<C> codes = new ArrayList<>();
+  private boolean maximalMunch = false;
+  private Dfa dfa = null;
+  /*+******************************************************************/
+  public DfaLexer(C eofCode, LeafFactory<N,C> leafFactory) {
+    super(eofCode, leafFactory);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * adds a token like {@link SimpleLexer#addToken}. The regular
+   * expression may use characters, escapes, character classes without
+   * nesting or intersection, <code>.</code>, <code>\d</code>,
+   * <code>\s</code>, <code>\w</code> and their complements, groups,
+   * alternatives and greedy quantifiers.
+   * </p>
+   *
+   * @throws IllegalArgumentException if the regular expression uses
+   *         anchors, back references, lookaround, flags, lazy or
+   *         possessive quantifiers or anything else an automaton cannot
+   *         do
+   */
+  @Override
+  public DfaLexer<N,C> addToken(C tc, String regex) {
+    super.addToken(tc, regex);
+    regexes.add(Dfa.parse(regex));
+    codes.add(tc);
+    dfa = null;
+    return this;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * chooses whether the longest match wins or, by default, the token
+   * added first.
+   * </p>
+   */
+  public DfaLexer<N,C> setMaximalMunch(boolean maximalMunch) {
+    this.maximalMunch = maximalMunch;
+    return this;
+  }
+  /*+******************************************************************/
+  @Override
+  int findToken(CharSequence text, int from, boolean open) {
+    if( dfa==null ) dfa = new Dfa(regexes);
+    int state = dfa.start();
+    int token = -1;
+    int end = from;
+    int l = text.length();
+    for(int i=from; ; i++) {
+      int t = dfa.accepting(state);
+      if( t>=0 ) {
+        if( maximalMunch || token<0 || t<token ) {
+          token = t;
+          end = i;
+        } else if( dfa.accepts(state, token) ) {
+          end = i;
+        }
+      }
+      if( i==l ) {
+        if( open && dfa.live(state) ) return MOREINPUT;
+        break;
+      }
+      state = dfa.next(state, text.charAt(i));
+      if( state==Dfa.DEAD ) break;
+    }
+    if( token<0 ) return NOMATCH;
+    createCurrentToken(codes.get(token), end-from);
+    return FOUND;
+  }
+}
@@ -0,0 +1,47 @@
+package absimpa.lexer;
+
+import java.util.Set;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * is what a {@link ReplayLeafFactory} sees of the lexer: the current
+ * token, for which the leaf is to be created, and the means to report
+ * that it does not fit. A {@link SimpleLexer} implements it too, so a
+ * {@link LeafFactory} may restrict itself to these methods.
+ * </p>
+ */
+public interface LeafContext<C extends Enum<C>> {
+  /**
+   * returns the code of the current token.
+   */
+  C current();
+  /**
+   * returns the text of the current token.
+   */
+  String currentText();
+  /**
+   * returns the current token as a {@link Token}.
+   */
+  Token<C> currentToken();
+  /**
+   * <p>
+   * returns the offset of the current token from the start of the input.
+   * </p>
+   *
+   * @throws ArithmeticException if the offset is too large for an
+   *         {@code int}, see {@link #currentLongOffset}
+   */
+  int currentOffset();
+  /**
+   * returns the offset of the current token like {@link #currentOffset},
+   * but also for input of more than 2G characters.
+   */
+  long currentLongOffset();
+  /**
+   * creates a {@link ParseException} describing the current position of
+   * the input, see {@link absimpa.Lexer#parseException}.
+   */
+  ParseException parseException(Set<C> expectedTokens);
+}
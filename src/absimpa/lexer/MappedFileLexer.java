@@ -0,0 +1,135 @@
+package absimpa.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * is a {@link SimpleLexer} that analyzes a UTF-8 encoded file without
+ * reading it into a string first. The file is mapped into memory with
+ * {@link FileChannel#map}, in windows of at most 1G bytes by default, so
+ * that it may be larger than 2G bytes. The bytes are decoded in small
+ * chunks while tokens are needed, and only the text not yet consumed is
+ * kept on the heap.
+ * </p>
+ * <p>
+ * The text of a token is only created when asked for, typically by the
+ * {@link LeafFactory}, so tokens turned into leaves without looking at
+ * their text cost no string. Offsets count characters, not bytes, and
+ * beyond 2G characters are only available from
+ * {@link #currentLongOffset}.
+ * </p>
+ */
+public class MappedFileLexer<N,C extends Enum<C>> extends SimpleLexer<N,C> {
+  // a window overlaps the next by the longest UTF-8 sequence but one, so
+  // that a character started in it also ends in it
+  private static final int OVERLAP = 3;
+  private static final int CHUNK = 8192;
+
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+  private final CharBuffer chars = CharBuffer.allocate(CHUNK);
+  private int windowSize = 1<<30;
+
+  // the windows of the file being analyzed and the one being decoded, null
+  // when all is decoded
+  private MappedByteBuffer[] windows = null;
+  private int window = 0;
+  private ByteBuffer bytes = null;
+  /*+******************************************************************/
+  public MappedFileLexer(C eofCode, LeafFactory<N,C> leafFactory) {
+    super(eofCode, leafFactory);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * sets the number of bytes mapped into memory at once, which takes
+   * effect with the next call to {@link #initAnalysis(Path)}.
+   * </p>
+   *
+   * @throws IllegalArgumentException if {@code bytes} is not positive or
+   *         too large to be mapped
+   */
+  public MappedFileLexer<N,C> setWindowSize(int bytes) {
+    if( bytes<1 || bytes>Integer.MAX_VALUE-OVERLAP ) {
+      throw new IllegalArgumentException("window size "+bytes
+          +" out of range");
+    }
+    this.windowSize = bytes;
+    return this;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * resets the lexer and initializes it to analyze the given file, which
+   * must not change until the analysis is finished. To prepare the first
+   * token, {@link #next} is called internally.
+   * </p>
+   *
+   * @throws ParseException if the file starts with a token that cannot be
+   *         found or is not valid UTF-8
+   */
+  public void initAnalysis(Path file) throws IOException, ParseException {
+    List<MappedByteBuffer> l = new ArrayList<>();
+    try(FileChannel channel = FileChannel.open(file,
+                                               StandardOpenOption.READ)) {
+      long size = channel.size();
+      long start = 0;
+      do {
+        long length = Math.min(size-start, (long)windowSize+OVERLAP);
+        l.add(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+        start += windowSize;
+      } while( start+OVERLAP<size );
+    }
+    windows = l.toArray(new MappedByteBuffer[l.size()]);
+    window = 0;
+    bytes = windows[0];
+    decoder.reset();
+    initChunks();
+  }
+  /*+******************************************************************/
+  @Override
+  boolean fill() throws ParseException {
+    if( bytes==null ) {
+      endInput();
+      return true;
+    }
+    chars.clear();
+    while( bytes!=null && chars.position()==0 ) {
+      boolean last = window==windows.length-1;
+      CoderResult r = decoder.decode(bytes, chars, last);
+      if( r.isError() ) {
+        long offset = (long)window*windowSize+bytes.position();
+        ParseException e = parseException(Collections.<C>emptySet());
+        e.setMoreInfo("malformed UTF-8 at byte offset "+offset);
+        windows = null;
+        bytes = null;
+        throw e;
+      }
+      if( r.isOverflow() ) break;
+      if( !last ) {
+        int pos = bytes.position()-windowSize;
+        bytes = windows[++window];
+        bytes.position(pos);
+      } else {
+        decoder.flush(chars);
+        windows = null;
+        bytes = null;
+      }
+    }
+    addInput(chars.array(), 0, chars.position());
+    return true;
+  }
+}
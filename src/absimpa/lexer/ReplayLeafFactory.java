@@ -0,0 +1,17 @@
+package absimpa.lexer;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * creates the leaves delivered by a {@link ReplayLexer}. It corresponds
+ * to the {@link LeafFactory} of a {@link SimpleLexer}, but sees only the
+ * {@link LeafContext}, since there is no {@code SimpleLexer} to pass
+ * around when tokens are replayed from a {@link TokenBuffer}. A lambda
+ * expression which uses only the methods of {@code LeafContext} works for
+ * both.
+ * </p>
+ */
+public interface ReplayLeafFactory<N, C extends Enum<C>> {
+  N create(LeafContext<C> lex) throws ParseException;
+}
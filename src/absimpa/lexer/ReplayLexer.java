@@ -0,0 +1,197 @@
+package absimpa.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import absimpa.MarkableLexer;
+import absimpa.ParseException;
+import absimpa.PeekableLexer;
+
+/**
+ * <p>
+ * delivers the tokens kept in a {@link TokenBuffer} to a parser. No
+ * object is created per token, except the leaf returned by the
+ * {@link ReplayLeafFactory}, and the text of a token only if the factory
+ * asks for it. Since all tokens are known already, peeking ahead costs
+ * nothing, and marks only keep the leaves delivered since.
+ * </p>
+ */
+public class ReplayLexer<N,C extends Enum<C>>
+    implements MarkableLexer<N,C>, PeekableLexer<N,C>, LeafContext<C>
+{
+  private final ReplayLeafFactory<N,C> leafFactory;
+  private TokenBuffer<C> tokens = null;
+
+  // the current token is tokens[index], which only stays the same at the
+  // end of input while the position moves on
+  private int index = 0;
+  private int position = 0;
+  private int furthest = 0;
+
+  // the leaves delivered since the oldest mark, the one at index i for
+  // position leafBase+i
+  private final List<N> leaves = new ArrayList<>();
+  private int leafBase = 0;
+  private int[] marks = new int[4];
+  private int markCount = 0;
+  /*+******************************************************************/
+  public ReplayLexer(ReplayLeafFactory<N,C> leafFactory) {
+    this.leafFactory = leafFactory;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * resets the lexer to deliver the given tokens, starting with the first
+   * one.
+   * </p>
+   */
+  public void initAnalysis(TokenBuffer<C> tokens) {
+    this.tokens = tokens;
+    index = 0;
+    position = 0;
+    furthest = 0;
+    leaves.clear();
+    leafBase = 0;
+    markCount = 0;
+  }
+  /*+******************************************************************/
+  @Override
+  public C current() {
+    return tokens.code(index);
+  }
+  /*+******************************************************************/
+  @Override
+  public N next() throws ParseException {
+    if( position<furthest ) {
+      N node = leaves.get(position-leafBase);
+      moveOn();
+      forgetLeaves();
+      return node;
+    }
+    N node = leafFactory.create(this);
+    if( markCount>0 ) leaves.add(node);
+    moveOn();
+    furthest = position;
+    return node;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * moves on to the next token like {@link #next}, but without creating a
+   * leaf for the current one, unless it is needed to return to it later.
+   * </p>
+   */
+  public void skip() throws ParseException {
+    if( markCount>0 || position<furthest ) {
+      next();
+      return;
+    }
+    moveOn();
+    furthest = position;
+  }
+  /*+******************************************************************/
+  private void moveOn() {
+    position += 1;
+    if( index<tokens.size()-1 ) index += 1;
+  }
+  /*+******************************************************************/
+  @Override
+  public int position() {
+    return position;
+  }
+  /*+******************************************************************/
+  @Override
+  public int mark() {
+    if( leaves.isEmpty() && position==furthest ) leafBase = position;
+    if( markCount==marks.length ) marks = Arrays.copyOf(marks, 2*markCount);
+    marks[markCount++] = position;
+    return position;
+  }
+  /*+******************************************************************/
+  @Override
+  public void reset(int position) {
+    if( markCount==0 && this.position==furthest || position<leafBase
+        || position>furthest ) {
+      throw new IllegalArgumentException("cannot reset to position "
+          +position);
+    }
+    this.position = position;
+    index = Math.min(position, tokens.size()-1);
+    forgetLeaves();
+  }
+  /*+******************************************************************/
+  @Override
+  public void release(int mark) {
+    for(int i=markCount-1; i>=0; i--) {
+      if( marks[i]!=mark ) continue;
+      System.arraycopy(marks, i+1, marks, i, markCount-i-1);
+      markCount -= 1;
+      break;
+    }
+    if( markCount>0 || leaves.isEmpty() ) return;
+    leaves.subList(0, position-leafBase).clear();
+    leafBase = position;
+    forgetLeaves();
+  }
+  /*+******************************************************************/
+  private void forgetLeaves() {
+    if( markCount==0 && position==furthest ) leaves.clear();
+  }
+  /*+******************************************************************/
+  @Override
+  public C peek(int k) {
+    if( k<0 ) {
+      throw new IllegalArgumentException("cannot peek backwards, k="+k);
+    }
+    return tokens.code((int)Math.min((long)index+k, tokens.size()-1));
+  }
+  /*+******************************************************************/
+  @Override
+  public ParseException parseException(Set<C> expectedTokens) {
+    ParseException p = new ParseException(expectedTokens, current());
+    p.setTokenText(currentText());
+    p.setColumn((int)Math.min(Integer.MAX_VALUE, tokens.start(index)+1));
+    p.setLine(1);
+    return p;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * returns a new {@link Token} for the current token.
+   * </p>
+   */
+  @Override
+  public Token<C> currentToken() {
+    return new Token<>(currentText(), current());
+  }
+  /*+******************************************************************/
+  @Override
+  public String currentText() {
+    return tokens.text(index);
+  }
+  /*+******************************************************************/
+  @Override
+  public int currentOffset() {
+    return Math.toIntExact(tokens.start(index));
+  }
+  /*+******************************************************************/
+  @Override
+  public long currentLongOffset() {
+    return tokens.start(index);
+  }
+  /*+******************************************************************/
+  /**
+   * tells whether the current token is the end of input.
+   */
+  public boolean atEnd() {
+    return index==tokens.size()-1;
+  }
+  /*+******************************************************************/
+  @Override
+  public String toString() {
+    return "ReplayLexer[("+current()+","+currentText()+") at token "
+        +index+" of "+tokens.size()+"]";
+  }
+}
@@ -37,23 +37,82 @@ import absimpa.*;
  * Consequently, input that cannot be matched is then silently discarded.
  * </p>
  * 
+ * <p>
+ * The lexer is a {@link MarkableLexer}. While a mark is set, it keeps the
+ * tokens and leaves delivered so that it can return to them.
+ * </p>
+ * 
+ * <p>
+ * The lexer is also a {@link PeekableLexer}. Tokens peeked at are kept in
+ * a ring buffer until they become current, and their leaves are only
+ * created then.
+ * </p>
+ * 
  * @param <C> is an enumeration and describes the token codes provided to the
  *        parser. In addition, the enum knows how to transform a token code
  *        into an {@code N}
  * @param <N> is the date type returned for a token when the parser has
  *        recognized it and calles {@link #next}
  */
-public class SimpleLexer<N,C extends Enum<C>> implements Lexer<N,C> {
+public class SimpleLexer<N,C extends Enum<C>>
+    implements MarkableLexer<N,C>, PeekableLexer<N,C>, LeafContext<C>
+{
+  /**
+   * results of {@link #findToken}
+   */
+  static final int FOUND = 0;
+  static final int NOMATCH = 1;
+  static final int MOREINPUT = 2;
+
   private final List<TokenInfo<N,C>> tokenInfos = new ArrayList<>();
   private final Token<C> eofToken;
 
   private final LeafFactory<N,C> leafFactory;
   
-  private final StringBuilder restText = new StringBuilder();  
+  // matches nothing in particular, only to create the matcher
+  private static final Pattern NOTHING = Pattern.compile("");
+
+  // The input being analyzed and a matcher on it, which is switched to
+  // the pattern needed. With input arriving in chunks, the input is the
+  // buffer, which is replaced now and then by one without the text already
+  // consumed, base being the offset of its first character. The buffer is
+  // not changed in place, because tokens refer to it for their text.
+  private CharSequence input = "";
+  private StringBuilder buffer = new StringBuilder();
+  private long base = 0;
+  private Matcher matcher = NOTHING.matcher(input);
+
   private Token<C> currentToken = null;
 
   private int line;
   private int column;
+
+  // characters taken from the input so far and where the current token
+  // starts
+  private long consumed;
+  private long tokenStart;
+
+  // The tokens seen since the oldest mark, the entry at index i describing
+  // position seenBase+i and the last one the token at furthest. Empty if no
+  // mark is set and the current token is the furthest one.
+  private final List<Seen<N,C>> seen = new ArrayList<>();
+  private int seenBase = 0;
+  private int position = 0;
+  private int furthest = 0;
+  private int[] marks = new int[4];
+  private int markCount = 0;
+
+  // ring buffer of the tokens lexed behind the furthest one by peek()
+  @SuppressWarnings("unchecked")
+  private Seen<N,C>[] ahead = new Seen[4];
+  private int aheadFirst = 0;
+  private int aheadCount = 0;
+
+  // true while more input may be appended, see ChunkLexer
+  private boolean open = false;
+
+  // receives the tokens instead of currentToken, see tokenize()
+  private TokenBuffer<C> recorder = null;
   
   private Pattern skip = null;
   /*+******************************************************************/
@@ -74,13 +133,62 @@ public class SimpleLexer<N,C extends Enum<C>> implements Lexer<N,C> {
    * <code>text</code>. To prepare the first token, {@link #next} is
    * called internally.
    * </p>
+   * <p>
+   * The text is not copied, so it must not change until the analysis is
+   * finished.
+   * </p>
    */
   public void initAnalysis(CharSequence text) throws ParseException {    
-    restText.setLength(0);
-    restText.append(text);
+    init(text, false);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * prepares the lexer for input that arrives in chunks, which are then
+   * passed to {@link #append} until {@link #closeInput} is called. Until
+   * then, the lexer provides only tokens that more input cannot change.
+   * </p>
+   */
+  void initChunks() throws ParseException {
+    init("", true);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * analyzes all of {@code text}, adding the tokens to {@code tokens}
+   * instead of creating them. The lexer is left at the end of input.
+   * </p>
+   */
+  final void tokenize(CharSequence text, TokenBuffer<C> tokens)
+    throws ParseException
+  {
+    recorder = tokens;
+    try {
+      init(text, false);
+      while( currentToken==null ) scan();
+    } finally {
+      recorder = null;
+    }
+    tokens.add(eofToken.getCode(), tokenStart, 0);
+  }
+  /*+******************************************************************/
+  private void init(CharSequence text, boolean open) throws ParseException {
+    this.open = open;
+    buffer = new StringBuilder();
+    input = open ? buffer : text;
+    base = 0;
+    matcher = NOTHING.matcher(input);
     line = 1;
     column = 1;
+    consumed = 0;
+    tokenStart = 0;
     currentToken = null;
+    seen.clear();
+    position = 0;
+    furthest = 0;
+    markCount = 0;
+    Arrays.fill(ahead, null);
+    aheadCount = 0;
     nextToken();
   }
   /*+******************************************************************/
@@ -136,48 +244,313 @@ public class SimpleLexer<N,C extends Enum<C>> implements Lexer<N,C> {
    */
   @Override
   public N next() throws ParseException {
+    if( position<furthest ) {
+      N node = seen.get(position-seenBase).leaf;
+      position += 1;
+      restore(seen.get(position-seenBase));
+      forgetSeen();
+      return node;
+    }
     N node = leafFactory.create(this);
     //System.out.println("lex created "+node);
+    if( seen.size()>0 ) seen.get(position-seenBase).leaf = node;
     nextToken();
+    position += 1;
+    furthest = position;
+    if( markCount>0 ) {
+      seen.add(new Seen<N,C>(currentToken, column, tokenStart));
+    } else {
+      seen.clear();
+    }
     return node;
   }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * moves on to the next token like {@link #next}, but without creating a
+   * leaf for the current one, unless it is needed to return to it later.
+   * </p>
+   */
+  public void skip() throws ParseException {
+    if( markCount>0 || position<furthest ) {
+      next();
+      return;
+    }
+    nextToken();
+    position += 1;
+    furthest = position;
+  }
+  /*+******************************************************************/
+  @Override
+  public int position() {
+    return position;
+  }
+  /*+******************************************************************/
+  @Override
+  public int mark() {
+    if( seen.isEmpty() ) {
+      seenBase = position;
+      seen.add(new Seen<N,C>(currentToken, column, tokenStart));
+    }
+    if( markCount==marks.length ) marks = Arrays.copyOf(marks, 2*markCount);
+    marks[markCount++] = position;
+    return position;
+  }
+  /*+******************************************************************/
+  @Override
+  public void reset(int position) {
+    if( seen.isEmpty() || position<seenBase || position>furthest ) {
+      throw new IllegalArgumentException("cannot reset to position "
+          +position);
+    }
+    this.position = position;
+    restore(seen.get(position-seenBase));
+    forgetSeen();
+  }
+  /*+******************************************************************/
+  @Override
+  public void release(int mark) {
+    for(int i=markCount-1; i>=0; i--) {
+      if( marks[i]!=mark ) continue;
+      System.arraycopy(marks, i+1, marks, i, markCount-i-1);
+      markCount -= 1;
+      break;
+    }
+    if( markCount>0 || seen.isEmpty() ) return;
+    seen.subList(0, position-seenBase).clear();
+    seenBase = position;
+    forgetSeen();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * returns the code of the token {@code k} tokens after the current one.
+   * With input arriving in chunks, the tokens must be complete already.
+   * </p>
+   *
+   * @throws IllegalStateException if more input is needed to find the
+   *         token
+   */
+  @Override
+  public C peek(int k) throws ParseException {
+    if( k<0 ) {
+      throw new IllegalArgumentException("cannot peek backwards, k="+k);
+    }
+    if( position+k<=furthest ) {
+      if( k==0 ) return current();
+      return seen.get(position+k-seenBase).token.getCode();
+    }
+    int i = position+k-furthest;
+    Seen<N,C> cur = new Seen<N,C>(currentToken, column, tokenStart);
+    try {
+      while( aheadCount<i ) {
+        Seen<N,C> last;
+        if( aheadCount>0 ) {
+          last = ahead(aheadCount-1);
+        } else if( position==furthest ) {
+          last = cur;
+        } else {
+          last = seen.get(furthest-seenBase);
+        }
+        if( last.token==eofToken ) return eofToken.getCode();
+        restore(last);
+        countToken();
+        currentToken = null;
+        scan();
+        if( currentToken==null ) {
+          throw new IllegalStateException("cannot peek at input not yet "
+              +"received");
+        }
+        addAhead(new Seen<N,C>(currentToken, column, tokenStart));
+      }
+    } finally {
+      restore(cur);
+    }
+    return ahead(i-1).token.getCode();
+  }
+  /*+******************************************************************/
+  private Seen<N,C> ahead(int i) {
+    return ahead[(aheadFirst+i)&(ahead.length-1)];
+  }
+  private void addAhead(Seen<N,C> s) {
+    if( aheadCount==ahead.length ) {
+      @SuppressWarnings("unchecked")
+      Seen<N,C>[] tmp = new Seen[2*ahead.length];
+      for(int i=0; i<aheadCount; i++) tmp[i] = ahead(i);
+      ahead = tmp;
+      aheadFirst = 0;
+    }
+    ahead[(aheadFirst+aheadCount)&(ahead.length-1)] = s;
+    aheadCount += 1;
+  }
+  private Seen<N,C> pollAhead() {
+    Seen<N,C> s = ahead[aheadFirst];
+    ahead[aheadFirst] = null;
+    aheadFirst = (aheadFirst+1)&(ahead.length-1);
+    aheadCount -= 1;
+    return s;
+  }
+  /*+******************************************************************/
+  private void restore(Seen<N,C> s) {
+    currentToken = s.token;
+    column = s.column;
+    tokenStart = s.tokenStart;
+  }
+  /*+******************************************************************/
+  private void forgetSeen() {
+    if( markCount==0 && position==furthest ) seen.clear();
+  }
   
+  /*+******************************************************************/
+  /*+******************************************************************/
+  /**
+   * appends a chunk of input, see {@link #initChunks}.
+   */
+  void append(CharSequence chunk) throws ParseException {
+    makeRoom(chunk.length());
+    buffer.append(chunk);
+    if( currentToken==null ) scan();
+  }
+  /*+******************************************************************/
+  /**
+   * tells the lexer that no more input will be appended.
+   */
+  void closeInput() throws ParseException {
+    open = false;
+    if( currentToken==null ) scan();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * is called when more input is needed to find the next token, to add it
+   * with {@link #addInput} or, at the end of input, to call
+   * {@link #endInput}. Subclasses override this to read the input
+   * themselves instead of waiting for it to be appended.
+   * </p>
+   *
+   * @return {@code false} if the input is appended from outside with
+   *         {@link #append}
+   */
+  boolean fill() throws ParseException {
+    return false;
+  }
+  /*+******************************************************************/
+  /**
+   * adds input from within {@link #fill}.
+   */
+  final void addInput(char[] chars, int offset, int length) {
+    makeRoom(length);
+    buffer.append(chars, offset, length);
+  }
+  /*+******************************************************************/
+  /**
+   * tells from within {@link #fill} that no more input will be added.
+   */
+  final void endInput() {
+    open = false;
+  }
+  /*+******************************************************************/
+  private void makeRoom(int more) {
+    int from = (int)(consumed-base);
+    if( from<=buffer.length()/2 ) return;
+    // amortized over the characters consumed since the last time
+    int keep = buffer.length()-from;
+    StringBuilder tmp = new StringBuilder(Math.max(16, 2*(keep+more)));
+    tmp.append(buffer, from, buffer.length());
+    buffer = tmp;
+    input = buffer;
+    base = consumed;
+    matcher.reset(input);
+  }
+  /*+******************************************************************/
+  /**
+   * tells whether the current token is not known yet, because more input
+   * is needed to find it.
+   */
+  boolean pending() {
+    return currentToken==null;
+  }
   /*+******************************************************************/
   private void nextToken() throws ParseException {
+    if( aheadCount>0 ) {
+      restore(pollAhead());
+      return;
+    }
     countToken();
-    while( restText.length()!=0 ) {
-      for(TokenInfo<N,C> ti : tokenInfos) {
-        Matcher m = ti.p.matcher(restText);
-        if( !m.lookingAt() ) continue;
-        createCurrentToken(ti, m);
+    currentToken = null;
+    scan();
+  }
+  /*+******************************************************************/
+  // Leaves currentToken null if more input may still arrive and could
+  // change the next token, but fill() cannot provide it.
+  private void scan() throws ParseException {
+    while( true ) {
+      int from = (int)(consumed-base);
+      if( from<input.length() ) {
+        int r = findToken(input, from, open);
+        if( r==FOUND ) return;
+        if( r==NOMATCH ) {
+          if( skip==null ) {
+            column += 1;
+            consumed += 1;
+            continue;
+          }
+          if( applySkip() ) continue;
+        }
+      } else if( !open ) {
+        tokenStart = consumed;
+        currentToken = eofToken;
         return;
       }
-      if( skip!=null ) {
-        applySkip();
-      } else {
-        restText.deleteCharAt(0);
-        column += 1;
-      }
+      if( !fill() ) return;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * looks for a token at offset {@code from} of {@code text}, which is
+   * the input, and if there is one, makes it the current token with
+   * {@link #createCurrentToken}. The regular expressions are tried in the
+   * order they were added.
+   * </p>
+   *
+   * @param open tells whether more input may still be appended to
+   *        {@code text}
+   * @return {@link #FOUND}, {@link #NOMATCH} or, if {@code open} and more
+   *         input could change the token, {@link #MOREINPUT}
+   */
+  int findToken(CharSequence text, int from, boolean open) {
+    for(TokenInfo<N,C> ti : tokenInfos) {
+      Matcher m = matcher.usePattern(ti.p).region(from, text.length());
+      boolean found = m.lookingAt();
+      if( open && m.hitEnd() ) return MOREINPUT;
+      if( !found ) continue;
+      createCurrentToken(ti.c, m.end()-from);
+      return FOUND;
     }
-    currentToken = eofToken;
+    return NOMATCH;
   }
   /*+******************************************************************/
-  private void applySkip() throws ParseException {
-    Matcher m = skip.matcher(restText);
-    if( !m.lookingAt() ) {
+  private boolean applySkip() throws ParseException {
+    int from = (int)(consumed-base);
+    Matcher m = matcher.usePattern(skip).region(from, input.length());
+    boolean found = m.lookingAt();
+    if( open && m.hitEnd() ) return false;
+    if( !found ) {
       ParseException e = parseException(Collections.<C>emptySet());
       String snippet;
       int SNIPLEN = 20;
-      if( restText.length()>SNIPLEN+3 ) {
-        snippet = restText.substring(0, SNIPLEN)+"...";
+      if( input.length()-from>SNIPLEN+3 ) {
+        snippet = input.subSequence(from, from+SNIPLEN)+"...";
       } else {
-        snippet = restText.toString();
+        snippet = input.subSequence(from, input.length()).toString();
       }
       e.setMoreInfo("cannot then find valid token looking at: "+snippet);
       throw e;
     }
-    column += m.end();
-    restText.delete(0, m.end());    
+    column += m.end()-from;
+    consumed += m.end()-from;
+    return true;
   }
   /* +***************************************************************** */
   /**
@@ -191,19 +564,74 @@ public class SimpleLexer<N,C extends Enum<C>> implements Lexer<N,C> {
     return currentToken.getText();
   }
   /* +***************************************************************** */
+  /**
+   * <p>
+   * returns the offset of the current token from the start of the text
+   * passed to {@link #initAnalysis}.
+   * </p>
+   *
+   * @throws ArithmeticException if the offset is too large for an
+   *         {@code int}, see {@link #currentLongOffset}
+   */
+  public int currentOffset() {
+    return Math.toIntExact(tokenStart);
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * returns the offset of the current token like {@link #currentOffset},
+   * but also for input of more than 2G characters.
+   * </p>
+   */
+  public long currentLongOffset() {
+    return tokenStart;
+  }
+  /* +***************************************************************** */
+  /**
+   * <p>
+   * tells whether the end of input is reached, the current token being the
+   * one with the token code passed to the constructor.
+   * </p>
+   */
+  public boolean atEnd() {
+    return currentToken==eofToken;
+  }
+  /* +***************************************************************** */
   private void countToken() {
     if( currentToken==null ) return;
-    column += currentToken.getText().length();
+    column += currentToken.length();
   }
   /* +***************************************************************** */
-  private void createCurrentToken(TokenInfo<N,C> ti, Matcher match) {
-    String text = match.group();
-    restText.delete(0, match.end());
-    currentToken = new Token<>(text, ti.c);
+  /**
+   * makes the next {@code length} characters of the input the current
+   * token with the given {@code code}.
+   */
+  final void createCurrentToken(C code, int length) {
+    int from = (int)(consumed-base);
+    tokenStart = consumed;
+    consumed += length;
+    if( recorder!=null ) {
+      recorder.add(code, tokenStart, length);
+      column += length;
+      return;
+    }
+    currentToken = new Token<>(code, input, from, length);
     //System.out.printf("%s: creating token %s%n", getClass().getName(),
     //                currentToken);
   }
   /*+******************************************************************/
+  private static final class Seen<N, C extends Enum<C>> {
+    final Token<C> token;
+    final int column;
+    final long tokenStart;
+    N leaf = null;
+    Seen(Token<C> token, int column, long tokenStart) {
+      this.token = token;
+      this.column = column;
+      this.tokenStart = tokenStart;
+    }
+  }
+  /*+******************************************************************/
   private static final class TokenInfo<N, C extends Enum<C>> {
     public final Pattern p;
     public final C c;
@@ -217,10 +645,11 @@ public class SimpleLexer<N,C extends Enum<C>> implements Lexer<N,C> {
     StringBuilder sb = new StringBuilder();
     sb.append("TrivialLexer[(").append(currentToken.getCode())
     .append(",").append(currentText()).append(") \"");
-    if( restText.length()>12 ) {
-      sb.append(restText.substring(0, 9)).append("...");
+    int from = (int)(consumed-base);
+    if( input.length()-from>12 ) {
+      sb.append(input.subSequence(from, from+9)).append("...");
     } else {
-      sb.append(restText);
+      sb.append(input.subSequence(from, input.length()));
     }
     sb.append("\"]");
     return sb.toString();
@@ -0,0 +1,101 @@
+package absimpa.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * is a {@link SimpleLexer} that reads its input from a {@link Reader} or
+ * a {@link ReadableByteChannel} while tokens are needed, for example from
+ * a pipe, a socket or a decompressing stream. The input is read into a
+ * buffer of fixed size, 8192 characters by default, and the text already
+ * consumed is dropped from the text kept. That only grows beyond a few
+ * times the buffer size while a single token is longer, so any amount of
+ * input can be analyzed in constant memory, as far as the lexer is
+ * concerned.
+ * </p>
+ * <p>
+ * Other than the {@link absimpa.Lexer} interface allows, reading may fail.
+ * The {@link IOException} is then thrown as an
+ * {@link UncheckedIOException} from {@link #next} or wherever else the
+ * lexer needs more input. The lexer does not close its input.
+ * </p>
+ */
+public class StreamLexer<N,C extends Enum<C>> extends SimpleLexer<N,C> {
+  private char[] chars = new char[8192];
+  private Reader in = null;
+  /*+******************************************************************/
+  public StreamLexer(C eofCode, LeafFactory<N,C> leafFactory) {
+    super(eofCode, leafFactory);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * sets the number of characters read at once, which takes effect with
+   * the next call to {@code initAnalysis}.
+   * </p>
+   *
+   * @throws IllegalArgumentException if {@code size} is not positive
+   */
+  public StreamLexer<N,C> setBufferSize(int size) {
+    if( size<1 ) {
+      throw new IllegalArgumentException("buffer size "+size
+          +" out of range");
+    }
+    chars = new char[size];
+    return this;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * resets the lexer and initializes it to analyze what is read from
+   * {@code in}. To prepare the first token, {@link #next} is called
+   * internally.
+   * </p>
+   */
+  public void initAnalysis(Reader in) throws ParseException {
+    this.in = in;
+    initChunks();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * resets the lexer and initializes it to analyze the bytes read from
+   * {@code in}, decoded with the given {@code charset}.
+   * </p>
+   */
+  public void initAnalysis(ReadableByteChannel in, Charset charset)
+    throws ParseException
+  {
+    initAnalysis(Channels.newReader(in, charset.newDecoder(), -1));
+  }
+  /*+******************************************************************/
+  @Override
+  boolean fill() {
+    if( in==null ) {
+      endInput();
+      return true;
+    }
+    int n;
+    try {
+      do {
+        n = in.read(chars, 0, chars.length);
+      } while( n==0 );
+    } catch( IOException e ) {
+      throw new UncheckedIOException(e);
+    }
+    if( n<0 ) {
+      in = null;
+      endInput();
+    } else {
+      addInput(chars, 0, n);
+    }
+    return true;
+  }
+}
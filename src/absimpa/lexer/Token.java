@@ -5,24 +5,56 @@ package absimpa.lexer;
  * provides a typical token as a pair of the token text and its type from an
  * enumeration <code>C</code>.
  * </p>
+ * <p>
+ * A token created by a {@link SimpleLexer} refers to the input it was
+ * found in and creates its text only when first asked for it.
+ * </p>
  */
 public final class Token<C extends Enum<C>> {
-  private final String text;
+  private String text;
   private final C c;
 
+  // where the text is found until it is created
+  private CharSequence source = null;
+  private final int start;
+  private final int length;
+
   public Token(String text, C c) {
     this.text = text;
     this.c = c;
+    this.start = 0;
+    this.length = text.length();
+  }
+  /**
+   * creates a token with the text at {@code start} of {@code source},
+   * which must not change anymore.
+   */
+  Token(C c, CharSequence source, int start, int length) {
+    this.text = null;
+    this.c = c;
+    this.source = source;
+    this.start = start;
+    this.length = length;
   }
   public C getCode() {
    return c;
   }
 
   public String getText() {
+    if( text==null ) {
+      text = source.subSequence(start, start+length).toString();
+      source = null;
+    }
     return text;
   }
+  /**
+   * returns the length of the text without creating it.
+   */
+  int length() {
+    return length;
+  }
   public String toString() {
-    return String.format("%s(\"%s\")", c, text);
+    return String.format("%s(\"%s\")", c, getText());
   }
   
-}
\ No newline at end of file
+}
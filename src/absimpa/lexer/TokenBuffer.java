@@ -0,0 +1,90 @@
+package absimpa.lexer;
+
+import java.util.Arrays;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * keeps all tokens of a text, as found by a {@link SimpleLexer}, without
+ * creating an object per token. The code, offset and length of the tokens
+ * are stored in arrays, and the text of a token is only created when
+ * asked for. The last token is the end of input. The tokens are delivered
+ * to a parser by a {@link ReplayLexer}, as often as needed.
+ * </p>
+ */
+public final class TokenBuffer<C extends Enum<C>> {
+  private final CharSequence text;
+  private C[] values = null;
+  private int[] codes = new int[64];
+  private long[] starts = new long[64];
+  private int[] lengths = new int[64];
+  private int size = 0;
+  /*+******************************************************************/
+  /**
+   * <p>
+   * splits {@code text} into tokens with the given {@code lexer}, which
+   * is then left at the end of input. The text is not copied, so it must
+   * not change as long as the text of tokens may be needed.
+   * </p>
+   *
+   * @throws ParseException if the text cannot be split into tokens
+   */
+  public TokenBuffer(SimpleLexer<?,C> lexer, CharSequence text)
+    throws ParseException
+  {
+    this.text = text;
+    lexer.tokenize(text, this);
+  }
+  /*+******************************************************************/
+  void add(C code, long start, int length) {
+    if( values==null ) values = code.getDeclaringClass().getEnumConstants();
+    if( size==codes.length ) {
+      codes = Arrays.copyOf(codes, 2*size);
+      starts = Arrays.copyOf(starts, 2*size);
+      lengths = Arrays.copyOf(lengths, 2*size);
+    }
+    codes[size] = code.ordinal();
+    starts[size] = start;
+    lengths[size] = length;
+    size += 1;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the number of tokens, including the end of input.
+   */
+  public int size() {
+    return size;
+  }
+  /*+******************************************************************/
+  public C code(int i) {
+    return values[codes[check(i)]];
+  }
+  /*+******************************************************************/
+  /**
+   * returns the offset of token {@code i} in the text.
+   */
+  public long start(int i) {
+    return starts[check(i)];
+  }
+  /*+******************************************************************/
+  public int length(int i) {
+    return lengths[check(i)];
+  }
+  /*+******************************************************************/
+  /**
+   * creates the text of token {@code i}.
+   */
+  public String text(int i) {
+    // an offset into the text, which is a CharSequence, fits an int
+    int start = (int)starts[check(i)];
+    return text.subSequence(start, start+lengths[i]).toString();
+  }
+  /*+******************************************************************/
+  private int check(int i) {
+    if( i<0 || i>=size ) {
+      throw new IndexOutOfBoundsException("token "+i+" of "+size);
+    }
+    return i;
+  }
+}
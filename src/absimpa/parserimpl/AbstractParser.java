@@ -1,63 +1,435 @@
 package absimpa.parserimpl;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import absimpa.*;
 
 public abstract class AbstractParser<N,C extends Enum<C>>
     implements Parser<N,C>
 {
+  /**
+   * result of {@link #parseInternal} if the parser recognized input and
+   * pushed its result, if any, onto the {@link NodeStack}
+   */
+  static final int DONE = 0;
+  /**
+   * result of {@link #parseInternal} if the lookahead does not match but
+   * the parser may reduce to the empty input
+   */
+  static final int EPSILON = 1;
+  /**
+   * result of {@link #parseInternal} if the lookahead does not match and
+   * the parser cannot reduce to epsilon
+   */
+  static final int NOTAPPLICABLE = 2;
+  /**
+   * passed to {@link #step} if no child result is to be reported
+   */
+  static final int NONE = -1;
+
+  /**
+   * result of {@link #step} if the child in {@link Frame#call} is to be run
+   */
+  static final int CALL = 0;
+  /**
+   * result of {@link #step} if the parser wants to be stepped again
+   */
+  static final int CONTINUE = 1;
+  /**
+   * result of {@link #step} if the parser has recognized its input
+   */
+  static final int FINISH = 2;
+  /**
+   * passed to {@link #step} of a parser that {@link #catches} if the child
+   * called threw the exception in {@link Frame#thrown}
+   */
+  static final int FAILED = 3;
+
   protected String name = null;
-  protected final EnumSet<C> lookahead;
   protected final boolean mayBeEpsilon;
   private NodeFactory<N> nodeFactory;
-  
+
+  // set once compiling is finished, after which the parser never changes
+  private boolean frozen = false;
+  // true if parseInternal need not report to the NodeStack, only known
+  // once frozen
+  private boolean direct = false;
+  // what can be reached from this parser, set by freezeAll
+  private static final int BACKTRACKS = 1;
+  private static final int PEEKS = 2;
+  private int reaches = 0;
+
+  // The lookahead as a bit mask over the ordinals of the token codes.
+  // Ordinals from 64 upwards are kept in moreLookahead, which is empty for
+  // enumerations with no more than 64 constants.
+  private final long lookahead;
+  private final long[] moreLookahead;
+
+  // an empty set of the right type to build expected token sets from
+  private final EnumSet<C> noCodes;
   /*+******************************************************************/
   AbstractParser(EnumSet<C> lookahead, boolean mayBeEpsilon) {
-    this.lookahead = lookahead;
     this.mayBeEpsilon = mayBeEpsilon;
     this.nodeFactory = null;
+
+    int maxOrdinal = -1;
+    for(C code : lookahead) {
+      maxOrdinal = Math.max(maxOrdinal, code.ordinal());
+    }
+    long bits = 0;
+    long[] more = new long[Math.max(0, maxOrdinal/64)];
+    for(C code : lookahead) {
+      int i = code.ordinal();
+      if( i<64 ) {
+        bits |= 1L<<i;
+      } else {
+        more[i/64-1] |= 1L<<i;
+      }
+    }
+    this.lookahead = bits;
+    this.moreLookahead = more;
+    this.noCodes = EnumSet.copyOf(lookahead);
+    this.noCodes.clear();
   }
   /*+******************************************************************/
-  public void setName(String name) { this.name = name; }
+  public void setName(String name) {
+    checkMutable();
+    this.name = name;
+  }
   /*+******************************************************************/
   public AbstractParser<N,C> setNodeFactory(NodeFactory<N> nf) {
+    checkMutable();
     this.nodeFactory = nf;
     return this;
   }
   /*+******************************************************************/
+  /**
+   * <p>
+   * prevents any further change of the parser. This is called by
+   * {@link Grammar#compile} for every parser it creates, so that a compiled
+   * parser can be shared between threads.
+   * </p>
+   */
+  public final void freeze() {
+    frozen = true;
+    direct = nodeFactory==null && name==null && !memoized();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * freezes all the given {@code parsers}, which must be closed under
+   * {@link #children}, and records for each whether it can reach an
+   * {@link OrderedChoiceParser} or a {@link ChoiceParser} with decisions
+   * on more than the current token. This takes time linear in the size of
+   * the graph.
+   * </p>
+   */
+  public static <N,C extends Enum<C>> void
+  freezeAll(Collection<? extends AbstractParser<N,C>> parsers)
+  {
+    Map<AbstractParser<N,C>,List<AbstractParser<N,C>>> callers =
+        new IdentityHashMap<>();
+    Deque<AbstractParser<N,C>> todo = new ArrayDeque<>();
+    for(AbstractParser<N,C> p : parsers) {
+      for(AbstractParser<N,C> child : p.children()) {
+        if( child==null ) continue;
+        callers.computeIfAbsent(child, c -> new ArrayList<>()).add(p);
+      }
+      if( p instanceof OrderedChoiceParser ) p.reaches |= BACKTRACKS;
+      if( p instanceof ChoiceParser && ((ChoiceParser<N,C>)p).peeks() ) {
+        p.reaches |= PEEKS;
+      }
+      if( p.reaches!=0 ) todo.push(p);
+    }
+    // every parser is pushed again at most once per bit
+    while( !todo.isEmpty() ) {
+      AbstractParser<N,C> child = todo.pop();
+      List<AbstractParser<N,C>> l = callers.get(child);
+      if( l==null ) continue;
+      for(AbstractParser<N,C> p : l) {
+        if( (p.reaches|child.reaches)==p.reaches ) continue;
+        p.reaches |= child.reaches;
+        todo.push(p);
+      }
+    }
+    for(AbstractParser<N,C> p : parsers) p.freeze();
+  }
+  /*+******************************************************************/
+  /**
+   * @throws IllegalArgumentException if the parser contains an
+   *         {@link OrderedChoiceParser}, which cannot report to a
+   *         {@link ParseListener}
+   */
+  final void checkListenable() {
+    if( (reaches&BACKTRACKS)!=0 ) {
+      throw new IllegalArgumentException("parser "+getName()+" contains "
+          +"an OrderedChoice and cannot report to a ParseListener");
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * @throws IllegalArgumentException if the parser contains an
+   *         {@link OrderedChoiceParser} or a {@link ChoiceParser} that
+   *         peeks at more than the current token, neither of which can
+   *         work with tokens pushed one by one
+   */
+  final void checkPushable() {
+    if( (reaches&BACKTRACKS)!=0 ) {
+      throw new IllegalArgumentException("parser "+getName()+" contains "
+          +"an OrderedChoice and cannot be run by a PushParser");
+    }
+    if( (reaches&PEEKS)!=0 ) {
+      throw new IllegalArgumentException("parser "+getName()+" contains "
+          +"a Choice deciding on more than one token and cannot be run by "
+          +"a PushParser");
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * @throws IllegalStateException if the parser is frozen
+   */
+  protected final void checkMutable() {
+    if( frozen ) {
+      throw new IllegalStateException("parser "+getName()
+          +" is compiled and cannot be changed");
+    }
+  }
+  /*+******************************************************************/
   @Override
   public N parse(Lexer<N,C> lex) throws ParseException {
-    ParseResult<N> result = parseInternal(lex);
-    if( result.isEpsilon() ) return null;
-    if( result.notApplicable() ) {
-      throw lex.parseException(lookahead);
+    return parse(lex, new StackContext<N,C>());
+  }
+  /*+******************************************************************/
+  @Override
+  public N parse(Lexer<N,C> lex, ParseContext<N,C> context)
+    throws ParseException
+  {
+    StackContext<N,C> c = StackContext.of(context);
+    c.begin();
+    try {
+      int status = parseInternal(lex, c.stack);
+      return result(status, lex, c.stack);
+    } finally {
+      c.end();
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  public void parse(Lexer<N,C> lex, ParseListener<N,C> listener)
+    throws ParseException
+  {
+    checkListenable();
+    EventStack<N,C> stack = new EventStack<>(listener);
+    int status = parseInternal(lex, stack);
+    result(status, lex, stack);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * turns the status and the nodes left over from parsing with this parser
+   * at the top into the final result.
+   * </p>
+   */
+  final N result(int status, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    if( status==EPSILON ) return null;
+    if( status==NOTAPPLICABLE ) {
+      throw lex.parseException(getLookahead());
+    }
+    if( stack.size()>1 ) {
+      String msg =
+          "parse result has more than one node, likely a forgotten "
+              +"NodeFactory";
+      throw new IllegalStateException(msg);
+    }
+    if( stack.size()==0 ) {
+      return null;
+    }
+    return stack.get(0);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * returns the token code this parser recognizes, if it is a
+   * {@link TokenParser} without a {@code NodeFactory} or name, otherwise
+   * {@code null}. Parent parsers use this to match such children inline instead
+   * of calling {@link #parseInternal}.
+   * </p>
+   */
+  C plainTokenCode() {
+    return null;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * tells whether the results of this parser are to be remembered while
+   * backtracking, even without a name or {@code NodeFactory}. Parsers
+   * through which recursion or backtracking passes must say yes, to keep
+   * backtracking linear in time.
+   * </p>
+   */
+  boolean memoized() {
+    return false;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * tells whether the parser wants to handle the failure of the child it
+   * called from {@link #step}, in which case {@code step} is called with
+   * {@link #FAILED}.
+   * </p>
+   */
+  boolean catches(Frame<N,C> f) {
+    return false;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * is called for a parser run by {@link #step} if its frame is dropped
+   * without being finished and without the chance to {@link #catches
+   * catch} the exception, to release what the parser holds outside of the
+   * frame.
+   * </p>
+   */
+  void abandon(Frame<N,C> f, Lexer<N,C> lex, NodeStack<N,C> stack) {
+    // nothing held by default
+  }
+  final boolean hasNodeFactory() {
+    return nodeFactory!=null;
+  }
+  final NodeFactory<N> getNodeFactory() {
+    return nodeFactory;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the parsers this parser calls, in order.
+   */
+  List<AbstractParser<N,C>> children() {
+    return Collections.emptyList();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * creates a new set of the token codes in the lookahead. This is only
+   * needed to report errors, so it is not done in advance.
+   * </p>
+   */
+  final EnumSet<C> getLookahead() {
+    EnumSet<C> result = noCodes.clone();
+    for(C code : EnumSet.complementOf(noCodes)) {
+      if( inLookahead(code.ordinal()) ) result.add(code);
     }
-    return result.getNode();
+    return result;
   }
   /*+******************************************************************/
-  EnumSet<C> getLookahead() {
-    return EnumSet.copyOf(lookahead);
+  /**
+   * tests whether the token code with the given ordinal is in the
+   * lookahead.
+   */
+  final boolean inLookahead(int ordinal) {
+    if( ordinal<64 ) {
+      return (lookahead>>>ordinal & 1L)!=0;
+    }
+    int word = ordinal/64-1;
+    return word<moreLookahead.length && (moreLookahead[word]>>>ordinal & 1L)!=0;
   }
   /*+******************************************************************/
-  final ParseResult<N> parseInternal (Lexer<N,C> lex) throws ParseException {
-    if( !lookahead.contains(lex.current()) ) {
+  /**
+   * <p>
+   * parses the input if the lookahead matches, leaving the result on the
+   * {@code stack}.
+   * </p>
+   * 
+   * @return one of {@link #DONE}, {@link #EPSILON} or
+   *         {@link #NOTAPPLICABLE}. Only for {@code DONE} was anything
+   *         pushed onto the stack.
+   */
+  final int parseInternal(Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    if( !inLookahead(lex.current().ordinal()) ) {
       if( mayBeEpsilon ) {
-        return ParseResult.ISEPSILON();
+        return EPSILON;
       }
-      return ParseResult.NOTAPPLICABLE();
+      return NOTAPPLICABLE;
     }
     
-    List<N> nodes = doParse(lex);
-    
-    if( nodeFactory==null ) {
-      return new ParseResult<>(nodes);
-    } 
-    return new ParseResult<>(nodeFactory.create(nodes));
+    if( direct ) {
+      doParse(lex, stack);
+      return DONE;
+    }
+    int mark = stack.enter(this);
+    if( mark==NodeStack.REUSED ) return DONE;
+    try {
+      doParse(lex, stack);
+    } catch( ParseException e ) {
+      stack.fail(this, mark, e);
+      throw e;
+    }
+    stack.exit(this, mark);
+    return DONE;
   }
   /*+******************************************************************/
-  abstract List<N> doParse(Lexer<N,C> lex)
+  /**
+   * <p>
+   * tests whether the lookahead matches the current token, returning
+   * {@link #DONE} if it does.
+   * </p>
+   */
+  final int applicable(C current) {
+    if( inLookahead(current.ordinal()) ) return DONE;
+    return mayBeEpsilon ? EPSILON : NOTAPPLICABLE;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * replaces the nodes on the stack from {@code mark} upwards by what the
+   * {@code NodeFactory} makes of them, if there is one.
+   * </p>
+   */
+  final void reduce(NodeStack<N,C> stack, int mark) {
+    if( nodeFactory==null ) return;
+    N node = nodeFactory.create(stack.view(mark));
+    stack.truncate(mark);
+    stack.push(node);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * parses the input, pushing the nodes recognized onto the {@code stack}.
+   * This is only called if the lookahead matches.
+   * </p>
+   */
+  abstract void doParse(Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException;
+  /*+******************************************************************/
+  /**
+   * <p>
+   * does the work of {@link #doParse} piecemeal for the
+   * {@link NonRecursiveParser}. Instead of calling a child, the parser
+   * stores it in {@link Frame#call} and returns {@link #CALL}. Once the
+   * child is done, {@code step} is called again with the child's status,
+   * which is {@link #NONE} on the first call and after {@link #CONTINUE}.
+   * </p>
+   * <p>
+   * A step consumes at most one token with {@link Lexer#next} and does not
+   * look at the token following it. It looks at the current token before
+   * changing {@code f}.
+   * </p>
+   *
+   * @return one of {@link #CALL}, {@link #CONTINUE} or {@link #FINISH}
+   */
+  abstract int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex,
+                    NodeStack<N,C> stack)
     throws ParseException;
   /*+******************************************************************/
   private String shortClassname() {
@@ -66,6 +438,14 @@ public abstract class AbstractParser<N,C extends Enum<C>>
     if( p<0 ) return className;
     return className.substring(p+1, className.length());
   }
+  /*+******************************************************************/
+  /**
+   * returns the name reported to a {@link ParseListener}, which is
+   * {@code null} for parsers that are not to be reported.
+   */
+  String ruleName() {
+    return name;
+  }
   /* +***************************************************************** */
   String getName() {
     if( name==null ) {
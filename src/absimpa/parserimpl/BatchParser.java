@@ -0,0 +1,239 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import absimpa.*;
+import absimpa.lexer.SimpleLexer;
+
+/**
+ * <p>
+ * parses many small inputs, like log lines or query strings, with one
+ * {@link Parser} on the threads of an {@link Executor}. The inputs are
+ * handed to the executor in batches, so that the cost of a task is shared
+ * by many inputs. Lexers and {@link ParseContext} objects are kept in a
+ * pool and reused for the next batch, whatever thread runs it.
+ * </p>
+ * <p>
+ * A {@link ParseException} only ends the parse of the input it belongs
+ * to. It is reported together with the results of the other inputs.
+ * </p>
+ * <p>
+ * The {@code LeafFactory} and {@code NodeFactory} objects are called on
+ * the threads of the executor and must be thread safe. A
+ * {@code BatchParser} can be used by several threads at the same time.
+ * </p>
+ */
+public final class BatchParser<N,C extends Enum<C>> {
+  private static final int DEFAULT_BATCH_SIZE = 64;
+
+  private final Parser<N,C> parser;
+  private final Supplier<? extends SimpleLexer<N,C>> lexers;
+  private final Queue<Worker<N,C>> idle = new ConcurrentLinkedQueue<>();
+  private volatile int batchSize = DEFAULT_BATCH_SIZE;
+  /*+******************************************************************/
+  /**
+   * receives the outcome of parsing one input.
+   */
+  public interface Callback<N> {
+    /**
+     * <p>
+     * is called once for every input, possibly by several threads at the
+     * same time and not in the order of the inputs.
+     * </p>
+     *
+     * @param index is the position of the input in the sequence of inputs
+     * @param node is the parse result, or {@code null} if the parse failed
+     * @param e is the exception thrown by the parser, or {@code null} if
+     *        the parse succeeded
+     */
+    void parsed(int index, N node, ParseException e);
+  }
+  /*+******************************************************************/
+  /**
+   * is the outcome of parsing one input.
+   */
+  public static final class Result<N> {
+    private final N node;
+    private final ParseException exception;
+    Result(N node, ParseException exception) {
+      this.node = node;
+      this.exception = exception;
+    }
+    /**
+     * returns the parse result, or {@code null} if the parse failed.
+     */
+    public N getNode() {
+      return node;
+    }
+    /**
+     * returns the exception thrown by the parser, or {@code null} if the
+     * parse succeeded.
+     */
+    public ParseException getException() {
+      return exception;
+    }
+    public boolean succeeded() {
+      return exception==null;
+    }
+    public String toString() {
+      return succeeded() ? String.valueOf(node) : exception.getMessage();
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * @param lexers provides new lexers as needed. Each lexer is used by one
+   *        thread at a time only.
+   */
+  public BatchParser(Parser<N,C> parser,
+                     Supplier<? extends SimpleLexer<N,C>> lexers)
+  {
+    this.parser = parser;
+    this.lexers = lexers;
+  }
+  /*+******************************************************************/
+  /**
+   * sets the number of inputs parsed by one task of the executor. The
+   * default is 64.
+   */
+  public BatchParser<N,C> setBatchSize(int batchSize) {
+    if( batchSize<1 ) {
+      throw new IllegalArgumentException("batch size must be positive, but is "
+          +batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * parses all {@code inputs} on the {@code executor} and waits until all
+   * are done.
+   * </p>
+   *
+   * @return the results in the order of the inputs
+   */
+  public List<Result<N>> parseAll(Iterable<? extends CharSequence> inputs,
+                                  Executor executor)
+  {
+    final List<Result<N>> results = new ArrayList<>();
+    CompletableFuture<Void> done =
+        parseAll(inputs, executor, new Callback<N>() {
+          @Override
+          public void parsed(int index, N node, ParseException e) {
+            Result<N> r = new Result<N>(node, e);
+            synchronized(results) {
+              while( results.size()<=index ) results.add(null);
+              results.set(index, r);
+            }
+          }
+        });
+    try {
+      done.join();
+    } catch( CompletionException e ) {
+      Throwable cause = e.getCause();
+      if( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+      if( cause instanceof Error ) throw (Error)cause;
+      throw e;
+    }
+    synchronized(results) {
+      return new ArrayList<>(results);
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * parses all {@code inputs} on the {@code executor}, reporting the
+   * outcome of each to the {@code callback}. A batch is handed to the
+   * executor as soon as enough inputs are taken from the iterator, so
+   * parsing starts before all inputs are known. The method returns after
+   * the last batch is handed over, without waiting for the parses.
+   * </p>
+   *
+   * @return a future completed when all inputs are parsed. It completes
+   *         exceptionally if a parse or the callback threw anything else
+   *         than a {@link ParseException}, or if the executor rejected a
+   *         batch. In the latter case no further batches are handed over.
+   */
+  public CompletableFuture<Void>
+  parseAll(Iterable<? extends CharSequence> inputs, Executor executor,
+           Callback<N> callback)
+  {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    // one more than the batches submitted and not yet parsed, until all
+    // are submitted
+    AtomicInteger pending = new AtomicInteger(1);
+    int size = batchSize;
+    int count = 0;
+    List<CharSequence> batch = new ArrayList<>(size);
+    try {
+      for(CharSequence s : inputs) {
+        batch.add(s);
+        count += 1;
+        if( batch.size()==size ) {
+          submit(batch, count-size, executor, callback, done, pending);
+          batch = new ArrayList<>(size);
+        }
+      }
+      if( !batch.isEmpty() ) {
+        submit(batch, count-batch.size(), executor, callback, done, pending);
+      }
+    } catch( RuntimeException | Error e ) {
+      done.completeExceptionally(e);
+      return done;
+    }
+    if( pending.decrementAndGet()==0 ) done.complete(null);
+    return done;
+  }
+  /*+******************************************************************/
+  private void submit(List<CharSequence> batch, int first, Executor executor,
+                      Callback<N> callback, CompletableFuture<Void> done,
+                      AtomicInteger pending)
+  {
+    pending.incrementAndGet();
+    executor.execute(() -> {
+      try {
+        parseBatch(batch, first, callback);
+      } catch( RuntimeException | Error e ) {
+        done.completeExceptionally(e);
+        return;
+      }
+      if( pending.decrementAndGet()==0 ) done.complete(null);
+    });
+  }
+  /*+******************************************************************/
+  private void parseBatch(List<CharSequence> texts, int first,
+                          Callback<N> callback)
+  {
+    Worker<N,C> w = idle.poll();
+    if( w==null ) w = new Worker<N,C>(lexers.get());
+    try {
+      for(int i=0; i<texts.size(); i++) {
+        N node = null;
+        ParseException failure = null;
+        try {
+          w.lexer.initAnalysis(texts.get(i));
+          node = parser.parse(w.lexer, w.context);
+        } catch( ParseException e ) {
+          failure = e;
+        }
+        callback.parsed(first+i, node, failure);
+      }
+    } finally {
+      idle.offer(w);
+    }
+  }
+  /*+******************************************************************/
+  private static final class Worker<N,C extends Enum<C>> {
+    final SimpleLexer<N,C> lexer;
+    final ParseContext<N,C> context = ParseContext.create();
+    Worker(SimpleLexer<N,C> lexer) {
+      this.lexer = lexer;
+    }
+  }
+}
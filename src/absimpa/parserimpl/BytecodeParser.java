@@ -0,0 +1,150 @@
+package absimpa.parserimpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * is the superclass of the parser classes generated at run time by
+ * {@link Grammar#compileToBytecode}. The generated subclass implements
+ * {@link #parseRoot} with one method per grammar element and uses the
+ * static helpers of this class, while this class provides the rest of the
+ * {@link Parser} contract. Parsing with a {@link ParseListener} is passed
+ * on to the parser obtained from {@link Grammar#compile} for the same
+ * grammar, so that exactly the same events are reported.
+ * </p>
+ * <p>
+ * This class is public only so that classes defined by another class
+ * loader can extend it. It is not meant to be extended otherwise.
+ * </p>
+ */
+public abstract class BytecodeParser<N,C extends Enum<C>>
+    implements Parser<N,C>
+{
+  /**
+   * returned by a generated method if it recognized its input
+   */
+  protected static final int DONE = 0;
+  /**
+   * returned by a generated method if its input may be empty and the
+   * current token does not match
+   */
+  protected static final int EPSILON = 1;
+  /**
+   * returned by a generated method if the current token does not match
+   */
+  protected static final int NOTAPPLICABLE = 2;
+
+  private final AbstractParser<N,C> interpreted;
+  private final NodeFactory<N>[] factories;
+  /*+******************************************************************/
+  /**
+   * @param interpreted is the parser compiled from the same grammar
+   * @param factories are the node factories in the order used by the
+   *        generated code
+   */
+  protected BytecodeParser(AbstractParser<N,C> interpreted,
+                           List<? extends NodeFactory<N>> factories)
+  {
+    this.interpreted = interpreted;
+    @SuppressWarnings("unchecked")
+    NodeFactory<N>[] tmp = new NodeFactory[factories.size()];
+    this.factories = factories.toArray(tmp);
+  }
+  /*+******************************************************************/
+  /**
+   * parses with the method generated for the start of the grammar.
+   *
+   * @return {@link #DONE}, {@link #EPSILON} or {@link #NOTAPPLICABLE}
+   */
+  protected abstract int parseRoot(Lexer<N,C> lex, List<N> stack)
+    throws ParseException;
+  /*+******************************************************************/
+  @Override
+  public final N parse(Lexer<N,C> lex) throws ParseException {
+    return parse(lex, new ArrayList<N>());
+  }
+  /*+******************************************************************/
+  @Override
+  public final N parse(Lexer<N,C> lex, ParseContext<N,C> context)
+    throws ParseException
+  {
+    StackContext<N,C> c = StackContext.of(context);
+    c.begin();
+    try {
+      return parse(lex, c.nodes);
+    } finally {
+      c.end();
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  public final void parse(Lexer<N,C> lex, ParseListener<N,C> listener)
+    throws ParseException
+  {
+    interpreted.parse(lex, listener);
+  }
+  /*+******************************************************************/
+  private N parse(Lexer<N,C> lex, List<N> stack) throws ParseException {
+    int status = parseRoot(lex, stack);
+    if( status==EPSILON ) return null;
+    if( status==NOTAPPLICABLE ) {
+      throw lex.parseException(interpreted.getLookahead());
+    }
+    if( stack.size()>1 ) {
+      String msg =
+          "parse result has more than one node, likely a forgotten "
+              +"NodeFactory";
+      throw new IllegalStateException(msg);
+    }
+    return stack.isEmpty() ? null : stack.get(0);
+  }
+  /*+******************************************************************/
+  /**
+   * returns the ordinal of the current token.
+   */
+  protected static <N,C extends Enum<C>> int code(Lexer<N,C> lex) {
+    return lex.current().ordinal();
+  }
+  /*+******************************************************************/
+  /**
+   * moves on to the next token, pushing the current one's leaf.
+   */
+  protected static <N,C extends Enum<C>> void shift(Lexer<N,C> lex,
+                                                    List<N> stack)
+    throws ParseException
+  {
+    N node = lex.next();
+    if( node!=null ) stack.add(node);
+  }
+  /*+******************************************************************/
+  /**
+   * replaces the nodes from {@code mark} upwards by what the node factory
+   * with the given index makes of them.
+   */
+  protected final void reduce(List<N> stack, int mark, int factory) {
+    List<N> children = stack.subList(mark, stack.size());
+    N node =
+        factories[factory].create(Collections.unmodifiableList(children));
+    children.clear();
+    if( node!=null ) stack.add(node);
+  }
+  /*+******************************************************************/
+  /**
+   * creates the exception for a current token not among the given
+   * ordinals.
+   */
+  protected static <N,C extends Enum<C>> ParseException
+  expected(Lexer<N,C> lex, int[] ordinals)
+  {
+    Class<C> codeClass = lex.current().getDeclaringClass();
+    C[] codes = codeClass.getEnumConstants();
+    EnumSet<C> expected = EnumSet.noneOf(codeClass);
+    for(int i : ordinals) expected.add(codes[i]);
+    return lex.parseException(expected);
+  }
+}
@@ -7,35 +7,164 @@ import java.util.*;
 
 import absimpa.*;
 
-public class ChoiceParser<N,C extends Enum<C>>
+public final class ChoiceParser<N,C extends Enum<C>>
     extends AbstractParser<N,C>
 {
   private final List<AbstractParser<N,C>> children;
+
+  // indexed by token code ordinal, holds the first child with a matching
+  // lookahead, or null
+  private final AbstractParser<N,C>[] dispatch;
+  // parallel to dispatch, true where the child is a plain token parser
+  private final boolean[] plainToken;
+  // parallel to dispatch, non-null where children conflict and tokens
+  // further on decide, see decide()
+  private Peek<N,C>[] peeks = null;
+  private final Map<List<C>,AbstractParser<N,C>> decisions =
+      new LinkedHashMap<>();
   /*+******************************************************************/
   public ChoiceParser(List<AbstractParser<N,C>> children,
                       EnumSet<C> lookahead, boolean mayBeEpsilon) {
     super(lookahead, mayBeEpsilon);
     this.children = children;
+    this.dispatch = makeDispatch(children, lookahead);
+    this.plainToken = new boolean[dispatch.length];
+    for(int i=0; i<dispatch.length; i++) {
+      plainToken[i] = dispatch[i]!=null && dispatch[i].plainTokenCode()!=null;
+    }
   }
   /*+******************************************************************/
-  @Override
-  List<N> doParse(Lexer<N,C> lex) throws ParseException {
+  /**
+   * <p>
+   * precomputes for each token code in {@code lookahead} the child to
+   * parse. If the lookahead sets of the children overlap, the child added
+   * first wins, just as if the children were tried in order.
+   * </p>
+   */
+  private static <N,C extends Enum<C>> AbstractParser<N,C>[]
+  makeDispatch(List<AbstractParser<N,C>> children, EnumSet<C> lookahead)
+  {
+    int size = 0;
+    for(C code : lookahead) {
+      size = Math.max(size, code.ordinal()+1);
+    }
+    @SuppressWarnings("unchecked")
+    AbstractParser<N,C>[] result = new AbstractParser[size];
     for(AbstractParser<N,C> p : children) {
-      ParseResult<N> r = p.parseInternal(lex);
-      if( r.isEpsilon() ) {
-        continue;
-      }
-      if( r.notApplicable() ) {
-        continue;
+      for(int i=0; i<size; i++) {
+        if( result[i]==null && p.inLookahead(i) ) result[i] = p;
       }
-      List<N> nodes = new ArrayList<>(1);
-      r.addToNodeList(nodes);
-      return nodes;
     }
-    
-    throw new RuntimeException("this method was obviously called without making"+
-                               " sure that this parser's lookahead matches."+
-                               " This is wrong. Find the bug!");
+    return result;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * makes the parser take {@code child} if the next tokens are
+   * {@code tokens}, the first being the current one, unless a decision
+   * for more of the next tokens applies. This is only used if the lexer is
+   * a {@link PeekableLexer}, otherwise the child is chosen by the current
+   * token alone.
+   * </p>
+   *
+   * @param tokens must not be empty and the first must be in the
+   *        lookahead of the parser
+   */
+  public void decide(List<C> tokens, AbstractParser<N,C> child) {
+    checkMutable();
+    int i = tokens.isEmpty() ? dispatch.length : tokens.get(0).ordinal();
+    if( i>=dispatch.length || dispatch[i]==null ) {
+      throw new IllegalArgumentException("cannot decide on tokens "+tokens);
+    }
+    if( peeks==null ) {
+      @SuppressWarnings("unchecked")
+      Peek<N,C>[] tmp = new Peek[dispatch.length];
+      peeks = tmp;
+    }
+    if( peeks[i]==null ) peeks[i] = new Peek<>(dispatch[i]);
+    Peek<N,C> node = peeks[i];
+    for(C code : tokens.subList(1, tokens.size())) {
+      node = node.next(code.ordinal());
+    }
+    node.child = child;
+    decisions.put(new ArrayList<>(tokens), child);
+  }
+  /*+******************************************************************/
+  /**
+   * tells whether a decision was made with {@link #decide}.
+   */
+  boolean peeks() {
+    return peeks!=null;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the decisions made with {@link #decide}, in the order they
+   * were made.
+   */
+  Map<List<C>,AbstractParser<N,C>> decisions() {
+    return Collections.unmodifiableMap(decisions);
+  }
+  /*+******************************************************************/
+  private AbstractParser<N,C> choose(int i, Lexer<N,C> lex)
+    throws ParseException
+  {
+    if( !(lex instanceof PeekableLexer) ) return dispatch[i];
+    PeekableLexer<N,C> plex = (PeekableLexer<N,C>)lex;
+    Peek<N,C> node = peeks[i];
+    for(int k=1; node.next!=null; k++) {
+      int o = plex.peek(k).ordinal();
+      if( o>=node.next.length || node.next[o]==null ) break;
+      node = node.next[o];
+    }
+    return node.child;
+  }
+  /*+******************************************************************/
+  @Override
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    int i = lex.current().ordinal();
+    AbstractParser<N,C> p = i<dispatch.length ? dispatch[i] : null;
+    if( p==null ) {
+      throw new RuntimeException("this method was obviously called without making"+
+                                 " sure that this parser's lookahead matches."+
+                                 " This is wrong. Find the bug!");
+    }
+
+    boolean plain = plainToken[i];
+    if( peeks!=null && peeks[i]!=null ) {
+      p = choose(i, lex);
+      plain = p.plainTokenCode()!=null;
+    }
+    if( plain ) {
+      stack.shift(lex);
+    } else {
+      p.parseInternal(lex, stack);
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    if( f.state>0 ) return FINISH;
+    int i = lex.current().ordinal();
+    AbstractParser<N,C> p = dispatch[i];
+    boolean plain = plainToken[i];
+    if( peeks!=null && peeks[i]!=null ) {
+      p = choose(i, lex);
+      plain = p.plainTokenCode()!=null;
+    }
+    if( plain ) {
+      stack.shift(lex);
+      return FINISH;
+    }
+    f.state = 1;
+    f.call = p;
+    return CALL;
+  }
+  /*+******************************************************************/
+  @Override
+  List<AbstractParser<N,C>> children() {
+    return children;
   }
   /*+******************************************************************/
   public String toString() {
@@ -51,4 +180,26 @@ public class ChoiceParser<N,C extends Enum<C>>
     sb.append("]");
     return sb.toString();
   }
-}
\ No newline at end of file
+  /*+******************************************************************/
+  /**
+   * is a node of the tree of decisions for one conflicting token
+   */
+  private static final class Peek<N,C extends Enum<C>> {
+    AbstractParser<N,C> child;
+    // indexed by the ordinal of the token code further on
+    Peek<N,C>[] next = null;
+    Peek(AbstractParser<N,C> child) {
+      this.child = child;
+    }
+    Peek<N,C> next(int ordinal) {
+      if( next==null || ordinal>=next.length ) {
+        @SuppressWarnings("unchecked")
+        Peek<N,C>[] tmp = new Peek[ordinal+1];
+        if( next!=null ) System.arraycopy(next, 0, tmp, 0, next.length);
+        next = tmp;
+      }
+      if( next[ordinal]==null ) next[ordinal] = new Peek<>(child);
+      return next[ordinal];
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package absimpa.parserimpl;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * replaces the {@link NodeStack} when parsing with a
+ * {@link ParseListener}. Nothing is ever pushed, instead tokens and the
+ * start and end of named parsers are passed on to the listener as they
+ * happen. No {@link NodeFactory} is called.
+ * </p>
+ */
+final class EventStack<N,C extends Enum<C>> extends NodeStack<N,C> {
+  private final ParseListener<N,C> listener;
+  /*+******************************************************************/
+  EventStack(ParseListener<N,C> listener) {
+    this.listener = listener;
+  }
+  /*+******************************************************************/
+  @Override
+  void shift(Lexer<N,C> lex) throws ParseException {
+    C code = lex.current();
+    listener.token(code, lex.next());
+  }
+  /*+******************************************************************/
+  @Override
+  void combine(NodeFactory<N> nf, int mark) {
+    // no nodes, nothing to combine
+  }
+  /*+******************************************************************/
+  @Override
+  boolean keepsNodes() {
+    return false;
+  }
+  /*+******************************************************************/
+  @Override
+  void push(N node) {
+    // events only
+  }
+  /*+******************************************************************/
+  @Override
+  Packrat<N,C> packrat(MarkableLexer<N,C> lex) {
+    throw new UnsupportedOperationException("parsers that backtrack cannot "
+        +"report to a ParseListener");
+  }
+  /*+******************************************************************/
+  @Override
+  int enter(AbstractParser<N,C> p) {
+    String name = p.ruleName();
+    if( name!=null ) listener.enterRule(name);
+    return 0;
+  }
+  /*+******************************************************************/
+  @Override
+  void exit(AbstractParser<N,C> p, int mark) {
+    String name = p.ruleName();
+    if( name!=null ) listener.exitRule(name);
+  }
+}
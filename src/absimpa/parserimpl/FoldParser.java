@@ -0,0 +1,106 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * repeats its child like a {@link RepeatParser}, but folds the nodes of
+ * every repetition into an accumulation container right away, pushing
+ * only the finished result.
+ * </p>
+ */
+public final class FoldParser<N,C extends Enum<C>,A>
+    extends AbstractParser<N,C>
+{
+  private final int min, max;
+  private final AbstractParser<N,C> child;
+  private final Collector<? super N,A,? extends N> collector;
+  private final BiConsumer<A,? super N> accumulator;
+
+  public FoldParser(EnumSet<C> childLookahead,
+                    AbstractParser<N,C> child, boolean mayBeEpsilon,
+                    int min, int max,
+                    Collector<? super N,A,? extends N> collector) {
+    super(childLookahead, mayBeEpsilon);
+    if( min<0||max<min||max==0 ) {
+      String msg =
+          String.format("must have 0<=min<=max and max>0, but have "
+              +" min=%d, max=%d", min, max);
+      throw new IllegalArgumentException(msg);
+    }
+    this.min = min;
+    this.max = max;
+    this.child = child;
+    this.collector = collector;
+    this.accumulator = collector.accumulator();
+  }
+  /*+******************************************************************/
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    int mark = stack.size();
+    A acc = stack.keepsNodes() ? collector.supplier().get() : null;
+    int count = 0;
+    while( count<max ) {
+      int r = child.parseInternal(lex, stack);
+      if( r==EPSILON ) {
+        break;
+      }
+      if( r==NOTAPPLICABLE ) {
+        if( count<min ) {
+          throw lex.parseException(getLookahead());
+        }
+        break;
+      }
+      fold(acc, stack, mark);
+      count += 1;
+    }
+    finish(acc, stack);
+  }
+  /*+******************************************************************/
+  // acc is null if the stack keeps no nodes, so there is nothing to fold
+  private void fold(A acc, NodeStack<N,C> stack, int mark) {
+    if( acc==null ) return;
+    for(int i=mark; i<stack.size(); i++) {
+      accumulator.accept(acc, stack.get(i));
+    }
+    stack.truncate(mark);
+  }
+  private void finish(A acc, NodeStack<N,C> stack) {
+    if( acc==null ) return;
+    stack.push(collector.finisher().apply(acc));
+  }
+  /*+******************************************************************/
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    // the state is the number of repetitions recognized so far
+    @SuppressWarnings("unchecked")
+    A acc = (A)f.value;
+    if( f.state==0 && childStatus==NONE && stack.keepsNodes() ) {
+      acc = collector.supplier().get();
+      f.value = acc;
+    }
+    if( childStatus==DONE ) {
+      fold(acc, stack, f.mark);
+      f.state += 1;
+    } else if( childStatus==NOTAPPLICABLE && f.state<min ) {
+      throw lex.parseException(getLookahead());
+    }
+    if( childStatus==EPSILON || childStatus==NOTAPPLICABLE
+        || f.state>=max ) {
+      f.value = null;
+      finish(acc, stack);
+      return FINISH;
+    }
+    f.call = child;
+    return CALL;
+  }
+  /*+******************************************************************/
+  public String toString() {
+    return String.format("FOLD{%d,%d,%s}", min, max, child.getName());
+  }
+}
@@ -0,0 +1,50 @@
+package absimpa.parserimpl;
+
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * is the activation record of a parser on the explicit stack of a
+ * {@link NonRecursiveParser}. The meaning of {@code state} is up to the
+ * parser, it starts out as zero.
+ * </p>
+ */
+final class Frame<N,C extends Enum<C>> {
+  AbstractParser<N,C> parser;
+  int state;
+  int mark;
+  // set by the parser's step() to the child to run next
+  AbstractParser<N,C> call;
+
+  // used by parsers that backtrack: the lexer mark, the exception thrown
+  // by the child just called and the one thrown furthest into the input
+  int lexMark;
+  ParseException thrown;
+  ParseException failure;
+  int failurePos;
+
+  // used by parsers that fold the results of their children
+  Object value;
+  /*+******************************************************************/
+  void init(AbstractParser<N,C> parser, int mark) {
+    this.parser = parser;
+    this.state = 0;
+    this.mark = mark;
+    this.call = null;
+    this.thrown = null;
+    this.failure = null;
+    this.value = null;
+  }
+  /*+******************************************************************/
+  /**
+   * drops all references held, so that a frame kept for reuse keeps
+   * nothing of the last parse alive.
+   */
+  void clear() {
+    this.parser = null;
+    this.call = null;
+    this.thrown = null;
+    this.failure = null;
+    this.value = null;
+  }
+}
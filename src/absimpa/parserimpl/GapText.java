@@ -0,0 +1,147 @@
+package absimpa.parserimpl;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * is a text kept in an array with a gap at the place of the last edit.
+ * Replacing characters moves the gap to the edit, which copies only the
+ * characters between the previous and the current edit, and then fills or
+ * widens the gap. Edits close to each other therefore cost little, no
+ * matter how long the text is.
+ * </p>
+ * <p>
+ * {@link #subSequence} returns a view, not a copy, unless it is turned
+ * into a {@code String}. A view must not be used after the text was
+ * changed.
+ * </p>
+ */
+final class GapText implements CharSequence {
+  private char[] chars = new char[64];
+  private int gapStart = 0;
+  private int gapEnd = chars.length;
+  /*+******************************************************************/
+  @Override
+  public int length() {
+    return chars.length-(gapEnd-gapStart);
+  }
+  /*+******************************************************************/
+  @Override
+  public char charAt(int index) {
+    if( index<gapStart ) {
+      if( index<0 ) throw new IndexOutOfBoundsException("index "+index);
+      return chars[index];
+    }
+    index += gapEnd-gapStart;
+    if( index>=chars.length ) {
+      throw new IndexOutOfBoundsException("index "+(index-gapEnd+gapStart)
+          +", length "+length());
+    }
+    return chars[index];
+  }
+  /*+******************************************************************/
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if( start<0 || end<start || end>length() ) {
+      throw new IndexOutOfBoundsException("cannot take "+start+" to "+end
+          +" from text of length "+length());
+    }
+    return new View(start, end);
+  }
+  /*+******************************************************************/
+  @Override
+  public String toString() {
+    return substring(0, length());
+  }
+  /*+******************************************************************/
+  String substring(int start, int end) {
+    StringBuilder sb = new StringBuilder(end-start);
+    if( start<gapStart ) sb.append(chars, start, Math.min(end, gapStart)-start);
+    if( end>gapStart ) {
+      int from = Math.max(start, gapStart)+gapEnd-gapStart;
+      sb.append(chars, from, end+gapEnd-gapStart-from);
+    }
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  /**
+   * replaces {@code length} characters from {@code offset} onwards by the
+   * {@code replacement}, which may be this text or a part of it.
+   */
+  void replace(int offset, int length, CharSequence replacement) {
+    if( replacement==this || replacement instanceof View ) {
+      replacement = replacement.toString();
+    }
+    moveGap(offset);
+    gapEnd += length;
+    int n = replacement.length();
+    if( gapEnd-gapStart<n ) {
+      int tail = chars.length-gapEnd;
+      int size = Math.max(2*chars.length, gapStart+n+tail+64);
+      char[] tmp = Arrays.copyOf(chars, size);
+      System.arraycopy(chars, gapEnd, tmp, size-tail, tail);
+      chars = tmp;
+      gapEnd = size-tail;
+    }
+    for(int i=0; i<n; i++) {
+      chars[gapStart++] = replacement.charAt(i);
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * replaces the whole text.
+   */
+  void set(CharSequence text) {
+    if( text==this || text instanceof View ) text = text.toString();
+    gapStart = 0;
+    gapEnd = chars.length;
+    replace(0, 0, text);
+  }
+  /*+******************************************************************/
+  private void moveGap(int offset) {
+    if( offset<gapStart ) {
+      int n = gapStart-offset;
+      System.arraycopy(chars, offset, chars, gapEnd-n, n);
+      gapStart -= n;
+      gapEnd -= n;
+    } else if( offset>gapStart ) {
+      int n = offset-gapStart;
+      System.arraycopy(chars, gapEnd, chars, gapStart, n);
+      gapStart += n;
+      gapEnd += n;
+    }
+  }
+  /*+******************************************************************/
+  private final class View implements CharSequence {
+    private final int start;
+    private final int end;
+    View(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+    @Override
+    public int length() {
+      return end-start;
+    }
+    @Override
+    public char charAt(int index) {
+      if( index<0 || index>=end-start ) {
+        throw new IndexOutOfBoundsException("index "+index+", length "
+            +(end-start));
+      }
+      return GapText.this.charAt(start+index);
+    }
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      if( from<0 || to<from || to>end-start ) {
+        throw new IndexOutOfBoundsException("cannot take "+from+" to "+to
+            +" from text of length "+(end-start));
+      }
+      return new View(start+from, start+to);
+    }
+    @Override
+    public String toString() {
+      return substring(start, end);
+    }
+  }
+}
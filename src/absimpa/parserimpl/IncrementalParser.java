@@ -0,0 +1,667 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+
+import absimpa.*;
+import absimpa.lexer.SimpleLexer;
+
+/**
+ * <p>
+ * parses a text again and again after small edits, doing only the work
+ * that is necessary. The text is kept as a list of tokens. After an edit,
+ * only the tokens around the edit are created anew, starting at the token
+ * before the edit and stopping as soon as the lexer arrives at the start
+ * of an old token behind the edit.
+ * </p>
+ * <p>
+ * For every parser with a {@link NodeFactory}, the node it created is
+ * remembered together with the number of tokens it consumed. When the
+ * parser is run again at the same token and neither these tokens nor the
+ * token following them have changed, the node is reused instead of
+ * parsing the input again. Where a {@link Choice} looks further ahead,
+ * the node is only reused if the tokens it looked at are unchanged, too.
+ * The result is therefore the same as that of parsing the whole text from
+ * scratch, except that reused nodes and leaves are the same objects as
+ * before.
+ * </p>
+ * <p>
+ * The text and the tokens are both kept with a gap at the last edit, and
+ * tokens behind the gap count their start from the end of the text, so
+ * that an edit neither copies nor moves what lies far from it. Of the
+ * remembered nodes, only those of the parsers enclosing the edit are
+ * dropped. Where a {@link Repeat} of a parser with a {@code NodeFactory}
+ * runs again, the unchanged repetitions before and behind the edit are
+ * taken over as a whole. Their nodes are still pushed one by one for the
+ * {@code NodeFactory} above, so a long repetition at the top of the
+ * grammar costs a little for each of its nodes.
+ * </p>
+ * <p>
+ * Leaves are created by the lexer, and nodes are reused, no matter where
+ * the token moved within the text. A {@code LeafFactory} or
+ * {@code NodeFactory} storing positions in its results therefore leaves
+ * stale positions behind the edit.
+ * </p>
+ * <p>
+ * An {@code IncrementalParser} keeps the state of one text and cannot be
+ * used by several threads at the same time. Grammars containing an
+ * {@link OrderedChoice} are not supported, because the tokens are not
+ * replayed by a {@link MarkableLexer}.
+ * </p>
+ */
+public final class IncrementalParser<N,C extends Enum<C>> {
+  private final AbstractParser<N,C> parser;
+  private final SimpleLexer<N,C> lexer;
+
+  private final GapText text = new GapText();
+  // all tokens of the text, the last being the end of input, or null if
+  // the text could not be split into tokens. Those before the gap keep
+  // their start from the beginning of the text, those behind it from the
+  // end of the text, which makes it 0 or negative.
+  private Tok<N,C>[] tokens = null;
+  private int gapStart = 0;
+  private int gapEnd = 0;
+
+  // the largest number of tokens a remembered parser looked at beyond
+  // those it consumed
+  private int beyond = 0;
+  // marks tokens and entries already looked at while forgetting entries
+  private int stamp = 0;
+  /*+******************************************************************/
+  /**
+   * @param parser must be obtained from {@link Grammar#compile}
+   * @param lexer is used to split the text into tokens. It should not be
+   *        used for anything else.
+   * @throws IllegalArgumentException if {@code parser} was not created by
+   *         {@link Grammar#compile}
+   */
+  public IncrementalParser(Parser<N,C> parser, SimpleLexer<N,C> lexer) {
+    if( !(parser instanceof AbstractParser) ) {
+      throw new IllegalArgumentException("not a compiled parser: "+parser);
+    }
+    this.parser = (AbstractParser<N,C>)parser;
+    this.lexer = lexer;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * parses the given text from scratch, forgetting everything known about
+   * the previous text.
+   * </p>
+   */
+  public N parse(CharSequence text) throws ParseException {
+    this.text.set(text);
+    lexAll();
+    return reparse();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * replaces {@code length} characters of the text, starting at
+   * {@code offset}, by the {@code replacement} and parses the result.
+   * </p>
+   *
+   * @throws IndexOutOfBoundsException if the range to replace is not
+   *         within the text
+   * @throws ParseException if the text after the edit cannot be parsed.
+   *         The edit is nevertheless applied.
+   */
+  public N edit(int offset, int length, CharSequence replacement)
+    throws ParseException
+  {
+    int oldLength = text.length();
+    if( offset<0 || length<0 || offset+length>oldLength ) {
+      throw new IndexOutOfBoundsException("cannot replace "+length
+          +" characters at "+offset+" in text of length "+oldLength);
+    }
+    if( tokens==null ) {
+      text.replace(offset, length, replacement);
+      lexAll();
+      return reparse();
+    }
+
+    // The token ending at or behind the edit may change, and so may the
+    // one before, as its match might now extend differently. With the gap
+    // there, all tokens which may change count from the end of the text,
+    // and those behind the edit keep their start.
+    int first = firstEndingAtOrAfter(offset);
+    first = Math.max(0, first-1);
+    moveGap(first);
+    text.replace(offset, length, replacement);
+    int from = first==0 ? 0 : tokens[gapEnd].start+oldLength;
+
+    List<Tok<N,C>> fresh;
+    try {
+      fresh = lex(from, offset+replacement.length(), first);
+    } catch( ParseException e ) {
+      tokens = null;
+      throw e;
+    }
+    int resync = resyncIndex;
+
+    // the tokens lexed again before the edit are most likely unchanged, and
+    // the old ones are kept with what is remembered about them
+    int same = 0;
+    while( same<fresh.size() && first<resync ) {
+      Tok<N,C> t = tokens[gapEnd];
+      if( !fresh.get(same).sameAs(t, t.start+oldLength, offset) ) break;
+      tokens[gapEnd++] = null;
+      t.start += oldLength;
+      tokens[gapStart++] = t;
+      same += 1;
+      first += 1;
+    }
+
+    forgetReaching(first);
+    for(int i=first; i<resync; i++) {
+      tokens[gapEnd++] = null;
+    }
+    insert(fresh.subList(same, fresh.size()));
+    return reparse();
+  }
+  /*+******************************************************************/
+  /**
+   * returns the current text. It changes with every edit.
+   */
+  public CharSequence getText() {
+    return text;
+  }
+  /*+******************************************************************/
+  private int tokenCount() {
+    return tokens.length-(gapEnd-gapStart);
+  }
+  private Tok<N,C> token(int i) {
+    return i<gapStart ? tokens[i] : tokens[i+gapEnd-gapStart];
+  }
+  private int start(int i) {
+    if( i<gapStart ) return tokens[i].start;
+    return tokens[i+gapEnd-gapStart].start+text.length();
+  }
+  /*+******************************************************************/
+  /**
+   * moves the gap in front of the token at index {@code i}, converting
+   * the start of the tokens passing the gap.
+   */
+  private void moveGap(int i) {
+    int length = text.length();
+    while( gapStart>i ) {
+      Tok<N,C> t = tokens[--gapStart];
+      tokens[gapStart] = null;
+      t.start -= length;
+      tokens[--gapEnd] = t;
+    }
+    while( gapStart<i ) {
+      Tok<N,C> t = tokens[gapEnd];
+      tokens[gapEnd++] = null;
+      t.start += length;
+      tokens[gapStart++] = t;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * inserts {@code fresh} in front of the gap. The slots of the gap are
+   * always {@code null}.
+   */
+  private void insert(List<Tok<N,C>> fresh) {
+    int n = fresh.size();
+    if( gapEnd-gapStart<n ) {
+      int tail = tokens.length-gapEnd;
+      int size = Math.max(2*tokens.length, gapStart+n+tail+16);
+      Tok<N,C>[] tmp = Arrays.copyOf(tokens, size);
+      Arrays.fill(tmp, gapStart, size-tail, null);
+      System.arraycopy(tokens, gapEnd, tmp, size-tail, tail);
+      tokens = tmp;
+      gapEnd = size-tail;
+    }
+    for(int i=0; i<n; i++) {
+      tokens[gapStart++] = fresh.get(i);
+    }
+  }
+  /*+******************************************************************/
+  private void lexAll() throws ParseException {
+    tokens = null;
+    List<Tok<N,C>> all = lex(0, 0, 0);
+    @SuppressWarnings("unchecked")
+    Tok<N,C>[] tmp = new Tok[all.size()+16];
+    tokens = all.toArray(tmp);
+    gapStart = all.size();
+    gapEnd = tokens.length;
+    beyond = 0;
+  }
+  /*+******************************************************************/
+  private int firstEndingAtOrAfter(int offset) {
+    int lo = 0;
+    int hi = tokenCount()-1;
+    while( lo<hi ) {
+      int mid = (lo+hi)>>>1;
+      if( start(mid)+token(mid).length<offset ) {
+        lo = mid+1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+  /*+******************************************************************/
+  // set by lex() to the index of the old token at which it stopped
+  private int resyncIndex;
+
+  /**
+   * <p>
+   * splits the text into tokens from offset {@code from} onwards. Once a
+   * token at or behind {@code stable} starts where an old token from
+   * index {@code oldFrom} onwards starts, the rest of the tokens is known
+   * to be the same, and lexing stops. {@link #resyncIndex} is then set to
+   * the index of the old token. The old tokens from {@code oldFrom}
+   * onwards must be behind the gap.
+   * </p>
+   */
+  private List<Tok<N,C>> lex(int from, int stable, int oldFrom)
+    throws ParseException
+  {
+    List<Tok<N,C>> result = new ArrayList<>();
+    lexer.initAnalysis(text.subSequence(from, text.length()));
+    int oldIndex = oldFrom;
+    int oldCount = tokens==null ? 0 : tokenCount();
+    while( true ) {
+      int start = from+lexer.currentOffset();
+      if( start>=stable ) {
+        while( oldIndex<oldCount && start(oldIndex)<start ) {
+          oldIndex += 1;
+        }
+        if( oldIndex<oldCount && start(oldIndex)==start ) {
+          resyncIndex = oldIndex;
+          return result;
+        }
+      }
+      boolean atEnd = lexer.atEnd();
+      C code = lexer.current();
+      int length = lexer.currentText().length();
+      N leaf = lexer.next();
+      result.add(new Tok<N,C>(code, start, length, leaf));
+      if( atEnd ) break;
+    }
+    resyncIndex = oldCount;
+    return result;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * invalidates the entries of parsers which started before the token at
+   * index {@code first}, which must be at the gap, and looked at it or
+   * beyond. Such a parser either started shortly before, or it consumed
+   * one of the tokens shortly before, be it itself or through the parsers
+   * it ran, which are found from the token upwards.
+   * </p>
+   */
+  private void forgetReaching(int first) {
+    int from = Math.max(0, first-beyond-1);
+    stamp += 1;
+    for(int i=from; i<first; i++) {
+      tokens[i].stamp = stamp;
+    }
+    for(int i=from; i<first; i++) {
+      Tok<N,C> t = tokens[i];
+      for(Entry<N,C> e=t.memo; e!=null; e=e.next) {
+        if( e.valid && e.last.stamp!=stamp ) e.invalidate();
+      }
+      for(Entry<N,C> e=t.owner; e!=null && e.stamp!=stamp; e=e.parent) {
+        e.stamp = stamp;
+        if( e.valid && e.last.stamp!=stamp ) e.invalidate();
+      }
+    }
+  }
+  /*+******************************************************************/
+  private N reparse() throws ParseException {
+    Replay lex = new Replay();
+    Memo stack = new Memo(lex);
+    int status = parser.parseInternal(lex, stack);
+    stack.commit();
+    return parser.result(status, lex, stack);
+  }
+  /*+******************************************************************/
+  private static final class Tok<N,C extends Enum<C>> {
+    final C code;
+    int start;
+    final int length;
+    final N leaf;
+    // what parsers starting at this token produced, and the repetitions
+    // of repeat parsers starting here
+    Entry<N,C> memo = null;
+    Run<N,C> runs = null;
+    // the innermost parser with an entry that consumed this token
+    Entry<N,C> owner = null;
+    int stamp = 0;
+
+    Tok(C code, int start, int length, N leaf) {
+      this.code = code;
+      this.start = start;
+      this.length = length;
+      this.leaf = leaf;
+    }
+    /**
+     * tells whether this token equals {@code other}, starting at
+     * {@code otherStart}, both ending before the text changed at
+     * {@code offset}
+     */
+    boolean sameAs(Tok<N,C> other, int otherStart, int offset) {
+      return code==other.code && start==otherStart && length==other.length
+          && start+length<=offset;
+    }
+    /**
+     * returns the entry of {@code p}, valid or not
+     */
+    Entry<N,C> find(AbstractParser<N,C> p) {
+      for(Entry<N,C> e=memo; e!=null; e=e.next) {
+        if( e.parser==p ) return e;
+      }
+      return null;
+    }
+    Run<N,C> run(RepeatParser<N,C> p) {
+      for(Run<N,C> r=runs; r!=null; r=r.next) {
+        if( r.parser==p ) return r;
+      }
+      return null;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * describes what a parser with a {@code NodeFactory} produced, starting
+   * at a token. An entry found to be invalid stays with its token, to be
+   * filled anew when the parser runs there again, so that the entries it
+   * ran need not be told about a new parent.
+   * </p>
+   */
+  private static final class Entry<N,C extends Enum<C>> {
+    final AbstractParser<N,C> parser;
+    // the token the parser started at
+    final Tok<N,C> at;
+    final Entry<N,C> next;
+    boolean valid = false;
+    // the innermost parser with an entry that ran this one
+    Entry<N,C> parent = null;
+    int consumed;
+    // the distance of the furthest token looked at, at least consumed,
+    // and that token
+    int reach;
+    Tok<N,C> last;
+    N node;
+    // the position within the run of repetitions it last took part in
+    int index = -1;
+    int stamp = 0;
+    Entry(AbstractParser<N,C> parser, Tok<N,C> at) {
+      this.parser = parser;
+      this.at = at;
+      this.next = at.memo;
+      at.memo = this;
+    }
+    void invalidate() {
+      valid = false;
+      node = null;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * lists the entries of the child of a {@link RepeatParser}, one for each
+   * repetition, as recognized when the repeat parser last started at a
+   * token. When it starts there again, the repetitions with a valid entry
+   * are taken over as a whole up to the first invalid one, and again from
+   * the first one behind it which is still valid.
+   * </p>
+   */
+  private static final class Run<N,C extends Enum<C>> {
+    final RepeatParser<N,C> parser;
+    final Tok<N,C> at;
+    Run<N,C> next = null;
+    Entry<N,C>[] elements;
+    int size = 0;
+    // while recording, the run recorded before at the same token
+    Run<N,C> old;
+    Run(RepeatParser<N,C> parser, Tok<N,C> at, Run<N,C> old) {
+      this.parser = parser;
+      this.at = at;
+      this.old = old;
+      @SuppressWarnings("unchecked")
+      Entry<N,C>[] tmp = new Entry[old==null ? 16 : old.size+16];
+      elements = tmp;
+    }
+    void add(Entry<N,C> e) {
+      if( size==elements.length ) {
+        elements = Arrays.copyOf(elements, 2*size);
+      }
+      elements[size++] = e;
+    }
+    /**
+     * numbers the entries and replaces the run of the same parser at the
+     * same token.
+     */
+    void install() {
+      for(int i=0; i<size; i++) {
+        elements[i].index = i;
+      }
+      old = null;
+      Run<N,C> prev = null;
+      Run<N,C> r = at.runs;
+      while( r!=null && r.parser!=parser ) {
+        prev = r;
+        r = r.next;
+      }
+      if( r==null ) {
+        next = at.runs;
+        at.runs = this;
+      } else if( prev==null ) {
+        next = r.next;
+        at.runs = this;
+      } else {
+        next = r.next;
+        prev.next = this;
+      }
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * replays the token list to the parser
+   */
+  private final class Replay implements PeekableLexer<N,C> {
+    int pos = 0;
+    // the furthest token peeked at
+    int peeked = 0;
+    @Override
+    public C current() {
+      return token(pos).code;
+    }
+    @Override
+    public N next() {
+      Tok<N,C> t = token(pos);
+      if( pos<tokenCount()-1 ) pos += 1;
+      return t.leaf;
+    }
+    @Override
+    public C peek(int k) {
+      int i = Math.min(pos+k, tokenCount()-1);
+      peeked = Math.max(peeked, i);
+      return token(i).code;
+    }
+    @Override
+    public ParseException parseException(Set<C> expectedTokens) {
+      Tok<N,C> t = token(pos);
+      int start = start(pos);
+      ParseException e = new ParseException(expectedTokens, t.code);
+      e.setTokenText(text.substring(start, start+t.length));
+      e.setLine(1);
+      e.setColumn(start+1);
+      return e;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * reuses and records the nodes of parsers with a {@code NodeFactory}.
+   * Every token knows the innermost such parser which consumed it, and
+   * every entry the one which ran it, so that the entries depending on a
+   * token are found from there. What the parse changes about the entries
+   * is only applied by {@link #commit}, so that a parse failing half way
+   * leaves everything valid as it was.
+   * </p>
+   */
+  private final class Memo extends NodeStack<N,C> {
+    private final Replay lex;
+    // marks the entries recorded or reused by this parse
+    private final int seen;
+    // token positions where the parsers entered started, and the entry
+    // being recorded before each was entered
+    private int[] starts = new int[16];
+    private final List<Entry<N,C>> outer = new ArrayList<>();
+    private Entry<N,C> current = null;
+    private int depth = 0;
+    // the entry of the parser which finished last
+    private Entry<N,C> finished = null;
+    // the runs of the repeat parsers which have not finished yet
+    private final List<Run<N,C>> repeating = new ArrayList<>();
+
+    // what commit() does: entries which become valid, entries and tokens
+    // which get a new parent or owner, and runs to keep
+    private final List<Entry<N,C>> recorded = new ArrayList<>();
+    private final List<Entry<N,C>> moved = new ArrayList<>();
+    private final List<Entry<N,C>> parents = new ArrayList<>();
+    private final List<Tok<N,C>> shifted = new ArrayList<>();
+    private final List<Entry<N,C>> owners = new ArrayList<>();
+    private final List<Run<N,C>> runs = new ArrayList<>();
+    Memo(Replay lex) {
+      this.lex = lex;
+      this.seen = ++stamp;
+    }
+    @Override
+    void shift(Lexer<N,C> l) throws ParseException {
+      Tok<N,C> t = token(lex.pos);
+      if( t.owner!=current ) {
+        shifted.add(t);
+        owners.add(current);
+      }
+      super.shift(l);
+    }
+    @Override
+    int enter(AbstractParser<N,C> p) throws ParseException {
+      Entry<N,C> e = null;
+      if( p.hasNodeFactory() ) {
+        e = token(lex.pos).find(p);
+        if( e!=null && e.valid ) {
+          reuse(e);
+          return REUSED;
+        }
+      }
+      if( depth==starts.length ) starts = Arrays.copyOf(starts, 2*depth);
+      starts[depth++] = lex.pos;
+      outer.add(current);
+      if( p.hasNodeFactory() ) {
+        current = e==null ? new Entry<>(p, token(lex.pos)) : e;
+      }
+      return super.enter(p);
+    }
+    private void reuse(Entry<N,C> e) {
+      push(e.node);
+      lex.peeked = Math.max(lex.peeked, lex.pos+e.reach);
+      lex.pos += e.consumed;
+      e.stamp = seen;
+      if( e.parent!=current ) {
+        moved.add(e);
+        parents.add(current);
+      }
+      finished = e;
+    }
+    @Override
+    void exit(AbstractParser<N,C> p, int mark) {
+      super.exit(p, mark);
+      int start = starts[--depth];
+      Entry<N,C> e = current;
+      current = outer.remove(depth);
+      if( !p.hasNodeFactory() ) return;
+      e.node = size()>mark ? get(size()-1) : null;
+      e.consumed = lex.pos-start;
+      e.reach = Math.max(lex.pos, lex.peeked)-start;
+      e.last = token(Math.min(start+e.reach, tokenCount()-1));
+      e.stamp = seen;
+      beyond = Math.max(beyond, e.reach-e.consumed);
+      recorded.add(e);
+      if( e.parent!=current ) {
+        moved.add(e);
+        parents.add(current);
+      }
+      finished = e;
+    }
+    @Override
+    int repeat(RepeatParser<N,C> p, int count) {
+      AbstractParser<N,C> child = p.child();
+      if( !child.hasNodeFactory() ) return 0;
+      Run<N,C> run;
+      if( count==0 ) {
+        Tok<N,C> t = token(lex.pos);
+        run = new Run<>(p, t, t.run(p));
+        repeating.add(run);
+      } else {
+        run = repeating.get(repeating.size()-1);
+        if( run.size<count ) run.add(finished);
+      }
+
+      // the child would reuse its entry here, which may be one of a run
+      // of valid entries recorded before
+      Run<N,C> old = run.old;
+      if( old==null ) return 0;
+      Entry<N,C> e = token(lex.pos).find(child);
+      if( e==null || e.index<0 || e.index>=old.size
+          || old.elements[e.index]!=e ) {
+        return 0;
+      }
+      int n = 0;
+      for(int i=e.index; i<old.size && count+n<p.max(); i++) {
+        e = old.elements[i];
+        if( !e.valid || e.at!=token(lex.pos) ) break;
+        reuse(e);
+        run.add(e);
+        n += 1;
+      }
+      return n;
+    }
+    @Override
+    void repeated(RepeatParser<N,C> p, int count) {
+      if( !p.child().hasNodeFactory() ) return;
+      Run<N,C> run = repeating.remove(repeating.size()-1);
+      if( run.size<count ) run.add(finished);
+      runs.add(run);
+    }
+    /**
+     * <p>
+     * applies what the parse changed. Old entries which the parse went
+     * through, instead of reusing them, could no longer be found from all
+     * the tokens they consumed, so they become invalid.
+     * </p>
+     */
+    void commit() {
+      for(Entry<N,C> e : moved) {
+        drop(e.parent);
+      }
+      for(Tok<N,C> t : shifted) {
+        drop(t.owner);
+      }
+      for(Entry<N,C> e : recorded) {
+        e.valid = true;
+      }
+      for(int i=0; i<moved.size(); i++) {
+        moved.get(i).parent = parents.get(i);
+      }
+      for(int i=0; i<shifted.size(); i++) {
+        shifted.get(i).owner = owners.get(i);
+      }
+      for(Run<N,C> run : runs) {
+        run.install();
+      }
+    }
+    private void drop(Entry<N,C> e) {
+      for(; e!=null && e.stamp!=seen; e=e.parent) {
+        e.stamp = seen;
+        e.invalidate();
+      }
+    }
+  }
+}
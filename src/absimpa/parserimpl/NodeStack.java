@@ -0,0 +1,197 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+
+import absimpa.Lexer;
+import absimpa.MarkableLexer;
+import absimpa.NodeFactory;
+import absimpa.ParseException;
+
+/**
+ * <p>
+ * is the value stack shared by all parsers taking part in one parse. A
+ * parser pushes the nodes it recognizes onto the stack. A parser with a
+ * {@link absimpa.NodeFactory} remembers the stack size before it starts,
+ * hands the range of nodes pushed since then to the factory and replaces
+ * them with the result. Parsers without a factory just leave their nodes
+ * on the stack for the parent, so nothing is copied.
+ * </p>
+ * <p>
+ * Parsers report tokens and the start and end of their work through
+ * {@link #shift}, {@link #enter} and {@link #exit}, so that the
+ * {@link EventStack} can turn them into events instead of nodes. While
+ * parsers backtrack, the {@link Packrat} memo hooks into the same calls.
+ * A {@link RepeatParser} reports its repetitions through {@link #repeat}
+ * and {@link #repeated}, which the {@link IncrementalParser} uses to skip
+ * those it knows already.
+ * </p>
+ */
+class NodeStack<N,C extends Enum<C>> {
+  /**
+   * returned by {@link #enter} if the parser need not run, because its
+   * result was already pushed.
+   */
+  static final int REUSED = -1;
+
+  private Object[] nodes = new Object[16];
+  private int size = 0;
+
+  // created by the first backtracking parser taking part in the parse
+  private Packrat<N,C> packrat = null;
+  int memoLimit = Packrat.DEFAULT_LIMIT;
+  /*+******************************************************************/
+  /**
+   * consumes the current token of {@code lex} and pushes its leaf node.
+   */
+  void shift(Lexer<N,C> lex) throws ParseException {
+    push(lex.next());
+  }
+  /*+******************************************************************/
+  /**
+   * is called before {@code p} parses its input.
+   *
+   * @return the mark to pass to {@link #exit} or {@link #REUSED}
+   */
+  int enter(AbstractParser<N,C> p) throws ParseException {
+    if( packrat==null ) return size;
+    return packrat.enter(p, this);
+  }
+  /*+******************************************************************/
+  /**
+   * is called after {@code p} parsed its input, with the value
+   * {@link #enter} returned before.
+   */
+  void exit(AbstractParser<N,C> p, int mark) {
+    p.reduce(this, mark);
+    if( packrat!=null ) packrat.exit(p, mark, this);
+  }
+  /*+******************************************************************/
+  /**
+   * is called instead of {@link #exit} if {@code p} threw {@code e}.
+   */
+  void fail(AbstractParser<N,C> p, int mark, ParseException e) {
+    if( packrat!=null ) packrat.fail(p, mark, e);
+  }
+  /*+******************************************************************/
+  /**
+   * is called by {@code p} before each repetition of its child, with the
+   * number of repetitions recognized so far. It may recognize further
+   * repetitions without running the child, pushing their nodes.
+   *
+   * @return the number of repetitions recognized
+   */
+  int repeat(RepeatParser<N,C> p, int count) throws ParseException {
+    return 0;
+  }
+  /*+******************************************************************/
+  /**
+   * is called by {@code p} after the last repetition of its child, with
+   * the number of repetitions recognized.
+   */
+  void repeated(RepeatParser<N,C> p, int count) {
+  }
+  /*+******************************************************************/
+  /**
+   * replaces the nodes from position {@code mark} upwards by what
+   * {@code nf} makes of them, unless {@code nf} is {@code null}. This is
+   * for parsers that combine parts of their input on their own, before
+   * they {@link #exit}.
+   */
+  void combine(NodeFactory<N> nf, int mark) {
+    if( nf==null ) return;
+    N node = nf.create(view(mark));
+    truncate(mark);
+    push(node);
+  }
+  /*+******************************************************************/
+  /**
+   * tells whether nodes are kept at all. If not, parsers need not compute
+   * nodes to push.
+   */
+  boolean keepsNodes() {
+    return true;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the memo for parsers that backtrack on the input provided by
+   * {@code lex}, creating it on first use.
+   */
+  Packrat<N,C> packrat(MarkableLexer<N,C> lex) {
+    if( packrat==null ) packrat = new Packrat<>(lex, memoLimit);
+    return packrat;
+  }
+  /*+******************************************************************/
+  /**
+   * makes the stack ready for the next parse.
+   */
+  void clear() {
+    truncate(0);
+    packrat = null;
+  }
+  /*+******************************************************************/
+  int size() {
+    return size;
+  }
+  /*+******************************************************************/
+  /**
+   * pushes {@code node} unless it is {@code null}, in which case it is
+   * discarded.
+   */
+  void push(N node) {
+    if( node==null ) return;
+    if( size==nodes.length ) {
+      nodes = Arrays.copyOf(nodes, 2*size);
+    }
+    nodes[size++] = node;
+  }
+  /*+******************************************************************/
+  N get(int i) {
+    @SuppressWarnings("unchecked")
+    N node = (N)nodes[i];
+    return node;
+  }
+  /*+******************************************************************/
+  /**
+   * returns a copy of the nodes from position {@code from} upwards.
+   */
+  Object[] copy(int from) {
+    return Arrays.copyOfRange(nodes, from, size);
+  }
+  /*+******************************************************************/
+  /**
+   * drops all nodes from position {@code to} upwards.
+   */
+  void truncate(int to) {
+    Arrays.fill(nodes, to, size, null);
+    size = to;
+  }
+  /*+******************************************************************/
+  /**
+   * returns a read only view of the nodes from position {@code from} to
+   * the top of the stack. The view must not be used after the stack has
+   * been changed.
+   */
+  List<N> view(int from) {
+    return new Range(from, size);
+  }
+  /*+******************************************************************/
+  private final class Range extends AbstractList<N> implements RandomAccess {
+    private final int from;
+    private final int to;
+    Range(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+    @Override
+    public N get(int i) {
+      if( i<0 || i>=to-from ) {
+        throw new IndexOutOfBoundsException("index "+i+", size "+(to-from));
+      }
+      return NodeStack.this.get(from+i);
+    }
+    @Override
+    public int size() {
+      return to-from;
+    }
+  }
+}
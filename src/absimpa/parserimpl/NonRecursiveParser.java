@@ -0,0 +1,99 @@
+package absimpa.parserimpl;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * runs a compiled parser without recursion on the Java call stack. Each
+ * parser taking part in the parse gets an activation record on a stack kept
+ * on the heap, so deeply nested input does not cause a
+ * {@link StackOverflowError}. The nesting depth is limited only by the
+ * {@code maxDepth} given to the constructor, beyond which a
+ * {@link ParseException} is thrown.
+ * </p>
+ * <p>
+ * The result, including the calls of the {@code NodeFactory} objects and
+ * the exceptions thrown for wrong input, is the same as for the recursive
+ * parser that is wrapped.
+ * </p>
+ *
+ * @see Grammar#compileNonRecursive(int)
+ */
+public final class NonRecursiveParser<N,C extends Enum<C>>
+    implements Parser<N,C>
+{
+  private final AbstractParser<N,C> root;
+  private final int maxDepth;
+  /*+******************************************************************/
+  /**
+   * <p>
+   * wraps a parser obtained from {@link Grammar#compile}.
+   * </p>
+   *
+   * @param maxDepth is the maximum number of parsers active at any time
+   *        during the parse. Every level of nesting in the input typically
+   *        needs a few of them.
+   * @throws IllegalArgumentException if {@code parser} was not created by
+   *         {@link Grammar#compile} or {@code maxDepth} is less than 1
+   */
+  public NonRecursiveParser(Parser<N,C> parser, int maxDepth) {
+    if( !(parser instanceof AbstractParser) ) {
+      throw new IllegalArgumentException("not a compiled parser: "+parser);
+    }
+    if( maxDepth<1 ) {
+      throw new IllegalArgumentException("maxDepth must be positive, but is "
+          +maxDepth);
+    }
+    this.root = (AbstractParser<N,C>)parser;
+    this.maxDepth = maxDepth;
+  }
+  /*+******************************************************************/
+  @Override
+  public N parse(Lexer<N,C> lex) throws ParseException {
+    return parse(lex, new StackContext<N,C>());
+  }
+  /*+******************************************************************/
+  @Override
+  public N parse(Lexer<N,C> lex, ParseContext<N,C> context)
+    throws ParseException
+  {
+    StackContext<N,C> c = StackContext.of(context);
+    c.begin();
+    try {
+      return parse(lex, c.stack, c);
+    } finally {
+      c.end();
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  public void parse(Lexer<N,C> lex, ParseListener<N,C> listener)
+    throws ParseException
+  {
+    root.checkListenable();
+    parse(lex, new EventStack<>(listener), new StackContext<N,C>());
+  }
+  /*+******************************************************************/
+  private N parse(Lexer<N,C> lex, NodeStack<N,C> stack,
+                  StackContext<N,C> context)
+    throws ParseException
+  {
+    int status = root.applicable(lex.current());
+    if( status!=AbstractParser.DONE ) {
+      return root.result(status, lex, stack);
+    }
+
+    Steps<N,C> steps = new Steps<>(root, maxDepth, context.frames);
+    try {
+      steps.start(stack);
+      steps.run(lex, stack, null);
+    } finally {
+      context.frames = steps.frames();
+    }
+    return root.result(AbstractParser.DONE, lex, stack);
+  }
+  /*+******************************************************************/
+  public String toString() {
+    return String.format("NonRecursive[%s]", root);
+  }
+}
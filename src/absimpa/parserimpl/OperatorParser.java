@@ -0,0 +1,265 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * parses operands joined by prefix, infix and postfix operators with a
+ * single precedence climbing loop. Every operator has a binding power to
+ * its left, its right or both. An operator following an operand is
+ * applied only if its left power is at least the minimum power for the
+ * operand, which is the right power of the operator before it. Otherwise
+ * the operators still pending are applied first, the most recent one
+ * first. The operators pending are kept in an array, so the nesting of
+ * operators in the input does not nest calls on the Java call stack.
+ * </p>
+ * <p>
+ * Each operator applied combines its token with the nodes of its operands
+ * with its own {@link NodeFactory}.
+ * </p>
+ */
+public final class OperatorParser<N,C extends Enum<C>>
+    extends AbstractParser<N,C>
+{
+  private final AbstractParser<N,C> operand;
+  // non-null if the operand is a plain token parser to be matched inline
+  private final C operandCode;
+
+  // the operators by the ordinal of their token code, those that start an
+  // operand and those following one
+  private final Operator<N,C>[] prefix;
+  private final Operator<N,C>[] after;
+  /*+******************************************************************/
+  @SuppressWarnings("unchecked")
+  public OperatorParser(EnumSet<C> lookahead, AbstractParser<N,C> operand) {
+    super(lookahead, false);
+    this.operand = operand;
+    this.operandCode = operand.plainTokenCode();
+    int codes = EnumSet.complementOf(lookahead).size()+lookahead.size();
+    this.prefix = new Operator[codes];
+    this.after = new Operator[codes];
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * adds a prefix operator, the operand of which is parsed with a minimum
+   * power of {@code right}. The {@code NodeFactory} receives the
+   * operator's token followed by the operand, and may be {@code null} to
+   * leave them on the stack.
+   * </p>
+   *
+   * @throws IllegalArgumentException if {@code code} is a prefix operator
+   *         already
+   */
+  public void addPrefix(C code, int right, NodeFactory<N> nf) {
+    add(prefix, new Operator<>(code, -1, power(right), nf));
+  }
+  /**
+   * <p>
+   * adds an infix operator, applied if {@code left} is at least the
+   * minimum power of the operand before it. The operand following it is
+   * parsed with a minimum power of {@code right}. The
+   * {@code NodeFactory} receives the left operand, the operator's token
+   * and the right operand.
+   * </p>
+   *
+   * @throws IllegalArgumentException if {@code code} is an infix or
+   *         postfix operator already
+   */
+  public void addInfix(C code, int left, int right, NodeFactory<N> nf) {
+    add(after, new Operator<>(code, power(left), power(right), nf));
+  }
+  /**
+   * <p>
+   * adds a postfix operator, applied if {@code left} is at least the
+   * minimum power of the operand before it. The {@code NodeFactory}
+   * receives the operand followed by the operator's token.
+   * </p>
+   *
+   * @throws IllegalArgumentException if {@code code} is an infix or
+   *         postfix operator already
+   */
+  public void addPostfix(C code, int left, NodeFactory<N> nf) {
+    add(after, new Operator<>(code, power(left), -1, nf));
+  }
+  private static int power(int power) {
+    if( power<0 ) {
+      throw new IllegalArgumentException("binding power must not be "
+          +"negative, but is "+power);
+    }
+    return power;
+  }
+  private void add(Operator<N,C>[] table, Operator<N,C> op) {
+    checkMutable();
+    int i = op.code.ordinal();
+    if( table[i]!=null ) {
+      throw new IllegalArgumentException("operator "+op.code
+          +" is defined already");
+    }
+    table[i] = op;
+  }
+  /*+******************************************************************/
+  @Override
+  List<AbstractParser<N,C>> children() {
+    return Collections.singletonList(operand);
+  }
+  /**
+   * returns the prefix operators followed by the infix and postfix
+   * operators.
+   */
+  List<Operator<N,C>> operators() {
+    List<Operator<N,C>> result = new ArrayList<>();
+    for(Operator<N,C> op : prefix) if( op!=null ) result.add(op);
+    for(Operator<N,C> op : after) if( op!=null ) result.add(op);
+    return result;
+  }
+  /*+******************************************************************/
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    Climb<N,C> climb = new Climb<>();
+    int action = advance(climb, lex, stack);
+    while( action!=FINISH ) {
+      if( action==CALL ) {
+        int r = operand.parseInternal(lex, stack);
+        if( r!=DONE ) {
+          throw lex.parseException(getLookahead());
+        }
+      }
+      action = advance(climb, lex, stack);
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    if( childStatus==NOTAPPLICABLE || childStatus==EPSILON ) {
+      throw lex.parseException(getLookahead());
+    }
+    @SuppressWarnings("unchecked")
+    Climb<N,C> climb = (Climb<N,C>)f.value;
+    if( climb==null ) {
+      climb = new Climb<>();
+      f.value = climb;
+    }
+    int action = advance(climb, lex, stack);
+    if( action==CALL ) {
+      f.call = operand;
+    } else if( action==FINISH ) {
+      f.value = null;
+    }
+    return action;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * runs the precedence climbing loop until it consumed a token, needs
+   * the operand parsed or is done, returning {@link #CONTINUE},
+   * {@link #CALL} or {@link #FINISH}, respectively.
+   * </p>
+   */
+  private int advance(Climb<N,C> climb, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    while( true ) {
+      C code = lex.current();
+      if( climb.atOperand ) {
+        Operator<N,C> op = prefix[code.ordinal()];
+        if( op!=null ) {
+          climb.push(op, stack.size());
+          climb.min = op.right;
+          stack.shift(lex);
+          return CONTINUE;
+        }
+        climb.atOperand = false;
+        climb.mark = stack.size();
+        if( operandCode==null ) return CALL;
+        if( code!=operandCode ) {
+          throw lex.parseException(getLookahead());
+        }
+        stack.shift(lex);
+        return CONTINUE;
+      }
+
+      Operator<N,C> op = after[code.ordinal()];
+      if( op!=null && op.left>=climb.min ) {
+        if( op.right<0 ) {
+          stack.shift(lex);
+          stack.combine(op.nf, climb.mark);
+        } else {
+          climb.push(op, climb.mark);
+          climb.min = op.right;
+          climb.atOperand = true;
+          stack.shift(lex);
+        }
+        return CONTINUE;
+      }
+      if( climb.depth==0 ) return FINISH;
+
+      // the operand is complete, so the operator before it is applied
+      climb.depth -= 1;
+      op = climb.ops[climb.depth];
+      climb.mark = climb.marks[climb.depth];
+      climb.min = climb.mins[climb.depth];
+      climb.ops[climb.depth] = null;
+      stack.combine(op.nf, climb.mark);
+    }
+  }
+  /*+******************************************************************/
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("OPS{").append(operand.getName());
+    for(Operator<N,C> op : operators()) sb.append(',').append(op.code);
+    return sb.append('}').toString();
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * an operator with its binding powers, the left one being negative for
+   * a prefix and the right one negative for a postfix operator.
+   * </p>
+   */
+  static final class Operator<N,C extends Enum<C>> {
+    final C code;
+    final int left, right;
+    final NodeFactory<N> nf;
+    Operator(C code, int left, int right, NodeFactory<N> nf) {
+      this.code = code;
+      this.left = left;
+      this.right = right;
+      this.nf = nf;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * is the state of the precedence climbing loop: the operators waiting
+   * for their right operand, each with the stack position where its node
+   * starts and the minimum power of the operand before it.
+   * </p>
+   */
+  private static final class Climb<N,C extends Enum<C>> {
+    boolean atOperand = true;
+    // start and minimum power of the current operand
+    int mark;
+    int min = 0;
+    @SuppressWarnings("unchecked")
+    Operator<N,C>[] ops = new Operator[8];
+    int[] marks = new int[8];
+    int[] mins = new int[8];
+    int depth = 0;
+
+    void push(Operator<N,C> op, int start) {
+      if( depth==ops.length ) {
+        ops = Arrays.copyOf(ops, 2*depth);
+        marks = Arrays.copyOf(marks, 2*depth);
+        mins = Arrays.copyOf(mins, 2*depth);
+      }
+      ops[depth] = op;
+      marks[depth] = start;
+      mins[depth] = min;
+      depth += 1;
+    }
+  }
+}
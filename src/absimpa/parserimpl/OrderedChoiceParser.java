@@ -0,0 +1,159 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * tries its children in order until one of them recognizes the input,
+ * returning to where it started after each failure. The lexer must be a
+ * {@link MarkableLexer}.
+ * </p>
+ */
+public final class OrderedChoiceParser<N,C extends Enum<C>>
+    extends AbstractParser<N,C>
+{
+  private final List<AbstractParser<N,C>> children;
+  private final AbstractParser<N,C>[] childArray;
+  /*+******************************************************************/
+  @SuppressWarnings("unchecked")
+  public OrderedChoiceParser(List<AbstractParser<N,C>> children,
+                             EnumSet<C> lookahead, boolean mayBeEpsilon) {
+    super(lookahead, mayBeEpsilon);
+    this.children = children;
+    this.childArray = children.toArray(new AbstractParser[children.size()]);
+  }
+  /*+******************************************************************/
+  @Override
+  boolean memoized() {
+    return true;
+  }
+  /*+******************************************************************/
+  private static <N,C extends Enum<C>> MarkableLexer<N,C>
+  markable(Lexer<N,C> lex)
+  {
+    if( lex instanceof MarkableLexer ) return (MarkableLexer<N,C>)lex;
+    throw new IllegalArgumentException("an OrderedChoice needs a "
+        +"MarkableLexer to backtrack, but got "+lex.getClass().getName());
+  }
+  /*+******************************************************************/
+  @Override
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    MarkableLexer<N,C> mlex = markable(lex);
+    Packrat<N,C> memo = stack.packrat(mlex);
+    int ordinal = lex.current().ordinal();
+    int size = stack.size();
+    ParseException failure = null;
+    int failurePos = -1;
+
+    int mark = mlex.mark();
+    memo.depth += 1;
+    try {
+      for(AbstractParser<N,C> child : childArray) {
+        if( !child.inLookahead(ordinal) ) {
+          if( child.mayBeEpsilon ) return;
+          continue;
+        }
+        try {
+          child.parseInternal(lex, stack);
+          return;
+        } catch( ParseException e ) {
+          int pos = mlex.position();
+          if( pos>failurePos ) {
+            failure = e;
+            failurePos = pos;
+          }
+          mlex.reset(mark);
+          stack.truncate(size);
+        }
+      }
+      // leave the lexer where the failure reported happened, so that an
+      // enclosing choice can compare it with its other failures
+      if( failure!=null ) mlex.reset(failurePos);
+    } finally {
+      memo.depth -= 1;
+      mlex.release(mark);
+    }
+    if( failure==null ) throw lex.parseException(getLookahead());
+    throw failure;
+  }
+  /*+******************************************************************/
+  @Override
+  boolean catches(Frame<N,C> f) {
+    return f.call!=null;
+  }
+  /*+******************************************************************/
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    MarkableLexer<N,C> mlex = markable(lex);
+    Packrat<N,C> memo = stack.packrat(mlex);
+
+    if( f.state==0 ) {
+      f.lexMark = mlex.mark();
+      f.failurePos = -1;
+      memo.depth += 1;
+    } else if( childStatus==FAILED ) {
+      int pos = mlex.position();
+      if( pos>f.failurePos ) {
+        f.failure = f.thrown;
+        f.failurePos = pos;
+      }
+      f.thrown = null;
+      mlex.reset(f.lexMark);
+      stack.truncate(f.mark);
+    } else {
+      return finish(f, mlex, memo);
+    }
+
+    int ordinal = lex.current().ordinal();
+    for(int i=f.state; i<childArray.length; i++) {
+      AbstractParser<N,C> child = childArray[i];
+      if( !child.inLookahead(ordinal) ) {
+        if( child.mayBeEpsilon ) return finish(f, mlex, memo);
+        continue;
+      }
+      f.state = i+1;
+      f.call = child;
+      return CALL;
+    }
+    if( f.failure!=null ) mlex.reset(f.failurePos);
+    finish(f, mlex, memo);
+    if( f.failure==null ) throw lex.parseException(getLookahead());
+    throw f.failure;
+  }
+  @Override
+  void abandon(Frame<N,C> f, Lexer<N,C> lex, NodeStack<N,C> stack) {
+    MarkableLexer<N,C> mlex = markable(lex);
+    finish(f, mlex, stack.packrat(mlex));
+  }
+  private int finish(Frame<N,C> f, MarkableLexer<N,C> mlex,
+                     Packrat<N,C> memo)
+  {
+    f.call = null;
+    memo.depth -= 1;
+    mlex.release(f.lexMark);
+    return FINISH;
+  }
+  /*+******************************************************************/
+  @Override
+  List<AbstractParser<N,C>> children() {
+    return children;
+  }
+  /*+******************************************************************/
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    try(Formatter fmt = new Formatter(sb)) {
+      fmt.format("%s[", getName());
+      String sep = "";
+      for(AbstractParser<N,C> p : children) {
+        fmt.format("%s%s", sep, p.getName());
+        sep = "/";
+      }
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,142 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * remembers the results of parsers while an {@link OrderedChoiceParser}
+ * tries its alternatives, keyed by the parser and the position in the
+ * input where it started. Running the same parser at the same position
+ * again then costs nothing, whether it succeeded the first time or threw a
+ * {@link ParseException}. This keeps backtracking linear in the length of
+ * the input instead of exponential.
+ * </p>
+ * <p>
+ * Only parsers with a name or {@code NodeFactory} and those that are
+ * {@link AbstractParser#memoized memoized} anyway are remembered. The
+ * number of results is limited, the one used least recently being
+ * forgotten first.
+ * </p>
+ */
+final class Packrat<N,C extends Enum<C>> {
+  static final int DEFAULT_LIMIT = 1<<16;
+
+  final MarkableLexer<N,C> lex;
+  // number of alternatives being tried, results are only remembered while
+  // this is positive
+  int depth = 0;
+
+  private final Map<Key,Result> memo;
+
+  // the parsers entered while backtracking, with their stack marks and
+  // their start positions
+  private Object[] parsers = new Object[16];
+  private int[] marks = new int[16];
+  private int[] starts = new int[16];
+  private int active = 0;
+  /*+******************************************************************/
+  Packrat(MarkableLexer<N,C> lex, final int limit) {
+    this.lex = lex;
+    this.memo = new LinkedHashMap<Key,Result>(64, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key,Result> eldest) {
+        return size()>limit;
+      }
+    };
+  }
+  /*+******************************************************************/
+  /**
+   * @see NodeStack#enter
+   */
+  int enter(AbstractParser<N,C> p, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    int mark = stack.size();
+    if( depth==0 ) return mark;
+
+    int pos = lex.position();
+    Result r = memo.get(new Key(p, pos));
+    if( r!=null ) {
+      // on failure, move to where it happened, like the first time
+      lex.reset(r.end);
+      if( r.failure!=null ) throw r.failure;
+      for(Object node : r.nodes) {
+        @SuppressWarnings("unchecked")
+        N n = (N)node;
+        stack.push(n);
+      }
+      return NodeStack.REUSED;
+    }
+
+    if( active==marks.length ) {
+      parsers = Arrays.copyOf(parsers, 2*active);
+      marks = Arrays.copyOf(marks, 2*active);
+      starts = Arrays.copyOf(starts, 2*active);
+    }
+    parsers[active] = p;
+    marks[active] = mark;
+    starts[active] = pos;
+    active += 1;
+    return mark;
+  }
+  /*+******************************************************************/
+  /**
+   * @see NodeStack#exit
+   */
+  void exit(AbstractParser<N,C> p, int mark, NodeStack<N,C> stack) {
+    if( !pop(p, mark) ) return;
+    Result r = new Result(lex.position(), stack.copy(mark), null);
+    memo.put(new Key(p, starts[active]), r);
+  }
+  /*+******************************************************************/
+  /**
+   * @see NodeStack#fail
+   */
+  void fail(AbstractParser<N,C> p, int mark, ParseException e) {
+    if( !pop(p, mark) ) return;
+    memo.put(new Key(p, starts[active]), new Result(lex.position(), null, e));
+  }
+  /*+******************************************************************/
+  // Parsers entered before backtracking started were not recorded, so
+  // only pop if p is the parser recorded last.
+  private boolean pop(AbstractParser<N,C> p, int mark) {
+    if( active==0 || parsers[active-1]!=p || marks[active-1]!=mark ) {
+      return false;
+    }
+    active -= 1;
+    parsers[active] = null;
+    return true;
+  }
+  /*+******************************************************************/
+  private static final class Key {
+    private final Object parser;
+    private final int pos;
+    Key(Object parser, int pos) {
+      this.parser = parser;
+      this.pos = pos;
+    }
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(parser)*31+pos;
+    }
+    @Override
+    public boolean equals(Object o) {
+      if( !(o instanceof Key) ) return false;
+      Key other = (Key)o;
+      return parser==other.parser && pos==other.pos;
+    }
+  }
+  /*+******************************************************************/
+  private static final class Result {
+    final int end;
+    final Object[] nodes;
+    final ParseException failure;
+    Result(int end, Object[] nodes, ParseException failure) {
+      this.end = end;
+      this.nodes = nodes;
+      this.failure = failure;
+    }
+  }
+}
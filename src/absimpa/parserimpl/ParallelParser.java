@@ -0,0 +1,199 @@
+package absimpa.parserimpl;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import absimpa.*;
+import absimpa.lexer.SimpleLexer;
+
+/**
+ * <p>
+ * parses input consisting of many independent units, like statements or
+ * records, on several threads. The parser to use is compiled from a
+ * {@link Repeat} over the grammar for one unit. Each unit must end with a
+ * synchronization token, like a semicolon, that does not appear anywhere
+ * else. The input is scanned for this token first and split behind it into
+ * pieces, which are parsed on a {@link ForkJoinPool}. The nodes of the
+ * units are then handed in order to the {@code NodeFactory} of the
+ * {@code Repeat}, as if the input had been parsed as a whole.
+ * </p>
+ * <p>
+ * In contrast to parsing with the {@code Repeat} alone, all of the input
+ * must consist of units, otherwise a {@link ParseException} is thrown. If
+ * several pieces contain errors, the exception for the first one is
+ * thrown. Its column counts from the start of all of the input.
+ * </p>
+ * <p>
+ * Leaves and nodes are created on the threads of the pool, so the
+ * {@code LeafFactory} and the {@code NodeFactory} objects must be thread
+ * safe. A {@code ParallelParser} itself can be used by several threads at
+ * the same time.
+ * </p>
+ */
+public final class ParallelParser<N,C extends Enum<C>> {
+  // pieces per thread of the pool, to even out differences in their size
+  private static final int PIECES_PER_THREAD = 4;
+
+  private final RepeatParser<N,C> root;
+  private final C syncCode;
+  private final Supplier<? extends SimpleLexer<N,C>> lexers;
+  /*+******************************************************************/
+  /**
+   * @param parser must be obtained by compiling a {@link Repeat} without
+   *        an upper limit
+   * @param syncCode is the token code which ends every unit and does not
+   *        appear within a unit
+   * @param lexers provides a new lexer for every piece of input
+   * @throws IllegalArgumentException if {@code parser} is not compiled
+   *         from a {@code Repeat} without an upper limit
+   */
+  public ParallelParser(Parser<N,C> parser, C syncCode,
+                        Supplier<? extends SimpleLexer<N,C>> lexers)
+  {
+    if( !(parser instanceof RepeatParser) ) {
+      throw new IllegalArgumentException("not compiled from a Repeat: "
+          +parser);
+    }
+    this.root = (RepeatParser<N,C>)parser;
+    if( root.max()!=Integer.MAX_VALUE ) {
+      throw new IllegalArgumentException("the Repeat must not have an upper "
+          +"limit, but has "+root.max());
+    }
+    this.syncCode = syncCode;
+    this.lexers = lexers;
+  }
+  /*+******************************************************************/
+  /**
+   * parses the {@code text} on the {@link ForkJoinPool#commonPool}.
+   */
+  public N parse(CharSequence text) throws ParseException {
+    return parse(text, ForkJoinPool.commonPool());
+  }
+  /*+******************************************************************/
+  /**
+   * parses the {@code text} on the given {@code pool}.
+   */
+  public N parse(CharSequence text, ForkJoinPool pool) throws ParseException {
+    int[] cuts = split(text, pool.getParallelism()*PIECES_PER_THREAD);
+    int pieces = cuts.length-1;
+    Object[][] nodes = new Object[pieces][];
+    int[] counts = new int[pieces];
+    ParseException[] failures = new ParseException[pieces];
+
+    pool.invoke(new Pieces(text, cuts, 0, pieces, nodes, counts, failures));
+
+    NodeStack<N,C> stack = new NodeStack<>();
+    int count = 0;
+    for(int i=0; i<pieces; i++) {
+      if( failures[i]!=null ) throw failures[i];
+      for(Object node : nodes[i]) {
+        @SuppressWarnings("unchecked")
+        N n = (N)node;
+        stack.push(n);
+      }
+      count += counts[i];
+    }
+    if( count<root.min() ) {
+      SimpleLexer<N,C> lex = lexers.get();
+      lex.initAnalysis("");
+      ParseException e = lex.parseException(root.getLookahead());
+      e.setColumn(e.getColumn()+text.length());
+      throw e;
+    }
+    if( count==0 ) return null;
+    root.reduce(stack, 0);
+    return root.result(AbstractParser.DONE, null, stack);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * finds the offsets behind sync tokens at which to split the
+   * {@code text} into about {@code pieces} pieces of similar length.
+   * </p>
+   *
+   * @return the offsets, the first being 0 and the last the length of the
+   *         text
+   */
+  private int[] split(CharSequence text, int pieces) throws ParseException {
+    int minLength = Math.max(1, text.length()/pieces);
+    int[] cuts = new int[pieces+2];
+    int count = 1;
+    SimpleLexer<N,C> lex = lexers.get();
+    lex.initAnalysis(text);
+    while( !lex.atEnd() ) {
+      if( lex.current()==syncCode ) {
+        int end = lex.currentOffset()+lex.currentText().length();
+        if( end-cuts[count-1]>=minLength && end<text.length() ) {
+          if( count==cuts.length-1 ) cuts = Arrays.copyOf(cuts, 2*count);
+          cuts[count++] = end;
+        }
+      }
+      lex.skip();
+    }
+    cuts[count++] = text.length();
+    return Arrays.copyOf(cuts, count);
+  }
+  /*+******************************************************************/
+  /**
+   * parses the units in one piece of input, returning their number
+   */
+  private int parsePiece(CharSequence piece, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    AbstractParser<N,C> unit = root.child();
+    SimpleLexer<N,C> lex = lexers.get();
+    lex.initAnalysis(piece);
+    int count = 0;
+    while( !lex.atEnd() ) {
+      int status = unit.parseInternal(lex, stack);
+      if( status!=AbstractParser.DONE ) {
+        throw lex.parseException(unit.getLookahead());
+      }
+      count += 1;
+    }
+    return count;
+  }
+  /*+******************************************************************/
+  private final class Pieces extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final CharSequence text;
+    private final int[] cuts;
+    private final int from;
+    private final int to;
+    private final Object[][] nodes;
+    private final int[] counts;
+    private final ParseException[] failures;
+
+    Pieces(CharSequence text, int[] cuts, int from, int to, Object[][] nodes,
+           int[] counts, ParseException[] failures)
+    {
+      this.text = text;
+      this.cuts = cuts;
+      this.from = from;
+      this.to = to;
+      this.nodes = nodes;
+      this.counts = counts;
+      this.failures = failures;
+    }
+    @Override
+    protected void compute() {
+      if( to-from>1 ) {
+        int mid = (from+to)>>>1;
+        invokeAll(new Pieces(text, cuts, from, mid, nodes, counts, failures),
+                  new Pieces(text, cuts, mid, to, nodes, counts, failures));
+        return;
+      }
+      int start = cuts[from];
+      NodeStack<N,C> stack = new NodeStack<>();
+      try {
+        counts[from] = parsePiece(text.subSequence(start, cuts[to]), stack);
+        nodes[from] = stack.copy(0);
+      } catch( ParseException e ) {
+        e.setColumn(e.getColumn()+start);
+        failures[from] = e;
+      }
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package absimpa.parserimpl;
+
+import java.util.Set;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * parses tokens as they are pushed in by the caller, instead of pulling
+ * them from a {@link Lexer}. All state of the parse is kept in the
+ * {@code PushParser} object, so a single thread can run many parses at the
+ * same time, each fed whenever its input arrives. A {@code PushParser} is
+ * used for one parse and then discarded, while the compiled parser it
+ * runs can be shared by any number of them.
+ * </p>
+ * <p>
+ * The result, including the calls of the {@code NodeFactory} objects and
+ * the exceptions thrown for wrong input, is the same as for the parser
+ * that is wrapped. Parsers compiled from an {@link OrderedChoice} or from
+ * a {@link Choice} with {@link Choice#setLookahead lookahead} of more
+ * than one token are not supported, because they need to return to
+ * tokens already fed or look at tokens not yet fed.
+ * </p>
+ * <p>
+ * The tokens can be produced by an {@link absimpa.lexer.ChunkLexer}.
+ * </p>
+ */
+public final class PushParser<N,C extends Enum<C>> {
+  /**
+   * returned by {@link #feed} if the parse needs more tokens
+   */
+  public static final int NEED_MORE = 0;
+  /**
+   * returned by {@link #feed} if the parse is complete
+   */
+  public static final int DONE = 1;
+  /**
+   * returned by {@link #feed} if the input is wrong
+   */
+  public static final int ERROR = 2;
+
+  private final AbstractParser<N,C> root;
+  private final Steps<N,C> steps;
+  private final NodeStack<N,C> stack = new NodeStack<>();
+  private final Slot input;
+
+  private int state = NEED_MORE;
+  private boolean started = false;
+  private N result = null;
+  private ParseException exception = null;
+  /*+******************************************************************/
+  /**
+   * @param parser must be obtained from {@link Grammar#compile}
+   * @param eofCode is the token code marking the end of input. Once it is
+   *        fed, the parser assumes it repeats forever, like a
+   *        {@code Lexer} at the end of input does.
+   * @param maxDepth is the maximum number of parsers active at any time,
+   *        as for a {@link NonRecursiveParser}
+   * @throws IllegalArgumentException if {@code parser} was not created by
+   *         {@link Grammar#compile}, contains an {@code OrderedChoice} or
+   *         a {@code Choice} with more than one token of lookahead, or if
+   *         {@code maxDepth} is less than 1
+   */
+  public PushParser(Parser<N,C> parser, C eofCode, int maxDepth) {
+    if( !(parser instanceof AbstractParser) ) {
+      throw new IllegalArgumentException("not a compiled parser: "+parser);
+    }
+    if( maxDepth<1 ) {
+      throw new IllegalArgumentException("maxDepth must be positive, but is "
+          +maxDepth);
+    }
+    this.root = (AbstractParser<N,C>)parser;
+    root.checkPushable();
+    this.steps = new Steps<>(root, maxDepth, null);
+    this.input = new Slot(eofCode);
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * passes the next token to the parser, which then runs until it needs
+   * another one.
+   * </p>
+   * <p>
+   * If the grammar does not end with the end of input token, the parser
+   * may only notice that it is finished when the token following its
+   * input is fed. That token is then not consumed.
+   * </p>
+   *
+   * @return {@link #NEED_MORE}, {@link #DONE} or {@link #ERROR}
+   * @throws IllegalStateException if the parse is already finished
+   */
+  public int feed(C code, N leaf) {
+    if( state!=NEED_MORE ) {
+      throw new IllegalStateException("parse already finished");
+    }
+    input.put(code, leaf);
+    try {
+      if( !started ) {
+        started = true;
+        int status = root.applicable(code);
+        if( status!=AbstractParser.DONE ) {
+          return finish(root.result(status, input, stack));
+        }
+        steps.start(stack);
+      }
+      if( !steps.run(input, stack, input) ) return NEED_MORE;
+      return finish(root.result(AbstractParser.DONE, input, stack));
+    } catch( ParseException e ) {
+      exception = e;
+      state = ERROR;
+      stack.clear();
+      return state;
+    }
+  }
+  private int finish(N result) {
+    this.result = result;
+    state = DONE;
+    stack.clear();
+    return state;
+  }
+  /*+******************************************************************/
+  /**
+   * returns {@link #NEED_MORE}, {@link #DONE} or {@link #ERROR}, as
+   * returned by the last call to {@link #feed}.
+   */
+  public int getState() {
+    return state;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the parse result once {@link #feed} returned {@link #DONE}.
+   */
+  public N getResult() {
+    return result;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the exception describing the wrong input once {@link #feed}
+   * returned {@link #ERROR}.
+   */
+  public ParseException getException() {
+    return exception;
+  }
+  /*+******************************************************************/
+  /**
+   * holds the token fed last until the parsers take it
+   */
+  private final class Slot implements Lexer<N,C>, Steps.Input {
+    private final C eofCode;
+    private C code;
+    private N leaf;
+    private boolean full = false;
+    private boolean atEnd = false;
+    // number of tokens taken
+    private int count = 0;
+
+    Slot(C eofCode) {
+      this.eofCode = eofCode;
+    }
+    void put(C code, N leaf) {
+      this.code = code;
+      this.leaf = leaf;
+      full = true;
+      atEnd = code==eofCode;
+    }
+    @Override
+    public boolean available() {
+      return full || atEnd;
+    }
+    @Override
+    public C current() {
+      return code;
+    }
+    @Override
+    public N next() {
+      full = false;
+      count += 1;
+      return leaf;
+    }
+    @Override
+    public ParseException parseException(Set<C> expectedTokens) {
+      ParseException e = new ParseException(expectedTokens, code);
+      e.setMoreInfo("at token "+(count+1));
+      return e;
+    }
+  }
+}
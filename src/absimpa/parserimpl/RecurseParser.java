@@ -7,7 +7,7 @@ import java.util.*;
 
 import absimpa.*;
 
-public class RecurseParser<N,C extends Enum<C>>
+public final class RecurseParser<N,C extends Enum<C>>
     extends AbstractParser<N,C>
 {
   private AbstractParser<N,C> child;
@@ -19,14 +19,33 @@ public class RecurseParser<N,C extends Enum<C>>
   /*+******************************************************************/
   public void setChild(AbstractParser<N,C> child)
   {
+    checkMutable();
     this.child = child;
   }
   @Override
-  List<N> doParse(Lexer<N,C> lex) throws ParseException {
-    List<N> nodes = new ArrayList<>(1);
-    ParseResult<N> r = child.parseInternal(lex);
-    r.addToNodeList(nodes);
-    return nodes;
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    child.parseInternal(lex, stack);
+  }
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+  {
+    if( f.state>0 ) return FINISH;
+    f.state = 1;
+    f.call = child;
+    return CALL;
+  }
+  @Override
+  List<AbstractParser<N,C>> children() {
+    return Collections.singletonList(child);
+  }
+  @Override
+  boolean memoized() {
+    return true;
+  }
+  @Override
+  String ruleName() {
+    // the parser recursed into reports itself
+    return null;
   }
   public String toString() {
     return String.format("%s[%s]", getName(), child.getName());
@@ -7,11 +7,13 @@ import java.util.*;
 
 import absimpa.*;
 
-public class RepeatParser<N,C extends Enum<C>>
+public final class RepeatParser<N,C extends Enum<C>>
     extends AbstractParser<N,C>
 {
   private final int min, max;
   private AbstractParser<N,C> child;
+  // non-null if the child is a plain token parser to be matched inline
+  private final C tokenCode;
 
   public RepeatParser(EnumSet<C> childLookahead,
                       AbstractParser<N,C> child, boolean mayBeEpsilon,
@@ -26,27 +28,91 @@ public class RepeatParser<N,C extends Enum<C>>
     this.min = min;
     this.max = max;
     this.child = child;
+    this.tokenCode = child.plainTokenCode();
   }
   /*+******************************************************************/
-  List<N> doParse(Lexer<N,C> lex) throws ParseException {
-    List<N> nodes = new ArrayList<>(min);
-
+  AbstractParser<N,C> child() {
+    return child;
+  }
+  @Override
+  List<AbstractParser<N,C>> children() {
+    return Collections.singletonList(child);
+  }
+  int min() {
+    return min;
+  }
+  int max() {
+    return max;
+  }
+  /*+******************************************************************/
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    if( tokenCode!=null ) {
+      parseTokens(lex, stack);
+      return;
+    }
     int count = 0;
     while( count<max ) {
-      ParseResult<N> r = child.parseInternal(lex);
-      if( r.isEpsilon() ) {
+      count += stack.repeat(this, count);
+      if( count>=max ) break;
+      int r = child.parseInternal(lex, stack);
+      if( r==EPSILON ) {
         break;
       }
-      if( r.notApplicable() ) {
+      if( r==NOTAPPLICABLE ) {
         if( count<min ) {
-          throw lex.parseException(lookahead);
+          throw lex.parseException(getLookahead());
         }
         break;
       }
-      r.addToNodeList(nodes);
       count += 1;
     }
-    return nodes;
+    stack.repeated(this, count);
+  }
+  /*+******************************************************************/
+  private void parseTokens(Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    int count = 0;
+    while( count<max ) {
+      if( lex.current()!=tokenCode ) {
+        if( count<min ) {
+          throw lex.parseException(getLookahead());
+        }
+        break;
+      }
+      stack.shift(lex);
+      count += 1;
+    }
+  }
+  /*+******************************************************************/
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    // the state is the number of repetitions recognized so far
+    if( childStatus==EPSILON ) return FINISH;
+    if( childStatus==NOTAPPLICABLE ) {
+      if( f.state<min ) {
+        throw lex.parseException(getLookahead());
+      }
+      return FINISH;
+    }
+    if( childStatus==DONE ) f.state += 1;
+    if( f.state>=max ) return FINISH;
+
+    if( tokenCode==null ) {
+      f.call = child;
+      return CALL;
+    }
+    if( lex.current()!=tokenCode ) {
+      if( f.state<min ) {
+        throw lex.parseException(getLookahead());
+      }
+      return FINISH;
+    }
+    f.state += 1;
+    stack.shift(lex);
+    return f.state==max ? FINISH : CONTINUE;
   }
   /*+******************************************************************/
   public String toString() {
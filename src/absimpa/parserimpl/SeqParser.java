@@ -7,31 +7,74 @@ import java.util.*;
 
 import absimpa.*;
 
-public class SeqParser<N,C extends Enum<C>>
+public final class SeqParser<N,C extends Enum<C>>
     extends AbstractParser<N,C>
 {
   private final List<AbstractParser<N,C>> children;
+
+  // the children as an array and, where a child is a plain token parser,
+  // its token code to be matched inline
+  private final AbstractParser<N,C>[] childArray;
+  private final Object[] tokenCodes;
   /*+******************************************************************/
+  @SuppressWarnings("unchecked")
   public SeqParser(List<AbstractParser<N,C>> children,
                    EnumSet<C> lookahead, boolean mayBeEpsilon) {
     super(lookahead, mayBeEpsilon);
     this.children = children;
+    this.childArray = children.toArray(new AbstractParser[children.size()]);
+    this.tokenCodes = new Object[childArray.length];
+    for(int i=0; i<childArray.length; i++) {
+      tokenCodes[i] = childArray[i].plainTokenCode();
+    }
   }
   /*+******************************************************************/
   @Override
-  List<N> doParse(Lexer<N,C> lex) throws ParseException {
-    List<N> nodes = new ArrayList<>(children.size());
-
-    for(AbstractParser<N,C> child : children) {
-      ParseResult<N> r = child.parseInternal(lex);
-      if( r.notApplicable() ) {
-        throw lex.parseException(child.getLookahead());
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    for(int i=0; i<childArray.length; i++) {
+      Object code = tokenCodes[i];
+      if( code!=null ) {
+        if( lex.current()!=code ) {
+          throw lex.parseException(childArray[i].getLookahead());
+        }
+        stack.shift(lex);
+        continue;
       }
-      if( !r.isEpsilon() ) { 
-        r.addToNodeList(nodes);
+      AbstractParser<N,C> child = childArray[i];
+      int r = child.parseInternal(lex, stack);
+      if( r==NOTAPPLICABLE ) {
+        throw lex.parseException(child.getLookahead());
       }
     }
-    return nodes;
+  }
+  /*+******************************************************************/
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    int i = f.state;
+    if( childStatus==NOTAPPLICABLE ) {
+      throw lex.parseException(childArray[i-1].getLookahead());
+    }
+    if( i==childArray.length ) return FINISH;
+
+    Object code = tokenCodes[i];
+    if( code==null ) {
+      f.state = i+1;
+      f.call = childArray[i];
+      return CALL;
+    }
+    if( lex.current()!=code ) {
+      throw lex.parseException(childArray[i].getLookahead());
+    }
+    f.state = i+1;
+    stack.shift(lex);
+    return f.state==childArray.length ? FINISH : CONTINUE;
+  }
+  /*+******************************************************************/
+  @Override
+  List<AbstractParser<N,C>> children() {
+    return children;
   }
   /*+******************************************************************/
   public String toString() {
@@ -47,4 +90,4 @@ public class SeqParser<N,C extends Enum<C>>
     sb.append(']');
     return sb.toString();
   }
-}
\ No newline at end of file
+}
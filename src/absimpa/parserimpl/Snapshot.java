@@ -0,0 +1,422 @@
+package absimpa.parserimpl;
+
+import java.io.*;
+import java.util.*;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * writes a compiled parser to a compact binary snapshot and reads it back,
+ * so that a program can start without building and compiling its
+ * grammars. The snapshot contains the parsers with their lookahead,
+ * including the decisions of a {@link Choice} looking further ahead and
+ * the operators of an {@link OperatorGrammar}, their names and the names
+ * of their {@link NodeFactory} objects. When the snapshot is read, the
+ * factories are looked up by name in a registry, so they need not be
+ * serializable.
+ * </p>
+ * <p>
+ * Token codes are stored by name, so constants may be added to or
+ * reordered in the enumeration, as long as the codes used by the parser
+ * keep their names. Parsers compiled from a {@link Fold} cannot be stored,
+ * because the {@code Collector} has no name.
+ * </p>
+ */
+public final class Snapshot {
+  private static final int MAGIC = 0x41425350;
+  private static final int VERSION = 3;
+
+  private static final int TOKEN = 0;
+  private static final int SEQ = 1;
+  private static final int CHOICE = 2;
+  private static final int REPEAT = 3;
+  private static final int RECURSE = 4;
+  private static final int ORDERED = 5;
+  private static final int OPERATOR = 6;
+
+  private static final int EPSILON = 1;
+  private static final int NAMED = 2;
+  private static final int FACTORY = 4;
+
+  private Snapshot() {}
+  /*+******************************************************************/
+  /**
+   * <p>
+   * writes a snapshot of {@code parser} to {@code out}.
+   * </p>
+   *
+   * @param parser must be obtained from {@link Grammar#compile}
+   * @param factories names all {@code NodeFactory} objects used by the
+   *        parser
+   * @throws IllegalArgumentException if the parser was not obtained from
+   *         {@link Grammar#compile}, contains a parser that cannot be
+   *         stored or uses a {@code NodeFactory} not found in
+   *         {@code factories}
+   */
+  public static <N,C extends Enum<C>> void
+  write(Parser<N,C> parser, Map<String,? extends NodeFactory<N>> factories,
+        OutputStream out)
+    throws IOException
+  {
+    if( !(parser instanceof AbstractParser) ) {
+      throw new IllegalArgumentException("not a compiled parser: "+parser);
+    }
+    Map<NodeFactory<N>,Integer> factoryIndex = new IdentityHashMap<>();
+    List<String> factoryNames = new ArrayList<>();
+    for(Map.Entry<String,? extends NodeFactory<N>> e : factories.entrySet()) {
+      if( factoryIndex.containsKey(e.getValue()) ) continue;
+      factoryIndex.put(e.getValue(), factoryNames.size());
+      factoryNames.add(e.getKey());
+    }
+
+    // number the parsers breadth first, the root getting 0
+    List<AbstractParser<N,C>> parsers = new ArrayList<>();
+    Map<AbstractParser<N,C>,Integer> index = new IdentityHashMap<>();
+    AbstractParser<N,C> root = (AbstractParser<N,C>)parser;
+    index.put(root, 0);
+    parsers.add(root);
+    for(int i=0; i<parsers.size(); i++) {
+      for(AbstractParser<N,C> child : parsers.get(i).children()) {
+        if( index.containsKey(child) ) continue;
+        index.put(child, parsers.size());
+        parsers.add(child);
+      }
+    }
+
+    EnumSet<C> codes = EnumSet.complementOf(root.getLookahead());
+    codes.addAll(root.getLookahead());
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeShort(VERSION);
+    data.writeInt(codes.size());
+    for(C code : codes) data.writeUTF(code.name());
+    data.writeInt(factoryNames.size());
+    for(String name : factoryNames) data.writeUTF(name);
+    data.writeInt(parsers.size());
+    for(AbstractParser<N,C> p : parsers) {
+      writeParser(data, p, index, factoryIndex);
+    }
+    data.flush();
+  }
+  /*+******************************************************************/
+  private static <N,C extends Enum<C>> void
+  writeParser(DataOutputStream data, AbstractParser<N,C> p,
+              Map<AbstractParser<N,C>,Integer> index,
+              Map<NodeFactory<N>,Integer> factoryIndex)
+    throws IOException
+  {
+    data.writeByte(kind(p));
+    int flags = p.mayBeEpsilon ? EPSILON : 0;
+    if( p.name!=null ) flags |= NAMED;
+    if( p.hasNodeFactory() ) flags |= FACTORY;
+    data.writeByte(flags);
+    if( p.name!=null ) data.writeUTF(p.name);
+    if( p.hasNodeFactory() ) {
+      data.writeInt(factory(p.getNodeFactory(), p, factoryIndex));
+    }
+    EnumSet<C> lookahead = p.getLookahead();
+    data.writeInt(lookahead.size());
+    for(C code : lookahead) data.writeInt(code.ordinal());
+
+    if( p instanceof TokenParser ) {
+      data.writeInt(((TokenParser<N,C>)p).code().ordinal());
+      return;
+    }
+    if( p instanceof RepeatParser ) {
+      RepeatParser<N,C> r = (RepeatParser<N,C>)p;
+      data.writeInt(r.min());
+      data.writeInt(r.max());
+    }
+    List<AbstractParser<N,C>> children = p.children();
+    data.writeInt(children.size());
+    for(AbstractParser<N,C> child : children) data.writeInt(index.get(child));
+    if( p instanceof OperatorParser ) {
+      List<OperatorParser.Operator<N,C>> ops =
+          ((OperatorParser<N,C>)p).operators();
+      data.writeInt(ops.size());
+      for(OperatorParser.Operator<N,C> op : ops) {
+        data.writeInt(op.code.ordinal());
+        data.writeInt(op.left);
+        data.writeInt(op.right);
+        data.writeInt(op.nf==null ? -1 : factory(op.nf, p, factoryIndex));
+      }
+      return;
+    }
+    if( !(p instanceof ChoiceParser) ) return;
+
+    Map<List<C>,AbstractParser<N,C>> decisions =
+        ((ChoiceParser<N,C>)p).decisions();
+    data.writeInt(decisions.size());
+    for(Map.Entry<List<C>,AbstractParser<N,C>> e : decisions.entrySet()) {
+      data.writeInt(e.getKey().size());
+      for(C code : e.getKey()) data.writeInt(code.ordinal());
+      data.writeInt(index.get(e.getValue()));
+    }
+  }
+  private static <N> int factory(NodeFactory<N> nf, AbstractParser<N,?> p,
+                                 Map<NodeFactory<N>,Integer> factoryIndex)
+  {
+    Integer i = factoryIndex.get(nf);
+    if( i==null ) {
+      throw new IllegalArgumentException("no name for NodeFactory "
+          +nf+" of parser "+p.getName());
+    }
+    return i;
+  }
+  /*+******************************************************************/
+  private static int kind(AbstractParser<?,?> p) {
+    if( p instanceof TokenParser ) return TOKEN;
+    if( p instanceof SeqParser ) return SEQ;
+    if( p instanceof ChoiceParser ) return CHOICE;
+    if( p instanceof RepeatParser ) return REPEAT;
+    if( p instanceof RecurseParser ) return RECURSE;
+    if( p instanceof OrderedChoiceParser ) return ORDERED;
+    if( p instanceof OperatorParser ) return OPERATOR;
+    throw new IllegalArgumentException("cannot store parser "+p.getName()
+        +" of class "+p.getClass().getName());
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * reads a snapshot written by {@link #write} and returns the parser,
+   * ready to be used.
+   * </p>
+   *
+   * @param codes is the class of the token codes
+   * @param factories provides the {@code NodeFactory} objects by the names
+   *        used when the snapshot was written
+   * @throws IOException if the input is not a snapshot, refers to a token
+   *         code not in {@code codes} or a {@code NodeFactory} not in
+   *         {@code factories}
+   */
+  public static <N,C extends Enum<C>> Parser<N,C>
+  read(InputStream in, Class<C> codes,
+       Map<String,? extends NodeFactory<N>> factories)
+    throws IOException
+  {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    if( data.readInt()!=MAGIC ) {
+      throw new IOException("not a parser snapshot");
+    }
+    int version = data.readShort();
+    if( version!=VERSION ) {
+      throw new IOException("cannot read snapshot version "+version);
+    }
+    List<C> codeOf = new ArrayList<>();
+    for(int i=data.readInt(); i>0; i--) {
+      String name = data.readUTF();
+      try {
+        codeOf.add(Enum.valueOf(codes, name));
+      } catch( IllegalArgumentException e ) {
+        // only a problem if a parser uses it, which is checked below
+        codeOf.add(null);
+      }
+    }
+    List<NodeFactory<N>> factoryOf = new ArrayList<>();
+    for(int i=data.readInt(); i>0; i--) {
+      String name = data.readUTF();
+      NodeFactory<N> nf = factories.get(name);
+      if( nf==null ) {
+        throw new IOException("no NodeFactory registered for name `"
+            +name+"'");
+      }
+      factoryOf.add(nf);
+    }
+
+    int count = data.readInt();
+    Record<N,C>[] records = newRecords(count);
+    for(int i=0; i<count; i++) {
+      records[i] = readRecord(data, codes, codeOf, factoryOf, count);
+    }
+    @SuppressWarnings("unchecked")
+    AbstractParser<N,C>[] parsers = new AbstractParser[count];
+    for(int i=0; i<count; i++) {
+      Record<N,C> r = records[i];
+      if( r.kind!=RECURSE ) continue;
+      if( r.children.length!=1 ) {
+        throw new IOException("parser "+i+" must have one child");
+      }
+      parsers[i] = new RecurseParser<>(r.lookahead, r.epsilon);
+      parsers[i].setName(r.name);
+      parsers[i].setNodeFactory(r.factory);
+    }
+    AbstractParser<N,C> root = build(0, records, parsers);
+    for(int i=0; i<count; i++) {
+      if( records[i].kind!=RECURSE ) continue;
+      AbstractParser<N,C> child = build(records[i].children[0], records, parsers);
+      ((RecurseParser<N,C>)parsers[i]).setChild(child);
+    }
+    List<AbstractParser<N,C>> all = new ArrayList<>();
+    for(AbstractParser<N,C> p : parsers) {
+      if( p!=null ) all.add(p);
+    }
+    AbstractParser.freezeAll(all);
+    return root;
+  }
+  /*+******************************************************************/
+  @SuppressWarnings("unchecked")
+  private static <N,C extends Enum<C>> Record<N,C>[] newRecords(int count) {
+    return new Record[count];
+  }
+  /*+******************************************************************/
+  private static <N,C extends Enum<C>> Record<N,C>
+  readRecord(DataInputStream data, Class<C> codes, List<C> codeOf,
+             List<NodeFactory<N>> factoryOf, int count)
+    throws IOException
+  {
+    Record<N,C> r = new Record<>();
+    r.kind = data.readByte();
+    int flags = data.readByte();
+    r.epsilon = (flags&EPSILON)!=0;
+    if( (flags&NAMED)!=0 ) r.name = data.readUTF();
+    if( (flags&FACTORY)!=0 ) r.factory = factoryOf.get(index(data, factoryOf.size()));
+    r.lookahead = EnumSet.noneOf(codes);
+    for(int i=data.readInt(); i>0; i--) {
+      r.lookahead.add(code(data, codeOf));
+    }
+    if( r.kind==TOKEN ) {
+      r.code = code(data, codeOf);
+      return r;
+    }
+    if( r.kind==REPEAT ) {
+      r.min = data.readInt();
+      r.max = data.readInt();
+    }
+    r.children = new int[data.readInt()];
+    for(int i=0; i<r.children.length; i++) {
+      r.children[i] = index(data, count);
+    }
+    if( r.kind==OPERATOR ) {
+      r.operators = new ArrayList<>();
+      for(int i=data.readInt(); i>0; i--) {
+        C code = code(data, codeOf);
+        int left = data.readInt();
+        int right = data.readInt();
+        int nf = data.readInt();
+        r.operators.add(new OperatorParser.Operator<>(code, left, right,
+            nf<0 ? null : factoryOf.get(index(nf, factoryOf.size()))));
+      }
+      return r;
+    }
+    if( r.kind!=CHOICE ) return r;
+
+    r.decisions = new ArrayList<>();
+    r.decided = new int[data.readInt()];
+    for(int i=0; i<r.decided.length; i++) {
+      List<C> tokens = new ArrayList<>();
+      for(int j=data.readInt(); j>0; j--) tokens.add(code(data, codeOf));
+      r.decisions.add(tokens);
+      r.decided[i] = index(data, count);
+    }
+    return r;
+  }
+  private static <C> C code(DataInputStream data, List<C> codeOf)
+    throws IOException
+  {
+    int i = index(data, codeOf.size());
+    C code = codeOf.get(i);
+    if( code==null ) throw new IOException("unknown token code at "+i);
+    return code;
+  }
+  private static int index(DataInputStream data, int size)
+    throws IOException
+  {
+    return index(data.readInt(), size);
+  }
+  private static int index(int i, int size) throws IOException {
+    if( i<0 || i>=size ) {
+      throw new IOException("index "+i+" out of range in snapshot");
+    }
+    return i;
+  }
+  /*+******************************************************************/
+  // Recursion ends at RecurseParser objects, which are all created before
+  // and get their child only afterwards, because any loop in the parsers
+  // passes through one.
+  private static <N,C extends Enum<C>> AbstractParser<N,C>
+  build(int i, Record<N,C>[] records, AbstractParser<N,C>[] parsers)
+    throws IOException
+  {
+    if( parsers[i]!=null ) return parsers[i];
+    Record<N,C> r = records[i];
+    if( r.building ) {
+      throw new IOException("parser "+i+" depends on itself");
+    }
+    r.building = true;
+
+    AbstractParser<N,C> p;
+    if( r.kind==TOKEN ) {
+      p = new TokenParser<>(r.code);
+    } else {
+      List<AbstractParser<N,C>> children = new ArrayList<>(r.children.length);
+      for(int child : r.children) {
+        children.add(build(child, records, parsers));
+      }
+      switch( r.kind ) {
+      case SEQ:
+        p = new SeqParser<>(children, r.lookahead, r.epsilon);
+        break;
+      case CHOICE:
+        ChoiceParser<N,C> cp =
+            new ChoiceParser<>(children, r.lookahead, r.epsilon);
+        for(int d=0; d<r.decided.length; d++) {
+          AbstractParser<N,C> child = build(r.decided[d], records, parsers);
+          try {
+            cp.decide(r.decisions.get(d), child);
+          } catch( IllegalArgumentException e ) {
+            throw new IOException("bad decision in snapshot", e);
+          }
+        }
+        p = cp;
+        break;
+      case ORDERED:
+        p = new OrderedChoiceParser<>(children, r.lookahead, r.epsilon);
+        break;
+      case REPEAT:
+        p = new RepeatParser<>(r.lookahead, children.get(0), r.epsilon,
+                               r.min, r.max);
+        break;
+      case OPERATOR:
+        OperatorParser<N,C> op =
+            new OperatorParser<>(r.lookahead, children.get(0));
+        try {
+          for(OperatorParser.Operator<N,C> o : r.operators) {
+            if( o.left<0 ) {
+              op.addPrefix(o.code, o.right, o.nf);
+            } else if( o.right<0 ) {
+              op.addPostfix(o.code, o.left, o.nf);
+            } else {
+              op.addInfix(o.code, o.left, o.right, o.nf);
+            }
+          }
+        } catch( IllegalArgumentException e ) {
+          throw new IOException("bad operator in snapshot", e);
+        }
+        p = op;
+        break;
+      default:
+        throw new IOException("unknown kind of parser "+r.kind);
+      }
+    }
+    p.setName(r.name);
+    p.setNodeFactory(r.factory);
+    parsers[i] = p;
+    return p;
+  }
+  /*+******************************************************************/
+  private static final class Record<N,C extends Enum<C>> {
+    int kind;
+    boolean epsilon;
+    String name;
+    NodeFactory<N> factory;
+    EnumSet<C> lookahead;
+    C code;
+    int min, max;
+    int[] children;
+    List<List<C>> decisions;
+    int[] decided;
+    List<OperatorParser.Operator<N,C>> operators;
+    boolean building = false;
+  }
+}
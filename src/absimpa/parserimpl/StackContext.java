@@ -0,0 +1,73 @@
+package absimpa.parserimpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * is the {@link ParseContext} used by the parsers obtained from
+ * {@link Grammar#compile} and {@link Grammar#compileNonRecursive}. It holds
+ * the stack of nodes not yet combined by a {@link NodeFactory} and, for
+ * the {@link NonRecursiveParser}, the stack of active parsers. The
+ * parsers from {@link Grammar#compileToBytecode} keep their nodes in a
+ * plain list. Obtain one with {@link ParseContext#create}.
+ * </p>
+ */
+public final class StackContext<N,C extends Enum<C>>
+    implements ParseContext<N,C>
+{
+  final NodeStack<N,C> stack = new NodeStack<>();
+  Frame<N,C>[] frames = null;
+  final List<N> nodes = new ArrayList<>();
+  private boolean busy = false;
+  /*+******************************************************************/
+  /**
+   * returns the {@code context} as a {@code StackContext}.
+   *
+   * @throws IllegalArgumentException if the {@code context} was not
+   *         obtained from {@link ParseContext#create}
+   */
+  static <N,C extends Enum<C>> StackContext<N,C>
+  of(ParseContext<N,C> context)
+  {
+    if( !(context instanceof StackContext) ) {
+      throw new IllegalArgumentException("not a context created by "
+          +"ParseContext.create(): "+context);
+    }
+    return (StackContext<N,C>)context;
+  }
+  /*+******************************************************************/
+  /**
+   * marks the context as in use by a parse.
+   *
+   * @throws IllegalStateException if the context is already in use
+   */
+  void begin() {
+    if( busy ) {
+      throw new IllegalStateException("parse context is already in use");
+    }
+    busy = true;
+  }
+  /*+******************************************************************/
+  /**
+   * clears the context after a parse, whether it succeeded or not, so that
+   * no nodes are kept alive by it.
+   */
+  void end() {
+    stack.clear();
+    nodes.clear();
+    busy = false;
+  }
+  /*+******************************************************************/
+  @Override
+  public StackContext<N,C> setMemoLimit(int limit) {
+    if( limit<0 ) {
+      throw new IllegalArgumentException("limit must not be negative, but is "
+          +limit);
+    }
+    stack.memoLimit = limit;
+    return this;
+  }
+}
@@ -0,0 +1,177 @@
+package absimpa.parserimpl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import absimpa.*;
+
+/**
+ * <p>
+ * runs a compiled parser through its {@link AbstractParser#step step}
+ * protocol, keeping the activation records of the parsers in an array of
+ * {@link Frame} objects instead of on the Java call stack. Because all of
+ * the state is kept here, a run can be suspended whenever the next token
+ * is not available yet and be resumed later.
+ * </p>
+ */
+final class Steps<N,C extends Enum<C>> {
+  private static final int INITIAL_FRAMES = 32;
+
+  private final AbstractParser<N,C> root;
+  private final int maxDepth;
+  private Frame<N,C>[] frames;
+  private int depth = 0;
+  private int status = AbstractParser.NONE;
+  /*+******************************************************************/
+  /**
+   * @param frames are reused if not {@code null}
+   */
+  Steps(AbstractParser<N,C> root, int maxDepth, Frame<N,C>[] frames) {
+    this.root = root;
+    this.maxDepth = maxDepth;
+    if( frames==null ) {
+      @SuppressWarnings("unchecked")
+      Frame<N,C>[] tmp = new Frame[Math.min(INITIAL_FRAMES, maxDepth)];
+      frames = tmp;
+    }
+    this.frames = frames;
+  }
+  /*+******************************************************************/
+  /**
+   * returns the frames, which may have been replaced by a larger array.
+   */
+  Frame<N,C>[] frames() {
+    return frames;
+  }
+  /*+******************************************************************/
+  /**
+   * pushes the frame of the root parser, after it was found applicable.
+   */
+  void start(NodeStack<N,C> stack) throws ParseException {
+    if( frames[0]==null ) frames[0] = new Frame<>();
+    frames[0].init(root, stack.enter(root));
+    depth = 1;
+    status = AbstractParser.NONE;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * runs the parsers until the root parser is finished or, if
+   * {@code input} is not {@code null}, until it has no token available.
+   * </p>
+   *
+   * @return {@code true} if the root parser is finished
+   */
+  boolean run(Lexer<N,C> lex, NodeStack<N,C> stack, Input input)
+    throws ParseException
+  {
+    while( depth>0 ) {
+      if( input!=null && !input.available() ) return false;
+
+      Frame<N,C> f = frames[depth-1];
+      int action;
+      try {
+        action = f.parser.step(f, status, lex, stack);
+      } catch( ParseException e ) {
+        depth = unwind(depth, stack, e);
+        status = AbstractParser.FAILED;
+        continue;
+      }
+      status = AbstractParser.NONE;
+
+      if( action==AbstractParser.CONTINUE ) continue;
+
+      if( action==AbstractParser.FINISH ) {
+        stack.exit(f.parser, f.mark);
+        f.clear();
+        depth -= 1;
+        status = AbstractParser.DONE;
+        continue;
+      }
+
+      AbstractParser<N,C> child = f.call;
+      status = child.applicable(lex.current());
+      if( status!=AbstractParser.DONE ) continue;
+      status = AbstractParser.NONE;
+
+      if( depth==maxDepth ) {
+        ParseException e = lex.parseException(Collections.<C>emptySet());
+        e.setMoreInfo("input nested deeper than "+maxDepth
+            +" parser levels");
+        abandon(lex, stack, e);
+        throw e;
+      }
+      if( depth==frames.length ) {
+        frames = Arrays.copyOf(frames, (int)Math.min(2L*depth, maxDepth));
+      }
+      int mark;
+      try {
+        mark = stack.enter(child);
+      } catch( ParseException e ) {
+        // the child failed here before, as remembered while backtracking
+        depth = unwind(depth, stack, e);
+        status = AbstractParser.FAILED;
+        continue;
+      }
+      if( mark==NodeStack.REUSED ) {
+        status = AbstractParser.DONE;
+        continue;
+      }
+      if( frames[depth]==null ) frames[depth] = new Frame<>();
+      frames[depth].init(child, mark);
+      depth += 1;
+    }
+    return true;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * pops the frames of the parsers failing because of {@code e} up to the
+   * first one that {@link AbstractParser#catches catches} it, starting at
+   * the frame on top.
+   * </p>
+   *
+   * @return the new depth
+   * @throws ParseException if no parser catches {@code e}
+   */
+  private int unwind(int depth, NodeStack<N,C> stack, ParseException e)
+    throws ParseException
+  {
+    while( depth>0 ) {
+      Frame<N,C> f = frames[depth-1];
+      if( f.parser.catches(f) ) {
+        f.thrown = e;
+        return depth;
+      }
+      stack.fail(f.parser, f.mark, e);
+      f.clear();
+      depth -= 1;
+    }
+    throw e;
+  }
+  /*+******************************************************************/
+  /**
+   * <p>
+   * pops all frames because of {@code e}, which no parser may catch since
+   * it is not about the input but the limit on the frames.
+   * </p>
+   */
+  private void abandon(Lexer<N,C> lex, NodeStack<N,C> stack,
+                       ParseException e)
+  {
+    while( depth>0 ) {
+      Frame<N,C> f = frames[depth-1];
+      f.parser.abandon(f, lex, stack);
+      stack.fail(f.parser, f.mark, e);
+      f.clear();
+      depth -= 1;
+    }
+  }
+  /*+******************************************************************/
+  /**
+   * tells {@link Steps#run} whether the next token is available.
+   */
+  interface Input {
+    boolean available();
+  }
+}
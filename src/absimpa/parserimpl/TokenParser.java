@@ -7,21 +7,33 @@ import java.util.*;
 
 import absimpa.*;
 
-public class TokenParser<N,C extends Enum<C>>
+public final class TokenParser<N,C extends Enum<C>>
     extends AbstractParser<N,C>
 {
+  private final C code;
+
   public TokenParser(C tokenCode) {
     super(EnumSet.of(tokenCode), false);
+    this.code = tokenCode;
+  }
+  C code() {
+    return code;
+  }
+  @Override
+  C plainTokenCode() {
+    return hasNodeFactory() || name!=null ? null : code;
+  }
+  void doParse(Lexer<N,C> lex, NodeStack<N,C> stack) throws ParseException {
+    stack.shift(lex);
   }
-  List<N> doParse(Lexer<N,C> lex) throws ParseException {    
-    N node = lex.next();
-    if( node==null ) {
-      return Collections.<N>emptyList();
-    }
-    return Collections.singletonList(node);
+  @Override
+  int step(Frame<N,C> f, int childStatus, Lexer<N,C> lex, NodeStack<N,C> stack)
+    throws ParseException
+  {
+    stack.shift(lex);
+    return FINISH;
   }
   public String toString() {
-    C tokenCode = lookahead.iterator().next();
-    return tokenCode.toString();
+    return code.toString();
   }
 }
\ No newline at end of file
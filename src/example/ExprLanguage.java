@@ -169,6 +169,15 @@ public class ExprLanguage {
     ;    
   }
   public static Eparser createParser() {
+    return new Eparser(createGrammar().compile());
+  }
+  /**
+   * <p>
+   * creates the grammar of the expression language, the start symbol being
+   * a sum.
+   * </p>
+   */
+  public static Grammar<Expr,Codes> createGrammar() {
     // term -> NUMBER | expr
     // product -> term ( (mul | div ) term)*
     // sum -> product ( (add | sub ) product)*
@@ -211,10 +220,53 @@ public class ExprLanguage {
     recExpr.setChild(parenthesized);
     //System.out.println(parenthesized.toBNF());
 
-    return new Eparser(sum.compile());
+    return sum;
+  }
+  /*+******************************************************************/
+  public static Eparser createOperatorParser() {
+    return new Eparser(createOperatorGrammar().compile());
+  }
+  /**
+   * <p>
+   * creates a grammar for the same language as {@link #createGrammar},
+   * but with an {@link absimpa.OperatorGrammar} instead of a rule for each
+   * level of precedence. Unlike there, a sign may also precede a
+   * parenthesized expression.
+   * </p>
+   */
+  public static Grammar<Expr,Codes> createOperatorGrammar() {
+    // term -> NUMBER | '(' expr ')'
+    // expr -> term with operators
+    GrammarBuilder<Expr,Codes> gb = new GrammarBuilder<>(null);
+
+    Recurse<Expr,Codes> recExpr = new Recurse<>();
+    Grammar<Expr,Codes> term =
+        gb.choice(gb.token(Codes.NUMBER))
+          .or(gb.seq(Inner.PICKFIRST, gb.token(Codes.OPAREN)).add(recExpr)
+                .add(gb.token(Codes.CPAREN)))
+          .setName("Term");
+    Grammar<Expr,Codes> expr =
+        gb.operators(term)
+          .infixLeft(Codes.PLUS, 1, Inner.BINARY)
+          .infixLeft(Codes.MINUS, 1, Inner.BINARY)
+          .infixLeft(Codes.TIMES, 2, Inner.BINARY)
+          .infixLeft(Codes.DIVIDE, 2, Inner.BINARY)
+          .prefix(Codes.PLUS, 3, Inner.SIGN)
+          .prefix(Codes.MINUS, 3, Inner.SIGN)
+          .setName("Expr");
+    recExpr.setChild(expr);
+    return expr;
   }
   /* +***************************************************************** */
   private static enum Inner implements NodeFactory<Expr> {
+    BINARY {
+      public Expr create(List<Expr> children) {
+        ExprOper op = (ExprOper)children.get(1);
+        op.setLeftOp(children.get(0));
+        op.setRightOp(children.get(2));
+        return op;
+      }
+    },
     APPLYRIGHT {
       public Expr create(List<Expr> children) {
         ExprOper op = (ExprOper)(children.get(0));
@@ -255,11 +307,11 @@ public class ExprLanguage {
           return children.get(0);
         }
         ExprOper sign = (ExprOper)children.get(0);
-        ExprNum num = (ExprNum)children.get(1);
+        Expr operand = children.get(1);
         if( sign.etype==Etype.MINUS ) {
-          return new ExprNum(-num.value().doubleValue());
+          return new ExprNum(-operand.value().doubleValue());
         }
-        return num;
+        return operand;
       }
     },
     PICKFIRST {
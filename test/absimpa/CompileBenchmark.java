@@ -0,0 +1,67 @@
+package absimpa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * measures how the time to compile a grammar grows with the number of its
+ * rules. The grammars are generated, each rule referring to the next one
+ * and to one further away, like the rules of a machine generated grammar.
+ * If compilation is linear, the time per rule printed stays about the
+ * same while the number of rules doubles.
+ * </p>
+ */
+public class CompileBenchmark {
+  private static enum Tok { A, B, C, D, E, F, G, H, EOF; }
+
+  private static final NodeFactory<String> NF = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      return children.toString();
+    }
+  };
+  /*+******************************************************************/
+  static Grammar<String,Tok> generate(int rules) {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(NF);
+    Tok[] starts = {Tok.C, Tok.D, Tok.E, Tok.F, Tok.G, Tok.H};
+    List<Recurse<String,Tok>> rule = new ArrayList<>(rules);
+    for(int i=0; i<rules; i++) {
+      Recurse<String,Tok> r = new Recurse<>();
+      r.setName("r"+i);
+      rule.add(r);
+    }
+    for(int i=0; i<rules; i++) {
+      Grammar<String,Tok> start = gb.token(starts[i%starts.length]);
+      if( i==rules-1 ) {
+        rule.get(i).setChild(gb.seq(start, gb.token(Tok.A)));
+        continue;
+      }
+      Grammar<String,Tok> far = rule.get(i+1+(i*7919)%(rules-i-1));
+      rule.get(i).setChild(
+          gb.seq(start,
+                 gb.choice(gb.seq(gb.token(Tok.A), rule.get(i+1)),
+                           gb.seq(gb.token(Tok.B), gb.star(far)))));
+    }
+    return gb.seq(rule.get(0), gb.token(Tok.EOF));
+  }
+  /*+******************************************************************/
+  public static void main(String[] argv) {
+    int max = argv.length>0 ? Integer.parseInt(argv[0]) : 64000;
+    // warm up the JIT compiler
+    for(int i=0; i<20; i++) generate(2000).compile();
+
+    System.out.printf("%8s %10s %12s%n", "rules", "millis", "micros/rule");
+    for(int rules=1000; rules<=max; rules*=2) {
+      Grammar<String,Tok> g = generate(rules);
+      long best = Long.MAX_VALUE;
+      for(int i=0; i<5; i++) {
+        long start = System.nanoTime();
+        g.compile();
+        best = Math.min(best, System.nanoTime()-start);
+      }
+      System.out.printf("%8d %10.1f %12.2f%n", rules, best/1e6,
+                        best/1e3/rules);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.BatchParser;
+import example.ExprLanguage;
+import example.ExprLanguage.*;
+
+public class TestBatchParser {
+  private static List<String> inputs(int n) {
+    List<String> result = new ArrayList<>();
+    for(int i=0; i<n; i++) {
+      // every seventh input is broken
+      result.add(i%7==3 ? "("+i+"+" : i+"*(2-"+i+")");
+    }
+    return result;
+  }
+  private static String single(Parser<Expr,Codes> p, String text) {
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    try {
+      lex.initAnalysis(text);
+      return String.valueOf(p.parse(lex).value());
+    } catch( ParseException e ) {
+      return e.getMessage();
+    }
+  }
+  private static String outcome(BatchParser.Result<Expr> r) {
+    return r.succeeded() ? String.valueOf(r.getNode().value())
+        : r.getException().getMessage();
+  }
+  /*+******************************************************************/
+  @Test
+  public void sameAsOneByOne() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    BatchParser<Expr,Codes> bp =
+        new BatchParser<>(p, ExprLanguage::createLexer).setBatchSize(16);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<String> texts = inputs(1000);
+      List<BatchParser.Result<Expr>> results = bp.parseAll(texts, pool);
+      assertEquals(texts.size(), results.size());
+      for(int i=0; i<texts.size(); i++) {
+        assertEquals(texts.get(i), single(p, texts.get(i)),
+                     outcome(results.get(i)));
+        assertEquals(i%7!=3, results.get(i).succeeded());
+      }
+      assertTrue(bp.parseAll(new ArrayList<String>(), pool).isEmpty());
+    } finally {
+      pool.shutdown();
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void callsBackForEveryInput() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    BatchParser<Expr,Codes> bp =
+        new BatchParser<>(p, ExprLanguage::createLexer).setBatchSize(5);
+    final AtomicInteger parsed = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    bp.parseAll(inputs(70), Runnable::run, (index, node, e) -> {
+      parsed.incrementAndGet();
+      if( e!=null ) failed.incrementAndGet();
+    }).join();
+    assertEquals(70, parsed.get());
+    assertEquals(10, failed.get());
+  }
+  /*+******************************************************************/
+  @Test
+  public void submitsWhileIterating() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    BatchParser<Expr,Codes> bp =
+        new BatchParser<>(p, ExprLanguage::createLexer).setBatchSize(5);
+    final AtomicInteger parsed = new AtomicInteger();
+    final List<Integer> parsedBefore = new ArrayList<>();
+    final Iterator<String> texts = inputs(23).iterator();
+    Iterable<String> inputs = () -> new Iterator<String>() {
+      @Override
+      public boolean hasNext() {
+        return texts.hasNext();
+      }
+      @Override
+      public String next() {
+        parsedBefore.add(parsed.get());
+        return texts.next();
+      }
+    };
+    bp.parseAll(inputs, Runnable::run, (index, node, e) -> {
+      parsed.incrementAndGet();
+    }).join();
+    assertEquals(23, parsed.get());
+    assertEquals(Integer.valueOf(0), parsedBefore.get(4));
+    assertEquals(Integer.valueOf(5), parsedBefore.get(5));
+    assertEquals(Integer.valueOf(20), parsedBefore.get(22));
+  }
+  /*+******************************************************************/
+  @Test
+  public void failsWhenRejected() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    BatchParser<Expr,Codes> bp =
+        new BatchParser<>(p, ExprLanguage::createLexer).setBatchSize(5);
+    final AtomicInteger accepted = new AtomicInteger();
+    Executor executor = task -> {
+      if( accepted.incrementAndGet()>2 ) {
+        throw new RejectedExecutionException("full");
+      }
+      task.run();
+    };
+    final AtomicInteger parsed = new AtomicInteger();
+    CompletableFuture<Void> done =
+        bp.parseAll(inputs(30), executor, (index, node, e) -> {
+          parsed.incrementAndGet();
+        });
+    assertTrue(done.isCompletedExceptionally());
+    try {
+      done.join();
+    } catch( CompletionException e ) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+    assertEquals(3, accepted.get());
+    assertEquals(10, parsed.get());
+
+    accepted.set(0);
+    try {
+      bp.parseAll(inputs(30), executor);
+      throw new AssertionError("no exception");
+    } catch( RejectedExecutionException e ) {
+      assertEquals("full", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import absimpa.lexer.ChunkLexer;
+import absimpa.lexer.SimpleLexer;
+
+public class TestChunkLexer {
+  private static enum Tok { WORD, NUM, ARROW, MINUS, COMMENT, EOF; }
+
+  private static <L extends SimpleLexer<String,Tok>> L setUp(L lex) {
+    lex.addToken(Tok.WORD, "[a-z]+")
+      .addToken(Tok.NUM, "[0-9]+([.][0-9]+)?")
+      .addToken(Tok.ARROW, "->")
+      .addToken(Tok.MINUS, "-")
+      .addToken(Tok.COMMENT, "/[*].*?[*]/");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static final String TEXT =
+      "abc 12.5 -> x-y /* note */ 7.25 - ->-> hello world 42";
+
+  private static List<String> whole(String text) throws Exception {
+    SimpleLexer<String,Tok> lex =
+        setUp(new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    lex.initAnalysis(text);
+    List<String> result = new ArrayList<>();
+    while( true ) {
+      Tok code = lex.current();
+      result.add(code+":"+lex.next());
+      if( code==Tok.EOF ) return result;
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void chunksDoNotMatter() throws Exception {
+    List<String> expected = whole(TEXT);
+    Random rand = new Random(3);
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    for(int round=0; round<200; round++) {
+      final List<String> found = new ArrayList<>();
+      lex.start((code, leaf) -> found.add(code+":"+leaf));
+      int pos = 0;
+      while( pos<TEXT.length() ) {
+        int end = Math.min(TEXT.length(), pos+1+rand.nextInt(6));
+        assertTrue(lex.feed(TEXT.substring(pos, end)));
+        pos = end;
+      }
+      assertFalse(lex.isDone());
+      lex.close();
+      assertTrue(lex.isDone());
+      assertEquals(expected, found);
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void holdsBackTokensOnBackPressure() throws Exception {
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    final List<String> found = new ArrayList<>();
+    lex.start((code, leaf) -> found.add(leaf) && found.size()%2!=0);
+
+    assertFalse(lex.feed("a b c d e"));
+    assertEquals(2, found.size());
+    assertFalse(lex.resume());
+    assertEquals(4, found.size());
+    // the e may still grow
+    assertTrue(lex.resume());
+    assertEquals(4, found.size());
+    assertFalse(lex.feed("f g "));
+    assertEquals(6, found.size());
+    lex.resume();
+    lex.close();
+    assertEquals("[a, b, c, d, ef, g, ]", found.toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void keepsOffsetsOfWholeInput() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for(int i=0; i<2000; i++) text.append("word ").append(i).append(" -> ");
+    List<String> expected = new ArrayList<>();
+    SimpleLexer<String,Tok> whole =
+        setUp(new SimpleLexer<String,Tok>(Tok.EOF,
+            l -> l.currentOffset()+":"+l.currentText()));
+    whole.initAnalysis(text);
+    while( !whole.atEnd() ) expected.add(whole.next());
+
+    // the text consumed is dropped from the buffer now and then
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF,
+            l -> l.currentOffset()+":"+l.currentText()));
+    final List<String> found = new ArrayList<>();
+    lex.start((code, leaf) -> found.add(leaf));
+    for(int pos=0; pos<text.length(); pos+=7) {
+      lex.feed(text.subSequence(pos, Math.min(text.length(), pos+7)));
+    }
+    lex.close();
+    expected.add(text.length()+":");
+    assertEquals(expected, found);
+  }
+  /*+******************************************************************/
+  @Test(expected=ParseException.class)
+  public void reportsBadInput() throws Exception {
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    lex.start((code, leaf) -> true);
+    lex.feed("abc ");
+    lex.feed("#");
+  }
+  /*+******************************************************************/
+  @Test
+  public void decodesCharactersSplitBetweenChunks() throws Exception {
+    String text = "abc /* \u00fc\u20ac\ud83d\ude00 */ 12.5 -> x";
+    List<String> expected = whole(text);
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    for(int size=1; size<8; size++) {
+      final List<String> found = new ArrayList<>();
+      lex.start((code, leaf) -> found.add(code+":"+leaf));
+      for(int pos=0; pos<bytes.length; pos+=size) {
+        int length = Math.min(size, bytes.length-pos);
+        ByteBuffer chunk = ByteBuffer.wrap(bytes, pos, length);
+        lex.feed(chunk);
+        assertFalse(chunk.hasRemaining());
+      }
+      lex.close();
+      assertEquals("chunk size "+size, expected, found);
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void usesCharset() throws Exception {
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    lex.setCharset(StandardCharsets.UTF_16BE);
+    final List<String> found = new ArrayList<>();
+    lex.start((code, leaf) -> found.add(leaf));
+    byte[] bytes = "ab 12".getBytes(StandardCharsets.UTF_16BE);
+    lex.feed(ByteBuffer.wrap(bytes, 0, 3));
+    lex.feed(ByteBuffer.wrap(bytes, 3, bytes.length-3));
+    lex.close();
+    assertEquals("[ab, 12, ]", found.toString());
+
+    // a charset set in the middle of the input waits for the next start
+    found.clear();
+    lex.setCharset(StandardCharsets.UTF_16BE);
+    lex.start((code, leaf) -> found.add(leaf));
+    lex.feed(ByteBuffer.wrap(bytes, 0, 3));
+    lex.setCharset(StandardCharsets.UTF_8);
+    lex.feed(ByteBuffer.wrap(bytes, 3, bytes.length-3));
+    lex.close();
+    assertEquals("[ab, 12, ]", found.toString());
+    found.clear();
+    lex.start((code, leaf) -> found.add(leaf));
+    lex.feed(ByteBuffer.wrap("cd".getBytes(StandardCharsets.UTF_8)));
+    lex.close();
+    assertEquals("[cd, ]", found.toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsTruncatedCharacter() throws Exception {
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    lex.start((code, leaf) -> true);
+    byte[] bytes = "ab \u20ac".getBytes(StandardCharsets.UTF_8);
+    lex.feed(ByteBuffer.wrap(bytes, 0, bytes.length-1));
+    try {
+      lex.close();
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      assertTrue(e.getMessage(), e.getMessage().contains("UTF-8"));
+    }
+  }
+  /*+******************************************************************/
+  @Test(expected=ParseException.class)
+  public void reportsMalformedBytes() throws Exception {
+    ChunkLexer<String,Tok> lex =
+        setUp(new ChunkLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    lex.start((code, leaf) -> true);
+    lex.feed(ByteBuffer.wrap(new byte[] {'a', ' ', (byte)0xff}));
+  }
+}
@@ -0,0 +1,106 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import absimpa.lexer.DfaLexer;
+import absimpa.lexer.SimpleLexer;
+
+public class TestDfaLexer {
+  private static enum Tok { IF, WORD, NUM, ARROW, MINUS, STRING, X, EOF; }
+
+  private static <L extends SimpleLexer<String,Tok>> L setUp(L lex) {
+    lex.addToken(Tok.IF, "if")
+      .addToken(Tok.WORD, "[a-zA-Z_]\\w*")
+      .addToken(Tok.NUM, "\\d+([.]\\d+)?([eE][-+]?\\d{1,3})?")
+      .addToken(Tok.ARROW, "->")
+      .addToken(Tok.MINUS, "-")
+      .addToken(Tok.STRING, "\"([^\"\\\\]|\\\\.)*\"");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static List<String> tokens(SimpleLexer<String,Tok> lex,
+                                     String text)
+    throws ParseException
+  {
+    lex.initAnalysis(text);
+    List<String> result = new ArrayList<>();
+    while( true ) {
+      Tok code = lex.current();
+      result.add(code+":"+lex.next());
+      if( code==Tok.EOF ) return result;
+    }
+  }
+  private static DfaLexer<String,Tok> dfaLexer() {
+    return new DfaLexer<String,Tok>(Tok.EOF, l -> l.currentText());
+  }
+  /*+******************************************************************/
+  @Test
+  public void sameTokensAsSimpleLexer() throws Exception {
+    String text = "if iffy x_1 -> 12.5e-3 - ->-> \"a \\\" b\" 7 if2";
+    assertEquals(tokens(setUp(new SimpleLexer<String,Tok>(Tok.EOF,
+                                                          l -> l.currentText())),
+                        text),
+                 tokens(setUp(dfaLexer()), text));
+    assertEquals("[IF:if, WORD:fy, EOF:]", tokens(setUp(dfaLexer()), "iffy")
+                 .toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void longestMatchWins() throws Exception {
+    DfaLexer<String,Tok> lex = setUp(dfaLexer()).setMaximalMunch(true);
+    assertEquals("[WORD:iffy, IF:if, WORD:if2, NUM:1, MINUS:-, ARROW:->, "
+                 +"EOF:]", tokens(lex, "iffy if if2 1-->").toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void matchesLikeJavaRegex() throws Exception {
+    String[] regexes = {"a|ab|abc", "(ab)*c?", "[^a-c]+", "x{2,3}y?",
+                        "[\\d-z]+", "[]a]+", "\\Q*+\\E.", "\\x41\\u0042\\t",
+                        "(?:a|b)+?c".replace("+?", "+"), "\\W\\S\\D",
+                        "[a-f&&[^z]]".replace("&&[^z]", ""), "(?<n>q)r*",
+                        "[\\w.-]+@\\w+", "((a|b)(c|d)?)+", ".{0,2}z"};
+    String[] samples = {"", "abcabc", "ababc", "zzzd", "xxxy", "xxxxy",
+                        "-5z9a", "]]a]b", "*+!", "AB\tC", "aabbc",
+                        "!!x", "fedz", "qrrr", "me.x-y@host", "acbdbc",
+                        "\nz", "zz"};
+    for(String regex : regexes) {
+      Pattern p = Pattern.compile(regex);
+      DfaLexer<String,Tok> lex = dfaLexer();
+      lex.addToken(Tok.X, regex);
+      for(String sample : samples) {
+        String longest = null;
+        for(int i=0; i<=sample.length(); i++) {
+          if( p.matcher(sample.substring(0, i)).matches() ) {
+            longest = sample.substring(0, i);
+          }
+        }
+        lex.initAnalysis(sample);
+        String found = lex.currentOffset()==0 && !lex.atEnd()
+            ? lex.currentText() : null;
+        if( longest!=null && longest.isEmpty() && sample.isEmpty() ) {
+          continue;
+        }
+        assertEquals(regex+" on `"+sample+"'", longest, found);
+      }
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void rejectsWhatNeedsBacktracking() {
+    for(String regex : new String[] {"^a", "a$", "a*?", "a++", "(a)\\1",
+                                     "(?=a)", "(?i)a", "\\ba", "[a[b]]"}) {
+      try {
+        dfaLexer().addToken(Tok.X, regex);
+        throw new AssertionError("accepted "+regex);
+      } catch( IllegalArgumentException e ) {
+        // expected
+      }
+    }
+  }
+}
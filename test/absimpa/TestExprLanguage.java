@@ -49,5 +49,23 @@ public class TestExprLanguage {
     assertEquals(1.0, eval("+1"), eps);
   }
   /*+******************************************************************/
+  @Test
+  public void operatorGrammarAgrees() throws Exception {
+    Eparser chain = parser;
+    parser = example.ExprLanguage.createOperatorParser();
+    for(String text : new String[] {"3+4+5-6-8", "2*-3", "10/4 - 1/2",
+                                    "(3- 2)*(-1+ 2)", "(((12))) - 1",
+                                    "3*(1+ 1* (4- 3))", "3*-3--3", "+1"}) {
+      double expected = chain.parse(lexFor(text)).value().doubleValue();
+      assertEquals(text, expected, eval(text), 1e-20);
+    }
+    assertEquals(-4.0, eval("-(1+3)"), 1e-20);
+  }
+  private SimpleLexer<Expr,Codes> lexFor(String text) throws ParseException {
+    SimpleLexer<Expr,Codes> l = example.ExprLanguage.createLexer();
+    l.initAnalysis(text);
+    return l;
+  }
+  /*+******************************************************************/
 
 }
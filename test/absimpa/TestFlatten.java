@@ -0,0 +1,99 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+
+public class TestFlatten {
+  private static enum Tok { A, B, C, D, EOF; }
+
+  private final GrammarBuilder<String,Tok> gb =
+      new GrammarBuilder<String,Tok>(new NodeFactory<String>() {
+        @Override
+        public String create(List<String> children) {
+          return children.toString();
+        }
+      });
+  private final Grammar<String,Tok> a = gb.token(Tok.A);
+  private final Grammar<String,Tok> b = gb.token(Tok.B);
+  private final Grammar<String,Tok> c = gb.token(Tok.C);
+  private final Grammar<String,Tok> d = gb.token(Tok.D);
+
+  private static String parse(Grammar<String,Tok> g, String text)
+    throws Exception
+  {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.A, "a").addToken(Tok.B, "b")
+        .addToken(Tok.C, "c").addToken(Tok.D, "d");
+    lex.initAnalysis(text);
+    try {
+      return g.compile().parse(lex);
+    } catch( ParseException e ) {
+      return e.getExpectedTokenCodes()+" "+e.getFoundTokenCode();
+    }
+  }
+  private static Sequence<String,Tok> plain(Sequence<String,Tok> s) {
+    s.setNodeFactory(null);
+    return s;
+  }
+  private static Choice<String,Tok> plain(Choice<String,Tok> c) {
+    c.setNodeFactory(null);
+    return c;
+  }
+  /*+******************************************************************/
+  @Test
+  public void flattensSequences() throws Exception {
+    Grammar<String,Tok> g = gb.seq(plain(gb.seq(a, plain(gb.seq(b, c)))), d);
+    assertEquals("SeqParser[TokenParser,TokenParser,TokenParser,TokenParser]",
+                 g.compile().toString());
+    assertEquals("[a, b, c, d]", parse(g, "abcd"));
+    assertEquals("[C] D", parse(g, "abd"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void keepsSequencesStartingOptional() throws Exception {
+    Grammar<String,Tok> g = gb.seq(c, plain(gb.seq(gb.opt(null, a), b)));
+    assertEquals("SeqParser[TokenParser,SeqParser]", g.compile().toString());
+    // expects what the inner sequence may start with
+    assertEquals("[A, B] D", parse(g, "cd"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void keepsSequencesWithFactory() throws Exception {
+    Grammar<String,Tok> g = gb.seq(gb.seq(a, b), c);
+    assertEquals("[[a, b], c]", parse(g, "abc"));
+    Grammar<String,Tok> named = gb.seq(plain(gb.seq(a, b)).setName("ab"), c);
+    assertEquals("SeqParser[ab,TokenParser]", named.compile().toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void flattensChoices() throws Exception {
+    Grammar<String,Tok> g =
+        gb.seq(gb.choice(gb.choice(a, gb.seq(b, c)), gb.choice(b, d)), d);
+    assertEquals("SeqParser[ChoiceParser,TokenParser]",
+                 g.compile().toString());
+    assertEquals("ChoiceParser[TokenParser|SeqParser|TokenParser|"
+                 +"TokenParser]",
+                 gb.choice(gb.choice(a, gb.seq(b, c)), gb.choice(b, d))
+                 .compile().toString());
+    assertEquals("[a, d]", parse(g, "ad"));
+    // the first alternative starting with B still wins
+    assertEquals("[[b, c], d]", parse(g, "bcd"));
+    assertEquals("[C] D", parse(g, "bd"));
+    assertEquals("[d, d]", parse(g, "dd"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void skipsUnitRules() throws Exception {
+    Grammar<String,Tok> g =
+        gb.seq(a, plain(gb.seq(plain(gb.choice(plain(gb.seq(b)))))));
+    assertEquals("SeqParser[TokenParser,TokenParser]",
+                 g.compile().toString());
+    assertEquals("[a, b]", parse(g, "ab"));
+  }
+}
@@ -0,0 +1,105 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+
+public class TestFold {
+  private static enum Tok { NUM, OPEN, CLOSE, EOF; }
+
+  private final List<String> events = new ArrayList<>();
+  private final Collector<String,int[],String> sum = Collector.of(
+      () -> new int[1],
+      (a, s) -> {
+        events.add("fold "+s);
+        a[0] += Integer.parseInt(s);
+      },
+      (a, b) -> {
+        a[0] += b[0];
+        return a;
+      },
+      a -> String.valueOf(a[0]));
+
+  private SimpleLexer<String,Tok> lexer(String text) throws Exception {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> {
+          events.add("leaf "+l.currentText());
+          return l.currentText();
+        })
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    lex.initAnalysis(text);
+    return lex;
+  }
+  private Grammar<String,Tok> grammar(int min) {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(null);
+    Recurse<String,Tok> item = new Recurse<>();
+    Grammar<String,Tok> group = gb.seq(gb.token(Tok.OPEN),
+        gb.fold(sum, item, min, Integer.MAX_VALUE), gb.token(Tok.CLOSE));
+    // the parentheses are dropped, leaving the sum, if any
+    group.setNodeFactory(children ->
+        children.size()==3 ? children.get(1) : null);
+    item.setChild(gb.choice(gb.token(Tok.NUM), group));
+    return gb.seq(gb.fold(sum, item, 1, Integer.MAX_VALUE),
+                  gb.token(Tok.EOF))
+        .setNodeFactory(children -> children.get(0));
+  }
+  /*+******************************************************************/
+  @Test
+  public void sums() throws Exception {
+    for(Parser<String,Tok> p : new Parser[] {
+        grammar(1).compile(), grammar(1).compileNonRecursive(100)}) {
+      assertEquals("6", p.parse(lexer("1 2 3")));
+      assertEquals("21", p.parse(lexer("1 (2 3) ((4) 5 (6))")));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void foldsAsSoonAsRecognized() throws Exception {
+    for(Parser<String,Tok> p : new Parser[] {
+        grammar(1).compile(), grammar(1).compileNonRecursive(100)}) {
+      events.clear();
+      p.parse(lexer("1 2 3"));
+      assertEquals("[leaf 1, fold 1, leaf 2, fold 2, leaf 3, fold 3, leaf ]",
+                   events.toString());
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void emptyFoldHasNoNode() throws Exception {
+    for(Parser<String,Tok> p : new Parser[] {
+        grammar(0).compile(), grammar(0).compileNonRecursive(100)}) {
+      // the empty group yields no node, so the outer sum sees nothing
+      assertEquals("3", p.parse(lexer("1 () 2")));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void takesLibraryCollectors() throws Exception {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(null);
+    Grammar<String,Tok> g =
+        gb.seq(gb.fold(Collectors.joining("+"), gb.token(Tok.NUM), 1, 9),
+               gb.token(Tok.EOF))
+        .setNodeFactory(children -> children.get(0));
+    assertEquals("1+2+3", g.compile().parse(lexer("1 2 3")));
+    Grammar<String,Tok> h =
+        gb.seq(gb.token(Tok.NUM).fold(Collectors.joining(), 0, 9),
+               gb.token(Tok.EOF))
+        .setNodeFactory(children -> children.get(0));
+    assertEquals("123", h.compile().parse(lexer("1 2 3")));
+  }
+  /*+******************************************************************/
+  @Test(expected=ParseException.class)
+  public void checksMinimum() throws Exception {
+    grammar(1).compileNonRecursive(100).parse(lexer("1 () 2"));
+  }
+}
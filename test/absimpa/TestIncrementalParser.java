@@ -0,0 +1,155 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.IncrementalParser;
+
+public class TestIncrementalParser {
+  private static enum Tok { WORD, NUM, SEMI, OPEN, CLOSE, EOF; }
+
+  private int created;
+  private final NodeFactory<String> count = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      created += 1;
+      return children.toString();
+    }
+  };
+  private Parser<String,Tok> parser;
+  /*+******************************************************************/
+  @Before
+  public void setUp() throws Exception {
+    BNF<String,Tok> bnf = new BNF<>(Tok.class);
+    bnf.rule("block");
+    bnf.rule("stmt", "%((WORD NUM* SEMI) | block)", count);
+    bnf.rule("block", "%(OPEN stmt* CLOSE)", count);
+    bnf.rule("doc", "%(stmt* EOF)", count);
+    parser = bnf.compile("doc");
+  }
+  private static SimpleLexer<String,Tok> lexer() {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.WORD, "[a-z]+")
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.SEMI, ";")
+        .addToken(Tok.OPEN, "[{]")
+        .addToken(Tok.CLOSE, "[}]");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  /*+******************************************************************/
+  private String fromScratch(String text) {
+    return fromScratch(parser, text);
+  }
+  private static String fromScratch(Parser<String,Tok> parser, String text) {
+    SimpleLexer<String,Tok> lex = lexer();
+    try {
+      lex.initAnalysis(text);
+      return parser.parse(lex);
+    } catch( ParseException e ) {
+      return e.getMessage();
+    }
+  }
+  private static String apply(IncrementalParser<String,Tok> ip, int offset,
+                              int length, String replacement) {
+    try {
+      return ip.edit(offset, length, replacement);
+    } catch( ParseException e ) {
+      return e.getMessage();
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void sameAsFromScratch() throws Exception {
+    String alphabet = "ab12 ;;{}";
+    Random rand = new Random(17);
+    IncrementalParser<String,Tok> ip = new IncrementalParser<>(parser, lexer());
+    ip.parse("x 1; {y 2 3; {z;}} w;");
+
+    for(int i=0; i<2000; i++) {
+      int len = ip.getText().length();
+      int offset = rand.nextInt(len+1);
+      int remove = Math.min(len-offset, rand.nextInt(3));
+      StringBuilder insert = new StringBuilder();
+      for(int k=rand.nextInt(4); k>0; k--) {
+        insert.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+      }
+      String found = apply(ip, offset, remove, insert.toString());
+      String text = ip.getText().toString();
+      assertEquals(text, fromScratch(text), found);
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void sameAsFromScratchWhenNestingChanges() throws Exception {
+    // where an item starts depends on the braces before, and how many fit
+    // into a group on the items before, so the parsers running at a token
+    // change with the edits
+    BNF<String,Tok> bnf = new BNF<>(Tok.class);
+    bnf.rule("group");
+    bnf.rule("item", "%(WORD | NUM | group)", count);
+    bnf.rule("group", "%(OPEN item{1,3} CLOSE)", count);
+    bnf.rule("doc", "%(item{0,4} SEMI*)", count);
+    Parser<String,Tok> nested = bnf.compile("doc");
+
+    // the first edit takes the items over into a new document, so the old
+    // document must not be taken for valid once the text is back in shape
+    IncrementalParser<String,Tok> ip = new IncrementalParser<>(nested, lexer());
+    ip.parse("a {1}");
+    apply(ip, 0, 0, "1");
+    apply(ip, 4, 1, "");
+    assertEquals(fromScratch(nested, "a {}"), apply(ip, 0, 1, ""));
+
+    String alphabet = "a1;;{{}}  ";
+    Random rand = new Random(300);
+    ip.parse("{a 1 {b}} c;");
+    for(int i=0; i<5000; i++) {
+      int len = ip.getText().length();
+      int offset = rand.nextInt(len+1);
+      int remove = Math.min(len-offset, rand.nextInt(4));
+      StringBuilder insert = new StringBuilder();
+      for(int k=rand.nextInt(4); k>0; k--) {
+        insert.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+      }
+      String found = apply(ip, offset, remove, insert.toString());
+      String text = ip.getText().toString();
+      assertEquals(text, fromScratch(nested, text), found);
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void reusesUnchangedNodes() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for(int i=0; i<500; i++) {
+      sb.append("{ a ").append(i).append("; b; }\n");
+    }
+    IncrementalParser<String,Tok> ip = new IncrementalParser<>(parser, lexer());
+    created = 0;
+    ip.parse(sb);
+    assertTrue(created>=1500);
+
+    int offset = sb.indexOf("250");
+    created = 0;
+    String found = ip.edit(offset, 3, "1 2 3");
+    // the statement, its block and the document are created again
+    assertEquals(4, created);
+    assertEquals(fromScratch(ip.getText().toString()), found);
+
+    // the statements before and behind are taken over again
+    for(String number : new String[] {"499", "0", "251"}) {
+      offset = ip.getText().toString().indexOf(" "+number+";")+1;
+      created = 0;
+      found = ip.edit(offset, number.length(), "7");
+      assertEquals(4, created);
+      assertEquals(fromScratch(ip.getText().toString()), found);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.IncrementalParser;
+import absimpa.parserimpl.Snapshot;
+
+public class TestLookahead {
+  private static enum Tok { ID, NUM, ASSIGN, OPEN, CLOSE, EOF; }
+
+  private static NodeFactory<String> wrap(final String tag) {
+    return new NodeFactory<String>() {
+      @Override
+      public String create(List<String> children) {
+        return tag+children;
+      }
+    };
+  }
+  private final NodeFactory<String> assign = wrap("assign");
+  private final NodeFactory<String> call = wrap("call");
+  private final NodeFactory<String> pair = wrap("pair");
+  private final NodeFactory<String> list = wrap("");
+  private final GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(null);
+  private final Grammar<String,Tok> id = gb.token(Tok.ID);
+  private final Grammar<String,Tok> num = gb.token(Tok.NUM);
+
+  private Choice<String,Tok> statement() {
+    return gb.choice(gb.seq(id, gb.token(Tok.ASSIGN), num).setNodeFactory(assign),
+                     gb.seq(id, gb.token(Tok.OPEN), gb.token(Tok.CLOSE))
+                     .setNodeFactory(call),
+                     id);
+  }
+  private Grammar<String,Tok> statements(Grammar<String,Tok> statement) {
+    return gb.seq(gb.star(statement), gb.token(Tok.EOF)).setNodeFactory(list);
+  }
+  private static SimpleLexer<String,Tok> lexer() {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.ID, "[a-z]+")
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.ASSIGN, "=")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static String parse(Parser<String,Tok> p, Lexer<String,Tok> lex)
+  {
+    try {
+      return p.parse(lex);
+    } catch( ParseException e ) {
+      return e.getExpectedTokenCodes()+" "+e.getFoundTokenCode();
+    }
+  }
+  private static String parse(Parser<String,Tok> p, String text)
+    throws ParseException
+  {
+    SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis(text);
+    return parse(p, lex);
+  }
+  /*+******************************************************************/
+  @Test
+  public void peeks() throws Exception {
+    SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis("a = 12 ( )");
+    assertEquals(Tok.NUM, lex.peek(2));
+    assertEquals(Tok.ASSIGN, lex.peek(1));
+    assertEquals(Tok.ID, lex.peek(0));
+    assertEquals("a", lex.next());
+    assertEquals(Tok.CLOSE, lex.peek(3));
+    assertEquals(Tok.EOF, lex.peek(7));
+    assertEquals("=", lex.next());
+    assertEquals(4, lex.currentOffset());
+    assertEquals("12", lex.next());
+
+    int mark = lex.mark();
+    assertEquals("(", lex.next());
+    assertEquals(Tok.EOF, lex.peek(1));
+    lex.reset(mark);
+    assertEquals(Tok.CLOSE, lex.peek(1));
+    lex.release(mark);
+    assertEquals("(", lex.next());
+    assertEquals(")", lex.next());
+    assertEquals(Tok.EOF, lex.current());
+  }
+  /*+******************************************************************/
+  @Test
+  public void decidesOnSecondToken() throws Exception {
+    Parser<String,Tok> p = statements(statement().setLookahead(2)).compile();
+    assertEquals("[assign[a, =, 1], call[f, (, )], x, y, ]",
+                 parse(p, "a = 1 f() x y"));
+    assertEquals("[NUM] OPEN", parse(p, "a = ("));
+  }
+  /*+******************************************************************/
+  @Test
+  public void defaultIsFirstAlternative() throws Exception {
+    Parser<String,Tok> p = statements(statement()).compile();
+    assertEquals("[ASSIGN] OPEN", parse(p, "f()"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void needsPeekableLexer() throws Exception {
+    Parser<String,Tok> p = statements(statement().setLookahead(2)).compile();
+    final SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis("f()");
+    Lexer<String,Tok> plain = new Lexer<String,Tok>() {
+      @Override
+      public String next() throws ParseException {
+        return lex.next();
+      }
+      @Override
+      public Tok current() {
+        return lex.current();
+      }
+      @Override
+      public ParseException parseException(Set<Tok> expectedTokens) {
+        return lex.parseException(expectedTokens);
+      }
+    };
+    assertEquals("[ASSIGN] OPEN", parse(p, plain));
+  }
+  /*+******************************************************************/
+  @Test
+  public void decidesOnThirdToken() throws Exception {
+    Choice<String,Tok> c =
+        gb.choice(gb.seq(id, id, num).setNodeFactory(pair), id)
+        .setLookahead(3);
+    Grammar<String,Tok> g = statements(c);
+    Parser<String,Tok> p = g.compile();
+    assertEquals("[pair[a, b, 1], c, d, pair[e, f, 2], ]",
+                 parse(p, "a b 1 c d e f 2"));
+    assertEquals(p.parse(lexerFor("a b 1 c d")),
+                 g.compileNonRecursive(100).parse(lexerFor("a b 1 c d")));
+  }
+  private static SimpleLexer<String,Tok> lexerFor(String text)
+    throws ParseException
+  {
+    SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis(text);
+    return lex;
+  }
+  /*+******************************************************************/
+  @Test
+  public void incrementalLooksAtPeekedTokens() throws Exception {
+    Choice<String,Tok> c =
+        gb.choice(gb.seq(id, id, id, num).setNodeFactory(wrap("quad")),
+                  gb.token(Tok.ID).setNodeFactory(wrap("id")))
+        .setLookahead(4);
+    // the node for the statement at a depends on the fourth token
+    Grammar<String,Tok> statement = gb.seq(wrap("s"), c);
+    IncrementalParser<String,Tok> ip =
+        new IncrementalParser<>(statements(statement).compile(), lexer());
+    assertEquals("[s[id[a]], s[id[b]], s[id[c]], s[id[d]], ]",
+                 ip.parse("a b c d"));
+    assertEquals("[s[quad[a, b, c, 1]], ]", ip.edit(6, 1, "1"));
+    assertEquals("[s[id[a]], s[id[b]], s[id[c]], s[id[d]], ]",
+                 ip.edit(6, 1, "d"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void snapshotKeepsDecisions() throws Exception {
+    Parser<String,Tok> p = statements(statement().setLookahead(2)).compile();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Map<String,NodeFactory<String>> factories = new HashMap<>();
+    factories.put("assign", assign);
+    factories.put("call", call);
+    factories.put("list", list);
+    Snapshot.write(p, factories, out);
+    Parser<String,Tok> q =
+        Snapshot.read(new ByteArrayInputStream(out.toByteArray()), Tok.class,
+                      factories);
+    assertEquals("[assign[a, =, 1], call[f, (, )], x, ]",
+                 parse(q, "a = 1 f() x"));
+  }
+}
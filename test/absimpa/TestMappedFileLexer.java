@@ -0,0 +1,100 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import absimpa.lexer.MappedFileLexer;
+import absimpa.lexer.SimpleLexer;
+
+public class TestMappedFileLexer {
+  private static enum Tok { WORD, NUM, ARROW, EOF; }
+
+  private static <L extends SimpleLexer<String,Tok>> L setUp(L lex) {
+    lex.addToken(Tok.WORD, "[\\p{L}\\x{1D11E}]+")
+      .addToken(Tok.NUM, "[0-9]+")
+      .addToken(Tok.ARROW, "→");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static List<String> tokens(SimpleLexer<String,Tok> lex)
+    throws ParseException
+  {
+    List<String> result = new ArrayList<>();
+    while( true ) {
+      Tok code = lex.current();
+      result.add(lex.currentOffset()+":"+code+":"+lex.next());
+      if( code==Tok.EOF ) return result;
+    }
+  }
+  private static MappedFileLexer<String,Tok> mappedLexer() {
+    return setUp(new MappedFileLexer<String,Tok>(Tok.EOF,
+                                                 l -> l.currentText()));
+  }
+  private static Path write(byte[] bytes) throws Exception {
+    Path file = Files.createTempFile("absimpa", ".txt");
+    file.toFile().deleteOnExit();
+    Files.write(file, bytes);
+    return file;
+  }
+  /*+******************************************************************/
+  @Test
+  public void windowsDoNotMatter() throws Exception {
+    // every line has characters of one to four bytes
+    check(100, 1, 2, 3, 4, 5, 7);
+    check(5000, 4096, 1<<30);
+  }
+  private static void check(int lines, int... windowSizes)
+    throws Exception
+  {
+    StringBuilder sb = new StringBuilder();
+    for(int i=0; i<lines; i++) {
+      sb.append("größe ").append(i).append(" → 𝄞é\n");
+    }
+    String text = sb.toString();
+    SimpleLexer<String,Tok> simple =
+        setUp(new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    simple.initAnalysis(text);
+    List<String> expected = tokens(simple);
+
+    Path file = write(text.getBytes(StandardCharsets.UTF_8));
+    MappedFileLexer<String,Tok> lex = mappedLexer();
+    for(int size : windowSizes) {
+      lex.setWindowSize(size).initAnalysis(file);
+      assertEquals("window size "+size, expected, tokens(lex));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void readsEmptyFile() throws Exception {
+    MappedFileLexer<String,Tok> lex = mappedLexer();
+    lex.initAnalysis(write(new byte[0]));
+    assertEquals("[0:EOF:]", tokens(lex).toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsMalformedInput() throws Exception {
+    byte[] bytes = "abc 12 ".getBytes(StandardCharsets.UTF_8);
+    byte[] bad = new byte[bytes.length+2];
+    System.arraycopy(bytes, 0, bad, 0, bytes.length);
+    bad[bytes.length] = (byte)0xc3;
+    bad[bytes.length+1] = (byte)0x28;
+    MappedFileLexer<String,Tok> lex = mappedLexer().setWindowSize(4);
+    lex.initAnalysis(write(bad));
+    lex.next();
+    try {
+      lex.next();
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      assertTrue(e.getMessage(),
+                 e.getMessage().endsWith("malformed UTF-8 at byte offset 7"));
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import example.ExprLanguage;
+import example.ExprLanguage.*;
+
+public class TestNonRecursiveParser {
+  private SimpleLexer<Expr,Codes> lex;
+  private Grammar<Expr,Codes> grammar;
+
+  @Before
+  public void setUp() {
+    lex = ExprLanguage.createLexer();
+    grammar = ExprLanguage.createGrammar();
+  }
+  /*+******************************************************************/
+  private double eval(Parser<Expr,Codes> p, String text)
+    throws ParseException
+  {
+    lex.initAnalysis(text);
+    return p.parse(lex).value().doubleValue();
+  }
+  private String error(Parser<Expr,Codes> p, String text) {
+    try {
+      lex.initAnalysis(text);
+      p.parse(lex);
+    } catch( ParseException e ) {
+      return e.getMessage();
+    }
+    throw new AssertionError("no exception for "+text);
+  }
+  private static String nested(int depth) {
+    StringBuilder sb = new StringBuilder();
+    for(int i=0; i<depth; i++) sb.append('(');
+    sb.append("1+2");
+    for(int i=0; i<depth; i++) sb.append(')');
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  @Test
+  public void sameAsRecursive() throws Exception {
+    Parser<Expr,Codes> recursive = grammar.compile();
+    Parser<Expr,Codes> p = grammar.compileNonRecursive(1000);
+    String[] texts = {
+      "3+4+5-6-8", "2*-3", "10/4 - 1/2", "(3- 2)*(-1+ 2)", "(((12))) - 1",
+      "3*(1+ 1* (4- 3))", "3*-3--3", "3*+3-+3", "+1",
+    };
+    for(String text : texts) {
+      assertEquals(text, eval(recursive, text), eval(p, text), 1e-20);
+    }
+    for(String text : new String[] {"(3+4", "*3", "(3 4)", "3*("}) {
+      assertEquals(text, error(recursive, text), error(p, text));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void deepNesting() throws Exception {
+    Parser<Expr,Codes> p = grammar.compileNonRecursive(Integer.MAX_VALUE);
+    assertEquals(3.0, eval(p, nested(5000)), 1e-20);
+  }
+  /*+******************************************************************/
+  @Test
+  public void depthLimit() {
+    Parser<Expr,Codes> p = grammar.compileNonRecursive(50);
+    String msg = error(p, nested(20));
+    assertTrue(msg, msg.endsWith("input nested deeper than 50 parser levels"));
+  }
+  /*+******************************************************************/
+  private static enum Tok { NUM, OPEN, CLOSE, EOF; }
+
+  // counts the marks not yet released
+  private static final class CountingLexer
+      implements MarkableLexer<String,Tok>
+  {
+    final SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    int open = 0;
+    @Override
+    public String next() throws ParseException {
+      return lex.next();
+    }
+    @Override
+    public Tok current() {
+      return lex.current();
+    }
+    @Override
+    public ParseException parseException(Set<Tok> expectedTokens) {
+      return lex.parseException(expectedTokens);
+    }
+    @Override
+    public int position() {
+      return lex.position();
+    }
+    @Override
+    public int mark() {
+      open += 1;
+      return lex.mark();
+    }
+    @Override
+    public void reset(int position) {
+      lex.reset(position);
+    }
+    @Override
+    public void release(int mark) {
+      open -= 1;
+      lex.release(mark);
+    }
+  }
+  @Test
+  public void depthLimitReleasesEverything() throws Exception {
+    GrammarBuilder<String,Tok> gb =
+        new GrammarBuilder<>(children -> String.join("", children));
+    Recurse<String,Tok> expr = new Recurse<>();
+    expr.setChild(gb.orderedChoice(gb.seq(gb.token(Tok.OPEN), expr,
+                                          gb.token(Tok.CLOSE)),
+                                   gb.token(Tok.NUM)));
+    Parser<String,Tok> p =
+        gb.seq(expr, gb.token(Tok.EOF)).compileNonRecursive(30);
+    ParseContext<String,Tok> context = ParseContext.create();
+    CountingLexer lex = new CountingLexer();
+
+    StringBuilder deep = new StringBuilder("1");
+    for(int i=0; i<20; i++) deep.insert(0, '(').append(')');
+    lex.lex.initAnalysis(deep);
+    try {
+      p.parse(lex, context);
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      // not caught by the ordered choice to try the next alternative
+      String msg = e.getMessage();
+      assertTrue(msg, msg.endsWith("input nested deeper than 30 parser levels"));
+    }
+    assertEquals(0, lex.open);
+
+    lex.lex.initAnalysis("((1))");
+    assertEquals("((1))", p.parse(lex, context));
+    assertEquals(0, lex.open);
+  }
+}
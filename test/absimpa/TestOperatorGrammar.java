@@ -0,0 +1,176 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.Snapshot;
+
+public class TestOperatorGrammar {
+  private static enum Tok { NUM, PLUS, MINUS, STAR, POW, BANG, OPEN, CLOSE,
+                            EOF; }
+
+  private static final NodeFactory<String> JOIN = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      return "("+String.join(" ", children)+")";
+    }
+  };
+  private static final NodeFactory<String> FIRST = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      return children.get(0);
+    }
+  };
+  private static final NodeFactory<String> MIDDLE = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      return children.get(1);
+    }
+  };
+  private final GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(null);
+
+  private OperatorGrammar<String,Tok> expr() {
+    Recurse<String,Tok> rec = new Recurse<>();
+    Grammar<String,Tok> operand =
+        gb.choice(gb.token(Tok.NUM),
+                  gb.seq(gb.token(Tok.OPEN), rec, gb.token(Tok.CLOSE))
+                  .setNodeFactory(MIDDLE));
+    OperatorGrammar<String,Tok> expr =
+        gb.operators(operand)
+        .infixLeft(Tok.PLUS, 1, JOIN)
+        .infixLeft(Tok.MINUS, 1, JOIN)
+        .infixLeft(Tok.STAR, 2, JOIN)
+        .prefix(Tok.MINUS, 2, JOIN)
+        .infixRight(Tok.POW, 3, JOIN)
+        .postfix(Tok.BANG, 4, JOIN);
+    rec.setChild(expr);
+    return expr;
+  }
+  private Grammar<String,Tok> start() {
+    return gb.seq(FIRST, expr()).add(gb.token(Tok.EOF));
+  }
+  private static String parse(Parser<String,Tok> p, String text) {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.PLUS, "[+]")
+        .addToken(Tok.MINUS, "-")
+        .addToken(Tok.STAR, "[*]")
+        .addToken(Tok.POW, "\\^")
+        .addToken(Tok.BANG, "!")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    try {
+      lex.initAnalysis(text);
+      return p.parse(lex);
+    } catch( ParseException e ) {
+      return e.getExpectedTokenCodes()+" "+e.getFoundTokenCode();
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void bindsByPower() throws Exception {
+    Parser<String,Tok> p = start().compile();
+    assertEquals("((1 + (2 * 3)) - 4)", parse(p, "1+2*3-4"));
+    assertEquals("((1 * 2) + (3 * 4))", parse(p, "1*2+3*4"));
+    assertEquals("(2 ^ (3 ^ 4))", parse(p, "2^3^4"));
+    assertEquals("((- 1) - 2)", parse(p, "-1-2"));
+    assertEquals("(- (2 ^ 2))", parse(p, "-2^2"));
+    assertEquals("(1 - (- (- 2)))", parse(p, "1--(-2)"));
+    assertEquals("(((3 !) !) ^ 2)", parse(p, "3!!^2"));
+    assertEquals("(- (3 !))", parse(p, "-3!"));
+    assertEquals("((1 + 2) * 3)", parse(p, "(1+2)*3"));
+    assertEquals("7", parse(p, "7"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsMissingOperand() throws Exception {
+    Parser<String,Tok> p = start().compile();
+    assertEquals("[NUM, MINUS, OPEN] EOF", parse(p, "1+"));
+    assertEquals("[NUM, MINUS, OPEN] STAR", parse(p, "-*"));
+    assertEquals("[EOF] NUM", parse(p, "1 2"));
+    assertEquals("[CLOSE] EOF", parse(p, "(1"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void nonRecursiveIsSame() throws Exception {
+    Grammar<String,Tok> g = start();
+    Parser<String,Tok> p = g.compile();
+    Parser<String,Tok> q = g.compileNonRecursive(100);
+    for(String text : new String[] {"1+2*3-4", "2^3^4!", "-(1-2)*-3",
+                                    "1+", "(1", "--1!!"}) {
+      assertEquals(text, parse(p, text), parse(q, text));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void climbsWithoutRecursion() throws Exception {
+    // each right associative operator waits for its right operand
+    int n = 100000;
+    StringBuilder sb = new StringBuilder();
+    for(int i=0; i<n; i++) sb.append("-1^");
+    sb.append("1");
+    Parser<String,Tok> p =
+        gb.seq(gb.operators(gb.token(Tok.NUM))
+               .infixRight(Tok.POW, 1, null)
+               .prefix(Tok.MINUS, 2, null),
+               gb.token(Tok.EOF))
+        .setNodeFactory(new NodeFactory<String>() {
+          @Override
+          public String create(List<String> children) {
+            return Integer.toString(children.size());
+          }
+        }).compile();
+    assertEquals(Integer.toString(3*n+2), parse(p, sb.toString()));
+  }
+  /*+******************************************************************/
+  @Test
+  public void snapshotKeepsOperators() throws Exception {
+    Parser<String,Tok> p = start().compile();
+    Map<String,NodeFactory<String>> factories = new HashMap<>();
+    factories.put("join", JOIN);
+    factories.put("middle", MIDDLE);
+    factories.put("first", FIRST);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Snapshot.write(p, factories, out);
+    Parser<String,Tok> q =
+        Snapshot.read(new ByteArrayInputStream(out.toByteArray()), Tok.class,
+                      factories);
+    assertEquals(p.toString(), q.toString());
+    assertEquals("(- ((1 + 2) ^ (3 !)))", parse(q, "-(1+2)^3!"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void lookaheadSeesOperators() throws Exception {
+    Choice<String,Tok> c =
+        gb.choice(expr(),
+                  gb.seq(gb.token(Tok.OPEN), gb.token(Tok.NUM),
+                         gb.token(Tok.NUM), gb.token(Tok.CLOSE))
+                  .setNodeFactory(JOIN))
+        .setLookahead(3);
+    Parser<String,Tok> p = gb.seq(FIRST, c).add(gb.token(Tok.EOF)).compile();
+    assertEquals("1", parse(p, "(1)"));
+    assertEquals("(1 ^ 2)", parse(p, "(1^2)"));
+    assertEquals("(( 1 2 ))", parse(p, "(1 2)"));
+  }
+  /*+******************************************************************/
+  @Test(expected=LookaheadConflictException.class)
+  public void prefixMustNotStartOperand() {
+    gb.operators(gb.token(Tok.NUM)).prefix(Tok.NUM, 1, JOIN).compile();
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalArgumentException.class)
+  public void infixIsNotPostfix() {
+    gb.operators(gb.token(Tok.NUM)).infixLeft(Tok.BANG, 1, JOIN)
+    .postfix(Tok.BANG, 2, JOIN);
+  }
+}
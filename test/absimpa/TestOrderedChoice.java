@@ -0,0 +1,170 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+
+public class TestOrderedChoice {
+  private static enum Tok { NUM, PLUS, MINUS, STAR, OPEN, CLOSE, EOF; }
+
+  private int created;
+  private final NodeFactory<String> count = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      created += 1;
+      StringBuilder sb = new StringBuilder();
+      for(String s : children) sb.append(s);
+      return "["+sb+"]";
+    }
+  };
+  private Grammar<String,Tok> grammar;
+  /*+******************************************************************/
+  @Before
+  public void setUp() {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(count);
+    Grammar<String,Tok> num = gb.token(Tok.NUM);
+    Grammar<String,Tok> open = gb.token(Tok.OPEN);
+    Grammar<String,Tok> close = gb.token(Tok.CLOSE);
+    Recurse<String,Tok> expr = new Recurse<>();
+
+    // without remembering results, every level of parentheses multiplies
+    // the work by six
+    Grammar<String,Tok> term =
+        gb.orderedChoice(gb.seq(open, expr, close, gb.token(Tok.STAR)),
+                         gb.seq(open, expr, close),
+                         num);
+    expr.setChild(gb.orderedChoice(gb.seq(term, gb.token(Tok.PLUS), expr),
+                                   gb.seq(term, gb.token(Tok.MINUS), expr),
+                                   term));
+    grammar = gb.seq(expr, gb.token(Tok.EOF));
+  }
+  private static SimpleLexer<String,Tok> lexer(String text) throws Exception {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.PLUS, "[+]")
+        .addToken(Tok.MINUS, "-")
+        .addToken(Tok.STAR, "[*]")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    lex.initAnalysis(text);
+    return lex;
+  }
+  private static String nested(int depth) {
+    StringBuilder sb = new StringBuilder();
+    for(int i=0; i<depth; i++) sb.append('(');
+    sb.append('1');
+    for(int i=0; i<depth; i++) sb.append(')');
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  @Test
+  public void backtracks() throws Exception {
+    Parser<String,Tok> p = grammar.compile();
+    assertEquals("[[1+[2-3]]]", p.parse(lexer("1+2-3")));
+    assertEquals("[[[(1)*]+2]]", p.parse(lexer("(1)*+2")));
+    assertEquals("[[(1)]]", p.parse(lexer("(1)")));
+  }
+  /*+******************************************************************/
+  @Test
+  public void nonRecursiveIsSame() throws Exception {
+    Parser<String,Tok> p = grammar.compile();
+    Parser<String,Tok> nr = grammar.compileNonRecursive(1000);
+    String[] inputs = {
+      "1+2-3", "(1)*+2", "((1+2)*-(3))", nested(7), "(1", "1+", "(1)*)",
+    };
+    for(String input : inputs) {
+      assertEquals(input, parse(p, input, 1000), parse(nr, input, 1000));
+      assertEquals(input, parse(p, input, 0), parse(nr, input, 0));
+    }
+  }
+  private String parse(Parser<String,Tok> p, String input, int limit)
+    throws Exception
+  {
+    ParseContext<String,Tok> context = ParseContext.create();
+    context.setMemoLimit(limit);
+    try {
+      return p.parse(lexer(input), context);
+    } catch( ParseException e ) {
+      return e.getMessage();
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void linearTime() throws Exception {
+    int depth = 30;
+    @SuppressWarnings("unchecked")
+    Parser<String,Tok>[] parsers = new Parser[] {
+      grammar.compile(), grammar.compileNonRecursive(1000),
+    };
+    for(Parser<String,Tok> p : parsers) {
+      created = 0;
+      p.parse(lexer(nested(depth)));
+      assertTrue("created "+created, created<=4*depth+4);
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsFurthestFailure() throws Exception {
+    Parser<String,Tok> p = grammar.compile();
+    try {
+      p.parse(lexer("(1"));
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      // not the failure of the last alternative, which wants a NUM
+      assertEquals(Tok.EOF, e.getFoundTokenCode());
+      assertTrue(e.getExpectedTokenCodes().contains(Tok.CLOSE));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void noListener() throws Exception {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(count);
+    // the ordered choice is only reached after the OPEN was reported
+    Grammar<String,Tok> g =
+        gb.seq(gb.token(Tok.OPEN), grammar, gb.token(Tok.CLOSE));
+    final StringBuilder events = new StringBuilder();
+    ParseListener<String,Tok> listener = new ParseListener<String,Tok>() {
+      @Override
+      public void token(Tok code, String leaf) {
+        events.append(code);
+      }
+    };
+    for(Parser<String,Tok> p : new Parser[] {g.compile(),
+                                             g.compileNonRecursive(100)}) {
+      try {
+        p.parse(lexer("(1)"), listener);
+        throw new AssertionError("no exception");
+      } catch( IllegalArgumentException e ) {
+        assertEquals("", events.toString());
+      }
+    }
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalArgumentException.class)
+  public void needsMarkableLexer() throws Exception {
+    final SimpleLexer<String,Tok> lex = lexer("1");
+    Lexer<String,Tok> plain = new Lexer<String,Tok>() {
+      @Override
+      public Tok current() {
+        return lex.current();
+      }
+      @Override
+      public String next() throws ParseException {
+        return lex.next();
+      }
+      @Override
+      public ParseException parseException(java.util.Set<Tok> expected) {
+        return lex.parseException(expected);
+      }
+    };
+    grammar.compile().parse(plain);
+  }
+}
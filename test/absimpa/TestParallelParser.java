@@ -0,0 +1,109 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.ParallelParser;
+
+public class TestParallelParser {
+  private static enum Tok { WORD, NUM, EQ, SEMI, OPEN, CLOSE, EOF; }
+
+  private static final NodeFactory<String> JOIN = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      return children.toString();
+    }
+  };
+  private Parser<String,Tok> parser;
+  private ForkJoinPool pool;
+  /*+******************************************************************/
+  @Before
+  public void setUp() throws Exception {
+    BNF<String,Tok> bnf = new BNF<>(Tok.class);
+    bnf.rule("value", "%(NUM | (OPEN NUM* CLOSE))", JOIN);
+    bnf.rule("stmt", "%(WORD EQ value SEMI)", JOIN);
+    bnf.rule("doc", "%(stmt*)", JOIN);
+    parser = bnf.compile("doc");
+    pool = new ForkJoinPool(4);
+  }
+  private static SimpleLexer<String,Tok> lexer() {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.WORD, "[a-z]+")
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.EQ, "=")
+        .addToken(Tok.SEMI, ";")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private String sequential(String text) throws Exception {
+    SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis(text);
+    return parser.parse(lex);
+  }
+  private static String statements(int n) {
+    StringBuilder sb = new StringBuilder();
+    for(int i=0; i<n; i++) {
+      if( i%3==0 ) {
+        sb.append("x = (1 2 ").append(i).append(");\n");
+      } else {
+        sb.append("y=").append(i).append(';');
+      }
+    }
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  @Test
+  public void sameAsSequential() throws Exception {
+    ParallelParser<String,Tok> pp =
+        new ParallelParser<>(parser, Tok.SEMI, TestParallelParser::lexer);
+    for(int n : new int[] {0, 1, 2, 7, 1000}) {
+      String text = statements(n);
+      assertEquals(sequential(text), pp.parse(text, pool));
+    }
+    assertEquals(sequential("  "), pp.parse("  ", pool));
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsFirstError() throws Exception {
+    ParallelParser<String,Tok> pp =
+        new ParallelParser<>(parser, Tok.SEMI, TestParallelParser::lexer);
+    String text = statements(500)+"z = ;"+statements(100)+"y = ;";
+    ParseException expected = null;
+    try {
+      sequential(text);
+    } catch( ParseException e ) {
+      expected = e;
+    }
+    try {
+      pp.parse(text, pool);
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      assertEquals(expected.getMessage(), e.getMessage());
+      assertEquals(expected.getColumn(), e.getColumn());
+    }
+  }
+  /*+******************************************************************/
+  @Test(expected=ParseException.class)
+  public void rejectsTrailingInput() throws Exception {
+    ParallelParser<String,Tok> pp =
+        new ParallelParser<>(parser, Tok.SEMI, TestParallelParser::lexer);
+    pp.parse(statements(20)+"(", pool);
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalArgumentException.class)
+  public void needsRepeat() throws Exception {
+    BNF<String,Tok> bnf = new BNF<>(Tok.class);
+    bnf.rule("stmt", "%(WORD EQ NUM SEMI)", JOIN);
+    new ParallelParser<>(bnf.compile("stmt"), Tok.SEMI,
+                         TestParallelParser::lexer);
+  }
+}
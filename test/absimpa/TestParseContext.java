@@ -0,0 +1,101 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.AbstractParser;
+import example.ExprLanguage;
+import example.ExprLanguage.*;
+
+public class TestParseContext {
+  private static final String[] EXPRESSIONS = {
+    "3+4+5-6-8", "2*-3", "10/4 - 1/2", "(3- 2)*(-1+ 2)", "(((12))) - 1",
+    "3*(1+ 1* (4- 3))", "3*-3--3", "+1",
+  };
+  private static final double[] VALUES = {
+    -2, -6, 2, 1, 11, 6, -6, 1,
+  };
+  /*+******************************************************************/
+  @Test
+  public void compiledParserIsFrozen() {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    Exception e = null;
+    try {
+      ((AbstractParser<Expr,Codes>)p).setName("changed");
+    } catch( IllegalStateException ee ) {
+      e = ee;
+    }
+    assertTrue(e!=null);
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalArgumentException.class)
+  public void rejectsForeignContext() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    lex.initAnalysis("1+2");
+    p.parse(lex, limit -> null);
+  }
+  /*+******************************************************************/
+  @Test
+  public void contextIsReused() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    Parser<Expr,Codes> nr = ExprLanguage.createGrammar().compileNonRecursive(50);
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    ParseContext<Expr,Codes> context = ParseContext.create();
+
+    for(Parser<Expr,Codes> parser : new Parser[] {p, nr}) {
+      for(int i=0; i<EXPRESSIONS.length; i++) {
+        lex.initAnalysis(EXPRESSIONS[i]);
+        Expr e = parser.parse(lex, context);
+        assertEquals(EXPRESSIONS[i], VALUES[i], e.value().doubleValue(), 0);
+      }
+      // a failed parse must leave the context usable
+      lex.initAnalysis("(3+");
+      try {
+        parser.parse(lex, context);
+        throw new AssertionError("no exception");
+      } catch( ParseException e ) {
+        // expected
+      }
+      lex.initAnalysis("1+1");
+      assertEquals(2.0, parser.parse(lex, context).value().doubleValue(), 0);
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void sharedBetweenThreads() throws Exception {
+    final Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for(int t=0; t<16; t++) {
+        results.add(pool.submit(() -> {
+          SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+          ParseContext<Expr,Codes> context = ParseContext.create();
+          for(int round=0; round<200; round++) {
+            for(int i=0; i<EXPRESSIONS.length; i++) {
+              lex.initAnalysis(EXPRESSIONS[i]);
+              double v = p.parse(lex, context).value().doubleValue();
+              if( v!=VALUES[i] ) return false;
+            }
+          }
+          return true;
+        }));
+      }
+      for(Future<Boolean> f : results) {
+        assertTrue(f.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
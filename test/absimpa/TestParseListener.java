@@ -0,0 +1,120 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+
+public class TestParseListener {
+  private static enum Tok { NUMBER, PLUS, OPAREN, CPAREN, EOF; }
+
+  private static final NodeFactory<String> FAIL = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      throw new AssertionError("NodeFactory called in listener mode");
+    }
+  };
+  private static class Recorder implements ParseListener<String,Tok> {
+    private final StringBuilder sb = new StringBuilder();
+    @Override
+    public void enterRule(String name) {
+      sb.append('<').append(name).append(' ');
+    }
+    @Override
+    public void exitRule(String name) {
+      sb.append(name).append("> ");
+    }
+    @Override
+    public void token(Tok code, String leaf) {
+      sb.append(leaf).append(' ');
+    }
+    public String toString() {
+      return sb.toString().trim();
+    }
+  }
+
+  private SimpleLexer<String,Tok> lex;
+  private Grammar<String,Tok> grammar;
+  /*+******************************************************************/
+  @Before
+  public void setUp() throws Exception {
+    BNF<String,Tok> bnf = new BNF<>(Tok.class);
+    bnf.rule("expr");
+    bnf.rule("term", "NUMBER | (OPAREN expr CPAREN)");
+    bnf.rule("expr", "%(term (PLUS term)*)", FAIL);
+    grammar = bnf.getGrammar("expr");
+
+    lex = new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.NUMBER, "[0-9]+")
+        .addToken(Tok.PLUS, "[+]")
+        .addToken(Tok.OPAREN, "[(]")
+        .addToken(Tok.CPAREN, "[)]");
+    lex.setSkipRe("\\s+");
+  }
+  /*+******************************************************************/
+  private String events(Parser<String,Tok> p, String text) throws Exception {
+    Recorder r = new Recorder();
+    lex.initAnalysis(text);
+    p.parse(lex, r);
+    return r.toString();
+  }
+  /*+******************************************************************/
+  @Test
+  public void eventsInDocumentOrder() throws Exception {
+    String expected = "<expr <term 1 term> + <term ( <expr <term 2 term> "
+        +"+ <term 3 term> expr> ) term> expr>";
+    assertEquals(expected, events(grammar.compile(), "1+(2+3)"));
+    assertEquals(expected,
+                 events(grammar.compileNonRecursive(100), "1+(2+3)"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsNamedToken() throws Exception {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(FAIL);
+    Grammar<String,Tok> num = gb.token(Tok.NUMBER).setName("num");
+    Grammar<String,Tok> g =
+        gb.seq(gb.token(Tok.OPAREN), gb.star(num),
+               gb.choice(gb.token(Tok.PLUS), num), gb.token(Tok.CPAREN),
+               gb.token(Tok.EOF)).setName("top");
+    String expected = "<top ( <num 1 num> <num 2 num> + )  top>";
+    assertEquals(expected, events(g.compile(), "(1 2+)"));
+    assertEquals(expected, events(g.compileNonRecursive(100), "(1 2+)"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void foldsNothing() throws Exception {
+    // the collector fails if called, which it must not be
+    Collector<String,?,String> collector =
+        Collector.of(StringBuilder::new,
+                     (sb, s) -> { throw new AssertionError("folded "+s); },
+                     (a, b) -> a, StringBuilder::toString);
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(FAIL);
+    Grammar<String,Tok> nums =
+        gb.fold(collector, gb.token(Tok.NUMBER), 1, 3).setName("nums");
+    Grammar<String,Tok> g =
+        gb.seq(nums, gb.fold(collector, gb.token(Tok.PLUS), 0, 2),
+               nums, gb.token(Tok.EOF)).setName("top");
+    // the end of input is an empty leaf
+    String expected = "<top <nums 1 2 nums> + + <nums 3 nums>  top>";
+    assertEquals(expected, events(g.compile(), "1 2++3"));
+    assertEquals(expected, events(g.compileNonRecursive(100), "1 2++3"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void errorAfterEvents() throws Exception {
+    Recorder r = new Recorder();
+    lex.initAnalysis("1+(2+");
+    try {
+      grammar.compile().parse(lex, r);
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      assertEquals("<expr <term 1 term> + <term ( <expr <term 2 term> +",
+                   r.toString());
+    }
+  }
+}
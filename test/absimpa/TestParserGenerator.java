@@ -0,0 +1,262 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import example.ExprLanguage;
+import example.ExprLanguage.*;
+
+public class TestParserGenerator {
+  private static final String[] EXPRESSIONS = {
+    "3+4+5-6-8", "2*-3", "10/4 - 1/2", "(3- 2)*(-1+ 2)", "(((12))) - 1",
+    "3*(1+ 1* (4- 3))", "3*-3--3", "+1",
+  };
+  /*+******************************************************************/
+  @SuppressWarnings("unchecked")
+  private static <N,C extends Enum<C>> Parser<N,C>
+  generate(ParserGenerator<N,C> gen, String className) throws Exception {
+    File dir = Files.createTempDirectory("absimpa").toFile();
+    URLClassLoader loader = null;
+    try {
+      File src = new File(dir, className+".java");
+      try(Writer out = Files.newBufferedWriter(src.toPath(),
+                                               StandardCharsets.UTF_8)) {
+        gen.write(null, className, out);
+      }
+      JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+      int rc = javac.run(null, null, null, "-classpath",
+                         System.getProperty("java.class.path"),
+                         "-d", dir.getPath(), src.getPath());
+      assertEquals("compiling generated source", 0, rc);
+
+      loader = new URLClassLoader(new URL[] {dir.toURI().toURL()},
+                                  TestParserGenerator.class.getClassLoader());
+      // load all generated classes now, since the loader is closed below
+      for(String name : dir.list()) {
+        if( name.endsWith(".class") ) {
+          loader.loadClass(name.substring(0, name.length()-6));
+        }
+      }
+      Class<?> cls = loader.loadClass(className);
+      return (Parser<N,C>)cls.getConstructor(List.class)
+          .newInstance(gen.getNodeFactories());
+    } finally {
+      if( loader!=null ) loader.close();
+      delete(dir);
+    }
+  }
+  /*+******************************************************************/
+  private static void delete(File f) {
+    File[] children = f.listFiles();
+    if( children!=null ) {
+      for(File child : children) delete(child);
+    }
+    f.delete();
+  }
+  /*+******************************************************************/
+  @Test
+  public void exprLanguage() throws Exception {
+    Grammar<Expr,Codes> g = ExprLanguage.createGrammar();
+    Parser<Expr,Codes> interpreted = g.compile();
+    Parser<Expr,Codes> generated =
+        generate(new ParserGenerator<>(g), "GeneratedExprParser");
+
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    for(String text : EXPRESSIONS) {
+      lex.initAnalysis(text);
+      double expected = interpreted.parse(lex).value().doubleValue();
+      lex.initAnalysis(text);
+      double found = generated.parse(lex).value().doubleValue();
+      assertEquals(text, expected, found, 1e-20);
+    }
+
+    assertEquals(errorMessage(interpreted, lex, "(3+4"),
+                 errorMessage(generated, lex, "(3+4"));
+    assertEquals(errorMessage(interpreted, lex, "*3"),
+                 errorMessage(generated, lex, "*3"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void compilesToBytecode() throws Exception {
+    Grammar<Expr,Codes> g = ExprLanguage.createGrammar();
+    Parser<Expr,Codes> interpreted = g.compile();
+    Parser<Expr,Codes> loaded = g.compileToBytecode();
+
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    for(String text : EXPRESSIONS) {
+      lex.initAnalysis(text);
+      double expected = interpreted.parse(lex).value().doubleValue();
+      lex.initAnalysis(text);
+      double found = loaded.parse(lex).value().doubleValue();
+      assertEquals(text, expected, found, 1e-20);
+    }
+    assertEquals(errorMessage(interpreted, lex, "(3+4"),
+                 errorMessage(loaded, lex, "(3+4"));
+    assertEquals(errorMessage(interpreted, lex, "*3"),
+                 errorMessage(loaded, lex, "*3"));
+
+    ParseContext<Expr,Codes> context = ParseContext.create();
+    for(String text : EXPRESSIONS) {
+      lex.initAnalysis(text);
+      double expected = interpreted.parse(lex).value().doubleValue();
+      lex.initAnalysis(text);
+      double found = loaded.parse(lex, context).value().doubleValue();
+      assertEquals(text, expected, found, 1e-20);
+    }
+
+    assertEquals(events(interpreted, lex, "(3+4)*2"),
+                 events(loaded, lex, "(3+4)*2"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void generatedSourceRefusesListener() throws Exception {
+    Grammar<Expr,Codes> g = ExprLanguage.createGrammar();
+    Parser<Expr,Codes> generated =
+        generate(new ParserGenerator<>(g), "GeneratedNoListenerParser");
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    lex.initAnalysis("1+2");
+    assertEquals(3.0,
+                 generated.parse(lex, ParseContext.create()).value()
+                 .doubleValue(), 1e-20);
+    try {
+      events(generated, lex, "1+2");
+      throw new AssertionError("no exception");
+    } catch( UnsupportedOperationException e ) {
+      // expected
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void loadsRepeatsWithBounds() throws Exception {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(JOIN);
+    Grammar<String,Tok> item =
+        gb.choice(gb.token(Tok.WORD),
+                  gb.seq(gb.token(Tok.OPEN), gb.token(Tok.NUM),
+                         gb.token(Tok.CLOSE)));
+    Grammar<String,Tok> g =
+        gb.seq(gb.repeat(JOIN, item, 2, 3),
+               gb.repeat(JOIN, gb.token(Tok.NUM), 1, 2),
+               gb.token(Tok.EOF));
+    Parser<String,Tok> interpreted = g.compile();
+    Parser<String,Tok> loaded = g.compileToBytecode();
+    SimpleLexer<String,Tok> lex = listLexer();
+    for(String text : new String[] {"a b 1", "a (1) b 2 3", "(1) (2) 3"}) {
+      lex.initAnalysis(text);
+      String expected = interpreted.parse(lex);
+      lex.initAnalysis(text);
+      assertEquals(expected, loaded.parse(lex));
+    }
+    for(String bad : new String[] {"a 1", "a b c d 1", "a b", "a b 1 2 3",
+                                   "", "(a)"}) {
+      assertEquals(bad, errorMessage(interpreted, lex, bad),
+                   errorMessage(loaded, lex, bad));
+    }
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalArgumentException.class)
+  public void cannotLoadOrderedChoice() {
+    GrammarBuilder<String,Tok> gb = new GrammarBuilder<>(JOIN);
+    gb.orderedChoice(gb.token(Tok.WORD), gb.token(Tok.NUM))
+        .compileToBytecode();
+  }
+  private static <N,C extends Enum<C>>
+  String events(Parser<N,C> p, SimpleLexer<N,C> lex, String text)
+    throws ParseException
+  {
+    final StringBuilder sb = new StringBuilder();
+    lex.initAnalysis(text);
+    p.parse(lex, new ParseListener<N,C>() {
+      @Override
+      public void enterRule(String name) {
+        sb.append('<').append(name).append(' ');
+      }
+      @Override
+      public void exitRule(String name) {
+        sb.append(name).append("> ");
+      }
+      @Override
+      public void token(C code, N leaf) {
+        sb.append(code).append(' ');
+      }
+    });
+    return sb.toString();
+  }
+  /*+******************************************************************/
+  private static enum Tok { WORD, NUM, COMMA, OPEN, CLOSE, EOF; }
+  private static final NodeFactory<String> JOIN = new NodeFactory<String>() {
+    @Override
+    public String create(List<String> children) {
+      return children.toString();
+    }
+    public String toString() {
+      return "JOIN";
+    }
+  };
+  @Test
+  public void bnfRule() throws Exception {
+    BNF<String,Tok> bnf = new BNF<>(Tok.class);
+    bnf.rule("list");
+    bnf.rule("item", "WORD | NUM | (OPEN list CLOSE)");
+    bnf.rule("list", "%(item (COMMA item)*)", JOIN);
+    bnf.rule("top", "%(list EOF)", JOIN);
+
+    Parser<String,Tok> interpreted = bnf.compile("top");
+    Parser<String,Tok> generated =
+        generate(new ParserGenerator<>(bnf, "top"), "GeneratedListParser");
+
+    Parser<String,Tok> loaded = new ParserGenerator<>(bnf, "top").load();
+    SimpleLexer<String,Tok> lex = listLexer();
+
+    String text = "a, 1, (b, (c)), 2";
+    lex.initAnalysis(text);
+    String expected = interpreted.parse(lex);
+    lex.initAnalysis(text);
+    assertEquals(expected, generated.parse(lex));
+    lex.initAnalysis(text);
+    assertEquals(expected, loaded.parse(lex));
+
+    for(String bad : new String[] {"a, ,", "(a b)", ""}) {
+      assertEquals(bad, errorMessage(interpreted, lex, bad),
+                   errorMessage(generated, lex, bad));
+      assertEquals(bad, errorMessage(interpreted, lex, bad),
+                   errorMessage(loaded, lex, bad));
+    }
+  }
+  private static SimpleLexer<String,Tok> listLexer() {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.WORD, "[a-z]+")
+        .addToken(Tok.NUM, "[0-9]+")
+        .addToken(Tok.COMMA, ",")
+        .addToken(Tok.OPEN, "[(]")
+        .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static <N,C extends Enum<C>>
+  String errorMessage(Parser<N,C> p, SimpleLexer<N,C> lex, String text)
+    throws IOException
+  {
+    try {
+      lex.initAnalysis(text);
+      p.parse(lex);
+    } catch( ParseException e ) {
+      return e.getMessage();
+    }
+    throw new AssertionError("no exception for "+text);
+  }
+}
@@ -297,6 +297,65 @@ public class TestParsers {
   }
   /*+******************************************************************/
   @Test
+  public void overlappingChoiceFirstWins() throws Exception {
+    Grammar<TestNode,Codes> termOr = gb.seq(NodeType.OR, term).add(or);
+
+    TestNode node = analyze("abc OR", gb.choice(termOr, term).compile());
+    assertEquals(NodeType.OR, node.getValue());
+
+    node = analyze("abc OR", gb.choice(term, termOr).compile());
+    assertEquals(NodeType.TOKEN, node.getValue());
+  }
+  /*+******************************************************************/
+  private static enum Wide {
+    W00, W01, W02, W03, W04, W05, W06, W07, W08, W09,
+    W10, W11, W12, W13, W14, W15, W16, W17, W18, W19,
+    W20, W21, W22, W23, W24, W25, W26, W27, W28, W29,
+    W30, W31, W32, W33, W34, W35, W36, W37, W38, W39,
+    W40, W41, W42, W43, W44, W45, W46, W47, W48, W49,
+    W50, W51, W52, W53, W54, W55, W56, W57, W58, W59,
+    W60, W61, W62, W63, W64, W65, W66, W67, W68, W69,
+    W70, W71, W72, W73, W74, W75, W76, W77, W78, W79,
+    W80, W81, W82, W83, W84, W85, W86, W87, W88, W89,
+    W90, W91, W92, W93, W94, W95, W96, W97, W98, W99,
+    W100, W101, W102, W103, W104, W105, W106, W107, W108, W109,
+    W110, W111, W112, W113, W114, W115, W116, W117, W118, W119,
+    W120, W121, W122, W123, W124, W125, W126, W127, W128, W129,
+    EOF;
+  }
+  @Test
+  public void moreThan64TokenCodes() throws Exception {
+    BNF<String,Wide> bnf = new BNF<>(Wide.class);
+    bnf.rule("top", "%((W03 | W63 | W64 | W127 | W129)+ EOF)",
+             children -> String.join(" ", children));
+    Parser<String,Wide> p = bnf.compile("top");
+
+    SimpleLexer<String,Wide> wlex =
+        new SimpleLexer<String,Wide>(Wide.EOF, l -> l.currentText())
+        .addToken(Wide.W03, "a")
+        .addToken(Wide.W63, "b")
+        .addToken(Wide.W64, "c")
+        .addToken(Wide.W127, "d")
+        .addToken(Wide.W129, "e")
+        .addToken(Wide.W65, "x");
+    wlex.setSkipRe("\\s+");
+
+    wlex.initAnalysis("e d c b a");
+    assertEquals("e d c b a ", p.parse(wlex));
+
+    wlex.initAnalysis("x a");
+    try {
+      p.parse(wlex);
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      assertEquals(Wide.W65, e.getFoundTokenCode());
+      assertEquals(EnumSet.of(Wide.W03, Wide.W63, Wide.W64, Wide.W127,
+                              Wide.W129),
+                   e.getExpectedTokenCodes());
+    }
+  }
+  /*+******************************************************************/
+  @Test
   public void testWithOptionalChoice() throws Exception {
     Grammar<TestNode,Codes> repeatOptional = makeRepeatGrammar(term, 0, 1);
 
@@ -634,4 +693,38 @@ public class TestParsers {
     assertEquals(NodeType.TOKEN, node.getChildType(1));
   }
   /*+******************************************************************/
+  @Test
+  public void compilesLongChainsOfRules() throws Exception {
+    int n = 20000;
+    List<Recurse<TestNode,Codes>> right = new ArrayList<>();
+    List<Recurse<TestNode,Codes>> left = new ArrayList<>();
+    for(int i=0; i<=n; i++) {
+      right.add(new Recurse<TestNode,Codes>());
+      left.add(new Recurse<TestNode,Codes>());
+      right.get(i).setName("r"+i);
+    }
+    for(int i=0; i<n; i++) {
+      right.get(i).setChild(gb.seq(gb.token(Codes.TERM),
+                                   gb.opt(right.get(i+1))));
+      left.get(i).setChild(gb.seq(left.get(i+1), gb.token(Codes.AND)));
+    }
+    right.get(n).setChild(gb.token(Codes.TERM));
+    left.get(n).setChild(gb.token(Codes.NOT));
+
+    Parser<TestNode,Codes> p = gb.seq(right.get(0), gb.token(Codes.EOF))
+        .compile();
+    TestNode node = analyze("a", p);
+    assertEquals(2, node.numChildren());
+    assertEquals(n+1, right.get(0).toBNF().split("\n").length);
+
+    p = gb.seq(left.get(0), gb.token(Codes.EOF)).compile();
+    ParseException thrown = null;
+    try {
+      analyze("a", p);
+    } catch( ParseException e ) {
+      thrown = e;
+    }
+    assertEquals(EnumSet.of(Codes.NOT), thrown.getExpectedTokenCodes());
+  }
+  /*+******************************************************************/
 }
@@ -0,0 +1,150 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import absimpa.lexer.ChunkLexer;
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.PushParser;
+import example.ExprLanguage;
+import example.ExprLanguage.*;
+
+public class TestPushParser {
+  private static final String[] EXPRESSIONS = {
+    "3+4+5-6-8", "2*-3", "10/4 - 1/2", "(3- 2)*(-1+ 2)", "(((12))) - 1",
+    "3*(1+ 1* (4- 3))", "3*-3--3", "+1", "(3+", "3)", ")",
+  };
+  private static final class Tok {
+    final Codes code;
+    final Expr leaf;
+    Tok(Codes code, Expr leaf) {
+      this.code = code;
+      this.leaf = leaf;
+    }
+  }
+  private static List<Tok> tokens(String text) throws Exception {
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    lex.initAnalysis(text);
+    List<Tok> result = new ArrayList<>();
+    while( true ) {
+      Codes code = lex.current();
+      result.add(new Tok(code, lex.next()));
+      if( code==Codes.EOF ) return result;
+    }
+  }
+  private static String pulled(Parser<Expr,Codes> p, String text)
+    throws Exception
+  {
+    SimpleLexer<Expr,Codes> lex = ExprLanguage.createLexer();
+    lex.initAnalysis(text);
+    try {
+      return String.valueOf(p.parse(lex).value());
+    } catch( ParseException e ) {
+      return e.getExpectedTokenCodes()+" "+e.getFoundTokenCode();
+    }
+  }
+  private static String pushed(PushParser<Expr,Codes> pp) {
+    if( pp.getState()==PushParser.ERROR ) {
+      ParseException e = pp.getException();
+      return e.getExpectedTokenCodes()+" "+e.getFoundTokenCode();
+    }
+    assertEquals(PushParser.DONE, pp.getState());
+    return String.valueOf(pp.getResult().value());
+  }
+  /*+******************************************************************/
+  @Test
+  public void interleavedSameAsPulled() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    List<List<Tok>> inputs = new ArrayList<>();
+    List<PushParser<Expr,Codes>> parsers = new ArrayList<>();
+    for(String text : EXPRESSIONS) {
+      inputs.add(tokens(text));
+      parsers.add(new PushParser<>(p, Codes.EOF, 100));
+    }
+    // one token for each parse in turn, as if arriving from many streams
+    boolean more = true;
+    for(int i=0; more; i++) {
+      more = false;
+      for(int k=0; k<inputs.size(); k++) {
+        PushParser<Expr,Codes> pp = parsers.get(k);
+        if( pp.getState()!=PushParser.NEED_MORE ) continue;
+        Tok t = inputs.get(k).get(i);
+        more |= pp.feed(t.code, t.leaf)==PushParser.NEED_MORE;
+      }
+    }
+    for(int k=0; k<EXPRESSIONS.length; k++) {
+      assertEquals(EXPRESSIONS[k], pulled(p, EXPRESSIONS[k]),
+                   pushed(parsers.get(k)));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void fedByChunkLexer() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    ChunkLexer<Expr,Codes> lex =
+        new ChunkLexer<Expr,Codes>(Codes.EOF, l -> l.current().create(l));
+    lex.addToken(Codes.PLUS, "[+]")
+      .addToken(Codes.MINUS, "[-]")
+      .addToken(Codes.NUMBER, "[1-9][0-9]*|0")
+      .addToken(Codes.TIMES, "[*]")
+      .addToken(Codes.DIVIDE, "[/]")
+      .addToken(Codes.OPAREN, "[(]")
+      .addToken(Codes.CPAREN, "[)]");
+
+    String text = "(12+ 30)*(100 - 98)/4";
+    final PushParser<Expr,Codes> pp = new PushParser<>(p, Codes.EOF, 100);
+    lex.start((code, leaf) -> pp.feed(code, leaf)==PushParser.NEED_MORE);
+    for(int i=0; i<text.length(); i+=2) {
+      lex.feed(text.substring(i, Math.min(text.length(), i+2)));
+    }
+    lex.close();
+    assertEquals(PushParser.DONE, pp.getState());
+    assertEquals(21.0, pp.getResult().value().doubleValue(), 0);
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalStateException.class)
+  public void noFeedAfterDone() throws Exception {
+    Parser<Expr,Codes> p = ExprLanguage.createGrammar().compile();
+    PushParser<Expr,Codes> pp = new PushParser<>(p, Codes.EOF, 100);
+    for(Tok t : tokens("1")) pp.feed(t.code, t.leaf);
+    assertEquals(PushParser.DONE, pp.getState());
+    pp.feed(Codes.EOF, null);
+  }
+  /*+******************************************************************/
+  private static enum Lk { ID, NUM, ASSIGN, OPEN, CLOSE, EOF; }
+
+  @Test
+  public void rejectsParsersLookingFurtherAhead() throws Exception {
+    GrammarBuilder<String,Lk> gb =
+        new GrammarBuilder<>(children -> String.join("", children));
+    Grammar<String,Lk> id = gb.token(Lk.ID);
+    Choice<String,Lk> statement =
+        gb.choice(gb.seq(id, gb.token(Lk.ASSIGN), gb.token(Lk.NUM)),
+                  gb.seq(id, gb.token(Lk.OPEN), gb.token(Lk.CLOSE)),
+                  id);
+    statement.setLookahead(2);
+    Grammar<String,Lk> g = gb.seq(gb.star(statement), gb.token(Lk.EOF));
+    try {
+      new PushParser<>(g.compile(), Lk.EOF, 100);
+      throw new AssertionError("no exception");
+    } catch( IllegalArgumentException e ) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Choice"));
+    }
+
+    Grammar<String,Lk> ordered =
+        gb.seq(gb.star(gb.orderedChoice(gb.seq(id, gb.token(Lk.ASSIGN)),
+                                        id)),
+               gb.token(Lk.EOF));
+    try {
+      new PushParser<>(ordered.compile(), Lk.EOF, 100);
+      throw new AssertionError("no exception");
+    } catch( IllegalArgumentException e ) {
+      assertTrue(e.getMessage(), e.getMessage().contains("OrderedChoice"));
+    }
+  }
+}
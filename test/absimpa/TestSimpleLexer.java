@@ -0,0 +1,77 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+
+public class TestSimpleLexer {
+  private static enum Tok { WORD, NUM, AFTERA, START, EOF; }
+
+  private static SimpleLexer<String,Tok> lexer() {
+    SimpleLexer<String,Tok> lex =
+        new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText())
+        .addToken(Tok.START, "^x")
+        .addToken(Tok.AFTERA, "(?<=a)b")
+        .addToken(Tok.WORD, "[a-z]+")
+        .addToken(Tok.NUM, "[0-9]+");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static List<String> tokens(SimpleLexer<String,Tok> lex,
+                                     CharSequence text)
+    throws ParseException
+  {
+    lex.initAnalysis(text);
+    List<String> result = new ArrayList<>();
+    while( true ) {
+      Tok code = lex.current();
+      result.add(code+":"+lex.next());
+      if( code==Tok.EOF ) return result;
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void seesOnlyTheRestOfTheInput() throws Exception {
+    // ^ matches where each token starts, lookbehind sees nothing before
+    assertEquals("[START:x, START:x, WORD:ab, START:x, WORD:b, EOF:]",
+                 tokens(lexer(), "xx ab x b").toString());
+  }
+  /*+******************************************************************/
+  @Test
+  public void lexesLongInputInLinearTime() throws Exception {
+    // 2.5 million characters, which took minutes when the text consumed
+    // was deleted from the front of a buffer
+    int n = 250000;
+    StringBuilder text = new StringBuilder();
+    for(int i=0; i<n; i++) text.append("abc 1234\n");
+    SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis(text);
+    int count = 0;
+    while( !lex.atEnd() ) {
+      lex.skip();
+      count += 1;
+    }
+    assertEquals(2*n, count);
+    assertEquals(text.length(), lex.currentOffset());
+  }
+  /*+******************************************************************/
+  @Test
+  public void reportsWhereItGotStuck() throws Exception {
+    SimpleLexer<String,Tok> lex = lexer();
+    lex.initAnalysis("abc 12 #123456789012345678901234567890");
+    lex.next();
+    try {
+      lex.next();
+      throw new AssertionError("no exception");
+    } catch( ParseException e ) {
+      String msg = e.getMessage();
+      assertEquals(msg, "looking at: #1234567890123456789...",
+                   msg.substring(msg.indexOf("looking at:")));
+    }
+  }
+}
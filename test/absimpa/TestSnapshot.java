@@ -0,0 +1,129 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.parserimpl.Snapshot;
+
+public class TestSnapshot {
+  private static enum Tok { NUM, PLUS, STAR, OPEN, CLOSE, EOF; }
+  private static enum Renumbered { EOF, UNUSED, CLOSE, OPEN, STAR, PLUS, NUM; }
+
+  private static NodeFactory<String> wrap(final String tag) {
+    return new NodeFactory<String>() {
+      @Override
+      public String create(List<String> children) {
+        return tag+children;
+      }
+    };
+  }
+  private final Map<String,NodeFactory<String>> factories = new HashMap<>();
+  {
+    factories.put("sum", wrap("sum"));
+    factories.put("product", wrap("product"));
+    factories.put("group", wrap("group"));
+    factories.put("start", wrap(""));
+  }
+  /*+******************************************************************/
+  private <C extends Enum<C>> Parser<String,C> compile(Class<C> codes) {
+    GrammarBuilder<String,C> gb = new GrammarBuilder<>(null);
+    C num = Enum.valueOf(codes, "NUM");
+    C plus = Enum.valueOf(codes, "PLUS");
+    C star = Enum.valueOf(codes, "STAR");
+    Recurse<String,C> expr = new Recurse<>();
+    Grammar<String,C> atom =
+        gb.choice(gb.token(num),
+                  gb.seq(gb.token(Enum.valueOf(codes, "OPEN")), expr,
+                         gb.token(Enum.valueOf(codes, "CLOSE")))
+                  .setNodeFactory(factories.get("group")));
+    Grammar<String,C> product =
+        gb.seq(atom, gb.star(gb.seq(gb.token(star), atom)))
+        .setNodeFactory(factories.get("product"));
+    expr.setChild(gb.seq(product, gb.star(gb.seq(gb.token(plus), product)))
+                  .setNodeFactory(factories.get("sum")));
+    Grammar<String,C> g = gb.seq(expr, gb.token(Enum.valueOf(codes, "EOF")))
+        .setNodeFactory(factories.get("start"));
+    g.setName("start");
+    return g.compile();
+  }
+  private static <C extends Enum<C>> String parse(Parser<String,C> p,
+                                                  Class<C> codes,
+                                                  String text)
+  {
+    SimpleLexer<String,C> lex =
+        new SimpleLexer<String,C>(Enum.valueOf(codes, "EOF"),
+                                  l -> l.currentText())
+        .addToken(Enum.valueOf(codes, "NUM"), "[0-9]+")
+        .addToken(Enum.valueOf(codes, "PLUS"), "[+]")
+        .addToken(Enum.valueOf(codes, "STAR"), "[*]")
+        .addToken(Enum.valueOf(codes, "OPEN"), "[(]")
+        .addToken(Enum.valueOf(codes, "CLOSE"), "[)]");
+    try {
+      lex.initAnalysis(text);
+      return p.parse(lex);
+    } catch( ParseException e ) {
+      return e.getExpectedTokenCodes()+" "+e.getFoundTokenCode();
+    }
+  }
+  private byte[] write(Parser<String,Tok> p) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Snapshot.write(p, factories, out);
+    return out.toByteArray();
+  }
+  /*+******************************************************************/
+  @Test
+  public void roundTrip() throws Exception {
+    Parser<String,Tok> p = compile(Tok.class);
+    Parser<String,Tok> q =
+        Snapshot.read(new ByteArrayInputStream(write(p)), Tok.class,
+                      factories);
+    assertEquals(p.toString(), q.toString());
+    for(String text : new String[] {"1", "1+2*3", "(1+2)*3", "((4))", "1+",
+                                    "(1", "1 2"}) {
+      assertEquals(text, parse(p, Tok.class, text), parse(q, Tok.class, text));
+    }
+    assertEquals("[sum[product[1, *, group[(, sum[product[2], +, "
+                 +"product[3]], )]]], ]",
+                 parse(q, Tok.class, "1*(2+3)"));
+  }
+  /*+******************************************************************/
+  @Test
+  public void matchesTokenCodesByName() throws Exception {
+    Parser<String,Renumbered> q =
+        Snapshot.read(new ByteArrayInputStream(write(compile(Tok.class))),
+                      Renumbered.class, factories);
+    assertEquals("[sum[product[1], +, product[2, *, 3]], ]",
+                 parse(q, Renumbered.class, "1+2*3"));
+    assertEquals("[CLOSE] EOF",
+                 parse(q, Renumbered.class, "(1"));
+  }
+  /*+******************************************************************/
+  @Test(expected=IOException.class)
+  public void needsAllFactories() throws Exception {
+    byte[] bytes = write(compile(Tok.class));
+    factories.remove("group");
+    Snapshot.read(new ByteArrayInputStream(bytes), Tok.class, factories);
+  }
+  /*+******************************************************************/
+  @Test(expected=IllegalArgumentException.class)
+  public void needsFactoryNames() throws Exception {
+    Parser<String,Tok> p = compile(Tok.class);
+    factories.remove("sum");
+    write(p);
+  }
+  /*+******************************************************************/
+  @Test(expected=IOException.class)
+  public void rejectsOtherInput() throws Exception {
+    Snapshot.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}),
+                  Tok.class, factories);
+  }
+}
@@ -0,0 +1,131 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import absimpa.lexer.SimpleLexer;
+import absimpa.lexer.StreamLexer;
+
+public class TestStreamLexer {
+  private static enum Tok { WORD, NUM, ARROW, MINUS, COMMENT, EOF; }
+
+  private static <L extends SimpleLexer<String,Tok>> L setUp(L lex) {
+    lex.addToken(Tok.WORD, "\\p{L}+")
+      .addToken(Tok.NUM, "[0-9]+([.][0-9]+)?")
+      .addToken(Tok.ARROW, "->")
+      .addToken(Tok.MINUS, "-")
+      .addToken(Tok.COMMENT, "/[*].*?[*]/");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static final String TEXT =
+      "abc 12.5 -> x-y /* note */ 7.25 - ->-> grüße welt 42";
+
+  private static List<String> tokens(SimpleLexer<String,Tok> lex)
+    throws ParseException
+  {
+    List<String> result = new ArrayList<>();
+    while( true ) {
+      Tok code = lex.current();
+      result.add(lex.currentOffset()+":"+code+":"+lex.next());
+      if( code==Tok.EOF ) return result;
+    }
+  }
+  private static StreamLexer<String,Tok> streamLexer() {
+    return setUp(new StreamLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+  }
+  /*+******************************************************************/
+  @Test
+  public void bufferSizeDoesNotMatter() throws Exception {
+    SimpleLexer<String,Tok> simple =
+        setUp(new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    simple.initAnalysis(TEXT);
+    List<String> expected = tokens(simple);
+    StreamLexer<String,Tok> lex = streamLexer();
+    for(int size=1; size<=TEXT.length()+1; size++) {
+      lex.setBufferSize(size).initAnalysis(new StringReader(TEXT));
+      assertEquals("buffer size "+size, expected, tokens(lex));
+    }
+  }
+  /*+******************************************************************/
+  @Test
+  public void decodesChannel() throws Exception {
+    byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+    StreamLexer<String,Tok> lex = streamLexer().setBufferSize(3);
+    lex.initAnalysis(Channels.newChannel(new ByteArrayInputStream(bytes)),
+                     StandardCharsets.UTF_8);
+    SimpleLexer<String,Tok> simple =
+        setUp(new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    simple.initAnalysis(TEXT);
+    assertEquals(tokens(simple), tokens(lex));
+  }
+  /*+******************************************************************/
+  @Test
+  public void tokenMayExceedBuffer() throws Exception {
+    char[] word = new char[100000];
+    Arrays.fill(word, 'x');
+    String text = "a "+new String(word)+" b";
+    StreamLexer<String,Tok> lex = streamLexer().setBufferSize(16);
+    lex.initAnalysis(new StringReader(text));
+    lex.next();
+    assertEquals(word.length, lex.next().length());
+    assertEquals("b", lex.next());
+    assertEquals(Tok.EOF, lex.current());
+  }
+  /*+******************************************************************/
+  @Test
+  public void readsEndlessInput() throws Exception {
+    // much more input than could be kept in memory at once
+    final long total = 1L<<24;
+    Reader in = new Reader() {
+      private long count = 0;
+      @Override
+      public int read(char[] cbuf, int off, int len) {
+        if( count==total ) return -1;
+        int n = (int)Math.min(len, total-count);
+        for(int i=0; i<n; i++) {
+          cbuf[off+i] = (count+i)%4==3 ? ' ' : 'a';
+        }
+        count += n;
+        return n;
+      }
+      @Override
+      public void close() {}
+    };
+    StreamLexer<String,Tok> lex =
+        setUp(new StreamLexer<String,Tok>(Tok.EOF, l -> null));
+    lex.initAnalysis(in);
+    long count = 0;
+    while( !lex.atEnd() ) {
+      lex.skip();
+      count += 1;
+    }
+    assertEquals(total/4, count);
+    assertEquals(total, lex.currentLongOffset());
+  }
+  /*+******************************************************************/
+  @Test(expected=UncheckedIOException.class)
+  public void passesOnReadError() throws Exception {
+    Reader in = new Reader() {
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        throw new IOException("broken pipe");
+      }
+      @Override
+      public void close() {}
+    };
+    streamLexer().initAnalysis(in);
+  }
+}
@@ -0,0 +1,135 @@
+package absimpa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import absimpa.lexer.DfaLexer;
+import absimpa.lexer.LeafContext;
+import absimpa.lexer.ReplayLexer;
+import absimpa.lexer.SimpleLexer;
+import absimpa.lexer.TokenBuffer;
+
+public class TestTokenBuffer {
+  private static enum Tok { NUM, PLUS, MINUS, STAR, OPEN, CLOSE, EOF; }
+
+  private static <L extends SimpleLexer<String,Tok>> L setUp(L lex) {
+    lex.addToken(Tok.NUM, "[0-9]+")
+      .addToken(Tok.PLUS, "[+]")
+      .addToken(Tok.MINUS, "-")
+      .addToken(Tok.STAR, "[*]")
+      .addToken(Tok.OPEN, "[(]")
+      .addToken(Tok.CLOSE, "[)]");
+    lex.setSkipRe("\\s+");
+    return lex;
+  }
+  private static SimpleLexer<String,Tok> simpleLexer() {
+    return setUp(new SimpleLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+  }
+  private static <L extends Lexer<String,Tok> & LeafContext<Tok>>
+  List<String> tokens(L lex) throws ParseException
+  {
+    List<String> result = new ArrayList<>();
+    while( true ) {
+      Tok code = lex.current();
+      result.add(lex.currentOffset()+":"+code+":"+lex.next());
+      if( code==Tok.EOF ) return result;
+    }
+  }
+  private static final String TEXT = " 12+(3 - 45)*  6 ";
+
+  /*+******************************************************************/
+  @Test
+  public void keepsTokensOfLexer() throws Exception {
+    SimpleLexer<String,Tok> simple = simpleLexer();
+    simple.initAnalysis(TEXT);
+    List<String> expected = tokens(simple);
+
+    TokenBuffer<Tok> tokens = new TokenBuffer<>(simpleLexer(), TEXT);
+    assertEquals(expected.size(), tokens.size());
+    List<String> found = new ArrayList<>();
+    for(int i=0; i<tokens.size(); i++) {
+      found.add(tokens.start(i)+":"+tokens.code(i)+":"+tokens.text(i));
+      assertEquals(tokens.text(i).length(), tokens.length(i));
+    }
+    assertEquals(expected, found);
+
+    DfaLexer<String,Tok> dfa =
+        setUp(new DfaLexer<String,Tok>(Tok.EOF, l -> l.currentText()));
+    ReplayLexer<String,Tok> replay =
+        new ReplayLexer<String,Tok>(l -> l.currentText());
+    replay.initAnalysis(new TokenBuffer<>(dfa, TEXT));
+    assertEquals(expected, tokens(replay));
+    assertEquals(Tok.EOF, replay.peek(3));
+  }
+  /*+******************************************************************/
+  @Test
+  public void createsTextOnlyOnRequest() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for(int i=0; i<1000; i++) text.append(i).append('+');
+    text.append('0');
+    TokenBuffer<Tok> tokens = new TokenBuffer<>(simpleLexer(), text);
+    final List<String> asked = new ArrayList<>();
+    ReplayLexer<String,Tok> replay =
+        new ReplayLexer<String,Tok>(l -> {
+          if( l.current()!=Tok.NUM ) return null;
+          asked.add(l.currentText());
+          return "";
+        });
+    replay.initAnalysis(tokens);
+    while( !replay.atEnd() ) replay.next();
+    assertEquals(2002, tokens.size());
+    assertEquals(1001, asked.size());
+    assertEquals("999", asked.get(999));
+  }
+  /*+******************************************************************/
+  @Test
+  public void parsesWithBacktracking() throws Exception {
+    GrammarBuilder<String,Tok> gb =
+        new GrammarBuilder<>(new NodeFactory<String>() {
+          @Override
+          public String create(List<String> children) {
+            return "["+String.join("", children)+"]";
+          }
+        });
+    Grammar<String,Tok> open = gb.token(Tok.OPEN);
+    Grammar<String,Tok> close = gb.token(Tok.CLOSE);
+    Recurse<String,Tok> expr = new Recurse<>();
+    Grammar<String,Tok> term =
+        gb.orderedChoice(gb.seq(open, expr, close, gb.token(Tok.STAR)),
+                         gb.seq(open, expr, close),
+                         gb.token(Tok.NUM));
+    expr.setChild(gb.orderedChoice(gb.seq(term, gb.token(Tok.PLUS), expr),
+                                   gb.seq(term, gb.token(Tok.MINUS), expr),
+                                   term));
+    Parser<String,Tok> p = gb.seq(expr, gb.token(Tok.EOF)).compile();
+    ReplayLexer<String,Tok> replay =
+        new ReplayLexer<String,Tok>(l -> l.currentText());
+    for(String text : new String[] {"1+2-3", "(1)*+2", "((1)-(2)*)", "(1"}) {
+      SimpleLexer<String,Tok> simple = simpleLexer();
+      simple.initAnalysis(text);
+      String expected;
+      try {
+        expected = p.parse(simple);
+      } catch( ParseException e ) {
+        expected = e.getMessage();
+      }
+      replay.initAnalysis(new TokenBuffer<>(simpleLexer(), text));
+      String found;
+      try {
+        found = p.parse(replay);
+      } catch( ParseException e ) {
+        found = e.getMessage();
+      }
+      assertEquals(text, expected, found);
+    }
+  }
+  /*+******************************************************************/
+  @Test(expected=ParseException.class)
+  public void reportsBadInput() throws Exception {
+    new TokenBuffer<>(simpleLexer(), "1 + x");
+  }
+}